@@ -3,13 +3,17 @@ package com.mercari.solution.module.sink;
 import com.google.cloud.spanner.Struct;
 import com.google.datastore.v1.Entity;
 import com.google.gson.Gson;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.util.JsonFormat;
 import com.mercari.solution.config.SinkConfig;
 import com.mercari.solution.module.DataType;
 import com.mercari.solution.module.FCollection;
 import com.mercari.solution.module.SinkModule;
 import com.mercari.solution.util.converter.*;
+import com.mercari.solution.util.gcp.StorageUtil;
 import com.mercari.solution.util.schema.AvroSchemaUtil;
 import com.mercari.solution.util.schema.EntitySchemaUtil;
+import com.mercari.solution.util.schema.ProtoSchemaUtil;
 import com.mercari.solution.util.schema.RowSchemaUtil;
 import com.mercari.solution.util.schema.StructSchemaUtil;
 import org.apache.avro.Schema;
@@ -51,6 +55,9 @@ public class PubSubSink implements SinkModule {
         private Integer maxBatchSize;
         private Integer maxBatchBytesSize;
 
+        private String protobufDescriptor;
+        private String protobufMessageName;
+
         public String getTopic() {
             return topic;
         }
@@ -106,13 +113,30 @@ public class PubSubSink implements SinkModule {
         public void setMaxBatchBytesSize(Integer maxBatchBytesSize) {
             this.maxBatchBytesSize = maxBatchBytesSize;
         }
+
+        public String getProtobufDescriptor() {
+            return protobufDescriptor;
+        }
+
+        public void setProtobufDescriptor(String protobufDescriptor) {
+            this.protobufDescriptor = protobufDescriptor;
+        }
+
+        public String getProtobufMessageName() {
+            return protobufMessageName;
+        }
+
+        public void setProtobufMessageName(String protobufMessageName) {
+            this.protobufMessageName = protobufMessageName;
+        }
     }
 
     public String getName() { return "pubsub"; }
 
     private enum Format {
         avro,
-        json
+        json,
+        protobuf
     }
 
     public Map<String, FCollection<?>> expand(FCollection<?> input, SinkConfig config, List<FCollection<?>> waits) {
@@ -223,6 +247,35 @@ public class PubSubSink implements SinkModule {
                             throw new IllegalArgumentException("PubSubSink module not support data type: " + collection.getDataType());
                     }
                 }
+                case protobuf: {
+                    switch (collection.getDataType()) {
+                        case ROW: {
+                            final PCollection<Row> rows = (PCollection<Row>)input;
+                            final org.apache.beam.sdk.schemas.Schema schema = collection.getSchema();
+                            return rows.apply("ToMessage", ParDo.of(new ProtobufPubsubMessageDoFn<>(
+                                    parameters.getAttributes(),
+                                    parameters.getIdAttribute(),
+                                    parameters.getProtobufDescriptor(),
+                                    parameters.getProtobufMessageName(),
+                                    RowSchemaUtil::getAsString,
+                                    (descriptor, parser) -> ProtoEncoder.of(schema, descriptor, parser)::encode)))
+                                    .apply("PublishPubSub", write);
+                        }
+                        default: {
+                            final PCollection<GenericRecord> records = input
+                                    .apply("ToRecord", DataTypeTransform.transform(collection, DataType.AVRO));
+                            final String schemaString = collection.getAvroSchema().toString();
+                            return records.apply("ToMessage", ParDo.of(new ProtobufPubsubMessageDoFn<>(
+                                    parameters.getAttributes(),
+                                    parameters.getIdAttribute(),
+                                    parameters.getProtobufDescriptor(),
+                                    parameters.getProtobufMessageName(),
+                                    AvroSchemaUtil::getAsString,
+                                    (descriptor, parser) -> ProtoEncoder.of(AvroSchemaUtil.convertSchema(schemaString), descriptor, parser)::encode)))
+                                    .apply("PublishPubSub", write);
+                        }
+                    }
+                }
                 default:
                     throw new IllegalArgumentException("PubSubSink module not support format: " + parameters.getFormat());
             }
@@ -240,6 +293,13 @@ public class PubSubSink implements SinkModule {
             }
             if(parameters.getFormat() == null) {
                 errorMessages.add("PubSub module parameter must contain format");
+            } else if(Format.protobuf.equals(parameters.getFormat())) {
+                if(parameters.getProtobufDescriptor() == null) {
+                    errorMessages.add("PubSub module parameter must contain protobufDescriptor when format is protobuf");
+                }
+                if(parameters.getProtobufMessageName() == null) {
+                    errorMessages.add("PubSub module parameter must contain protobufMessageName when format is protobuf");
+                }
             }
             if(errorMessages.size() > 0) {
                 throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
@@ -330,6 +390,54 @@ public class PubSubSink implements SinkModule {
 
         }
 
+        private static class ProtobufPubsubMessageDoFn<T> extends PubsubMessageDoFn<T> {
+
+            private final String descriptorPath;
+            private final String messageName;
+            private final FieldGetter<T> getter;
+            private final ProtoEncoderCreator<T> encoderCreator;
+
+            private transient ProtoEncoderFunction<T> encoder;
+
+            ProtobufPubsubMessageDoFn(final List<String> attributes,
+                                      final String idAttribute,
+                                      final String descriptorPath,
+                                      final String messageName,
+                                      final FieldGetter<T> getter,
+                                      final ProtoEncoderCreator<T> encoderCreator) {
+
+                super(attributes, idAttribute);
+                this.descriptorPath = descriptorPath;
+                this.messageName = messageName;
+                this.getter = getter;
+                this.encoderCreator = encoderCreator;
+            }
+
+            @Setup
+            public void setup() {
+                final byte[] bytes = StorageUtil.readBytes(descriptorPath);
+                final Map<String, Descriptors.Descriptor> descriptors = ProtoSchemaUtil.getDescriptors(bytes);
+                final Descriptors.Descriptor descriptor = descriptors.get(messageName);
+                if(descriptor == null) {
+                    throw new IllegalArgumentException("Descriptor file: " + descriptorPath
+                            + " does not contain messageName: " + messageName
+                            + ". Descriptor file only contains: " + String.join(",", descriptors.keySet()));
+                }
+                this.encoder = encoderCreator.create(descriptor, ProtoSchemaUtil.createJsonParser(descriptors));
+            }
+
+            @Override
+            String getString(T element, String fieldName) {
+                return getter.getString(element, fieldName);
+            }
+
+            @Override
+            byte[] encode(T element) {
+                return encoder.encode(element);
+            }
+
+        }
+
         private static abstract class PubsubMessageDoFn<T> extends DoFn<T, PubsubMessage> {
 
             private final List<String> attributes;
@@ -387,4 +495,12 @@ public class PubSubSink implements SinkModule {
         String convert(final T value);
     }
 
+    private interface ProtoEncoderCreator<T> extends Serializable {
+        ProtoEncoderFunction<T> create(final Descriptors.Descriptor descriptor, final JsonFormat.Parser parser);
+    }
+
+    private interface ProtoEncoderFunction<T> {
+        byte[] encode(final T value);
+    }
+
 }
\ No newline at end of file
@@ -14,23 +14,34 @@ import com.mercari.solution.module.SourceModule;
 import com.mercari.solution.util.TemplateUtil;
 import com.mercari.solution.util.schema.AvroSchemaUtil;
 import com.mercari.solution.util.OptionUtil;
+import com.mercari.solution.util.converter.ArrowToRecordConverter;
 import com.mercari.solution.util.converter.DataTypeTransform;
 import com.mercari.solution.util.converter.TableRowToRecordConverter;
 import com.mercari.solution.util.gcp.BigQueryUtil;
 import com.mercari.solution.util.gcp.StorageUtil;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ReadChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
-import org.apache.beam.sdk.coders.AvroCoder;
+import org.apache.beam.sdk.coders.*;
 import org.apache.beam.sdk.extensions.gcp.options.GcpOptions;
 import org.apache.beam.sdk.extensions.gcp.util.BackOffAdapter;
 import org.apache.beam.sdk.extensions.protobuf.ProtoCoder;
 import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO;
 import org.apache.beam.sdk.io.gcp.bigquery.SchemaAndRecord;
 import org.apache.beam.sdk.transforms.*;
+import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
+import org.apache.beam.sdk.transforms.splittabledofn.SplitResult;
 import org.apache.beam.sdk.util.FluentBackoff;
 import org.apache.beam.sdk.values.*;
 import org.joda.time.Duration;
@@ -39,11 +50,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class BigQuerySource implements SourceModule {
 
+    private static final String METHOD_BIGQUERYIO = "bigqueryio";
+    private static final String METHOD_STORAGE = "storage";
+
     private class BigQuerySourceParameters {
 
         private String query;
@@ -55,6 +70,11 @@ public class BigQuerySource implements SourceModule {
         private String rowRestriction;
         private String kmsKey;
 
+        // for storage read
+        private String method;
+        private String dataFormat;
+        private Integer maxStreamCount;
+
         // for microbatch
         private Integer intervalSecond;
         private Integer gapSecond;
@@ -63,6 +83,8 @@ public class BigQuerySource implements SourceModule {
         private String startDatetime;
         private String outputCheckpoint;
         private Boolean useCheckpointAsStartDatetime;
+        private Boolean adaptiveInterval;
+        private Integer catchupParallelism;
 
 
         public String getQuery() {
@@ -129,6 +151,30 @@ public class BigQuerySource implements SourceModule {
             this.kmsKey = kmsKey;
         }
 
+        public String getMethod() {
+            return method;
+        }
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public String getDataFormat() {
+            return dataFormat;
+        }
+
+        public void setDataFormat(String dataFormat) {
+            this.dataFormat = dataFormat;
+        }
+
+        public Integer getMaxStreamCount() {
+            return maxStreamCount;
+        }
+
+        public void setMaxStreamCount(Integer maxStreamCount) {
+            this.maxStreamCount = maxStreamCount;
+        }
+
         public Integer getIntervalSecond() {
             return intervalSecond;
         }
@@ -184,6 +230,22 @@ public class BigQuerySource implements SourceModule {
         public void setUseCheckpointAsStartDatetime(Boolean useCheckpointAsStartDatetime) {
             this.useCheckpointAsStartDatetime = useCheckpointAsStartDatetime;
         }
+
+        public Boolean getAdaptiveInterval() {
+            return adaptiveInterval;
+        }
+
+        public void setAdaptiveInterval(Boolean adaptiveInterval) {
+            this.adaptiveInterval = adaptiveInterval;
+        }
+
+        public Integer getCatchupParallelism() {
+            return catchupParallelism;
+        }
+
+        public void setCatchupParallelism(Integer catchupParallelism) {
+            this.catchupParallelism = catchupParallelism;
+        }
     }
 
     public String getName() { return "bigquery"; }
@@ -306,35 +368,42 @@ public class BigQuerySource implements SourceModule {
                 this.avroSchema = BigQueryUtil.getTableSchemaFromTableStorage(
                         tableReference, project, fields, parameters.getRowRestriction());
 
-                final BigQueryIO.TypedRead.Method method;
-                if(OptionUtil.isDirectRunner(begin.getPipeline().getOptions())) {
-                    if(parameters.getFields() != null || parameters.getRowRestriction() != null) {
-                        method = BigQueryIO.TypedRead.Method.DIRECT_READ;
+                if(METHOD_STORAGE.equals(parameters.getMethod())) {
+                    records = begin.apply("ReadBigQueryStorage", new BigQueryStorageRead(
+                            project, tableReference, fields, parameters.getRowRestriction(),
+                            DataFormat.valueOf(parameters.getDataFormat().toUpperCase()),
+                            parameters.getMaxStreamCount(), avroSchema));
+                } else {
+                    final BigQueryIO.TypedRead.Method method;
+                    if(OptionUtil.isDirectRunner(begin.getPipeline().getOptions())) {
+                        if(parameters.getFields() != null || parameters.getRowRestriction() != null) {
+                            method = BigQueryIO.TypedRead.Method.DIRECT_READ;
+                        } else {
+                            method = BigQueryIO.TypedRead.Method.EXPORT;
+                        }
                     } else {
-                        method = BigQueryIO.TypedRead.Method.EXPORT;
+                        method = BigQueryIO.TypedRead.Method.DIRECT_READ;
                     }
-                } else {
-                    method = BigQueryIO.TypedRead.Method.DIRECT_READ;
-                }
 
-                BigQueryIO.TypedRead<GenericRecord> read = BigQueryIO
-                        .read(SchemaAndRecord::getRecord)
-                        .from(tableReference)
-                        .withMethod(method)
-                        .withoutValidation()
-                        .withCoder(AvroCoder.of(avroSchema));
+                    BigQueryIO.TypedRead<GenericRecord> read = BigQueryIO
+                            .read(SchemaAndRecord::getRecord)
+                            .from(tableReference)
+                            .withMethod(method)
+                            .withoutValidation()
+                            .withCoder(AvroCoder.of(avroSchema));
 
-                if(parameters.getFields() != null) {
-                    read = read.withSelectedFields(fields);
-                }
-                if(parameters.getRowRestriction() != null) {
-                    read = read.withRowRestriction(parameters.getRowRestriction());
-                }
+                    if(parameters.getFields() != null) {
+                        read = read.withSelectedFields(fields);
+                    }
+                    if(parameters.getRowRestriction() != null) {
+                        read = read.withRowRestriction(parameters.getRowRestriction());
+                    }
 
-                records = begin
-                        .apply("ReadBigQueryTable", read)
-                        .setCoder(AvroCoder.of(avroSchema))
-                        .setTypeDescriptor(TypeDescriptor.of(GenericRecord.class));
+                    records = begin
+                            .apply("ReadBigQueryTable", read)
+                            .setCoder(AvroCoder.of(avroSchema))
+                            .setTypeDescriptor(TypeDescriptor.of(GenericRecord.class));
+                }
 
             } else {
                 throw new IllegalArgumentException("bigquery module support only query or table");
@@ -359,6 +428,21 @@ public class BigQuerySource implements SourceModule {
             if(parameters.getQuery() == null && parameters.getTable() == null) {
                 errorMessages.add("Parameter must contain query or table");
             }
+            if(parameters.getMethod() != null) {
+                if(!METHOD_BIGQUERYIO.equals(parameters.getMethod()) && !METHOD_STORAGE.equals(parameters.getMethod())) {
+                    errorMessages.add("Parameter method must be bigqueryio or storage: " + parameters.getMethod());
+                } else if(METHOD_STORAGE.equals(parameters.getMethod()) && parameters.getTable() == null) {
+                    errorMessages.add("Parameter table is required when method is storage");
+                }
+            }
+            if(parameters.getDataFormat() != null
+                    && !"avro".equalsIgnoreCase(parameters.getDataFormat())
+                    && !"arrow".equalsIgnoreCase(parameters.getDataFormat())) {
+                errorMessages.add("Parameter dataFormat must be avro or arrow: " + parameters.getDataFormat());
+            }
+            if(parameters.getMaxStreamCount() != null && parameters.getMaxStreamCount() < 0) {
+                errorMessages.add("Parameter maxStreamCount must not be negative: " + parameters.getMaxStreamCount());
+            }
 
             if(errorMessages.size() > 0) {
                 throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
@@ -369,6 +453,417 @@ public class BigQuerySource implements SourceModule {
             if(parameters.getQueryPriority() == null) {
                 parameters.setQueryPriority(BigQueryIO.TypedRead.QueryPriority.INTERACTIVE.name());
             }
+            if(parameters.getMethod() == null) {
+                parameters.setMethod(METHOD_BIGQUERYIO);
+            }
+            if(parameters.getDataFormat() == null) {
+                parameters.setDataFormat("avro");
+            }
+            if(parameters.getMaxStreamCount() == null) {
+                // 0 lets the server decide the number of streams.
+                parameters.setMaxStreamCount(0);
+            }
+        }
+
+    }
+
+    /**
+     * Reads a table through BigQuery Storage Read API without BigQueryIO.
+     * A read session is created at runtime and its streams are read by a splittable DoFn,
+     * which hands the rest of a stream to another worker with SplitReadStream when the runner asks to split.
+     */
+    private static class BigQueryStorageRead extends PTransform<PBegin, PCollection<GenericRecord>> {
+
+        private final String project;
+        private final TableReference tableReference;
+        private final List<String> fields;
+        private final String rowRestriction;
+        private final DataFormat dataFormat;
+        private final Integer maxStreamCount;
+        private final Schema avroSchema;
+
+        private BigQueryStorageRead(final String project,
+                                    final TableReference tableReference,
+                                    final List<String> fields,
+                                    final String rowRestriction,
+                                    final DataFormat dataFormat,
+                                    final Integer maxStreamCount,
+                                    final Schema avroSchema) {
+
+            this.project = project;
+            this.tableReference = tableReference;
+            this.fields = fields;
+            this.rowRestriction = rowRestriction;
+            this.dataFormat = dataFormat;
+            this.maxStreamCount = maxStreamCount;
+            this.avroSchema = avroSchema;
+        }
+
+        @Override
+        public PCollection<GenericRecord> expand(final PBegin begin) {
+            final String table = String.format("projects/%s/datasets/%s/tables/%s",
+                    tableReference.getProjectId(), tableReference.getDatasetId(), tableReference.getTableId());
+            return begin
+                    .apply("Seed", Create.of("seed"))
+                    .apply("CreateReadSession", ParDo.of(new CreateSessionDoFn(
+                            project, table, fields, rowRestriction, dataFormat, maxStreamCount)))
+                    .setCoder(KvCoder.of(StringUtf8Coder.of(), ByteArrayCoder.of()))
+                    .apply("Reshuffle", Reshuffle.viaRandomKey())
+                    .apply("ReadStream", ParDo.of(new ReadStreamDoFn(avroSchema.toString(), dataFormat)))
+                    .setCoder(AvroCoder.of(avroSchema));
+        }
+
+        /**
+         * Outputs the stream names of the read session paired with the serialized arrow schema (empty for avro).
+         */
+        private static class CreateSessionDoFn extends DoFn<String, KV<String, byte[]>> {
+
+            private static final Logger LOG = LoggerFactory.getLogger(CreateSessionDoFn.class);
+
+            private final String project;
+            private final String table;
+            private final List<String> fields;
+            private final String rowRestriction;
+            private final DataFormat dataFormat;
+            private final Integer maxStreamCount;
+
+            CreateSessionDoFn(final String project,
+                              final String table,
+                              final List<String> fields,
+                              final String rowRestriction,
+                              final DataFormat dataFormat,
+                              final Integer maxStreamCount) {
+
+                this.project = project;
+                this.table = table;
+                this.fields = fields;
+                this.rowRestriction = rowRestriction;
+                this.dataFormat = dataFormat;
+                this.maxStreamCount = maxStreamCount;
+            }
+
+            @ProcessElement
+            public void processElement(final ProcessContext c) throws IOException {
+                ReadSession.TableReadOptions.Builder options = ReadSession.TableReadOptions.newBuilder();
+                if(fields != null) {
+                    options = options.addAllSelectedFields(fields);
+                }
+                if(rowRestriction != null) {
+                    options = options.setRowRestriction(rowRestriction);
+                }
+
+                final CreateReadSessionRequest request = CreateReadSessionRequest.newBuilder()
+                        .setParent(String.format("projects/%s", project))
+                        .setReadSession(ReadSession.newBuilder()
+                                .setTable(table)
+                                .setDataFormat(dataFormat)
+                                .setReadOptions(options))
+                        .setMaxStreamCount(maxStreamCount)
+                        .build();
+
+                final ReadSession readSession;
+                try (final BigQueryReadClient client = BigQueryReadClient.create()) {
+                    readSession = client.createReadSession(request);
+                }
+                LOG.info(String.format("Created read session: %s with %d streams",
+                        readSession.getName(), readSession.getStreamsCount()));
+
+                final byte[] arrowSchema;
+                if(DataFormat.ARROW.equals(dataFormat)) {
+                    arrowSchema = readSession.getArrowSchema().getSerializedSchema().toByteArray();
+                } else {
+                    arrowSchema = new byte[0];
+                }
+                for(final ReadStream readStream : readSession.getStreamsList()) {
+                    c.output(KV.of(readStream.getName(), arrowSchema));
+                }
+            }
+
+        }
+
+        @DoFn.BoundedPerElement
+        private static class ReadStreamDoFn extends DoFn<KV<String, byte[]>, GenericRecord> {
+
+            private final String schemaString;
+            private final DataFormat dataFormat;
+
+            private transient Schema schema;
+            private transient BigQueryReadClient client;
+
+            // for avro
+            private transient DatumReader<GenericRecord> datumReader;
+            private transient BinaryDecoder decoder;
+
+            // for arrow
+            private transient BufferAllocator allocator;
+            private transient VectorSchemaRoot root;
+            private transient VectorLoader loader;
+
+            ReadStreamDoFn(final String schemaString, final DataFormat dataFormat) {
+                this.schemaString = schemaString;
+                this.dataFormat = dataFormat;
+            }
+
+            @Setup
+            public void setup() throws IOException {
+                this.schema = new Schema.Parser().parse(schemaString);
+                this.client = BigQueryReadClient.create();
+                this.datumReader = new GenericDatumReader<>(schema);
+                this.decoder = null;
+                this.allocator = null;
+                this.root = null;
+                this.loader = null;
+            }
+
+            @Teardown
+            public void teardown() {
+                if(root != null) {
+                    root.close();
+                }
+                if(allocator != null) {
+                    allocator.close();
+                }
+                if(client != null) {
+                    client.close();
+                }
+            }
+
+            @GetInitialRestriction
+            public StreamRange getInitialRestriction(@Element final KV<String, byte[]> element) {
+                return new StreamRange(element.getKey(), 0L, Long.MAX_VALUE);
+            }
+
+            @GetRestrictionCoder
+            public Coder<StreamRange> getRestrictionCoder() {
+                return SerializableCoder.of(StreamRange.class);
+            }
+
+            @NewTracker
+            public StreamRangeTracker newTracker(@Restriction final StreamRange restriction) {
+                return new StreamRangeTracker(restriction, client);
+            }
+
+            @ProcessElement
+            public ProcessContinuation processElement(
+                    final ProcessContext c,
+                    final RestrictionTracker<StreamRange, StreamPosition> tracker) throws IOException {
+
+                final StreamRange range = tracker.currentRestriction();
+                if(DataFormat.ARROW.equals(dataFormat) && root == null) {
+                    setupArrow(c.element().getValue());
+                }
+
+                long offset = range.getOffset();
+                final ReadRowsRequest request = ReadRowsRequest.newBuilder()
+                        .setReadStream(range.getStream())
+                        .setOffset(offset)
+                        .build();
+                final ServerStream<ReadRowsResponse> responses = client.readRowsCallable().call(request);
+                try {
+                    for(final ReadRowsResponse response : responses) {
+                        final StreamPosition position = new StreamPosition(
+                                range.getStream(), offset, response.getRowCount(),
+                                response.getStats().getProgress().getAtResponseEnd());
+                        if(!tracker.tryClaim(position)) {
+                            // The stream was replaced with the primary of a split, continue reading it from the residual.
+                            if(!range.getStream().equals(tracker.currentRestriction().getStream())) {
+                                return ProcessContinuation.resume();
+                            }
+                            return ProcessContinuation.stop();
+                        }
+                        if(DataFormat.ARROW.equals(dataFormat)) {
+                            outputArrowRows(c, response);
+                        } else {
+                            outputAvroRows(c, response);
+                        }
+                        offset += response.getRowCount();
+                    }
+                } finally {
+                    responses.cancel();
+                }
+                tracker.tryClaim(StreamPosition.END);
+                return ProcessContinuation.stop();
+            }
+
+            private void outputAvroRows(final ProcessContext c, final ReadRowsResponse response) throws IOException {
+                decoder = DecoderFactory.get()
+                        .binaryDecoder(response.getAvroRows().getSerializedBinaryRows().toByteArray(), decoder);
+                while(!decoder.isEnd()) {
+                    c.output(datumReader.read(null, decoder));
+                }
+            }
+
+            private void outputArrowRows(final ProcessContext c, final ReadRowsResponse response) throws IOException {
+                final byte[] bytes = response.getArrowRecordBatch().getSerializedRecordBatch().toByteArray();
+                try(final ArrowRecordBatch batch = MessageSerializer.deserializeRecordBatch(
+                        new ReadChannel(new ByteArrayReadableSeekableByteChannel(bytes)), allocator)) {
+                    loader.load(batch);
+                }
+                for(final GenericRecord record : ArrowToRecordConverter.convert(schema, root)) {
+                    c.output(record);
+                }
+            }
+
+            private void setupArrow(final byte[] serializedSchema) throws IOException {
+                final org.apache.arrow.vector.types.pojo.Schema arrowSchema = MessageSerializer
+                        .deserializeSchema(new ReadChannel(new ByteArrayReadableSeekableByteChannel(serializedSchema)));
+                this.allocator = new RootAllocator(Long.MAX_VALUE);
+                this.root = VectorSchemaRoot.create(arrowSchema, allocator);
+                this.loader = new VectorLoader(root);
+            }
+
+        }
+
+        /**
+         * Range of rows in a read stream, from offset to end (exclusive, Long.MAX_VALUE means the end of the stream).
+         */
+        private static class StreamRange implements Serializable {
+
+            private final String stream;
+            private final long offset;
+            private final long end;
+
+            StreamRange(final String stream, final long offset, final long end) {
+                this.stream = stream;
+                this.offset = offset;
+                this.end = end;
+            }
+
+            public String getStream() {
+                return stream;
+            }
+
+            public long getOffset() {
+                return offset;
+            }
+
+            public long getEnd() {
+                return end;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("stream: %s, offset: %d, end: %d", stream, offset, end);
+            }
+
+        }
+
+        /**
+         * A ReadRowsResponse claimed as a whole: the offset of its first row, its row count,
+         * and the fraction of the stream consumed at the end of the response.
+         */
+        private static class StreamPosition {
+
+            private static final StreamPosition END = new StreamPosition(null, Long.MAX_VALUE, 0, 1.0);
+
+            private final String stream;
+            private final long offset;
+            private final long rowCount;
+            private final double fraction;
+
+            StreamPosition(final String stream, final long offset, final long rowCount, final double fraction) {
+                this.stream = stream;
+                this.offset = offset;
+                this.rowCount = rowCount;
+                this.fraction = fraction;
+            }
+
+        }
+
+        private static class StreamRangeTracker extends RestrictionTracker<StreamRange, StreamPosition>
+                implements RestrictionTracker.HasProgress {
+
+            private final BigQueryReadClient client;
+
+            private StreamRange range;
+            private long nextOffset;
+            private long lastAttemptedOffset;
+            private double fraction;
+            private boolean claimed;
+
+            StreamRangeTracker(final StreamRange range, final BigQueryReadClient client) {
+                this.range = range;
+                this.client = client;
+                this.nextOffset = range.getOffset();
+                this.lastAttemptedOffset = range.getOffset() - 1;
+                this.fraction = 0D;
+                this.claimed = false;
+            }
+
+            @Override
+            public boolean tryClaim(final StreamPosition position) {
+                if(position.stream != null && !position.stream.equals(range.getStream())) {
+                    return false;
+                }
+                lastAttemptedOffset = position.offset;
+                if(position.offset >= range.getEnd()) {
+                    return false;
+                }
+                nextOffset = position.offset + position.rowCount;
+                fraction = position.fraction;
+                claimed = true;
+                return true;
+            }
+
+            @Override
+            public StreamRange currentRestriction() {
+                return range;
+            }
+
+            @Override
+            public SplitResult<StreamRange> trySplit(final double fractionOfRemainder) {
+                if(lastAttemptedOffset >= range.getEnd() || nextOffset >= range.getEnd()) {
+                    return null;
+                }
+                if(fractionOfRemainder == 0D) {
+                    // Checkpoint: the rest of the stream is resumed from the next unclaimed row.
+                    final StreamRange primary = new StreamRange(range.getStream(), range.getOffset(), nextOffset);
+                    final StreamRange residual = new StreamRange(range.getStream(), nextOffset, range.getEnd());
+                    this.range = primary;
+                    return SplitResult.of(primary, residual);
+                }
+                // Splitting by server needs the position in the stream, and the stream must be read to its end.
+                if(!claimed || range.getEnd() != Long.MAX_VALUE) {
+                    return null;
+                }
+                final double splitFraction = fraction + (1D - fraction) * fractionOfRemainder;
+                if(splitFraction <= fraction || splitFraction >= 1D) {
+                    return null;
+                }
+                final SplitReadStreamResponse response = client.splitReadStream(SplitReadStreamRequest.newBuilder()
+                        .setName(range.getStream())
+                        .setFraction(splitFraction)
+                        .build());
+                if(!response.hasPrimaryStream() || !response.hasRemainderStream()) {
+                    return null;
+                }
+                // The primary stream has the same rows as the original one up to the split point,
+                // so the rows already claimed stay valid with the same offsets.
+                final StreamRange primary = new StreamRange(response.getPrimaryStream().getName(), range.getOffset(), Long.MAX_VALUE);
+                final StreamRange residual = new StreamRange(response.getRemainderStream().getName(), 0L, Long.MAX_VALUE);
+                this.range = primary;
+                return SplitResult.of(primary, residual);
+            }
+
+            @Override
+            public void checkDone() throws IllegalStateException {
+                if(lastAttemptedOffset < range.getEnd() && nextOffset < range.getEnd()) {
+                    throw new IllegalStateException(String.format(
+                            "Last attempted offset was %d in range %s, claiming work in [%d, %d) was not attempted",
+                            lastAttemptedOffset, range, nextOffset, range.getEnd()));
+                }
+            }
+
+            @Override
+            public IsBounded isBounded() {
+                return IsBounded.BOUNDED;
+            }
+
+            @Override
+            public Progress getProgress() {
+                return Progress.from(fraction, 1D - fraction);
+            }
+
         }
 
     }
@@ -669,6 +1164,12 @@ public class BigQuerySource implements SourceModule {
             if (parameters.getQueryTempDataset() == null) {
                 errorMessages.add("BigQuery source module[microbatch mode] parameters must contain queryTempDataset");
             }
+            if (parameters.getCatchupParallelism() != null && parameters.getCatchupParallelism() < 1) {
+                errorMessages.add("BigQuery source module[microbatch mode] parameter catchupParallelism must be greater than zero");
+            }
+            if (Boolean.TRUE.equals(parameters.getAdaptiveInterval()) && parameters.getOutputCheckpoint() == null) {
+                errorMessages.add("BigQuery source module[microbatch mode] parameter adaptiveInterval requires outputCheckpoint");
+            }
             if (errorMessages.size() > 0) {
                 throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
             }
@@ -694,6 +1195,12 @@ public class BigQuerySource implements SourceModule {
             if(parameters.getUseCheckpointAsStartDatetime() == null) {
                 parameters.setUseCheckpointAsStartDatetime(false);
             }
+            if(parameters.getAdaptiveInterval() == null) {
+                parameters.setAdaptiveInterval(false);
+            }
+            if(parameters.getCatchupParallelism() == null) {
+                parameters.setCatchupParallelism(1);
+            }
         }
 
         public PCollection<GenericRecord> expand(final PCollection<Long> beat) {
@@ -714,6 +1221,8 @@ public class BigQuerySource implements SourceModule {
                             parameters.getOutputCheckpoint(),
                             parameters.getCatchupIntervalSecond(),
                             parameters.getUseCheckpointAsStartDatetime(),
+                            parameters.getAdaptiveInterval(),
+                            parameters.getCatchupParallelism(),
                             new MicrobatchQueryDoFn(
                                     projectId,
                                     parameters.getQueryTempDataset(),
@@ -763,7 +1272,15 @@ public class BigQuerySource implements SourceModule {
 
             @ProcessElement
             public void processElement(ProcessContext c) throws Exception {
+                MicrobatchQuery.recordQueryStart();
+                try {
+                    executeQuery(c);
+                } finally {
+                    MicrobatchQuery.recordQueryEnd();
+                }
+            }
 
+            private void executeQuery(final ProcessContext c) throws Exception {
                 final Instant start = Instant.now();
                 final String query = c.element().getValue();
                 final QueryResponse response = this.bigquery.jobs()
@@ -789,6 +1306,7 @@ public class BigQuerySource implements SourceModule {
                     final long time = Instant.now().getMillis() - start.getMillis();
                     LOG.info(String.format("Query [%s] result zero, took [%d] millisec to execute the query.",
                             query, time));
+                    MicrobatchQuery.recordQueryResult(c, 0, time);
                     c.output(new TupleTag<>("checkpoint"), c.element().getKey());
                     return;
                 }
@@ -810,6 +1328,7 @@ public class BigQuerySource implements SourceModule {
                 final long time = Instant.now().getMillis() - start.getMillis();
                 LOG.info(String.format("Query [%s] result num [%d], took [%d] millisec to execute the query.",
                         query, queryResults.getTotalRows().longValue(), time));
+                MicrobatchQuery.recordQueryResult(c, queryResults.getTotalRows().longValue(), time);
 
                 c.output(new TupleTag<>("checkpoint"), c.element().getKey());
             }
@@ -0,0 +1,322 @@
+package com.mercari.solution.module.source;
+
+import com.google.datastore.v1.Entity;
+import com.google.gson.Gson;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.DataType;
+import com.mercari.solution.module.FCollection;
+import com.mercari.solution.module.SourceModule;
+import com.mercari.solution.util.LevelDBLogReader;
+import com.mercari.solution.util.converter.DataTypeTransform;
+import com.mercari.solution.util.converter.EntityProtoToEntityConverter;
+import com.mercari.solution.util.schema.EntitySchemaUtil;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.fs.EmptyMatchTreatment;
+import org.apache.beam.sdk.io.fs.MatchResult;
+import org.apache.beam.sdk.io.range.OffsetRange;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.transforms.splittabledofn.OffsetRangeTracker;
+import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class DatastoreExportSource implements SourceModule {
+
+    private class DatastoreExportSourceParameters implements Serializable {
+
+        private String input;
+        private String kind;
+        private Integer splitSizeMB;
+        private Integer sampleSize;
+
+        public String getInput() {
+            return input;
+        }
+
+        public void setInput(String input) {
+            this.input = input;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public void setKind(String kind) {
+            this.kind = kind;
+        }
+
+        public Integer getSplitSizeMB() {
+            return splitSizeMB;
+        }
+
+        public void setSplitSizeMB(Integer splitSizeMB) {
+            this.splitSizeMB = splitSizeMB;
+        }
+
+        public Integer getSampleSize() {
+            return sampleSize;
+        }
+
+        public void setSampleSize(Integer sampleSize) {
+            this.sampleSize = sampleSize;
+        }
+    }
+
+    public String getName() { return "datastoreExport"; }
+
+    public Map<String, FCollection<?>> expand(PBegin begin, SourceConfig config, PCollection<Long> beats, List<FCollection<?>> waits) {
+        if (config.getMicrobatch() != null && config.getMicrobatch()) {
+            throw new IllegalArgumentException("DatastoreExportSource does not support microbatch mode.");
+        }
+        return Collections.singletonMap(config.getName(), DatastoreExportSource.batch(begin, config));
+    }
+
+    public static FCollection<Entity> batch(final PBegin begin, final SourceConfig config) {
+        final DatastoreExportBatchRead source = new DatastoreExportBatchRead(config);
+        final PCollection<Entity> output = begin.apply(config.getName(), source);
+        return FCollection.of(config.getName(), output, DataType.ENTITY, source.schema);
+    }
+
+    public static class DatastoreExportBatchRead extends PTransform<PBegin, PCollection<Entity>> {
+
+        private static final Logger LOG = LoggerFactory.getLogger(DatastoreExportBatchRead.class);
+
+        private static final int DEFAULT_SPLIT_SIZE_MB = 64;
+        private static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+        private final DatastoreExportSourceParameters parameters;
+        private final String timestampAttribute;
+        private final String timestampDefault;
+        private Schema schema;
+
+        private DatastoreExportBatchRead(final SourceConfig config) {
+            this.parameters = new Gson().fromJson(config.getParameters(), DatastoreExportSourceParameters.class);
+            this.timestampAttribute = config.getTimestampAttribute();
+            this.timestampDefault = config.getTimestampDefault();
+            this.schema = config.getSchema() == null ? null : SourceConfig.convertSchema(config.getSchema());
+            validateParameters();
+            setDefaultParameters();
+        }
+
+        @Override
+        public PCollection<Entity> expand(final PBegin begin) {
+            final String filePattern = createFilePattern(parameters.getInput(), parameters.getKind());
+            final List<KV<String, Long>> files = matchFiles(filePattern);
+            LOG.info("Datastore export files: " + files.size() + " matched by: " + filePattern);
+            if(files.isEmpty()) {
+                throw new IllegalArgumentException("No Datastore export files found by: " + filePattern);
+            }
+
+            // Export metadata does not contain property types, so schema is inferred from entities if not specified.
+            if(schema == null) {
+                final List<Entity> samples = readSamples(files, parameters.getSampleSize());
+                schema = EntitySchemaUtil.inferSchema(samples);
+                LOG.info("Inferred schema: " + schema + " from sampled entities: " + samples.size());
+            }
+
+            final PCollection<Entity> entities = begin
+                    .apply("Files", Create.of(files).withCoder(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of())))
+                    .apply("SplitFiles", ParDo.of(new SplitFileDoFn(
+                            parameters.getSplitSizeMB() * 1024L * 1024L / LevelDBLogReader.BLOCK_SIZE)))
+                    .setCoder(KvCoder.of(StringUtf8Coder.of(), SerializableCoder.of(OffsetRange.class)))
+                    .apply("Reshuffle", Reshuffle.viaRandomKey())
+                    .apply("ReadRanges", ParDo.of(new ReadLogRangeDoFn()))
+                    .setCoder(SerializableCoder.of(Entity.class));
+
+            if(timestampAttribute == null) {
+                return entities;
+            } else {
+                return entities.apply("WithTimestamp", DataTypeTransform
+                        .withTimestamp(DataType.ENTITY, timestampAttribute, timestampDefault));
+            }
+        }
+
+        private void validateParameters() {
+            if(this.parameters == null) {
+                throw new IllegalArgumentException("DatastoreExport SourceConfig must not be empty!");
+            }
+
+            // check required parameters filled
+            final List<String> errorMessages = new ArrayList<>();
+            if(parameters.getInput() == null) {
+                errorMessages.add("Parameter must contain input");
+            } else if(parameters.getKind() == null && !parameters.getInput().endsWith(".export_metadata")) {
+                errorMessages.add("Parameter must contain kind unless input is a kind's export_metadata file");
+            }
+            if(parameters.getSplitSizeMB() != null && parameters.getSplitSizeMB() < 1) {
+                errorMessages.add("Parameter splitSizeMB must be greater than zero");
+            }
+            if(parameters.getSampleSize() != null && parameters.getSampleSize() < 1) {
+                errorMessages.add("Parameter sampleSize must be greater than zero");
+            }
+            if(errorMessages.size() > 0) {
+                throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
+            }
+        }
+
+        private void setDefaultParameters() {
+            if(parameters.getSplitSizeMB() == null) {
+                parameters.setSplitSizeMB(DEFAULT_SPLIT_SIZE_MB);
+            }
+            if(parameters.getSampleSize() == null) {
+                parameters.setSampleSize(DEFAULT_SAMPLE_SIZE);
+            }
+        }
+
+        private static List<KV<String, Long>> matchFiles(final String filePattern) {
+            try {
+                final MatchResult result = FileSystems.match(filePattern, EmptyMatchTreatment.ALLOW);
+                return result.metadata().stream()
+                        .filter(metadata -> metadata.sizeBytes() > 0)
+                        .map(metadata -> KV.of(metadata.resourceId().toString(), metadata.sizeBytes()))
+                        .sorted((f1, f2) -> f1.getKey().compareTo(f2.getKey()))
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to match Datastore export files: " + filePattern, e);
+            }
+        }
+
+        private static List<Entity> readSamples(final List<KV<String, Long>> files, final int sampleSize) {
+            final List<Entity> samples = new ArrayList<>();
+            for(final KV<String, Long> file : files) {
+                try(final ReadableByteChannel channel = FileSystems.open(FileSystems.matchNewResource(file.getKey(), false));
+                    final InputStream is = Channels.newInputStream(channel)) {
+                    final LevelDBLogReader reader = new LevelDBLogReader(is, 0);
+                    byte[] record;
+                    while(samples.size() < sampleSize && (record = reader.next()) != null) {
+                        samples.add(EntityProtoToEntityConverter.convert(record));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to read Datastore export file: " + file.getKey(), e);
+                }
+                if(samples.size() >= sampleSize) {
+                    break;
+                }
+            }
+            return samples;
+        }
+
+    }
+
+    /**
+     * Returns the pattern of output files of the kind in the export.
+     * The export is laid out as {input}/{namespace dir}/kind_{kind}/output-{n}, with export_metadata file per kind.
+     */
+    static String createFilePattern(final String input, final String kind) {
+        if(input.endsWith(".export_metadata")) {
+            return input.substring(0, input.lastIndexOf('/') + 1) + "output-*";
+        }
+        final String dir;
+        if(input.endsWith(".overall_export_metadata")) {
+            dir = input.substring(0, input.lastIndexOf('/') + 1);
+        } else if(input.endsWith("/")) {
+            dir = input;
+        } else {
+            dir = input + "/";
+        }
+        return dir + "*/kind_" + kind + "/output-*";
+    }
+
+    /**
+     * Divides each file into ranges of 32KB blocks of splitSize, so that a large file is read by many workers.
+     */
+    private static class SplitFileDoFn extends DoFn<KV<String, Long>, KV<String, OffsetRange>> {
+
+        private final long splitBlocks;
+
+        SplitFileDoFn(final long splitBlocks) {
+            this.splitBlocks = Math.max(splitBlocks, 1);
+        }
+
+        @ProcessElement
+        public void processElement(final ProcessContext c) {
+            final long blockCount = LevelDBLogReader.getBlockCount(c.element().getValue());
+            for(long start = 0; start < blockCount; start += splitBlocks) {
+                c.output(KV.of(c.element().getKey(), new OffsetRange(start, Math.min(start + splitBlocks, blockCount))));
+            }
+        }
+
+    }
+
+    /**
+     * Reads records starting within the block range, converting them into entities.
+     * The range can be split further by the runner at block boundaries.
+     */
+    static class ReadLogRangeDoFn extends DoFn<KV<String, OffsetRange>, Entity> {
+
+        @GetInitialRestriction
+        public OffsetRange getInitialRestriction(@Element KV<String, OffsetRange> element) {
+            return element.getValue();
+        }
+
+        @NewTracker
+        public OffsetRangeTracker newTracker(@Restriction OffsetRange range) {
+            return new OffsetRangeTracker(range);
+        }
+
+        @GetRestrictionCoder
+        public Coder<OffsetRange> getRestrictionCoder() {
+            return SerializableCoder.of(OffsetRange.class);
+        }
+
+        @GetSize
+        public double getSize(@Restriction OffsetRange range) {
+            return (range.getTo() - range.getFrom()) * (double) LevelDBLogReader.BLOCK_SIZE;
+        }
+
+        @ProcessElement
+        public void processElement(final @Element KV<String, OffsetRange> element,
+                                   final RestrictionTracker<OffsetRange, Long> tracker,
+                                   final OutputReceiver<Entity> receiver) throws IOException {
+
+            final OffsetRange range = tracker.currentRestriction();
+            try(final SeekableByteChannel channel = (SeekableByteChannel) FileSystems
+                    .open(FileSystems.matchNewResource(element.getKey(), false))) {
+
+                channel.position(range.getFrom() * LevelDBLogReader.BLOCK_SIZE);
+                final LevelDBLogReader reader = new LevelDBLogReader(Channels.newInputStream(channel), range.getFrom());
+                long claimedBlock = -1;
+                byte[] record;
+                while((record = reader.next()) != null) {
+                    // A record belongs to the range in which its first fragment starts.
+                    final long block = reader.getRecordBlock();
+                    if(block != claimedBlock) {
+                        if(!tracker.tryClaim(block)) {
+                            return;
+                        }
+                        claimedBlock = block;
+                    }
+                    receiver.output(EntityProtoToEntityConverter.convert(record));
+                }
+            }
+            tracker.tryClaim(Long.MAX_VALUE);
+        }
+
+    }
+
+}
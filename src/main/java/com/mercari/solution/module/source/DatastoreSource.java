@@ -1,6 +1,10 @@
 package com.mercari.solution.module.source;
 
 import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.KindExpression;
+import com.google.datastore.v1.Projection;
+import com.google.datastore.v1.PropertyReference;
+import com.google.datastore.v1.Query;
 import com.google.gson.Gson;
 import com.mercari.solution.config.SourceConfig;
 import com.mercari.solution.module.DataType;
@@ -8,6 +12,7 @@ import com.mercari.solution.module.FCollection;
 import com.mercari.solution.module.SourceModule;
 import com.mercari.solution.util.converter.DataTypeTransform;
 import com.mercari.solution.util.gcp.DatastoreUtil;
+import com.mercari.solution.util.schema.RowSchemaUtil;
 import org.apache.beam.sdk.extensions.gcp.options.GcpOptions;
 import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
 import org.apache.beam.sdk.io.gcp.datastore.DatastoreV1;
@@ -28,6 +33,8 @@ public class DatastoreSource implements SourceModule {
 
     private static final Logger LOG = LoggerFactory.getLogger(DatastoreSource.class);
 
+    private static final String DEFAULT_EMULATOR_HOST = "localhost:8081";
+
     private class DatastoreSourceParameters {
 
         private String projectId;
@@ -35,7 +42,9 @@ public class DatastoreSource implements SourceModule {
         private String kind;
         private String namespace;
         private Integer numQuerySplits;
+        private List<String> fields;
         private Boolean emulator;
+        private String emulatorHost;
 
         public String getProjectId() {
             return projectId;
@@ -77,6 +86,14 @@ public class DatastoreSource implements SourceModule {
             this.numQuerySplits = numQuerySplits;
         }
 
+        public List<String> getFields() {
+            return fields;
+        }
+
+        public void setFields(List<String> fields) {
+            this.fields = fields;
+        }
+
         public Boolean getEmulator() {
             return emulator;
         }
@@ -84,6 +101,14 @@ public class DatastoreSource implements SourceModule {
         public void setEmulator(Boolean emulator) {
             this.emulator = emulator;
         }
+
+        public String getEmulatorHost() {
+            return emulatorHost;
+        }
+
+        public void setEmulatorHost(String emulatorHost) {
+            this.emulatorHost = emulatorHost;
+        }
     }
 
     public String getName() { return "datastore"; }
@@ -104,14 +129,22 @@ public class DatastoreSource implements SourceModule {
         if(config.getSchema() != null) {
             schema = SourceConfig.convertSchema(config.getSchema());
         } else {
-            final DatastoreSourceParameters parameters = new Gson().fromJson(config.getParameters(), DatastoreSourceParameters.class);
+            final DatastoreSourceParameters parameters = source.getParameters();
             if(parameters.getKind() == null) {
                 throw new IllegalArgumentException("Datastore auto schema detection requires kind parameter!");
             }
-            schema = DatastoreUtil.getSchema(
+            if(parameters.getEmulator() != null && parameters.getEmulator()) {
+                throw new IllegalArgumentException("Datastore auto schema detection is not supported with emulator. schema is required!");
+            }
+            final Schema kindSchema = DatastoreUtil.getSchema(
                     begin.getPipeline().getOptions(),
                     parameters.getProjectId(),
                     parameters.getKind());
+            if(parameters.getFields() == null || parameters.getFields().size() == 0) {
+                schema = kindSchema;
+            } else {
+                schema = RowSchemaUtil.selectFields(kindSchema, parameters.getFields());
+            }
         }
         return FCollection.of(config.getName(), output, DataType.ENTITY, schema);
     }
@@ -142,8 +175,19 @@ public class DatastoreSource implements SourceModule {
             final String execEnvProject = begin.getPipeline().getOptions().as(GcpOptions.class).getProject();
 
             DatastoreV1.Read read = DatastoreIO.v1().read()
-                    .withProjectId(parameters.getProjectId() == null ? execEnvProject : parameters.getProjectId())
-                    .withLiteralGqlQuery(parameters.getGql());
+                    .withProjectId(parameters.getProjectId() == null ? execEnvProject : parameters.getProjectId());
+
+            // DatastoreIO splits the query into key ranges by sampling scatter keys and reads them in parallel.
+            // The number of splits is estimated from the kind size statistics if numQuerySplits is not specified.
+            if(parameters.getGql() != null) {
+                if(!isSplittable(parameters.getGql())) {
+                    LOG.warn("gql: " + parameters.getGql() + " contains clauses that can not be split, so it will be read by a single query. " +
+                            "Use kind and fields parameters or equality filters only to read in parallel.");
+                }
+                read = read.withLiteralGqlQuery(parameters.getGql());
+            } else {
+                read = read.withQuery(createQuery(parameters.getKind(), parameters.getFields()));
+            }
 
             if(parameters.getNamespace() != null) {
                 read = read.withNamespace(parameters.getNamespace());
@@ -153,6 +197,10 @@ public class DatastoreSource implements SourceModule {
                 read = read.withNumQuerySplits(parameters.getNumQuerySplits());
             }
 
+            if(parameters.getEmulator()) {
+                read = read.withLocalhost(parameters.getEmulatorHost());
+            }
+
             final PCollection<Entity> entities = begin.apply("QueryToDatastore", read);
 
             if(timestampAttribute == null) {
@@ -170,8 +218,14 @@ public class DatastoreSource implements SourceModule {
 
             // check required parameters filled
             final List<String> errorMessages = new ArrayList<>();
-            if(parameters.getGql() == null) {
-                errorMessages.add("Parameter must contain gql");
+            if(parameters.getGql() == null && parameters.getKind() == null) {
+                errorMessages.add("Parameter must contain gql or kind");
+            }
+            if(parameters.getGql() != null && parameters.getFields() != null) {
+                errorMessages.add("Parameter fields can not be used with gql. Specify the properties in the gql SELECT clause");
+            }
+            if(parameters.getNumQuerySplits() != null && parameters.getNumQuerySplits() < 0) {
+                errorMessages.add("Parameter numQuerySplits must not be negative");
             }
 
             if(errorMessages.size() > 0) {
@@ -180,9 +234,41 @@ public class DatastoreSource implements SourceModule {
         }
 
         private void setDefaultParameters(final DatastoreSourceParameters parameters) {
+            if(parameters.getEmulator() == null) {
+                parameters.setEmulator(false);
+            }
+            if(parameters.getEmulator() && parameters.getEmulatorHost() == null) {
+                final String host = System.getenv("DATASTORE_EMULATOR_HOST");
+                parameters.setEmulatorHost(host == null ? DEFAULT_EMULATOR_HOST : host);
+            }
+        }
+
+    }
 
+    /**
+     * Creates a query for the kind. If fields are specified, it is a projection query returning only the properties,
+     * which must be indexed. Projection of __key__ only makes a keys-only query.
+     */
+    static Query createQuery(final String kind, final List<String> fields) {
+        final Query.Builder builder = Query.newBuilder()
+                .addKind(KindExpression.newBuilder().setName(kind));
+        if(fields != null) {
+            for(final String field : fields) {
+                builder.addProjection(Projection.newBuilder()
+                        .setProperty(PropertyReference.newBuilder().setName(field)));
+            }
         }
+        return builder.build();
+    }
 
+    /**
+     * Datastore can split only a query with equality or ancestor filters, and without sort orders, limit or offset.
+     * Otherwise DatastoreIO reads the query without splitting.
+     */
+    static boolean isSplittable(final String gql) {
+        final String upper = gql.replaceAll("'[^']*'|\"[^\"]*\"|`[^`]*`", "''").toUpperCase();
+        return !upper.matches("(?s).*\\b(ORDER\\s+BY|LIMIT|OFFSET)\\b.*")
+                && !upper.matches("(?s).*(<|>|!=).*");
     }
 
 }
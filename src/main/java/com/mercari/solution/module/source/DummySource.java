@@ -1,54 +1,471 @@
 package com.mercari.solution.module.source;
 
-import com.google.cloud.ByteArray;
-import com.google.cloud.Date;
-import com.google.cloud.Timestamp;
-import com.google.cloud.spanner.Mutation;
-import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
 import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.DataType;
+import com.mercari.solution.module.FCollection;
+import com.mercari.solution.module.SourceModule;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.extensions.sql.impl.utils.CalciteUtils;
+import org.apache.beam.sdk.io.range.OffsetRange;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.transforms.splittabledofn.OffsetRangeTracker;
+import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
 import org.apache.commons.lang3.math.NumberUtils;
-import org.joda.time.LocalDateTime;
+import org.joda.time.Instant;
 
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.stream.Collectors;
 
-public class DummySource {
+/**
+ * Generates dummy rows for load testing of transforms and sinks.
+ * Rows are generated from the schema of Spanner DDL types, and each generator draws values from the RNG of the split,
+ * so that splits are generated in parallel without sharing an RNG.
+ */
+public class DummySource implements SourceModule {
 
-    public static DummyBatchRead batch(final SourceConfig config) {
-        return new DummyBatchRead(config);
+    private class DummySourceParameters implements Serializable {
+
+        private List<DummyField> fields;
+        private List<String> primaryKeyFields;
+        private Long count;
+        private Long rate;
+        private Integer parallelism;
+        private Long splitSize;
+        private Long seed;
+
+        public List<DummyField> getFields() {
+            return fields;
+        }
+
+        public void setFields(List<DummyField> fields) {
+            this.fields = fields;
+        }
+
+        public List<String> getPrimaryKeyFields() {
+            return primaryKeyFields;
+        }
+
+        public void setPrimaryKeyFields(List<String> primaryKeyFields) {
+            this.primaryKeyFields = primaryKeyFields;
+        }
+
+        public Long getCount() {
+            return count;
+        }
+
+        public void setCount(Long count) {
+            this.count = count;
+        }
+
+        public Long getRate() {
+            return rate;
+        }
+
+        public void setRate(Long rate) {
+            this.rate = rate;
+        }
+
+        public Integer getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(Integer parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public Long getSplitSize() {
+            return splitSize;
+        }
+
+        public void setSplitSize(Long splitSize) {
+            this.splitSize = splitSize;
+        }
+
+        public Long getSeed() {
+            return seed;
+        }
+
+        public void setSeed(Long seed) {
+            this.seed = seed;
+        }
+    }
+
+    private class DummyField implements Serializable {
+
+        private String name;
+        private String type;
+        private List<String> range;
+        private Integer nullRate;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public List<String> getRange() {
+            return range;
+        }
+
+        public void setRange(List<String> range) {
+            this.range = range;
+        }
+
+        public Integer getNullRate() {
+            return nullRate;
+        }
+
+        public void setNullRate(Integer nullRate) {
+            this.nullRate = nullRate;
+        }
+    }
+
+    public String getName() { return "dummy"; }
+
+    public Map<String, FCollection<?>> expand(PBegin begin, SourceConfig config, PCollection<Long> beats, List<FCollection<?>> waits) {
+        if (config.getMicrobatch() != null && config.getMicrobatch()) {
+            return Collections.singletonMap(config.getName(), DummySource.microbatch(beats, config));
+        } else {
+            return Collections.singletonMap(config.getName(), DummySource.batch(begin, config));
+        }
+    }
+
+    public static FCollection<Row> batch(final PBegin begin, final SourceConfig config) {
+        final DummyBatchRead source = new DummyBatchRead(config);
+        final PCollection<Row> output = begin.apply(config.getName(), source);
+        return FCollection.of(config.getName(), output, DataType.ROW, source.schema);
     }
 
-    public static DummyMicrobatchRead microbatch(final SourceConfig config) {
-        return new DummyMicrobatchRead();
+    public static FCollection<Row> microbatch(final PCollection<Long> beats, final SourceConfig config) {
+        final DummyMicrobatchRead source = new DummyMicrobatchRead(config);
+        final PCollection<Row> output = beats.apply(config.getName(), source);
+        return FCollection.of(config.getName(), output, DataType.ROW, source.schema);
     }
 
     private static class DummyBatchRead extends PTransform<PBegin, PCollection<Row>> {
 
-        private DummyBatchRead(final SourceConfig config) {
+        private static final long DEFAULT_SPLIT_SIZE = 100_000L;
+
+        private final DummySourceParameters parameters;
+        private final Schema schema;
+        private final List<DummyGenerator> generators;
 
+        private DummyBatchRead(final SourceConfig config) {
+            this.parameters = new Gson().fromJson(config.getParameters(), DummySourceParameters.class);
+            validateParameters(parameters);
+            if(parameters.getCount() == null) {
+                throw new IllegalArgumentException("Dummy source module parameter must contain count in batch mode");
+            }
+            setDefaultParameters(parameters);
+            if(parameters.getSplitSize() == null) {
+                parameters.setSplitSize(DEFAULT_SPLIT_SIZE);
+            }
+            this.schema = createSchema(parameters.getFields());
+            this.generators = createGenerators(parameters);
         }
 
         public PCollection<Row> expand(final PBegin begin) {
-            return null;
+            return begin
+                    .apply("Count", Create.of(parameters.getCount()).withCoder(VarLongCoder.of()))
+                    .apply("GenerateRows", ParDo.of(new GenerateRangeDoFn(
+                            schema, generators, parameters.getSeed(), parameters.getSplitSize())))
+                    .setRowSchema(schema);
         }
 
     }
 
     private static class DummyMicrobatchRead extends PTransform<PCollection<Long>, PCollection<Row>> {
 
-        public PCollection<Row> expand(final PCollection<Long> beat) {
-            return null;
+        private static final long ROWS_PER_SHARD = 10_000L;
+
+        private final DummySourceParameters parameters;
+        private final Schema schema;
+        private final List<DummyGenerator> generators;
+
+        private DummyMicrobatchRead(final SourceConfig config) {
+            this.parameters = new Gson().fromJson(config.getParameters(), DummySourceParameters.class);
+            validateParameters(parameters);
+            if(parameters.getRate() == null) {
+                throw new IllegalArgumentException("Dummy source module parameter must contain rate in microbatch mode");
+            }
+            setDefaultParameters(parameters);
+            if(parameters.getParallelism() == null) {
+                parameters.setParallelism((int) Math.max(1L, Math.min(1000L, parameters.getRate() / ROWS_PER_SHARD)));
+            }
+            this.schema = createSchema(parameters.getFields());
+            this.generators = createGenerators(parameters);
+        }
+
+        public PCollection<Row> expand(final PCollection<Long> beats) {
+            // Beats are emitted every second, so rows of the rate are generated per beat by shards in parallel.
+            return beats
+                    .apply("Shards", ParDo.of(new ShardDoFn(parameters.getParallelism())))
+                    .setCoder(KvCoder.of(VarIntCoder.of(), VarLongCoder.of()))
+                    .apply("Reshuffle", Reshuffle.viaRandomKey())
+                    .apply("GenerateRows", ParDo.of(new GenerateShardDoFn(
+                            schema, generators, parameters.getSeed(), parameters.getRate(), parameters.getParallelism())))
+                    .setRowSchema(schema);
         }
 
     }
 
-    private interface DummyGenerator {
+    private static void validateParameters(final DummySourceParameters parameters) {
+        if(parameters == null) {
+            throw new IllegalArgumentException("Dummy source module parameters must not be empty!");
+        }
+
+        // check required parameters filled
+        final List<String> errorMessages = new ArrayList<>();
+        if(parameters.getFields() == null || parameters.getFields().size() == 0) {
+            errorMessages.add("Dummy source module parameter must contain fields");
+        } else {
+            for(final DummyField field : parameters.getFields()) {
+                if(field.getName() == null || field.getType() == null) {
+                    errorMessages.add("Dummy source module parameter fields must contain name and type");
+                } else if(field.getNullRate() != null && (field.getNullRate() < 0 || field.getNullRate() > 100)) {
+                    errorMessages.add("Dummy source module parameter field: " + field.getName() + " nullRate must be between 0 and 100");
+                }
+            }
+        }
+        if(parameters.getCount() != null && parameters.getCount() < 0) {
+            errorMessages.add("Dummy source module parameter count must not be negative");
+        }
+        if(parameters.getRate() != null && parameters.getRate() < 1) {
+            errorMessages.add("Dummy source module parameter rate must be greater than zero");
+        }
+        if(parameters.getParallelism() != null && parameters.getParallelism() < 1) {
+            errorMessages.add("Dummy source module parameter parallelism must be greater than zero");
+        }
+        if(parameters.getSplitSize() != null && parameters.getSplitSize() < 1) {
+            errorMessages.add("Dummy source module parameter splitSize must be greater than zero");
+        }
+        if(errorMessages.size() > 0) {
+            throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
+        }
+    }
 
-        Random random = new Random();
+    private static void setDefaultParameters(final DummySourceParameters parameters) {
+        if(parameters.getPrimaryKeyFields() == null) {
+            parameters.setPrimaryKeyFields(new ArrayList<>());
+        }
+        for(final DummyField field : parameters.getFields()) {
+            if(field.getNullRate() == null) {
+                field.setNullRate(10);
+            }
+        }
+        if(parameters.getSeed() == null) {
+            // Fixed on launcher, so that workers share the seed.
+            parameters.setSeed(new Random().nextLong());
+        }
+    }
+
+    private static Schema createSchema(final List<DummyField> fields) {
+        final Schema.Builder builder = Schema.builder();
+        for(final DummyField field : fields) {
+            final String type = field.getType().trim().toUpperCase();
+            final boolean nullable = !type.endsWith("NOT NULL");
+            final Schema.FieldType fieldType = convertFieldType(removeNotNull(type), field.getName());
+            builder.addField(field.getName(), nullable ? fieldType.withNullable(true) : fieldType);
+        }
+        return builder.build();
+    }
+
+    private static Schema.FieldType convertFieldType(final String type, final String fieldName) {
+        if(type.startsWith("STRING")) {
+            return Schema.FieldType.STRING;
+        } else if(type.startsWith("BYTES")) {
+            return Schema.FieldType.BYTES;
+        } else if(type.equals("INT64")) {
+            return Schema.FieldType.INT64;
+        } else if(type.equals("FLOAT64")) {
+            return Schema.FieldType.DOUBLE;
+        } else if(type.equals("BOOL")) {
+            return Schema.FieldType.BOOLEAN;
+        } else if(type.equals("DATE")) {
+            return CalciteUtils.DATE;
+        } else if(type.equals("TIMESTAMP")) {
+            return Schema.FieldType.DATETIME;
+        } else if(type.startsWith("ARRAY")) {
+            final String elementType = type.substring(type.indexOf("<") + 1, type.lastIndexOf(">")).trim();
+            return Schema.FieldType.array(convertFieldType(elementType, fieldName));
+        }
+        throw new IllegalArgumentException(String.format("Illegal fieldType: %s, %s", type, fieldName));
+    }
+
+    private static List<DummyGenerator> createGenerators(final DummySourceParameters parameters) {
+        final List<DummyGenerator> generators = new ArrayList<>();
+        for(final DummyField field : parameters.getFields()) {
+            final String type = field.getType().trim().toUpperCase();
+            generators.add(DummyGenerator.of(
+                    removeNotNull(type),
+                    field.getName(),
+                    parameters.getPrimaryKeyFields().contains(field.getName()),
+                    !type.endsWith("NOT NULL"),
+                    field.getRange(),
+                    field.getNullRate()));
+        }
+        return generators;
+    }
+
+    private static String removeNotNull(final String type) {
+        return type.endsWith("NOT NULL") ? type.substring(0, type.length() - "NOT NULL".length()).trim() : type;
+    }
+
+    private static Row generateRow(final Schema schema, final List<DummyGenerator> generators, final long value, final Random random) {
+        final List<Object> values = new ArrayList<>(generators.size());
+        for(final DummyGenerator generator : generators) {
+            values.add(generator.generateValue(value, random));
+        }
+        return Row.withSchema(schema).addValues(values).build();
+    }
+
+    // Mixes the seed with the start of a split, so that splits draw different values.
+    private static Random createRandom(final long seed, final long start) {
+        return new Random(seed ^ (start * 0x9E3779B97F4A7C15L));
+    }
+
+    /**
+     * Generates rows of the row count range. The range is split into ranges of splitSize initially,
+     * and can be split further by the runner. Each range draws values from its own RNG seeded by the range start.
+     */
+    private static class GenerateRangeDoFn extends DoFn<Long, Row> {
+
+        private final Schema schema;
+        private final List<DummyGenerator> generators;
+        private final long seed;
+        private final long splitSize;
+
+        GenerateRangeDoFn(final Schema schema, final List<DummyGenerator> generators, final long seed, final long splitSize) {
+            this.schema = schema;
+            this.generators = generators;
+            this.seed = seed;
+            this.splitSize = splitSize;
+        }
+
+        @GetInitialRestriction
+        public OffsetRange getInitialRestriction(@Element Long count) {
+            return new OffsetRange(0, count);
+        }
+
+        @SplitRestriction
+        public void splitRestriction(@Restriction OffsetRange range, OutputReceiver<OffsetRange> receiver) {
+            for(final OffsetRange split : range.split(splitSize, splitSize)) {
+                receiver.output(split);
+            }
+        }
+
+        @NewTracker
+        public OffsetRangeTracker newTracker(@Restriction OffsetRange range) {
+            return new OffsetRangeTracker(range);
+        }
+
+        @GetRestrictionCoder
+        public Coder<OffsetRange> getRestrictionCoder() {
+            return SerializableCoder.of(OffsetRange.class);
+        }
+
+        @GetSize
+        public double getSize(@Restriction OffsetRange range) {
+            return range.getTo() - range.getFrom();
+        }
+
+        @ProcessElement
+        public void processElement(final RestrictionTracker<OffsetRange, Long> tracker,
+                                   final OutputReceiver<Row> receiver) {
+
+            final long start = tracker.currentRestriction().getFrom();
+            final Random random = createRandom(seed, start);
+            for(long value = start; tracker.tryClaim(value); value++) {
+                receiver.output(generateRow(schema, generators, value, random));
+            }
+        }
+
+    }
+
+    private static class ShardDoFn extends DoFn<Long, KV<Integer, Long>> {
+
+        private final int parallelism;
+
+        ShardDoFn(final int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        @ProcessElement
+        public void processElement(final ProcessContext c) {
+            for(int shard=0; shard<parallelism; shard++) {
+                c.output(KV.of(shard, c.element()));
+            }
+        }
+
+    }
+
+    /**
+     * Generates the rows of a shard for a beat. Values of primary key fields are the sequence of rows
+     * across beats, so that they are unique in the stream.
+     */
+    private static class GenerateShardDoFn extends DoFn<KV<Integer, Long>, Row> {
+
+        private final Schema schema;
+        private final List<DummyGenerator> generators;
+        private final long seed;
+        private final long rate;
+        private final int parallelism;
+
+        GenerateShardDoFn(final Schema schema, final List<DummyGenerator> generators,
+                          final long seed, final long rate, final int parallelism) {
+            this.schema = schema;
+            this.generators = generators;
+            this.seed = seed;
+            this.rate = rate;
+            this.parallelism = parallelism;
+        }
+
+        @ProcessElement
+        public void processElement(final ProcessContext c) {
+            final int shard = c.element().getKey();
+            final long beat = c.element().getValue();
+            final long rowsPerShard = rate / parallelism;
+            final long remainder = rate % parallelism;
+            final long start = beat * rate + shard * rowsPerShard + Math.min(shard, remainder);
+            final long end = start + rowsPerShard + (shard < remainder ? 1 : 0);
+            final Random random = createRandom(seed, start);
+            for(long value = start; value < end; value++) {
+                c.output(generateRow(schema, generators, value, random));
+            }
+        }
+
+    }
+
+    private interface DummyGenerator extends Serializable {
 
         static DummyGenerator of(String fieldType, String fieldName, boolean isPrimary, boolean isNullable, List<String> range, int randomRate) {
             if(fieldType.startsWith("STRING") || fieldType.startsWith("BYTES")) {
@@ -69,31 +486,32 @@ public class DummySource {
             } else if(fieldType.equals("TIMESTAMP")) {
                 return new TimestampDummyGenerator(fieldName, range, isPrimary, isNullable, randomRate);
             } else if(fieldType.startsWith("ARRAY")) {
-                final String arrayType = fieldType.substring(fieldType.indexOf("<") + 1, fieldType.indexOf(">"));
-                final DummyGenerator elementGenerator = of(arrayType, fieldName, false, isNullable, range, randomRate);
+                final String arrayType = fieldType.substring(fieldType.indexOf("<") + 1, fieldType.lastIndexOf(">")).trim();
+                // Elements of Beam arrays are not nullable
+                final DummyGenerator elementGenerator = of(arrayType, fieldName, false, false, range, randomRate);
                 return new ArrayDummyGenerator(fieldName, elementGenerator, isNullable, randomRate);
             }
             throw new IllegalArgumentException(String.format("Illegal fieldType: %s, %s", fieldType, fieldName));
         }
 
-        static boolean randomNull(boolean isNullable, int randomRate) {
+        static boolean randomNull(Random random, boolean isNullable, int randomRate) {
             return isNullable && random.nextInt(100) < randomRate;
         }
 
-        static <T> List<T> generateValues(DummyGenerator generator, long value) {
+        static <T> List<T> generateValues(DummyGenerator generator, long value, Random random) {
             final List<T> randomValues = new ArrayList<>();
             for(int i=0; i<10; i++) {
-                final T randomValue = (T)generator.generateValue(value);
+                final T randomValue = (T)generator.generateValue(value, random);
                 randomValues.add(randomValue);
             }
             return randomValues;
         }
 
-        Object generateValue(long value);
-
-        Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value);
+        static String randomString(Random random) {
+            return new UUID(random.nextLong(), random.nextLong()).toString() + new UUID(random.nextLong(), random.nextLong()).toString();
+        }
 
-        Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value);
+        Object generateValue(long value, Random random);
 
     }
 
@@ -109,9 +527,11 @@ public class DummySource {
         public StringDummyGenerator(String fieldName, Integer maxLength, List<String> range, Boolean isPrimary, Boolean isNullable, int randomRate) {
             this.fieldName = fieldName;
             if(range != null && range.size() == 1 && NumberUtils.isNumber(range.get(0))) {
+                // Candidates are generated on launcher, so that all workers draw from the same candidates.
+                final Random random = new Random();
                 List<String> r = new ArrayList<>();
                 for(int i=0; i<Integer.valueOf(range.get(0)); i++) {
-                    String randomString = UUID.randomUUID().toString() + UUID.randomUUID().toString();
+                    String randomString = DummyGenerator.randomString(random);
                     randomString = maxLength > randomString.length() ? randomString : randomString.substring(0, maxLength);
                     r.add(randomString);
                 }
@@ -125,30 +545,25 @@ public class DummySource {
             this.randomRate = randomRate;
         }
 
-        public String generateValue(long value) {
-            if(!isPrimary && DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+        public String generateValue(long value, Random random) {
+            if(isPrimary) {
+                return Long.toString(value);
+            }
+            if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             }
             final String randomString = range != null && range.size() > 0 ?
                     range.get(random.nextInt(range.size())) :
-                    UUID.randomUUID().toString() + UUID.randomUUID().toString();
+                    DummyGenerator.randomString(random);
             return maxLength > randomString.length() ? randomString : randomString.substring(0, maxLength);
         }
 
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            final String randomString = generateValue(value);
-            return builder.set(this.fieldName).to(randomString);
-        }
-
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            final List<String> randomValues = DummyGenerator.generateValues(this, value);
-            return builder.set(this.fieldName).toStringArray(randomValues);
-        }
-
     }
 
     private static class BytesDummyGenerator implements DummyGenerator {
 
+        private static final int MAX_RANDOM_LENGTH = 64;
+
         private final String fieldName;
         private final Integer maxLength;
         private final Boolean isPrimary;
@@ -163,28 +578,22 @@ public class DummySource {
             this.randomRate = randomRate;
         }
 
-        public ByteArray generateValue(long value) {
-            if(!isPrimary && DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+        public byte[] generateValue(long value, Random random) {
+            if(isPrimary) {
+                return Long.toString(value).getBytes();
+            }
+            if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             }
-            final byte[] randomBytes = this.isPrimary ? Long.toString(value).getBytes() : Hashing.sha512().hashLong(value).asBytes();
-            return ByteArray.copyFrom(randomBytes.length < maxLength ? randomBytes : Arrays.copyOf(randomBytes, maxLength));
-        }
-
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            return builder.set(this.fieldName).to(generateValue(value));
-        }
-
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            final List<ByteArray> randomValues = DummyGenerator.generateValues(this, value);
-            return builder.set(this.fieldName).toBytesArray(randomValues);
+            final byte[] randomBytes = new byte[Math.min(maxLength, MAX_RANDOM_LENGTH)];
+            random.nextBytes(randomBytes);
+            return randomBytes;
         }
 
     }
 
     private static class IntDummyGenerator implements DummyGenerator {
 
-        private final Random random;
         private final String fieldName;
         private final Long min;
         private final Long max;
@@ -193,7 +602,6 @@ public class DummySource {
         private final int randomRate;
 
         public IntDummyGenerator(String fieldName, List<String> range, Boolean isPrimary, Boolean isNullable, int randomRate) {
-            this.random = new Random();
             this.fieldName = fieldName;
             this.min = range != null && range.size() > 0 ? Long.valueOf(range.get(0)) : 0L;
             this.max = range != null && range.size() > 1 ? Long.valueOf(range.get(1)) : Long.MAX_VALUE;
@@ -202,26 +610,21 @@ public class DummySource {
             this.randomRate = randomRate;
         }
 
-        public Long generateValue(long value) {
-            if(!isPrimary && DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+        public Long generateValue(long value, Random random) {
+            if(isPrimary) {
+                return value;
+            }
+            if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             }
-            return isPrimary ? value : Math.abs(random.nextLong()) % (this.max - this.min) + this.min;
-        }
-
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            return builder.set(this.fieldName).to(generateValue(value));
+            final long bound = this.max - this.min;
+            return bound > 0 ? Math.floorMod(random.nextLong(), bound) + this.min : random.nextLong();
         }
 
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            List<Long> randomValues = DummyGenerator.generateValues(this, value);
-            return builder.set(this.fieldName).toInt64Array(randomValues);
-        }
     }
 
     private static class FloatDummyGenerator implements DummyGenerator {
 
-        private final Random random;
         private final String fieldName;
         private final Double min;
         private final Double max;
@@ -230,7 +633,6 @@ public class DummySource {
         private final int randomRate;
 
         public FloatDummyGenerator(String fieldName, List<String> range, Boolean isPrimary, Boolean isNullable, int randomRate) {
-            this.random = new Random();
             this.fieldName = fieldName;
             this.min = range != null && range.size() > 0 ? Double.valueOf(range.get(0)) : Double.MIN_VALUE;
             this.max = range != null && range.size() > 1 ? Double.valueOf(range.get(1)) : Double.MAX_VALUE;
@@ -239,148 +641,106 @@ public class DummySource {
             this.randomRate = randomRate;
         }
 
-        public Double generateValue(long value) {
-            if(!isPrimary && DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+        public Double generateValue(long value, Random random) {
+            if(isPrimary) {
+                return (double)value;
+            }
+            if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             }
-            return isPrimary ? (double)value : random.nextDouble() * (max - min) + min;
-        }
-
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            return builder.set(this.fieldName).to(generateValue(value));
-        }
-
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            final List<Double> randomValues = DummyGenerator.generateValues(this, value);
-            return builder.set(this.fieldName).toFloat64Array(randomValues);
+            return random.nextDouble() * (max - min) + min;
         }
 
     }
 
     private static class BoolDummyGenerator implements DummyGenerator {
 
-        private final Random random;
         private final String fieldName;
         private final Boolean isNullable;
         private final int randomRate;
 
         public BoolDummyGenerator(String fieldName, Boolean isNullable, int randomRate) {
-            this.random = new Random();
             this.fieldName = fieldName;
             this.isNullable = isNullable;
             this.randomRate = randomRate;
         }
 
-        public Boolean generateValue(long value) {
-            if(DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+        public Boolean generateValue(long value, Random random) {
+            if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             }
-            return this.random.nextBoolean();
-        }
-
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            return builder.set(this.fieldName).to(generateValue(value));
-        }
-
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            List<Boolean> randomValues = DummyGenerator.generateValues(this, value);
-            return builder.set(this.fieldName).toBoolArray(randomValues);
+            return random.nextBoolean();
         }
 
     }
 
     private static class DateDummyGenerator implements DummyGenerator {
 
-        private final Random random;
         private final String fieldName;
         private final Integer bound;
-        private final LocalDateTime startDate;
+        private final LocalDate startDate;
         private final Boolean isPrimary;
         private final Boolean isNullable;
         private final int randomRate;
 
         public DateDummyGenerator(String fieldName, List<String> range, Boolean isPrimary, Boolean isNullable, int randomRate) {
-            this.random = new Random();
             this.fieldName = fieldName;
-            final String startDateStr = range != null && range.size() > 0 ? range.get(0) : "1970-01-01T00:00:00";
-            final String endDateStr = range != null && range.size() > 1 ? range.get(1) : "2020-12-31T23:59:59";
-            this.startDate = LocalDateTime.parse(startDateStr.length() == 10 ? startDateStr + "T00:00:00" : startDateStr);
-            final LocalDateTime ldt2 = LocalDateTime.parse(endDateStr.length() == 10 ? endDateStr + "T00:00:00" : endDateStr);
-            this.bound = 0;// (int)(ChronoUnit.DAYS.between(this.startDate.toLocalDate(), ldt2.toLocalDate()));
+            final String startDateStr = range != null && range.size() > 0 ? range.get(0) : "1970-01-01";
+            final String endDateStr = range != null && range.size() > 1 ? range.get(1) : "2020-12-31";
+            this.startDate = LocalDate.parse(startDateStr.substring(0, 10));
+            final LocalDate endDate = LocalDate.parse(endDateStr.substring(0, 10));
+            this.bound = Math.max(1, (int) ChronoUnit.DAYS.between(this.startDate, endDate));
             this.isPrimary = isPrimary;
             this.isNullable = isNullable;
             this.randomRate = randomRate;
         }
 
-        public Date generateValue(long value) {
-            if(!isPrimary && DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+        public LocalDate generateValue(long value, Random random) {
+            if(isPrimary) {
+                return this.startDate.plusDays(value);
+            }
+            if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             }
-            //final LocalDateTime nextDate = this.startDate.plusDays(isPrimary ? value : (long)this.random.nextInt(this.bound));
-            //return Date.fromYearMonthDay(nextDate.getYear(), nextDate.getMonthValue(), nextDate.getDayOfMonth());
-            return null;
-        }
-
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            return builder.set(fieldName).to(generateValue(value));
-        }
-
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            final List<Date> randomValues = DummyGenerator.generateValues(this, value);
-            return builder.set(this.fieldName).toDateArray(randomValues);
+            return this.startDate.plusDays(random.nextInt(this.bound));
         }
 
     }
 
     private static class TimestampDummyGenerator implements DummyGenerator {
 
-        private final Random random;
         private final String fieldName;
         private final Long bound;
-        private final LocalDateTime startDateTime;
+        private final long startEpochSecond;
         private final Boolean isPrimary;
         private final Boolean isNullable;
         private final int randomRate;
 
         public TimestampDummyGenerator(String fieldName, List<String> range, Boolean isPrimary, Boolean isNullable, int randomRate) {
-            this.random = new Random();
             this.fieldName = fieldName;
             final String startDateStr = range != null && range.size() > 0 ? range.get(0) : "1970-01-01T00:00:00";
             final String endDateStr = range != null && range.size() > 1 ? range.get(1) : "2020-12-31T23:59:59";
-            this.startDateTime = LocalDateTime.parse(startDateStr.length() == 10 ? startDateStr + "T00:00:00" : startDateStr);
+            final LocalDateTime startDateTime = LocalDateTime.parse(startDateStr.length() == 10 ? startDateStr + "T00:00:00" : startDateStr);
             final LocalDateTime endDateTime = LocalDateTime.parse(endDateStr.length() == 10 ? endDateStr + "T00:00:00" : endDateStr);
-            this.bound = 0L;//java.time.Duration.between(this.startDateTime, endDateTime).getSeconds();
+            this.startEpochSecond = startDateTime.toEpochSecond(ZoneOffset.UTC);
+            this.bound = Math.max(1L, java.time.Duration.between(startDateTime, endDateTime).getSeconds());
             this.isPrimary = isPrimary;
             this.isNullable = isNullable;
             this.randomRate = randomRate;
         }
 
-        public Timestamp generateValue(long value) {
-            final LocalDateTime nextTime;
+        public Instant generateValue(long value, Random random) {
             if(this.isPrimary) {
-                //nextTime = this.startDateTime.plusSeconds(value);
-                //return Timestamp.ofTimeSecondsAndNanos(nextTime.toEpochSecond(ZoneOffset.UTC),0);
-            } else if(DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+                return Instant.ofEpochSecond(this.startEpochSecond + value);
+            } else if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             } else {
-                //nextTime = this.startDateTime.plusSeconds(Math.abs(this.random.nextLong()) % this.bound);
-                //return Timestamp.ofTimeSecondsAndNanos(nextTime.toEpochSecond(ZoneOffset.UTC),0);
+                return Instant.ofEpochSecond(this.startEpochSecond + Math.floorMod(random.nextLong(), this.bound));
             }
-            return null;
-        }
-
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            return builder.set(fieldName).to(generateValue(value));
-        }
-
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            final List<Timestamp> randomValues = DummyGenerator.generateValues(this, value);
-            return builder.set(this.fieldName).toTimestampArray(randomValues);
         }
 
     }
 
-
     private static class ArrayDummyGenerator implements DummyGenerator {
 
         private final String fieldName;
@@ -395,19 +755,11 @@ public class DummySource {
             this.randomRate = randomRate;
         }
 
-        public List generateValue(long value) {
-            if(DummyGenerator.randomNull(this.isNullable, this.randomRate)) {
+        public List generateValue(long value, Random random) {
+            if(DummyGenerator.randomNull(random, this.isNullable, this.randomRate)) {
                 return null;
             }
-            return DummyGenerator.generateValues(elementGenerator, value);
-        }
-
-        public Mutation.WriteBuilder putDummyValue(Mutation.WriteBuilder builder, long value) {
-            return elementGenerator.putDummyValues(builder, value);
-        }
-
-        public Mutation.WriteBuilder putDummyValues(Mutation.WriteBuilder builder, long value) {
-            throw new IllegalArgumentException(String.format("Field: %s, Impossible Nested Array (Array in Array) for Cloud Spanner.", fieldName));
+            return DummyGenerator.generateValues(elementGenerator, value, random);
         }
 
     }
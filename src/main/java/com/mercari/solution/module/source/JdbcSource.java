@@ -12,20 +12,41 @@ import com.mercari.solution.util.gcp.StorageUtil;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.beam.sdk.coders.AvroCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.io.jdbc.JdbcIO;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TupleTag;
+import org.joda.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.io.Serializable;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class JdbcSource implements SourceModule {
 
+    private static final int DEFAULT_NUM_PARTITIONS = 16;
+    private static final int DEFAULT_FETCH_SIZE = 50000;
+
     private class JdbcSourceParameters implements Serializable {
 
         private String query;
@@ -35,6 +56,25 @@ public class JdbcSource implements SourceModule {
         private String password;
         private String kmsKey;
 
+        private String partitionColumn;
+        private Long lowerBound;
+        private Long upperBound;
+        private Integer numPartitions;
+        private Integer fetchSize;
+        private String connectionProperties;
+
+        // for microbatch
+        private Integer intervalSecond;
+        private Integer gapSecond;
+        private Integer maxDurationMinute;
+        private Integer catchupIntervalSecond;
+        private String startDatetime;
+        private String outputCheckpoint;
+        private Boolean useCheckpointAsStartDatetime;
+        private Boolean adaptiveInterval;
+        private Integer catchupParallelism;
+        private Integer maxPoolSize;
+
         public String getQuery() {
             return query;
         }
@@ -82,14 +122,141 @@ public class JdbcSource implements SourceModule {
         public void setKmsKey(String kmsKey) {
             this.kmsKey = kmsKey;
         }
+
+        public String getPartitionColumn() {
+            return partitionColumn;
+        }
+
+        public void setPartitionColumn(String partitionColumn) {
+            this.partitionColumn = partitionColumn;
+        }
+
+        public Long getLowerBound() {
+            return lowerBound;
+        }
+
+        public void setLowerBound(Long lowerBound) {
+            this.lowerBound = lowerBound;
+        }
+
+        public Long getUpperBound() {
+            return upperBound;
+        }
+
+        public void setUpperBound(Long upperBound) {
+            this.upperBound = upperBound;
+        }
+
+        public Integer getNumPartitions() {
+            return numPartitions;
+        }
+
+        public void setNumPartitions(Integer numPartitions) {
+            this.numPartitions = numPartitions;
+        }
+
+        public Integer getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(Integer fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+
+        public String getConnectionProperties() {
+            return connectionProperties;
+        }
+
+        public void setConnectionProperties(String connectionProperties) {
+            this.connectionProperties = connectionProperties;
+        }
+
+        public Integer getIntervalSecond() {
+            return intervalSecond;
+        }
+
+        public void setIntervalSecond(Integer intervalSecond) {
+            this.intervalSecond = intervalSecond;
+        }
+
+        public Integer getGapSecond() {
+            return gapSecond;
+        }
+
+        public void setGapSecond(Integer gapSecond) {
+            this.gapSecond = gapSecond;
+        }
+
+        public Integer getMaxDurationMinute() {
+            return maxDurationMinute;
+        }
+
+        public void setMaxDurationMinute(Integer maxDurationMinute) {
+            this.maxDurationMinute = maxDurationMinute;
+        }
+
+        public Integer getCatchupIntervalSecond() {
+            return catchupIntervalSecond;
+        }
+
+        public void setCatchupIntervalSecond(Integer catchupIntervalSecond) {
+            this.catchupIntervalSecond = catchupIntervalSecond;
+        }
+
+        public String getStartDatetime() {
+            return startDatetime;
+        }
+
+        public void setStartDatetime(String startDatetime) {
+            this.startDatetime = startDatetime;
+        }
+
+        public String getOutputCheckpoint() {
+            return outputCheckpoint;
+        }
+
+        public void setOutputCheckpoint(String outputCheckpoint) {
+            this.outputCheckpoint = outputCheckpoint;
+        }
+
+        public Boolean getUseCheckpointAsStartDatetime() {
+            return useCheckpointAsStartDatetime;
+        }
+
+        public void setUseCheckpointAsStartDatetime(Boolean useCheckpointAsStartDatetime) {
+            this.useCheckpointAsStartDatetime = useCheckpointAsStartDatetime;
+        }
+
+        public Boolean getAdaptiveInterval() {
+            return adaptiveInterval;
+        }
+
+        public void setAdaptiveInterval(Boolean adaptiveInterval) {
+            this.adaptiveInterval = adaptiveInterval;
+        }
+
+        public Integer getCatchupParallelism() {
+            return catchupParallelism;
+        }
+
+        public void setCatchupParallelism(Integer catchupParallelism) {
+            this.catchupParallelism = catchupParallelism;
+        }
+
+        public Integer getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public void setMaxPoolSize(Integer maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
     }
 
     public String getName() { return "jdbc"; }
 
     public Map<String, FCollection<?>> expand(PBegin begin, SourceConfig config, PCollection<Long> beats, List<FCollection<?>> waits) {
         if (config.getMicrobatch() != null && config.getMicrobatch()) {
-            //inputs.put(config.getName(), beats.apply(config.getName(), SpannerSource.microbatch(config)));
-            return Collections.emptyMap();
+            return Collections.singletonMap(config.getName(), JdbcSource.microbatch(beats, config));
         } else {
             return Collections.singletonMap(config.getName(), JdbcSource.batch(begin, config));
         }
@@ -101,6 +268,11 @@ public class JdbcSource implements SourceModule {
         return FCollection.of(config.getName(), output, DataType.AVRO, source.schema);
     }
 
+    public static FCollection<GenericRecord> microbatch(final PCollection<Long> beats, final SourceConfig config) {
+        final JdbcMicrobatchRead source = new JdbcMicrobatchRead(config);
+        final PCollection<GenericRecord> output = beats.apply(config.getName(), source);
+        return FCollection.of(config.getName(), output, DataType.AVRO, source.schema);
+    }
 
     public static class JdbcBatchSource extends PTransform<PBegin, PCollection<GenericRecord>> {
 
@@ -137,15 +309,60 @@ public class JdbcSource implements SourceModule {
                 this.schema = JdbcUtil.createAvroSchema(
                         parameters.getDriver(), parameters.getUrl(),
                         parameters.getUser(), parameters.getPassword(), query);
-                final PCollection<GenericRecord> records = begin.apply("QueryToJdbc", JdbcIO.<GenericRecord>read()
-                        .withQuery(query)
-                        .withRowMapper(ResultSetToRecordConverter::convert)
-                        .withDataSourceConfiguration(JdbcIO.DataSourceConfiguration
-                                .create(parameters.getDriver(), parameters.getUrl())
-                                .withUsername(parameters.getUser())
-                                .withPassword(parameters.getPassword()))
-                        .withOutputParallelization(true)
-                        .withCoder(AvroCoder.of(this.schema)));
+
+                JdbcIO.DataSourceConfiguration dataSourceConfiguration = JdbcIO.DataSourceConfiguration
+                        .create(parameters.getDriver(), parameters.getUrl())
+                        .withUsername(parameters.getUser())
+                        .withPassword(parameters.getPassword());
+                final String connectionProperties = JdbcUtil.createConnectionProperties(
+                        parameters.getDriver(), parameters.getConnectionProperties());
+                if(connectionProperties != null) {
+                    dataSourceConfiguration = dataSourceConfiguration.withConnectionProperties(connectionProperties);
+                }
+
+                final PCollection<GenericRecord> records;
+                if(parameters.getPartitionColumn() == null) {
+                    records = begin.apply("QueryToJdbc", JdbcIO.<GenericRecord>read()
+                            .withQuery(query)
+                            .withRowMapper(new RecordRowMapper(this.schema.toString()))
+                            .withDataSourceConfiguration(dataSourceConfiguration)
+                            .withFetchSize(parameters.getFetchSize())
+                            .withOutputParallelization(true)
+                            .withCoder(AvroCoder.of(this.schema)));
+                } else {
+                    Long lowerBound = parameters.getLowerBound();
+                    Long upperBound = parameters.getUpperBound();
+                    if(lowerBound == null || upperBound == null) {
+                        final Long[] bounds = JdbcUtil.getMinMax(
+                                parameters.getDriver(), parameters.getUrl(),
+                                parameters.getUser(), parameters.getPassword(),
+                                query, parameters.getPartitionColumn());
+                        lowerBound = lowerBound == null ? bounds[0] : lowerBound;
+                        upperBound = upperBound == null ? bounds[1] : upperBound;
+                    }
+                    // An empty table has no bounds, so a single partition reads all rows.
+                    final List<KV<Long, Long>> ranges;
+                    if(lowerBound == null || upperBound == null) {
+                        ranges = createPartitionRanges(0L, 0L, 1);
+                    } else if(lowerBound > upperBound) {
+                        throw new IllegalArgumentException("JdbcSource lowerBound: " + lowerBound + " must not be greater than upperBound: " + upperBound);
+                    } else {
+                        ranges = createPartitionRanges(lowerBound, upperBound, parameters.getNumPartitions());
+                    }
+
+                    records = begin
+                            .apply("PartitionRanges", Create.of(ranges)
+                                    .withCoder(KvCoder.of(VarLongCoder.of(), VarLongCoder.of())))
+                            .apply("DistributeRanges", Reshuffle.viaRandomKey())
+                            .apply("QueryToJdbc", JdbcIO.<KV<Long, Long>, GenericRecord>readAll()
+                                    .withQuery(createPartitionQuery(query, parameters.getPartitionColumn()))
+                                    .withParameterSetter(JdbcBatchSource::setPartitionParameters)
+                                    .withRowMapper(new RecordRowMapper(this.schema.toString()))
+                                    .withDataSourceConfiguration(dataSourceConfiguration)
+                                    .withFetchSize(parameters.getFetchSize())
+                                    .withOutputParallelization(true)
+                                    .withCoder(AvroCoder.of(this.schema)));
+                }
 
                 if(timestampAttribute == null) {
                     return records;
@@ -153,6 +370,8 @@ public class JdbcSource implements SourceModule {
                     return records.apply("WithTimestamp", DataTypeTransform
                             .withTimestamp(DataType.AVRO, timestampAttribute, timestampDefault));
                 }
+            } catch (IllegalArgumentException e) {
+                throw e;
             } catch (Exception e) {
                 throw new IllegalStateException(e);
             }
@@ -181,6 +400,20 @@ public class JdbcSource implements SourceModule {
             if(parameters.getPassword() == null) {
                 errorMessages.add("Parameter must contain password");
             }
+            if(parameters.getNumPartitions() != null && parameters.getNumPartitions() < 1) {
+                errorMessages.add("Parameter numPartitions must be greater than 0");
+            }
+            if(parameters.getFetchSize() != null && parameters.getFetchSize() < 1) {
+                errorMessages.add("Parameter fetchSize must be greater than 0");
+            }
+            if(parameters.getPartitionColumn() == null) {
+                if(parameters.getLowerBound() != null || parameters.getUpperBound() != null || parameters.getNumPartitions() != null) {
+                    errorMessages.add("Parameter lowerBound, upperBound and numPartitions require partitionColumn");
+                }
+            } else if(parameters.getLowerBound() != null && parameters.getUpperBound() != null
+                    && parameters.getLowerBound() > parameters.getUpperBound()) {
+                errorMessages.add("Parameter lowerBound must not be greater than upperBound");
+            }
 
             if(errorMessages.size() > 0) {
                 throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
@@ -188,7 +421,19 @@ public class JdbcSource implements SourceModule {
         }
 
         private void setDefaultParameters(final JdbcSourceParameters parameters) {
+            if(parameters.getFetchSize() == null) {
+                parameters.setFetchSize(DEFAULT_FETCH_SIZE);
+            }
+            if(parameters.getPartitionColumn() != null && parameters.getNumPartitions() == null) {
+                parameters.setNumPartitions(DEFAULT_NUM_PARTITIONS);
+            }
+        }
 
+        private static void setPartitionParameters(final KV<Long, Long> range, final PreparedStatement statement) throws Exception {
+            statement.setLong(1, range.getKey());
+            statement.setLong(2, range.getValue());
+            // Rows with null partition column are read with the first partition.
+            statement.setInt(3, range.getKey() == Long.MIN_VALUE ? 1 : 0);
         }
 
 
@@ -212,4 +457,308 @@ public class JdbcSource implements SourceModule {
         */
 
     }
+
+    private static class JdbcMicrobatchRead extends PTransform<PCollection<Long>, PCollection<GenericRecord>> {
+
+        private Schema schema;
+
+        private final String timestampAttribute;
+        private final JdbcSourceParameters parameters;
+
+        public JdbcMicrobatchRead(final SourceConfig config) {
+            this.timestampAttribute = config.getTimestampAttribute();
+            this.parameters = new Gson().fromJson(config.getParameters(), JdbcSourceParameters.class);
+            validateParameters();
+            setDefaultParameters();
+        }
+
+        private void validateParameters() {
+            if (this.parameters == null) {
+                throw new IllegalArgumentException("Jdbc SourceConfig must not be empty!");
+            }
+
+            // check required parameters filled
+            final List<String> errorMessages = new ArrayList<>();
+            if (parameters.getQuery() == null) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameters must contain query");
+            }
+            if (parameters.getUrl() == null) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameters must contain connection url");
+            }
+            if (parameters.getDriver() == null) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameters must contain driver");
+            }
+            if (parameters.getUser() == null) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameters must contain user");
+            }
+            if (parameters.getPassword() == null) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameters must contain password");
+            }
+            if (parameters.getPartitionColumn() != null) {
+                errorMessages.add("Jdbc source module[microbatch mode] does not support partitionColumn");
+            }
+            if (parameters.getFetchSize() != null && parameters.getFetchSize() < 1) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameter fetchSize must be greater than zero");
+            }
+            if (parameters.getCatchupParallelism() != null && parameters.getCatchupParallelism() < 1) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameter catchupParallelism must be greater than zero");
+            }
+            if (Boolean.TRUE.equals(parameters.getAdaptiveInterval()) && parameters.getOutputCheckpoint() == null) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameter adaptiveInterval requires outputCheckpoint");
+            }
+            if (parameters.getMaxPoolSize() != null && parameters.getMaxPoolSize() < 1) {
+                errorMessages.add("Jdbc source module[microbatch mode] parameter maxPoolSize must be greater than zero");
+            }
+            if (errorMessages.size() > 0) {
+                throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
+            }
+        }
+
+        private void setDefaultParameters() {
+            if(parameters.getFetchSize() == null) {
+                parameters.setFetchSize(DEFAULT_FETCH_SIZE);
+            }
+            //
+            if(parameters.getIntervalSecond() == null) {
+                parameters.setIntervalSecond(60);
+            }
+            if(parameters.getGapSecond() == null) {
+                parameters.setGapSecond(30);
+            }
+            if(parameters.getMaxDurationMinute() == null) {
+                parameters.setMaxDurationMinute(60);
+            }
+            if(parameters.getCatchupIntervalSecond() == null) {
+                parameters.setCatchupIntervalSecond(parameters.getIntervalSecond());
+            }
+            if(parameters.getUseCheckpointAsStartDatetime() == null) {
+                parameters.setUseCheckpointAsStartDatetime(false);
+            }
+            if(parameters.getAdaptiveInterval() == null) {
+                parameters.setAdaptiveInterval(false);
+            }
+            if(parameters.getCatchupParallelism() == null) {
+                parameters.setCatchupParallelism(1);
+            }
+            if(parameters.getMaxPoolSize() == null) {
+                parameters.setMaxPoolSize(parameters.getCatchupParallelism());
+            }
+        }
+
+        public PCollection<GenericRecord> expand(final PCollection<Long> beat) {
+
+            final String query;
+            if(parameters.getQuery().startsWith("gs://")) {
+                query = StorageUtil.readString(parameters.getQuery());
+            } else {
+                query = parameters.getQuery();
+            }
+
+            final String sampleQuery = MicrobatchQuery.createQuery(MicrobatchQuery.createTemplate(query),
+                    Instant.now(), Instant.now().plus(1));
+            try {
+                this.schema = JdbcUtil.createAvroSchema(
+                        parameters.getDriver(), parameters.getUrl(),
+                        parameters.getUser(), parameters.getPassword(), sampleQuery);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+
+            return beat
+                    .apply("MicrobatchQuery", MicrobatchQuery.of(
+                            query,
+                            parameters.getStartDatetime(),
+                            parameters.getIntervalSecond(),
+                            parameters.getGapSecond(),
+                            parameters.getMaxDurationMinute(),
+                            parameters.getOutputCheckpoint(),
+                            parameters.getCatchupIntervalSecond(),
+                            parameters.getUseCheckpointAsStartDatetime(),
+                            parameters.getAdaptiveInterval(),
+                            parameters.getCatchupParallelism(),
+                            new MicrobatchQueryDoFn(
+                                    parameters.getDriver(),
+                                    parameters.getUrl(),
+                                    parameters.getUser(),
+                                    parameters.getPassword(),
+                                    JdbcUtil.createConnectionProperties(parameters.getDriver(), parameters.getConnectionProperties()),
+                                    parameters.getMaxPoolSize(),
+                                    parameters.getFetchSize(),
+                                    schema,
+                                    timestampAttribute)))
+                    .setCoder(AvroCoder.of(schema));
+        }
+
+        private static class MicrobatchQueryDoFn extends DoFn<KV<KV<Integer, KV<Long, Instant>>, String>, GenericRecord> {
+
+            private static final Logger LOG = LoggerFactory.getLogger(MicrobatchQueryDoFn.class);
+
+            // Connection pools shared by DoFn instances in a worker, so that connections to the database
+            // are limited by maxPoolSize per worker regardless of the number of threads.
+            // Keyed by all settings of the pool, so that sources with different settings do not share one.
+            private static final Map<List<Object>, DataSource> dataSources = new ConcurrentHashMap<>();
+
+            private final String driver;
+            private final String url;
+            private final String user;
+            private final String password;
+            private final String connectionProperties;
+            private final Integer maxPoolSize;
+            private final Integer fetchSize;
+            private final String schemaString;
+            private final String timestampAttribute;
+
+            private transient Schema schema;
+            private transient DataSource dataSource;
+
+            private MicrobatchQueryDoFn(final String driver,
+                                        final String url,
+                                        final String user,
+                                        final String password,
+                                        final String connectionProperties,
+                                        final Integer maxPoolSize,
+                                        final Integer fetchSize,
+                                        final Schema schema,
+                                        final String timestampAttribute) {
+
+                this.driver = driver;
+                this.url = url;
+                this.user = user;
+                this.password = password;
+                this.connectionProperties = connectionProperties;
+                this.maxPoolSize = maxPoolSize;
+                this.fetchSize = fetchSize;
+                this.schemaString = schema.toString();
+                this.timestampAttribute = timestampAttribute;
+            }
+
+            @Setup
+            public void setup() {
+                this.schema = new Schema.Parser().parse(schemaString);
+                this.dataSource = dataSources.computeIfAbsent(
+                        Arrays.asList(driver, url, user, password, connectionProperties, maxPoolSize),
+                        key -> JdbcUtil.createDataSource(driver, url, user, password, connectionProperties, maxPoolSize));
+            }
+
+            @ProcessElement
+            public void processElement(ProcessContext c) throws Exception {
+                MicrobatchQuery.recordQueryStart();
+                try {
+                    executeQuery(c);
+                } finally {
+                    MicrobatchQuery.recordQueryEnd();
+                }
+            }
+
+            private void executeQuery(final ProcessContext c) throws Exception {
+                final Instant start = Instant.now();
+                final String query = c.element().getValue();
+
+                long count = 0;
+                try(final Connection connection = dataSource.getConnection()) {
+                    try(final PreparedStatement statement = connection
+                            .prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+                        statement.setFetchSize(fetchSize);
+                        try(final ResultSet resultSet = statement.executeQuery()) {
+                            final ResultSetToRecordConverter.RecordConverter converter = ResultSetToRecordConverter
+                                    .bind(schema, resultSet.getMetaData());
+                            while(resultSet.next()) {
+                                c.output(converter.convert(resultSet));
+                                count++;
+                            }
+                        }
+                        // Pooled connections do not autocommit. Ending the transaction here lets the next query
+                        // on the connection read a new snapshot, instead of the one of the first query (MySQL REPEATABLE READ).
+                        connection.commit();
+                    } catch (Exception e) {
+                        // Failed transaction is rolled back before the connection is returned to the pool.
+                        try {
+                            connection.rollback();
+                        } catch (SQLException rollbackException) {
+                            e.addSuppressed(rollbackException);
+                        }
+                        throw e;
+                    }
+                }
+
+                final long time = Instant.now().getMillis() - start.getMillis();
+                LOG.info(String.format("Query [%s] result num [%d], took [%d] millisec to execute the query.",
+                        query, count, time));
+                MicrobatchQuery.recordQueryResult(c, count, time);
+
+                c.output(new TupleTag<>("checkpoint"), c.element().getKey());
+            }
+
+            @Override
+            public org.joda.time.Duration getAllowedTimestampSkew() {
+                if (timestampAttribute != null) {
+                    return org.joda.time.Duration.standardDays(365);
+                } else {
+                    return super.getAllowedTimestampSkew();
+                }
+            }
+
+        }
+    }
+
+    /**
+     * RowMapper converting rows with the converter bound to each query result.
+     * JdbcIO calls the mapper with the same ResultSet for all rows of a query,
+     * so the metadata is resolved only when a new ResultSet is passed.
+     */
+    static class RecordRowMapper implements JdbcIO.RowMapper<GenericRecord> {
+
+        private final String schemaString;
+
+        private transient Schema schema;
+        private transient ResultSet resultSet;
+        private transient ResultSetToRecordConverter.RecordConverter converter;
+
+        RecordRowMapper(final String schemaString) {
+            this.schemaString = schemaString;
+        }
+
+        @Override
+        public GenericRecord mapRow(final ResultSet resultSet) throws Exception {
+            if(resultSet != this.resultSet) {
+                if(this.schema == null) {
+                    this.schema = new Schema.Parser().parse(schemaString);
+                }
+                this.converter = ResultSetToRecordConverter.bind(schema, resultSet.getMetaData());
+                this.resultSet = resultSet;
+            }
+            return converter.convert(resultSet);
+        }
+
+    }
+
+    /**
+     * Splits [lowerBound, upperBound] into numPartitions disjoint inclusive ranges of partition column values.
+     * Bounds only decide the stride. the first and last ranges are open-ended so that no rows are missed
+     * even if the bounds given do not cover all values.
+     */
+    static List<KV<Long, Long>> createPartitionRanges(final long lowerBound, final long upperBound, final int numPartitions) {
+        final BigInteger lower = BigInteger.valueOf(lowerBound);
+        final BigInteger width = BigInteger.valueOf(upperBound).subtract(lower).add(BigInteger.ONE);
+        final int num = width.compareTo(BigInteger.valueOf(numPartitions)) < 0 ? width.intValue() : numPartitions;
+
+        final List<KV<Long, Long>> ranges = new ArrayList<>();
+        long from = Long.MIN_VALUE;
+        for(int i=1; i<num; i++) {
+            final long boundary = lower
+                    .add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(num)))
+                    .longValue();
+            ranges.add(KV.of(from, boundary - 1));
+            from = boundary;
+        }
+        ranges.add(KV.of(from, Long.MAX_VALUE));
+        return ranges;
+    }
+
+    static String createPartitionQuery(final String query, final String partitionColumn) {
+        return String.format("SELECT * FROM (%s) PartitionQuery WHERE (%s BETWEEN ? AND ?) OR (%s IS NULL AND 1 = ?)",
+                JdbcUtil.trimQuery(query), partitionColumn, partitionColumn);
+    }
+
 }
@@ -0,0 +1,532 @@
+package com.mercari.solution.module.source;
+
+import com.google.gson.Gson;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.util.JsonFormat;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.DataType;
+import com.mercari.solution.module.FCollection;
+import com.mercari.solution.module.SourceModule;
+import com.mercari.solution.util.converter.JsonToRecordConverter;
+import com.mercari.solution.util.converter.JsonToRowConverter;
+import com.mercari.solution.util.converter.ProtoDecoder;
+import com.mercari.solution.util.converter.ProtoToRecordConverter;
+import com.mercari.solution.util.converter.ProtoToRowConverter;
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import com.mercari.solution.util.schema.ProtoSchemaUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.beam.sdk.coders.AvroCoder;
+import org.apache.beam.sdk.coders.RowCoder;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.kafka.KafkaIO;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.joda.time.Duration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+public class KafkaSource implements SourceModule {
+
+    private class KafkaSourceParameters {
+
+        private String bootstrapServers;
+        private List<String> topics;
+        private String groupId;
+        private Format format;
+        private OutputType outputType;
+        private String descriptorFilePath;
+        private String messageName;
+        private TimestampPolicy timestampPolicy;
+        private Long maxDelaySecond;
+        private Boolean commitOffsetsInFinalize;
+        private Map<String, Object> consumerProperties;
+        private Long maxNumRecords;
+
+        public String getBootstrapServers() {
+            return bootstrapServers;
+        }
+
+        public void setBootstrapServers(String bootstrapServers) {
+            this.bootstrapServers = bootstrapServers;
+        }
+
+        public List<String> getTopics() {
+            return topics;
+        }
+
+        public void setTopics(List<String> topics) {
+            this.topics = topics;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public void setGroupId(String groupId) {
+            this.groupId = groupId;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public void setFormat(Format format) {
+            this.format = format;
+        }
+
+        public OutputType getOutputType() {
+            return outputType;
+        }
+
+        public void setOutputType(OutputType outputType) {
+            this.outputType = outputType;
+        }
+
+        public String getDescriptorFilePath() {
+            return descriptorFilePath;
+        }
+
+        public void setDescriptorFilePath(String descriptorFilePath) {
+            this.descriptorFilePath = descriptorFilePath;
+        }
+
+        public String getMessageName() {
+            return messageName;
+        }
+
+        public void setMessageName(String messageName) {
+            this.messageName = messageName;
+        }
+
+        public TimestampPolicy getTimestampPolicy() {
+            return timestampPolicy;
+        }
+
+        public void setTimestampPolicy(TimestampPolicy timestampPolicy) {
+            this.timestampPolicy = timestampPolicy;
+        }
+
+        public Long getMaxDelaySecond() {
+            return maxDelaySecond;
+        }
+
+        public void setMaxDelaySecond(Long maxDelaySecond) {
+            this.maxDelaySecond = maxDelaySecond;
+        }
+
+        public Boolean getCommitOffsetsInFinalize() {
+            return commitOffsetsInFinalize;
+        }
+
+        public void setCommitOffsetsInFinalize(Boolean commitOffsetsInFinalize) {
+            this.commitOffsetsInFinalize = commitOffsetsInFinalize;
+        }
+
+        public Map<String, Object> getConsumerProperties() {
+            return consumerProperties;
+        }
+
+        public void setConsumerProperties(Map<String, Object> consumerProperties) {
+            this.consumerProperties = consumerProperties;
+        }
+
+        public Long getMaxNumRecords() {
+            return maxNumRecords;
+        }
+
+        public void setMaxNumRecords(Long maxNumRecords) {
+            this.maxNumRecords = maxNumRecords;
+        }
+    }
+
+    public String getName() { return "kafka"; }
+
+    private enum Format {
+        avro,
+        json,
+        protobuf
+    }
+
+    private enum OutputType {
+        row,
+        avro
+    }
+
+    private enum TimestampPolicy {
+        createTime,
+        logAppendTime,
+        processingTime
+    }
+
+    public Map<String, FCollection<?>> expand(PBegin begin, SourceConfig config, PCollection<Long> beats, List<FCollection<?>> waits) {
+        return Collections.singletonMap(config.getName(), KafkaSource.stream(begin, config));
+    }
+
+    public static FCollection<?> stream(final PBegin begin, final SourceConfig config) {
+
+        final KafkaSourceParameters parameters = new Gson().fromJson(config.getParameters(), KafkaSourceParameters.class);
+        validateParameters(parameters, config);
+        setDefaultParameters(parameters);
+
+        final PCollection<KV<byte[], byte[]>> records = begin.apply(config.getName(), new KafkaRead(parameters));
+
+        switch (parameters.getFormat()) {
+            case avro: {
+                final Schema avroSchema = SourceConfig.convertAvroSchema(config.getSchema());
+                final PCollection<GenericRecord> output = records
+                        .apply("AvroToRecord", ParDo.of(new AvroToRecordDoFn(avroSchema.toString())))
+                        .setCoder(AvroCoder.of(avroSchema));
+                return FCollection.of(config.getName(), output, DataType.AVRO, avroSchema);
+            }
+            case json: {
+                switch (parameters.getOutputType()) {
+                    case avro: {
+                        final Schema avroSchema = SourceConfig.convertAvroSchema(config.getSchema());
+                        final PCollection<GenericRecord> output = records
+                                .apply("JsonToRecord", ParDo.of(new JsonToRecordDoFn(avroSchema.toString())))
+                                .setCoder(AvroCoder.of(avroSchema));
+                        return FCollection.of(config.getName(), output, DataType.AVRO, avroSchema);
+                    }
+                    case row: {
+                        final org.apache.beam.sdk.schemas.Schema rowSchema = SourceConfig.convertSchema(config.getSchema());
+                        final PCollection<Row> output = records
+                                .apply("JsonToRow", ParDo.of(new JsonToRowDoFn(rowSchema)))
+                                .setCoder(RowCoder.of(rowSchema));
+                        return FCollection.of(config.getName(), output, DataType.ROW, rowSchema);
+                    }
+                    default:
+                        throw new IllegalStateException();
+                }
+            }
+            case protobuf: {
+                // Descriptor is read on launcher and passed to workers, to derive the output schema.
+                final byte[] descriptorBytes = readBytes(parameters.getDescriptorFilePath());
+                final Descriptors.Descriptor descriptor = ProtoSchemaUtil.getDescriptors(descriptorBytes).get(parameters.getMessageName());
+                if(descriptor == null) {
+                    throw new IllegalArgumentException("Descriptor file: " + parameters.getDescriptorFilePath()
+                            + " does not contain messageName: " + parameters.getMessageName());
+                }
+                switch (parameters.getOutputType()) {
+                    case avro: {
+                        final Schema avroSchema = ProtoToRecordConverter.convertSchema(descriptor);
+                        final PCollection<GenericRecord> output = records
+                                .apply("ProtoToRecord", ParDo.of(new ProtoToRecordDoFn(
+                                        descriptorBytes, parameters.getMessageName(), avroSchema.toString())))
+                                .setCoder(AvroCoder.of(avroSchema));
+                        return FCollection.of(config.getName(), output, DataType.AVRO, avroSchema);
+                    }
+                    case row: {
+                        final org.apache.beam.sdk.schemas.Schema rowSchema = ProtoToRowConverter.convertSchema(descriptor);
+                        final PCollection<Row> output = records
+                                .apply("ProtoToRow", ParDo.of(new ProtoToRowDoFn(
+                                        descriptorBytes, parameters.getMessageName(), rowSchema)))
+                                .setCoder(RowCoder.of(rowSchema));
+                        return FCollection.of(config.getName(), output, DataType.ROW, rowSchema);
+                    }
+                    default:
+                        throw new IllegalStateException();
+                }
+            }
+            default:
+                throw new IllegalArgumentException("Kafka source module does not support format: " + parameters.getFormat());
+        }
+    }
+
+    private static void validateParameters(final KafkaSourceParameters parameters, final SourceConfig config) {
+
+        if(parameters == null) {
+            throw new IllegalArgumentException("Kafka source module parameters must not be empty!");
+        }
+
+        // check required parameters filled
+        final List<String> errorMessages = new ArrayList<>();
+        if(parameters.getBootstrapServers() == null) {
+            errorMessages.add("Kafka source module parameter must contain bootstrapServers");
+        }
+        if(parameters.getTopics() == null || parameters.getTopics().size() == 0) {
+            errorMessages.add("Kafka source module parameter must contain topics");
+        }
+        if(parameters.getFormat() == null) {
+            errorMessages.add("Kafka source module parameter must contain format");
+        } else if(parameters.getFormat().equals(Format.protobuf)) {
+            if(parameters.getDescriptorFilePath() == null || parameters.getMessageName() == null) {
+                errorMessages.add("Kafka source module parameter must contain descriptorFilePath and messageName for protobuf format");
+            }
+        } else if(config.getSchema() == null) {
+            errorMessages.add("Kafka source module requires schema for " + parameters.getFormat() + " format");
+        }
+        if(parameters.getFormat() != null && parameters.getFormat().equals(Format.avro)
+                && parameters.getOutputType() != null && parameters.getOutputType().equals(OutputType.row)) {
+            errorMessages.add("Kafka source module supports only avro outputType for avro format");
+        }
+        if(parameters.getCommitOffsetsInFinalize() != null && parameters.getCommitOffsetsInFinalize()
+                && parameters.getGroupId() == null) {
+            errorMessages.add("Kafka source module parameter must contain groupId to commit offsets");
+        }
+        if(parameters.getMaxDelaySecond() != null && parameters.getMaxDelaySecond() < 0) {
+            errorMessages.add("Kafka source module parameter maxDelaySecond must not be negative");
+        }
+        if(errorMessages.size() > 0) {
+            throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
+        }
+    }
+
+    private static void setDefaultParameters(final KafkaSourceParameters parameters) {
+        if(parameters.getOutputType() == null) {
+            switch (parameters.getFormat()) {
+                case avro:
+                case protobuf: {
+                    parameters.setOutputType(OutputType.avro);
+                    break;
+                }
+                case json:
+                default: {
+                    parameters.setOutputType(OutputType.row);
+                    break;
+                }
+            }
+        }
+        if(parameters.getTimestampPolicy() == null) {
+            parameters.setTimestampPolicy(TimestampPolicy.createTime);
+        }
+        if(parameters.getMaxDelaySecond() == null) {
+            parameters.setMaxDelaySecond(0L);
+        }
+        if(parameters.getCommitOffsetsInFinalize() == null) {
+            parameters.setCommitOffsetsInFinalize(parameters.getGroupId() != null);
+        }
+        if(parameters.getConsumerProperties() == null) {
+            parameters.setConsumerProperties(new HashMap<>());
+        }
+    }
+
+    private static byte[] readBytes(final String path) {
+        try(final ReadableByteChannel channel = FileSystems.open(FileSystems.matchNewResource(path, false));
+            final InputStream is = Channels.newInputStream(channel)) {
+            return is.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read file: " + path, e);
+        }
+    }
+
+    /**
+     * Reads keys and values of records as bytes. KafkaIO splits the partitions of the topics into readers
+     * up to the number of partitions, and each reader consumes its partitions in parallel.
+     * Element timestamps are the record timestamps by timestampPolicy.
+     */
+    private static class KafkaRead extends PTransform<PBegin, PCollection<KV<byte[], byte[]>>> {
+
+        private final KafkaSourceParameters parameters;
+
+        private KafkaRead(final KafkaSourceParameters parameters) {
+            this.parameters = parameters;
+        }
+
+        public PCollection<KV<byte[], byte[]>> expand(final PBegin begin) {
+            final Map<String, Object> consumerProperties = new HashMap<>(parameters.getConsumerProperties());
+            if(parameters.getGroupId() != null) {
+                consumerProperties.put(ConsumerConfig.GROUP_ID_CONFIG, parameters.getGroupId());
+            }
+
+            KafkaIO.Read<byte[], byte[]> read = KafkaIO.<byte[], byte[]>read()
+                    .withBootstrapServers(parameters.getBootstrapServers())
+                    .withTopics(parameters.getTopics())
+                    .withKeyDeserializer(ByteArrayDeserializer.class)
+                    .withValueDeserializer(ByteArrayDeserializer.class)
+                    .withConsumerConfigUpdates(consumerProperties);
+
+            switch (parameters.getTimestampPolicy()) {
+                case createTime:
+                    read = read.withCreateTime(Duration.standardSeconds(parameters.getMaxDelaySecond()));
+                    break;
+                case logAppendTime:
+                    read = read.withLogAppendTime();
+                    break;
+                case processingTime:
+                    read = read.withProcessingTime();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Kafka source module does not support timestampPolicy: " + parameters.getTimestampPolicy());
+            }
+
+            // Offsets are committed after the records are durably processed by the runner.
+            if(parameters.getCommitOffsetsInFinalize()) {
+                read = read.commitOffsetsInFinalize();
+            }
+            if(parameters.getMaxNumRecords() != null) {
+                read = read.withMaxNumRecords(parameters.getMaxNumRecords());
+            }
+
+            return begin.apply("ReadKafka", read.withoutMetadata());
+        }
+
+    }
+
+    /**
+     * Decoders are cached per schema in the worker, so that DoFn instances of the same step
+     * share compiled readers instead of building them per instance.
+     */
+    private static final Map<String, GenericDatumReader<GenericRecord>> AVRO_READERS = new ConcurrentHashMap<>();
+    private static final Map<String, Schema> AVRO_SCHEMAS = new ConcurrentHashMap<>();
+    private static final Map<String, ProtoDecoder<?>> PROTO_DECODERS = new ConcurrentHashMap<>();
+
+    // Tombstone records, which have a null value to delete the key in compacted topics, have no fields to decode and are skipped.
+
+    private static class AvroToRecordDoFn extends DoFn<KV<byte[], byte[]>, GenericRecord> {
+
+        private final String schemaString;
+
+        private transient GenericDatumReader<GenericRecord> reader;
+        private transient BinaryDecoder decoder;
+
+        AvroToRecordDoFn(final String schemaString) {
+            this.schemaString = schemaString;
+        }
+
+        @Setup
+        public void setup() {
+            this.reader = AVRO_READERS.computeIfAbsent(schemaString,
+                    s -> new GenericDatumReader<>(AvroSchemaUtil.convertSchema(s)));
+        }
+
+        @ProcessElement
+        public void processElement(ProcessContext c) throws IOException {
+            if(c.element().getValue() == null) {
+                return;
+            }
+            // BinaryDecoder keeps its buffer, so it is reused in this instance.
+            decoder = DecoderFactory.get().binaryDecoder(c.element().getValue(), decoder);
+            c.output(reader.read(null, decoder));
+        }
+
+    }
+
+    private static class JsonToRecordDoFn extends DoFn<KV<byte[], byte[]>, GenericRecord> {
+
+        private final String schemaString;
+        private transient Schema schema;
+
+        JsonToRecordDoFn(final String schemaString) {
+            this.schemaString = schemaString;
+        }
+
+        @Setup
+        public void setup() {
+            this.schema = AVRO_SCHEMAS.computeIfAbsent(schemaString, s -> AvroSchemaUtil.convertSchema(s));
+        }
+
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            if(c.element().getValue() == null) {
+                return;
+            }
+            final String json = new String(c.element().getValue(), StandardCharsets.UTF_8);
+            c.output(JsonToRecordConverter.convert(schema, json));
+        }
+
+    }
+
+    private static class JsonToRowDoFn extends DoFn<KV<byte[], byte[]>, Row> {
+
+        private final org.apache.beam.sdk.schemas.Schema schema;
+
+        JsonToRowDoFn(final org.apache.beam.sdk.schemas.Schema schema) {
+            this.schema = schema;
+        }
+
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            if(c.element().getValue() == null) {
+                return;
+            }
+            final String json = new String(c.element().getValue(), StandardCharsets.UTF_8);
+            c.output(JsonToRowConverter.convert(schema, json));
+        }
+
+    }
+
+    private static class ProtoToRecordDoFn extends DoFn<KV<byte[], byte[]>, GenericRecord> {
+
+        private final byte[] descriptorBytes;
+        private final String messageName;
+        private final String schemaString;
+
+        private transient ProtoDecoder<GenericRecord> decoder;
+
+        ProtoToRecordDoFn(final byte[] descriptorBytes, final String messageName, final String schemaString) {
+            this.descriptorBytes = descriptorBytes;
+            this.messageName = messageName;
+            this.schemaString = schemaString;
+        }
+
+        @Setup
+        public void setup() {
+            this.decoder = (ProtoDecoder<GenericRecord>) PROTO_DECODERS.computeIfAbsent(messageName + "/avro/" + schemaString, k -> {
+                final Map<String, Descriptors.Descriptor> descriptors = ProtoSchemaUtil.getDescriptors(descriptorBytes);
+                final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+                return ProtoDecoder.of(AvroSchemaUtil.convertSchema(schemaString), descriptors.get(messageName), printer);
+            });
+        }
+
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            if(c.element().getValue() == null) {
+                return;
+            }
+            c.output(decoder.decode(c.element().getValue()));
+        }
+
+    }
+
+    private static class ProtoToRowDoFn extends DoFn<KV<byte[], byte[]>, Row> {
+
+        private final byte[] descriptorBytes;
+        private final String messageName;
+        private final org.apache.beam.sdk.schemas.Schema schema;
+
+        private transient ProtoDecoder<Row> decoder;
+
+        ProtoToRowDoFn(final byte[] descriptorBytes, final String messageName, final org.apache.beam.sdk.schemas.Schema schema) {
+            this.descriptorBytes = descriptorBytes;
+            this.messageName = messageName;
+            this.schema = schema;
+        }
+
+        @Setup
+        public void setup() {
+            this.decoder = (ProtoDecoder<Row>) PROTO_DECODERS.computeIfAbsent(messageName + "/row/" + schema, k -> {
+                final Map<String, Descriptors.Descriptor> descriptors = ProtoSchemaUtil.getDescriptors(descriptorBytes);
+                final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+                return ProtoDecoder.of(schema, descriptors.get(messageName), printer);
+            });
+        }
+
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            if(c.element().getValue() == null) {
+                return;
+            }
+            c.output(decoder.decode(c.element().getValue()));
+        }
+
+    }
+
+}
@@ -1,10 +1,14 @@
 package com.mercari.solution.module.source;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.mercari.solution.util.gcp.StorageUtil;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateException;
 import org.apache.beam.sdk.coders.*;
+import org.apache.beam.sdk.metrics.Counter;
 import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
 import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.state.*;
 import org.apache.beam.sdk.transforms.*;
@@ -13,11 +17,14 @@ import org.apache.beam.sdk.values.*;
 import org.apache.commons.collections4.ListUtils;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.*;
@@ -27,6 +34,10 @@ import freemarker.template.Template;
 
 public class MicrobatchQuery {
 
+    // Datetime literal format accepted by most RDBs, in UTC
+    private static final DateTimeFormatter FORMATTER_DATETIME = DateTimeFormat
+            .forPattern("yyyy-MM-dd HH:mm:ss.SSS").withZoneUTC();
+
     public static <T> Transform<T> of(final String query,
                                       final String startDatetime,
                                       final Integer intervalSecond,
@@ -35,11 +46,39 @@ public class MicrobatchQuery {
                                       final String outputCheckpoint,
                                       final Integer catchupIntervalSecond,
                                       final Boolean useCheckpointAsStartDatetime,
+                                      final Boolean adaptiveInterval,
+                                      final Integer catchupParallelism,
                                       final DoFn<KV<KV<Integer, KV<Long, Instant>>, String>, T> queryExecuteDoFn) {
 
         return new Transform<T>(
                 query, startDatetime, intervalSecond, gapSecond, maxDurationMinute, outputCheckpoint,
-                catchupIntervalSecond, useCheckpointAsStartDatetime, queryExecuteDoFn);
+                catchupIntervalSecond, useCheckpointAsStartDatetime, adaptiveInterval, catchupParallelism, queryExecuteDoFn);
+    }
+
+    /**
+     * Records the start of a query executed by queryExecuteDoFn.
+     * Must be followed by recordQueryEnd in a finally block, so that failed queries do not stay in flight.
+     */
+    public static void recordQueryStart() {
+        QueryMetrics.QUERIES_IN_FLIGHT.inc();
+    }
+
+    /**
+     * Records the end of a query executed by queryExecuteDoFn, whether it succeeded or not.
+     */
+    public static void recordQueryEnd() {
+        QueryMetrics.QUERIES_IN_FLIGHT.dec();
+    }
+
+    /**
+     * Records the result of a query executed by queryExecuteDoFn, published as metrics.
+     * The result is also output to the queryStats tag, to adjust the time range of queries when adaptiveInterval is enabled.
+     */
+    public static void recordQueryResult(final DoFn<?, ?>.ProcessContext c, final long rows, final long latencyMillis) {
+        QueryMetrics.ROWS.inc(rows);
+        QueryMetrics.ROWS_PER_INTERVAL.update(rows);
+        QueryMetrics.QUERY_LATENCY.update(latencyMillis);
+        c.output(Transform.tagQueryStats, KV.of(rows, latencyMillis));
     }
 
 
@@ -48,10 +87,16 @@ public class MicrobatchQuery {
         private static final String SQL_SPLITTER = "--SPLITTER--";
         private static final Logger LOG = LoggerFactory.getLogger(MicrobatchQuery.class);
 
+        private static final String STATS_SUFFIX = ".stats";
+
         private static final TupleTag<KV<Integer, KV<Long, Instant>>> tagCheckpoint = new TupleTag<KV<Integer, KV<Long, Instant>>>("checkpoint") {
             private static final long serialVersionUID = 1L;
         };
 
+        private static final TupleTag<KV<Long, Long>> tagQueryStats = new TupleTag<KV<Long, Long>>("queryStats") {
+            private static final long serialVersionUID = 1L;
+        };
+
         private final TupleTag<OutputT> tagQueryResult = new TupleTag<OutputT>() {
             private static final long serialVersionUID = 1L;
         };
@@ -64,6 +109,8 @@ public class MicrobatchQuery {
         private final String outputCheckpoint;
         private final Integer catchupIntervalSecond;
         private final Boolean useCheckpointAsStartDatetime;
+        private final Boolean adaptiveInterval;
+        private final Integer catchupParallelism;
         private final DoFn<KV<KV<Integer, KV<Long, Instant>>, String>, OutputT> queryExecuteDoFn;
 
         private Transform(final String query,
@@ -74,6 +121,8 @@ public class MicrobatchQuery {
                           final String outputCheckpoint,
                           final Integer catchupIntervalSecond,
                           final Boolean useCheckpointAsStartDatetime,
+                          final Boolean adaptiveInterval,
+                          final Integer catchupParallelism,
                           final DoFn<KV<KV<Integer, KV<Long, Instant>>, String>, OutputT> queryExecuteDoFn) {
 
             this.query = query;
@@ -84,6 +133,8 @@ public class MicrobatchQuery {
             this.outputCheckpoint = outputCheckpoint;
             this.catchupIntervalSecond = catchupIntervalSecond;
             this.useCheckpointAsStartDatetime = useCheckpointAsStartDatetime;
+            this.adaptiveInterval = adaptiveInterval;
+            this.catchupParallelism = catchupParallelism;
             this.queryExecuteDoFn = queryExecuteDoFn;
         }
 
@@ -103,21 +154,43 @@ public class MicrobatchQuery {
                             .withAllowedLateness(Duration.standardDays(365)))
                     .apply("WithFixedKey", WithKeys.of(true))
                     .apply("GenerateQuery", ParDo.of(new QueryGenerateDoFn(
-                            this.intervalSecond, this.gapSecond, this.query, this.maxDurationMinute, this.catchupIntervalSecond, startInstantView))
+                            this.intervalSecond, this.gapSecond, this.query, this.maxDurationMinute, this.catchupIntervalSecond,
+                            this.adaptiveInterval, this.catchupParallelism, outputStats(), startInstantView))
                             .withSideInputs(startInstantView))
                     .apply("Reshuffle", Reshuffle.viaRandomKey())
                     .apply("MicrobatchQuery", ParDo.of(this.queryExecuteDoFn)
-                            .withOutputTags(tagQueryResult, TupleTagList.of(tagCheckpoint)));
+                            .withOutputTags(tagQueryResult, TupleTagList.of(tagCheckpoint).and(tagQueryStats)));
 
-            if(this.outputCheckpoint != null) {
-                queryResults.get(tagCheckpoint)
-                        .apply("CheckpointCalcTrigger", Window.<KV<Integer, KV<Long, Instant>>>configure()
+            // Query results can not be passed back to GenerateQuery in the pipeline graph,
+            // so statistics of this source are saved next to the checkpoint and read by GenerateQuery.
+            if(this.adaptiveInterval) {
+                queryResults.get(tagQueryStats)
+                        .apply("StatsCalcTrigger", Window.<KV<Long, Long>>configure()
                                 .triggering(Repeatedly.forever(AfterPane.elementCountAtLeast(1)))
                                 .discardingFiredPanes()
                                 .withAllowedLateness(Duration.standardDays(2)))
-                        .apply("WithStateDummyKey", WithKeys.of(true))
-                        .apply("CalcCheckpoint", ParDo.of(new MaxSequenceCalcDoFn(startInstantView))
-                                .withSideInputs(startInstantView))
+                        .apply("WithStatsDummyKey", WithKeys.of(true))
+                        .apply("CalcStats", ParDo.of(new QueryStatsCalcDoFn()))
+                        .setCoder(SerializableCoder.of(QueryStats.class))
+                        .apply("StatsWriteWindow", Window
+                                .<QueryStats>into(FixedWindows.of(Duration.standardSeconds(1L)))
+                                .triggering(Repeatedly.forever(AfterProcessingTime.pastFirstElementInPane())))
+                        .apply("ExtractLatestStats", Max.globally(new QueryStats.CountComparator()).withoutDefaults())
+                        .apply("WriteStats", ParDo.of(new StatsSaveDoFn(outputStats())));
+            }
+
+            // Checkpoint is calculated even if it is not saved, to publish the lag metric.
+            final PCollection<Instant> checkpoints = queryResults.get(tagCheckpoint)
+                    .apply("CheckpointCalcTrigger", Window.<KV<Integer, KV<Long, Instant>>>configure()
+                            .triggering(Repeatedly.forever(AfterPane.elementCountAtLeast(1)))
+                            .discardingFiredPanes()
+                            .withAllowedLateness(Duration.standardDays(2)))
+                    .apply("WithStateDummyKey", WithKeys.of(true))
+                    .apply("CalcCheckpoint", ParDo.of(new MaxSequenceCalcDoFn(startInstantView))
+                            .withSideInputs(startInstantView));
+
+            if(this.outputCheckpoint != null) {
+                checkpoints
                         .apply("WriteWindow", Window
                                 .<Instant>into(FixedWindows.of(Duration.standardSeconds(1L)))
                                 .triggering(Repeatedly.forever(AfterProcessingTime.pastFirstElementInPane())))
@@ -128,6 +201,16 @@ public class MicrobatchQuery {
             return queryResults.get(tagQueryResult);
         }
 
+        private String outputStats() {
+            if(!this.adaptiveInterval) {
+                return null;
+            }
+            if(this.outputCheckpoint == null) {
+                throw new IllegalArgumentException("'outputCheckpoint' is required to save query statistics for 'adaptiveInterval'");
+            }
+            return this.outputCheckpoint + STATS_SUFFIX;
+        }
+
         private class ReadStartDatetimeDoFn extends DoFn<KV<Boolean, Boolean>, Instant> {
 
             private static final String STATEID_START_INSTANT = "startInstant";
@@ -210,14 +293,24 @@ public class MicrobatchQuery {
             private static final String STATEID_LASTPROCESSING_TIME = "lastProcessingTime";
             private static final String STATEID_CATCHUP = "catchup";
             private static final String STATEID_PRECATCHUP = "preCatchup";
+            private static final String STATEID_QUERY_DURATION = "queryDuration";
+            private static final String STATEID_STATS_COUNT = "statsCount";
 
             private final Integer intervalSecond;
             private final Integer gapSecond;
             private final String query;
             private final Integer maxDurationMinute;
             private final Integer catchupIntervalSecond;
+            private final Boolean adaptiveInterval;
+            private final Integer catchupParallelism;
+            private final String outputStats;
             private final PCollectionView<Instant> startInstantView;
 
+            private final Counter queriesIssued = Metrics.counter(QueryMetrics.NAMESPACE, "queries_issued");
+            private final Gauge queryLag = Metrics.gauge(QueryMetrics.NAMESPACE, "query_lag_millis");
+            private final Gauge queryRange = Metrics.gauge(QueryMetrics.NAMESPACE, "query_range_millis");
+            private final Gauge catchupGauge = Metrics.gauge(QueryMetrics.NAMESPACE, "catchup");
+
             private transient Template template;
             private transient Duration durationGap;
             private transient Duration durationInterval;
@@ -229,6 +322,9 @@ public class MicrobatchQuery {
                                       final String query,
                                       final Integer maxDurationMinute,
                                       final Integer catchupIntervalSecond,
+                                      final Boolean adaptiveInterval,
+                                      final Integer catchupParallelism,
+                                      final String outputStats,
                                       final PCollectionView<Instant> startInstantView) {
 
                 this.intervalSecond = intervalSecond;
@@ -236,6 +332,9 @@ public class MicrobatchQuery {
                 this.query = query;
                 this.maxDurationMinute = maxDurationMinute;
                 this.catchupIntervalSecond = catchupIntervalSecond;
+                this.adaptiveInterval = adaptiveInterval;
+                this.catchupParallelism = catchupParallelism;
+                this.outputStats = outputStats;
                 this.startInstantView = startInstantView;
             }
 
@@ -249,6 +348,10 @@ public class MicrobatchQuery {
             private final StateSpec<ValueState<Boolean>> catchupState = StateSpecs.value(BooleanCoder.of());
             @StateId(STATEID_PRECATCHUP)
             private final StateSpec<ValueState<Boolean>> preCatchupState = StateSpecs.value(BooleanCoder.of());
+            @StateId(STATEID_QUERY_DURATION)
+            private final StateSpec<ValueState<Long>> queryDurationState = StateSpecs.value(BigEndianLongCoder.of());
+            @StateId(STATEID_STATS_COUNT)
+            private final StateSpec<ValueState<Long>> statsCountState = StateSpecs.value(BigEndianLongCoder.of());
 
             @Setup
             public void setup() {
@@ -265,7 +368,9 @@ public class MicrobatchQuery {
                                        final @StateId(STATEID_LASTPROCESSING_TIME) ValueState<Instant> lastProcessingTimeState,
                                        final @StateId(STATEID_INTERVAL_COUNT) ValueState<Long> queryCountState,
                                        final @StateId(STATEID_CATCHUP) ValueState<Boolean> catchupState,
-                                       final @StateId(STATEID_PRECATCHUP) ValueState<Boolean> preCatchupState) {
+                                       final @StateId(STATEID_PRECATCHUP) ValueState<Boolean> preCatchupState,
+                                       final @StateId(STATEID_QUERY_DURATION) ValueState<Long> queryDurationState,
+                                       final @StateId(STATEID_STATS_COUNT) ValueState<Long> statsCountState) {
 
                 final Instant currentTime = Instant.now();
                 final Instant endEventTime = currentTime.minus(durationGap);
@@ -285,38 +390,88 @@ public class MicrobatchQuery {
                     return;
                 }
 
-                // Determine query duration
+                // Determine query durations
                 final Duration allEventDuration = new Duration(lastQueryEventTime, endEventTime);
-                final Instant queryEventTime;
-                if(allEventDuration.getStandardMinutes() > this.maxDurationMinute) {
-                    queryEventTime = lastQueryEventTime.plus(this.durationMax);
+                final Duration queryDuration;
+                final boolean isCatchup;
+                if(adaptiveInterval) {
+                    queryDuration = nextQueryDuration(queryDurationState, statsCountState, catchup);
+                    isCatchup = allEventDuration.isLongerThan(queryDuration);
+                } else {
+                    queryDuration = this.durationMax;
+                    isCatchup = allEventDuration.getStandardMinutes() > this.maxDurationMinute;
+                }
+
+                final List<Instant> queryEventTimes = new ArrayList<>();
+                if(isCatchup) {
+                    // Issue up to catchupParallelism non-overlapping queries at once.
+                    Instant queryEventTime = lastQueryEventTime.plus(queryDuration);
+                    queryEventTimes.add(queryEventTime);
+                    while(queryEventTimes.size() < this.catchupParallelism
+                            && new Duration(queryEventTime, endEventTime).isLongerThan(queryDuration)) {
+                        queryEventTime = queryEventTime.plus(queryDuration);
+                        queryEventTimes.add(queryEventTime);
+                    }
                     catchupState.write(true);
                     preCatchupState.write(true);
                 } else {
-                    queryEventTime = lastQueryEventTime.plus(allEventDuration);
+                    queryEventTimes.add(lastQueryEventTime.plus(allEventDuration));
                     final Boolean preCatchup = Optional.ofNullable(preCatchupState.read()).orElse(false);
                     catchupState.write(preCatchup); // To skip pre-pre-query's duration was over maxDurationMinute
                     preCatchupState.write(false);
                 }
 
-                // Generate Queries and output
+                // Generate Queries and output. Each time range has its own sequence count,
+                // so the checkpoint advances only over ranges completed without gaps.
                 long queryCount = Optional.ofNullable(queryCountState.read()).orElse(1L);
-                final String queryString = createQuery(template, lastQueryEventTime, queryEventTime);
-                final String[] queries = queryString.split(SQL_SPLITTER);
-                for (int queryIdx = 0; queryIdx < queries.length; queryIdx++) {
-                    final KV<Integer, KV<Long,Instant>> checkpoint = KV.of(queryIdx, KV.of(queryCount, queryEventTime));
-                    c.output(KV.of(checkpoint, queries[queryIdx]));
+                Instant queryStartEventTime = lastQueryEventTime;
+                for(final Instant queryEventTime : queryEventTimes) {
+                    final String queryString = createQuery(template, queryStartEventTime, queryEventTime);
+                    final String[] queries = queryString.split(SQL_SPLITTER);
+                    for (int queryIdx = 0; queryIdx < queries.length; queryIdx++) {
+                        final KV<Integer, KV<Long,Instant>> checkpoint = KV.of(queryIdx, KV.of(queryCount, queryEventTime));
+                        c.output(KV.of(checkpoint, queries[queryIdx]));
+                    }
+                    queriesIssued.inc(queries.length);
+                    queryRange.set(new Duration(queryStartEventTime, queryEventTime).getMillis());
+                    LOG.info(String.format("Query from: %s to: %s count: %d", queryStartEventTime.toString(), queryEventTime.toString(), queryCount));
+                    queryCount += 1;
+                    queryStartEventTime = queryEventTime;
                 }
 
-                LOG.info(String.format("Query from: %s to: %s count: %d", lastQueryEventTime.toString(), queryEventTime.toString(), queryCount));
+                queryLag.set(currentTime.getMillis() - queryStartEventTime.getMillis());
+                catchupGauge.set(isCatchup ? 1L : 0L);
 
                 // Update states
-                queryCount += 1;
-                lastEventTimeState.write(queryEventTime);
+                lastEventTimeState.write(queryStartEventTime);
                 lastProcessingTimeState.write(currentTime);
                 queryCountState.write(queryCount);
             }
 
+            private Duration nextQueryDuration(final ValueState<Long> queryDurationState,
+                                               final ValueState<Long> statsCountState,
+                                               final boolean catchup) {
+
+                final long currentMillis = Optional.ofNullable(queryDurationState.read()).orElse(durationMax.getMillis());
+                // Statistics are applied only once, so that the range is not changed again before new queries complete.
+                // Count is compared by equality, as it starts from one again when the job is replaced.
+                final QueryStats stats = QueryStats.read(outputStats);
+                final long statsCount = Optional.ofNullable(statsCountState.read()).orElse(0L);
+                if(stats.getCount() == statsCount) {
+                    return Duration.millis(currentMillis);
+                }
+                statsCountState.write(stats.getCount());
+
+                final long targetLatencyMillis = (catchup ? durationCatchupInterval : durationInterval).getMillis();
+                final long nextMillis = IntervalController.next(
+                        currentMillis, durationInterval.getMillis(), durationMax.getMillis(), targetLatencyMillis, stats);
+                if(nextMillis != currentMillis) {
+                    LOG.info(String.format("Query duration changed from %d to %d millis", currentMillis, nextMillis));
+                }
+                queryDurationState.write(nextMillis);
+                return Duration.millis(nextMillis);
+            }
+
             @Override
             public org.joda.time.Duration getAllowedTimestampSkew() {
                 return org.joda.time.Duration.standardDays(365);
@@ -330,6 +485,8 @@ public class MicrobatchQuery {
             private static final String STATEID_HEAD = "headState";
             private static final String STATEID_VALUES = "valuesState";
 
+            private final Gauge checkpointLag = Metrics.gauge(QueryMetrics.NAMESPACE, "checkpoint_lag_millis");
+
             private final PCollectionView<Instant> startInstantView;
             private transient int queryNum;
 
@@ -377,11 +534,14 @@ public class MicrobatchQuery {
                         .distinct()
                         .collect(Collectors.toList()));
 
+                final Instant checkpoint;
                 if(head.values().size() == 0 || head.values().size() != this.queryNum) {
-                    out.output(startInstant);
+                    checkpoint = startInstant;
                 } else {
-                    out.output(Collections.min(head.values(), (kv1, kv2) -> (int)(kv1.getKey() - kv2.getKey())).getValue());
+                    checkpoint = Collections.min(head.values(), Comparator.comparing(KV::getKey)).getValue();
                 }
+                checkpointLag.set(Instant.now().getMillis() - checkpoint.getMillis());
+                out.output(checkpoint);
 
                 headState.write(head);
                 valuesState.write(values);
@@ -397,7 +557,7 @@ public class MicrobatchQuery {
 
             private void updateHead(final Integer key, final Map<Integer, KV<Long, Instant>> head, final Map<Integer, List<KV<Long, Instant>>> values) {
                 if(isHead(head, key)) {
-                    Collections.sort(values.get(key), (e1, e2) -> (int)(e1.getKey() - e2.getKey()));
+                    values.get(key).sort(Comparator.comparing(KV::getKey));
                     Long headCount = head.get(key).getKey();
                     Instant headTime = head.get(key).getValue();
                     for(final KV<Long, Instant> value : values.get(key)) {
@@ -433,9 +593,43 @@ public class MicrobatchQuery {
 
         }
 
+        private static class QueryStatsCalcDoFn extends DoFn<KV<Boolean, KV<Long, Long>>, QueryStats> {
+
+            private static final String STATEID_STATS = "stats";
+
+            @StateId(STATEID_STATS)
+            private final StateSpec<ValueState<QueryStats>> statsState = StateSpecs.value(SerializableCoder.of(QueryStats.class));
+
+            @ProcessElement
+            public void processElement(final ProcessContext c,
+                                       final @StateId(STATEID_STATS) ValueState<QueryStats> statsState) {
+
+                final KV<Long, Long> result = c.element().getValue();
+                final QueryStats stats = Optional.ofNullable(statsState.read()).orElse(new QueryStats())
+                        .record(result.getKey(), result.getValue());
+                statsState.write(stats);
+                c.output(stats);
+            }
+
+        }
+
+        private static class StatsSaveDoFn extends DoFn<QueryStats, Void> {
+
+            private final String outputStats;
+
+            private StatsSaveDoFn(final String outputStats) {
+                this.outputStats = outputStats;
+            }
+
+            @ProcessElement
+            public void processElement(ProcessContext c) throws IOException {
+                StorageUtil.writeString(outputStats, c.element().toJson());
+            }
+
+        }
+
         private class CheckpointSaveDoFn extends DoFn<Instant, Void> {
 
-            private final Distribution checkpointDistribution = Metrics.distribution("checkpoint", "lag_millis");
             private final String outputCheckpoint;
 
             private CheckpointSaveDoFn(final String outputCheckpoint) {
@@ -452,15 +646,134 @@ public class MicrobatchQuery {
                 final String checkpointDatetimeString = executedMinEventTime.toString();
                 StorageUtil.writeString(outputCheckpoint, checkpointDatetimeString);
                 LOG.info(String.format("Checkpoint: %s", checkpointDatetimeString));
-                long checkpointLagMillis = Instant.now().getMillis() - executedMinEventTime.getMillis();
-                LOG.info(String.format("Checkpoint lag millis: %d", checkpointLagMillis));
-                this.checkpointDistribution.update(checkpointLagMillis);
             }
 
         }
 
     }
 
+    /**
+     * Metrics of queries executed by queryExecuteDoFn. Counters are summed over workers,
+     * so queries_in_flight is the number of queries started and not yet completed in the job.
+     */
+    static class QueryMetrics {
+
+        static final String NAMESPACE = "microbatch";
+
+        static final Counter QUERIES_IN_FLIGHT = Metrics.counter(NAMESPACE, "queries_in_flight");
+        static final Counter ROWS = Metrics.counter(NAMESPACE, "rows");
+        static final Distribution ROWS_PER_INTERVAL = Metrics.distribution(NAMESPACE, "rows_per_interval");
+        static final Distribution QUERY_LATENCY = Metrics.distribution(NAMESPACE, "query_latency_millis");
+
+    }
+
+    /**
+     * Results of queries of a source, as moving averages of rows and latency per query.
+     * Calculated from the queryStats output of queryExecuteDoFn and saved as JSON next to the checkpoint.
+     */
+    static class QueryStats implements Serializable {
+
+        private static final Logger LOG = LoggerFactory.getLogger(QueryStats.class);
+        private static final double ALPHA = 0.3;
+
+        private final long count;
+        private final double rows;
+        private final double latencyMillis;
+
+        QueryStats() {
+            this(0, 0D, 0D);
+        }
+
+        private QueryStats(final long count, final double rows, final double latencyMillis) {
+            this.count = count;
+            this.rows = rows;
+            this.latencyMillis = latencyMillis;
+        }
+
+        QueryStats record(final long rows, final long latencyMillis) {
+            if(count == 0) {
+                return new QueryStats(1, rows, latencyMillis);
+            }
+            return new QueryStats(count + 1,
+                    ALPHA * rows + (1 - ALPHA) * this.rows,
+                    ALPHA * latencyMillis + (1 - ALPHA) * this.latencyMillis);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        double getRows() {
+            return rows;
+        }
+
+        double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        String toJson() {
+            return new Gson().toJson(this);
+        }
+
+        static QueryStats fromJson(final String json) {
+            return new Gson().fromJson(json, QueryStats.class);
+        }
+
+        static QueryStats read(final String gcsPath) {
+            if(gcsPath == null || !StorageUtil.exists(gcsPath)) {
+                return new QueryStats();
+            }
+            final String json = StorageUtil.readString(gcsPath);
+            try {
+                return fromJson(json);
+            } catch (JsonParseException e) {
+                LOG.warn(String.format("Failed to parse query stats %s, cause %s", json, e.getMessage()));
+                return new QueryStats();
+            }
+        }
+
+        static class CountComparator implements Comparator<QueryStats>, Serializable {
+
+            @Override
+            public int compare(final QueryStats s1, final QueryStats s2) {
+                return Long.compare(s1.count, s2.count);
+            }
+
+        }
+
+    }
+
+    /**
+     * Decides the time range of the next query from recent query results,
+     * so that a query takes about half of the interval it is issued at.
+     */
+    static class IntervalController {
+
+        private static final double TARGET_UTILIZATION = 0.5;
+        private static final double MAX_CHANGE_RATIO = 2.0;
+
+        static long next(final long currentMillis,
+                         final long minMillis,
+                         final long maxMillis,
+                         final long targetLatencyMillis,
+                         final QueryStats stats) {
+
+            if(stats.getCount() == 0) {
+                return currentMillis;
+            }
+            final double desiredMillis;
+            if(stats.getRows() < 1) {
+                // Queries return almost nothing, so a wider time range costs little.
+                desiredMillis = currentMillis * MAX_CHANGE_RATIO;
+            } else {
+                desiredMillis = currentMillis * TARGET_UTILIZATION * targetLatencyMillis / Math.max(stats.getLatencyMillis(), 1D);
+            }
+            final double limitedMillis = Math.max(currentMillis / MAX_CHANGE_RATIO, Math.min(currentMillis * MAX_CHANGE_RATIO, desiredMillis));
+            return Math.max(minMillis, Math.min(maxMillis, (long) limitedMillis));
+        }
+
+    }
+
     static Template createTemplate(final String template) {
         final Configuration templateConfig = new Configuration(Configuration.VERSION_2_3_30);
         templateConfig.setNumberFormat("computer");
@@ -480,6 +793,8 @@ public class MicrobatchQuery {
         context.put("__EVENT_EPOCH_MILLISECOND_PRE__", lastTime.getMillis());
         context.put("__EVENT_DATETIME_ISO__", eventTime.toString(ISODateTimeFormat.dateTime()));
         context.put("__EVENT_DATETIME_ISO_PRE__", lastTime.toString(ISODateTimeFormat.dateTime()));
+        context.put("__EVENT_DATETIME__", eventTime.toString(FORMATTER_DATETIME));
+        context.put("__EVENT_DATETIME_PRE__", lastTime.toString(FORMATTER_DATETIME));
         final StringWriter sw = new StringWriter();
         try {
             template.process(context, sw);
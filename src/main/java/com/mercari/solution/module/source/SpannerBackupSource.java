@@ -1,5 +1,6 @@
 package com.mercari.solution.module.source;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -9,22 +10,40 @@ import com.mercari.solution.module.FCollection;
 import com.mercari.solution.module.SourceModule;
 import com.mercari.solution.util.gcp.StorageUtil;
 import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.beam.sdk.coders.AvroCoder;
-import org.apache.beam.sdk.io.AvroIO;
-import org.apache.beam.sdk.io.FileIO;
-import org.apache.beam.sdk.io.fs.EmptyMatchTreatment;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.fs.MatchResult;
+import org.apache.beam.sdk.io.range.OffsetRange;
 import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.transforms.splittabledofn.OffsetRangeTracker;
+import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
 import org.apache.beam.sdk.values.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class SpannerBackupSource implements SourceModule {
@@ -33,6 +52,7 @@ public class SpannerBackupSource implements SourceModule {
 
         private String input;
         private List<String> tables;
+        private Integer splitSizeMB;
 
         public String getInput() {
             return input;
@@ -49,6 +69,14 @@ public class SpannerBackupSource implements SourceModule {
         public void setTables(List<String> tables) {
             this.tables = tables;
         }
+
+        public Integer getSplitSizeMB() {
+            return splitSizeMB;
+        }
+
+        public void setSplitSizeMB(Integer splitSizeMB) {
+            this.splitSizeMB = splitSizeMB;
+        }
     }
 
     public String getName() { return "spannerBackup"; }
@@ -77,6 +105,9 @@ public class SpannerBackupSource implements SourceModule {
 
         private static final Logger LOG = LoggerFactory.getLogger(SpannerBackupBatchRead.class);
 
+        private static final int DEFAULT_SPLIT_SIZE_MB = 64;
+        private static final int MAX_LAUNCHER_THREADS = 32;
+
         private final SpannerBackupSourceParameters parameters;
         private final Map<String, Schema> schemas;
 
@@ -88,38 +119,44 @@ public class SpannerBackupSource implements SourceModule {
         }
 
         public PCollectionTuple expand(final PBegin begin) {
-            //final List<String> tables = parameters.getTables() == null ? null
-            //        : Arrays.asList(parameters.getTables().split(","));
-            PCollectionTuple tuple = PCollectionTuple.empty(begin.getPipeline());
             final Map<String, List<String>> exportTables = readExportFile(parameters.getInput());
-            for(Map.Entry<String, List<String>> entry : exportTables.entrySet()) {
-                if(entry.getValue().size() == 0) {
-                    continue;
-                }
-                if(parameters.getTables() != null && !parameters.getTables().contains(entry.getKey())) {
-                    continue;
-                }
-                final KV<Schema, PCollection<GenericRecord>> records
-                        = readRecords(begin, entry.getKey(), entry.getValue());
-                tuple = tuple.and(entry.getKey(), records.getValue());
-                schemas.put(entry.getKey(), records.getKey());
+            exportTables.entrySet().removeIf(entry -> entry.getValue().size() == 0
+                    || (parameters.getTables() != null && !parameters.getTables().contains(entry.getKey())));
+            if(exportTables.isEmpty()) {
+                return PCollectionTuple.empty(begin.getPipeline());
             }
+            schemas.putAll(readSchemas(exportTables));
 
-            return tuple;
-        }
-
-        private KV<Schema, PCollection<GenericRecord>> readRecords(
-                final PBegin begin, final String tableName, final List<String> files) {
+            // All tables are read in one step, so files are balanced across tables by byte size.
+            final Map<String, TupleTag<GenericRecord>> tags = new TreeMap<>();
+            final List<KV<String, String>> files = new ArrayList<>();
+            for(final Map.Entry<String, List<String>> entry : exportTables.entrySet()) {
+                tags.put(entry.getKey(), new TupleTag<>(entry.getKey()));
+                for(final String file : entry.getValue()) {
+                    files.add(KV.of(entry.getKey(), file));
+                }
+            }
+            final List<TupleTag<GenericRecord>> tagList = new ArrayList<>(tags.values());
+            final TupleTag<GenericRecord> mainTag = tagList.get(0);
+            TupleTagList additionalTags = TupleTagList.empty();
+            for(final TupleTag<GenericRecord> tag : tagList.subList(1, tagList.size())) {
+                additionalTags = additionalTags.and(tag);
+            }
 
-            final Schema avroSchema = StorageUtil.getAvroSchema(files.get(0));
-            final PCollection<GenericRecord> records = begin
-                    .apply("Files." + tableName, Create.of(files))
-                    .apply("Match." + tableName, FileIO.matchAll().withConfiguration(FileIO.MatchConfiguration.create(EmptyMatchTreatment.ALLOW)))
-                    .apply("Reads." + tableName, FileIO.readMatches())
-                    .apply("Parse." + tableName, AvroIO.readFilesGenericRecords(avroSchema))
-                    .setCoder(AvroCoder.of(avroSchema));
+            final PCollectionTuple tuple = begin
+                    .apply("Files", Create.of(files).withCoder(KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of())))
+                    .apply("SplitFiles", ParDo.of(new SplitFileDoFn(parameters.getSplitSizeMB() * 1024L * 1024L)))
+                    .setCoder(KvCoder.of(
+                            KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()),
+                            SerializableCoder.of(OffsetRange.class)))
+                    .apply("Reshuffle", Reshuffle.viaRandomKey())
+                    .apply("ReadRanges", ParDo.of(new ReadAvroRangeDoFn(tags))
+                            .withOutputTags(mainTag, additionalTags));
 
-            return KV.of(avroSchema, records);
+            for(final Map.Entry<String, TupleTag<GenericRecord>> entry : tags.entrySet()) {
+                tuple.get(entry.getValue()).setCoder(AvroCoder.of(schemas.get(entry.getKey())));
+            }
+            return tuple;
         }
 
         private void validateParameters() {
@@ -132,13 +169,18 @@ public class SpannerBackupSource implements SourceModule {
             if(parameters.getInput() == null) {
                 errorMessages.add("Parameter must contain input");
             }
+            if(parameters.getSplitSizeMB() != null && parameters.getSplitSizeMB() < 1) {
+                errorMessages.add("Parameter splitSizeMB must be greater than zero");
+            }
             if(errorMessages.size() > 0) {
                 throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
             }
         }
 
         private void setDefaultParameters() {
-
+            if(parameters.getSplitSizeMB() == null) {
+                parameters.setSplitSizeMB(DEFAULT_SPLIT_SIZE_MB);
+            }
         }
 
         public Map<String, List<String>> readExportFile(final String input) {
@@ -152,27 +194,196 @@ public class SpannerBackupSource implements SourceModule {
                 exportFilePath = input + "/spanner-export.json";
             }
             exportDirPath = exportFilePath.replace("spanner-export.json", "");
-            final Map<String, List<String>> paths = new HashMap<>();
             LOG.info(exportFilePath);
             final String exportContent = StorageUtil.readString(exportFilePath);
             final JsonObject exportFile = new Gson().fromJson(exportContent, JsonObject.class);
+            final Map<String, String> manifestFilePaths = new HashMap<>();
             for(final JsonElement table : exportFile.getAsJsonArray("tables")) {
                 final String tableName = table.getAsJsonObject().get("name").getAsString();
-                final String manifestFilePath = table.getAsJsonObject().get("manifestFile").getAsString();
+                if(parameters.getTables() != null && !parameters.getTables().contains(tableName)) {
+                    continue;
+                }
+                manifestFilePaths.put(tableName, exportDirPath + table.getAsJsonObject().get("manifestFile").getAsString());
+            }
 
-                final String manifestContent = StorageUtil.readString(exportDirPath + manifestFilePath);
+            // Manifests are read in parallel because an export can contain hundreds of tables.
+            return runParallel(manifestFilePaths, manifestFilePath -> {
+                final String manifestContent = StorageUtil.readString(manifestFilePath);
                 final JsonObject manifestFile = new Gson().fromJson(manifestContent, JsonObject.class);
                 final List<String> files = new ArrayList<>();
                 for(final JsonElement avroFile : manifestFile.getAsJsonArray("files")) {
                     final String avroFilePath = avroFile.getAsJsonObject().get("name").getAsString();
                     files.add(exportDirPath + avroFilePath);
                 }
+                return files;
+            });
+        }
+
+        private Map<String, Schema> readSchemas(final Map<String, List<String>> exportTables) {
+            final Map<String, String> firstFiles = exportTables.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get(0)));
+            final Map<String, Schema> tableSchemas = runParallel(firstFiles, StorageUtil::getAvroSchema);
+            for(final Map.Entry<String, Schema> entry : tableSchemas.entrySet()) {
+                if(entry.getValue() == null) {
+                    throw new IllegalStateException("Failed to read avro schema of table: " + entry.getKey()
+                            + " from file: " + firstFiles.get(entry.getKey()));
+                }
+            }
+            return tableSchemas;
+        }
+
+        private static <InputT, OutputT> Map<String, OutputT> runParallel(
+                final Map<String, InputT> inputs, final Function<InputT, OutputT> function) {
+
+            if(inputs.isEmpty()) {
+                return new HashMap<>();
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(inputs.size(), MAX_LAUNCHER_THREADS),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("spanner-backup-launcher-%d").build());
+            try {
+                final Map<String, Future<OutputT>> futures = new HashMap<>();
+                for(final Map.Entry<String, InputT> entry : inputs.entrySet()) {
+                    futures.put(entry.getKey(), executor.submit(() -> function.apply(entry.getValue())));
+                }
+                final Map<String, OutputT> outputs = new HashMap<>();
+                for(final Map.Entry<String, Future<OutputT>> entry : futures.entrySet()) {
+                    outputs.put(entry.getKey(), entry.getValue().get());
+                }
+                return outputs;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading spanner export files", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to read spanner export files", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Divides each file into byte ranges of splitSize, so that a large table is read by many workers.
+         */
+        private static class SplitFileDoFn extends DoFn<KV<String, String>, KV<KV<String, String>, OffsetRange>> {
+
+            private final long splitSize;
+
+            SplitFileDoFn(final long splitSize) {
+                this.splitSize = splitSize;
+            }
+
+            @ProcessElement
+            public void processElement(final ProcessContext c) throws IOException {
+                final String path = c.element().getValue();
+                final MatchResult.Metadata metadata = FileSystems.matchSingleFileSpec(path);
+                final long size = metadata.sizeBytes();
+                for(long start = 0; start < size; start += splitSize) {
+                    c.output(KV.of(c.element(), new OffsetRange(start, Math.min(start + splitSize, size))));
+                }
+            }
+
+        }
+
+        /**
+         * Reads Avro blocks whose sync marker starts within the range, outputting records to the tag of the table.
+         * The range can be split further by the runner at block boundaries.
+         */
+        static class ReadAvroRangeDoFn extends DoFn<KV<KV<String, String>, OffsetRange>, GenericRecord> {
+
+            private final Map<String, TupleTag<GenericRecord>> tags;
+
+            ReadAvroRangeDoFn(final Map<String, TupleTag<GenericRecord>> tags) {
+                this.tags = tags;
+            }
+
+            @GetInitialRestriction
+            public OffsetRange getInitialRestriction(@Element KV<KV<String, String>, OffsetRange> element) {
+                return element.getValue();
+            }
+
+            @NewTracker
+            public OffsetRangeTracker newTracker(@Restriction OffsetRange range) {
+                return new OffsetRangeTracker(range);
+            }
+
+            @GetRestrictionCoder
+            public Coder<OffsetRange> getRestrictionCoder() {
+                return SerializableCoder.of(OffsetRange.class);
+            }
+
+            @GetSize
+            public double getSize(@Restriction OffsetRange range) {
+                return range.getTo() - range.getFrom();
+            }
+
+            @ProcessElement
+            public void processElement(final @Element KV<KV<String, String>, OffsetRange> element,
+                                       final RestrictionTracker<OffsetRange, Long> tracker,
+                                       final MultiOutputReceiver receiver) throws IOException {
+
+                final TupleTag<GenericRecord> tag = tags.get(element.getKey().getKey());
+                final String path = element.getKey().getValue();
+                final OffsetRange range = tracker.currentRestriction();
+                try(final SeekableByteChannel channel = (SeekableByteChannel) FileSystems
+                        .open(FileSystems.matchNewResource(path, false));
+                    final DataFileReader<GenericRecord> reader = new DataFileReader<>(
+                            new ChannelInput(channel), new GenericDatumReader<>())) {
+
+                    reader.sync(range.getFrom());
+                    long claimedBlock = -1;
+                    while(reader.hasNext()) {
+                        // A block belongs to the range in which its preceding sync marker starts.
+                        // The marker of the first block is the end of the file header.
+                        final long block = Math.max(reader.previousSync() - DataFileConstants.SYNC_SIZE, range.getFrom());
+                        if(block != claimedBlock) {
+                            if(!tracker.tryClaim(block)) {
+                                return;
+                            }
+                            claimedBlock = block;
+                        }
+                        receiver.get(tag).output(reader.next());
+                    }
+                }
+                tracker.tryClaim(Long.MAX_VALUE);
+            }
+
+        }
+
+        private static class ChannelInput implements SeekableInput {
+
+            private final SeekableByteChannel channel;
+
+            ChannelInput(final SeekableByteChannel channel) {
+                this.channel = channel;
+            }
 
-                paths.put(tableName, files);
+            @Override
+            public void seek(final long p) throws IOException {
+                channel.position(p);
             }
-            return paths;
+
+            @Override
+            public long tell() throws IOException {
+                return channel.position();
+            }
+
+            @Override
+            public long length() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                return Channels.newInputStream(channel).read(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+
         }
 
     }
 
-}
\ No newline at end of file
+}
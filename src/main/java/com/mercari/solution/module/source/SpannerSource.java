@@ -4,6 +4,7 @@ import com.google.cloud.Date;
 import com.google.cloud.Timestamp;
 import com.google.cloud.spanner.Partition;
 import com.google.cloud.spanner.*;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.mercari.solution.config.SourceConfig;
@@ -15,22 +16,32 @@ import com.mercari.solution.util.converter.DataTypeTransform;
 import com.mercari.solution.util.gcp.SpannerUtil;
 import com.mercari.solution.util.gcp.StorageUtil;
 import com.mercari.solution.util.schema.StructSchemaUtil;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.InstantCoder;
 import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.io.gcp.spanner.ReadOperation;
 import org.apache.beam.sdk.io.gcp.spanner.SpannerIO;
 import org.apache.beam.sdk.io.gcp.spanner.Transaction;
 import org.apache.beam.sdk.transforms.*;
+import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
+import org.apache.beam.sdk.transforms.splittabledofn.ManualWatermarkEstimator;
+import org.apache.beam.sdk.transforms.splittabledofn.SplitResult;
+import org.apache.beam.sdk.transforms.splittabledofn.WatermarkEstimators;
 import org.apache.beam.sdk.values.*;
+import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 public class SpannerSource implements SourceModule {
 
     private static final String SQL_SPLITTER = "--SPLITTER--";
+    private static final int DEFAULT_MICROBATCH_PARALLELISM = 4;
 
     private class SpannerSourceParameters implements Serializable {
 
@@ -46,6 +57,8 @@ public class SpannerSource implements SourceModule {
         private List<String> fields;
         private List<KeyRangeParameter> keyRange;
         private String timestampBound;
+        private Integer numKeyRangeSplits;
+        private String splitTable;
 
         // for microbatch
         private Integer intervalSecond;
@@ -56,6 +69,13 @@ public class SpannerSource implements SourceModule {
         private String startDatetime;
         private String outputCheckpoint;
         private Boolean useCheckpointAsStartDatetime;
+        private Boolean adaptiveInterval;
+        private Integer catchupParallelism;
+        private Integer parallelism;
+
+        // for change stream
+        private String changeStream;
+        private String endDatetime;
 
 
         public String getProjectId() {
@@ -122,6 +142,22 @@ public class SpannerSource implements SourceModule {
             this.timestampBound = timestampBound;
         }
 
+        public Integer getNumKeyRangeSplits() {
+            return numKeyRangeSplits;
+        }
+
+        public void setNumKeyRangeSplits(Integer numKeyRangeSplits) {
+            this.numKeyRangeSplits = numKeyRangeSplits;
+        }
+
+        public String getSplitTable() {
+            return splitTable;
+        }
+
+        public void setSplitTable(String splitTable) {
+            this.splitTable = splitTable;
+        }
+
         public Boolean getEmulator() {
             return emulator;
         }
@@ -186,6 +222,46 @@ public class SpannerSource implements SourceModule {
             this.useCheckpointAsStartDatetime = useCheckpointAsStartDatetime;
         }
 
+        public Boolean getAdaptiveInterval() {
+            return adaptiveInterval;
+        }
+
+        public void setAdaptiveInterval(Boolean adaptiveInterval) {
+            this.adaptiveInterval = adaptiveInterval;
+        }
+
+        public Integer getCatchupParallelism() {
+            return catchupParallelism;
+        }
+
+        public void setCatchupParallelism(Integer catchupParallelism) {
+            this.catchupParallelism = catchupParallelism;
+        }
+
+        public String getChangeStream() {
+            return changeStream;
+        }
+
+        public void setChangeStream(String changeStream) {
+            this.changeStream = changeStream;
+        }
+
+        public String getEndDatetime() {
+            return endDatetime;
+        }
+
+        public void setEndDatetime(String endDatetime) {
+            this.endDatetime = endDatetime;
+        }
+
+        public Integer getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(Integer parallelism) {
+            this.parallelism = parallelism;
+        }
+
         private class KeyRangeParameter {
 
             private String startType;
@@ -232,6 +308,8 @@ public class SpannerSource implements SourceModule {
     public Map<String, FCollection<?>> expand(PBegin begin, SourceConfig config, PCollection<Long> beats, List<FCollection<?>> waits) {
         if (config.getMicrobatch() != null && config.getMicrobatch()) {
             return Collections.singletonMap(config.getName(), SpannerSource.microbatch(beats, config));
+        } else if (config.getParameters() != null && config.getParameters().has("changeStream")) {
+            return Collections.singletonMap(config.getName(), SpannerSource.changeStream(begin, config));
         } else {
             return Collections.singletonMap(config.getName(), SpannerSource.batch(begin, config));
         }
@@ -249,10 +327,17 @@ public class SpannerSource implements SourceModule {
         return FCollection.of(config.getName(), output, DataType.STRUCT, source.type);
     }
 
+    public static FCollection<Struct> changeStream(final PBegin begin, final SourceConfig config) {
+        final SpannerChangeStreamRead source = new SpannerChangeStreamRead(config);
+        final PCollection<Struct> output = begin.apply(config.getName(), source);
+        return FCollection.of(config.getName(), output, DataType.STRUCT, SpannerChangeStreamRead.TYPE);
+    }
+
     public static class SpannerBatchSource extends PTransform<PBegin, PCollection<Struct>> {
 
         private static final TupleTag<KV<String, KV<BatchTransactionId, Partition>>> tagOutputPartition = new TupleTag<>(){ private static final long serialVersionUID = 1L; };
         private static final TupleTag<Struct> tagOutputStruct = new TupleTag<>(){ private static final long serialVersionUID = 1L; };
+        private static final TupleTag<ReadOperation> tagOutputReadOperation = new TupleTag<>(){ private static final long serialVersionUID = 1L; };
 
         private Type type;
 
@@ -296,20 +381,48 @@ public class SpannerSource implements SourceModule {
                 }
 
                 this.type =  SpannerUtil.getTypeFromQuery(projectId, instanceId, databaseId, query, parameters.getEmulator());
+
+                final String splitKeyColumn;
+                if(parameters.getSplitTable() != null) {
+                    splitKeyColumn = SpannerUtil.getPrimaryKeyFieldNames(
+                            projectId, instanceId, databaseId, parameters.getSplitTable(), parameters.getEmulator()).get(0);
+                    if(type.getStructFields().stream().noneMatch(f -> f.getName().equals(splitKeyColumn))) {
+                        throw new IllegalArgumentException("Query results must contain the first primary key column: "
+                                + splitKeyColumn + " of splitTable: " + parameters.getSplitTable());
+                    }
+                } else {
+                    splitKeyColumn = null;
+                }
+
                 final PCollectionTuple results = begin
                         .apply("SupplyQuery", Create.of(query))
                         .apply("SplitQuery", FlatMapElements.into(TypeDescriptors.strings()).via(s -> Arrays.asList(s.split(SQL_SPLITTER))))
-                        .apply("ExecuteQuery", ParDo.of(new QueryPartitionSpannerDoFn(projectId, instanceId, databaseId, timestampBound, parameters.getEmulator(), transactionView))
+                        .apply("ExecuteQuery", ParDo.of(new QueryPartitionSpannerDoFn(projectId, instanceId, databaseId, timestampBound, parameters.getEmulator(),
+                                        parameters.getSplitTable(), splitKeyColumn, parameters.getNumKeyRangeSplits(), transactionView))
                                 .withSideInput("transactionView", transactionView)
-                                .withOutputTags(tagOutputPartition, TupleTagList.of(tagOutputStruct)));
+                                .withOutputTags(tagOutputPartition, TupleTagList.of(tagOutputStruct).and(tagOutputReadOperation)));
 
                 final PCollection<Struct> struct1 = results.get(tagOutputPartition)
-                        .apply("GroupByPartition", GroupByKey.create())
+                        .apply("ReshufflePartition", Reshuffle.viaRandomKey())
                         .apply("ReadStruct", ParDo.of(new ReadStructSpannerDoFn(projectId, instanceId, databaseId, parameters.getEmulator(), transactionView))
                                 .withSideInput("transactionView", transactionView))
                         .setCoder(SerializableCoder.of(Struct.class));
                 final PCollection<Struct> struct2 = results.get(tagOutputStruct);
-                structs = PCollectionList.of(struct1).and(struct2)
+                // Queries that are not root partitionable are read in parallel by key ranges of splitTable.
+                SpannerIO.ReadAll readAll = SpannerIO.readAll()
+                        .withProjectId(projectId)
+                        .withInstanceId(instanceId)
+                        .withDatabaseId(databaseId)
+                        .withTransaction(transactionView)
+                        .withBatching(false);
+                if(parameters.getEmulator()) {
+                    readAll = readAll.withEmulatorHost(SpannerUtil.SPANNER_HOST_EMULATOR);
+                }
+                final PCollection<Struct> struct3 = results.get(tagOutputReadOperation)
+                        .setCoder(SerializableCoder.of(ReadOperation.class))
+                        .apply("ReshuffleKeyRangeQuery", Reshuffle.viaRandomKey())
+                        .apply("ReadKeyRangeQuery", readAll);
+                structs = PCollectionList.of(struct1).and(struct2).and(struct3)
                         .apply(Flatten.pCollections());
 
             } else if(parameters.getTable() != null) {
@@ -328,58 +441,87 @@ public class SpannerSource implements SourceModule {
                         .map(Type.StructField::getName)
                         .collect(Collectors.toList());
                 final List<SpannerSourceParameters.KeyRangeParameter> keyRanges = parameters.getKeyRange();
-                final KeySet keySet;
-                if(keyRanges == null) {
-                    keySet = KeySet.all();
-                } else {
-                    final List<String> keyFieldNames = SpannerUtil.getPrimaryKeyFieldNames(projectId, instanceId, databaseId, table, parameters.getEmulator());
-                    final List<Type.StructField> keyFields = keyFieldNames.stream()
-                            .map(f -> type.getStructFields().stream()
-                                    .filter(s -> s.getName().equals(f))
-                                    .findAny()
-                                    .orElseThrow(() -> new IllegalArgumentException("PrimaryKey: " + f + " not found!")))
-                            .collect(Collectors.toList());
+                if(keyRanges == null && parameters.getNumKeyRangeSplits() != null) {
+                    final String keyColumn = SpannerUtil.getPrimaryKeyFieldNames(
+                            projectId, instanceId, databaseId, table, parameters.getEmulator()).get(0);
+                    final PCollectionView<Transaction> transactionView = begin
+                            .apply(Create.of(1L))
+                            .apply("CreateTransaction", ParDo.of(new CreateTransactionFn(projectId, instanceId, databaseId, timestampBound, parameters.getEmulator())))
+                            .apply("AsView", View.asSingleton());
+
+                    SpannerIO.ReadAll readAll = SpannerIO.readAll()
+                            .withProjectId(projectId)
+                            .withInstanceId(instanceId)
+                            .withDatabaseId(databaseId)
+                            .withTransaction(transactionView)
+                            .withBatching(true);
+                    if(parameters.getEmulator()) {
+                        readAll = readAll.withEmulatorHost(SpannerUtil.SPANNER_HOST_EMULATOR);
+                    }
 
-                    final KeySet.Builder builder = KeySet.newBuilder();
-                    for(final SpannerSourceParameters.KeyRangeParameter keyRangeParameter : keyRanges) {
-                        final KeyRange.Endpoint startType;
-                        if(keyRangeParameter.getStartType() == null) {
-                            startType = KeyRange.Endpoint.CLOSED;
-                        } else {
-                            startType = "open".equals(keyRangeParameter.getStartType().toLowerCase()) ?
-                                    KeyRange.Endpoint.OPEN : KeyRange.Endpoint.CLOSED;
-                        }
+                    structs = begin
+                            .apply("SupplyTable", Create.of(table))
+                            .apply("SplitKeyRange", ParDo.of(new KeyRangeSplitDoFn(
+                                    projectId, instanceId, databaseId, parameters.getEmulator(),
+                                    keyColumn, columns, parameters.getNumKeyRangeSplits(), transactionView))
+                                    .withSideInput("transactionView", transactionView))
+                            .setCoder(SerializableCoder.of(ReadOperation.class))
+                            .apply("ReshuffleKeyRange", Reshuffle.viaRandomKey())
+                            .apply("ReadSpannerTable", readAll);
+                } else {
+                    final KeySet keySet;
+                    if(keyRanges == null) {
+                        keySet = KeySet.all();
+                    } else {
+                        final List<String> keyFieldNames = SpannerUtil.getPrimaryKeyFieldNames(projectId, instanceId, databaseId, table, parameters.getEmulator());
+                        final List<Type.StructField> keyFields = keyFieldNames.stream()
+                                .map(f -> type.getStructFields().stream()
+                                        .filter(s -> s.getName().equals(f))
+                                        .findAny()
+                                        .orElseThrow(() -> new IllegalArgumentException("PrimaryKey: " + f + " not found!")))
+                                .collect(Collectors.toList());
+
+                        final KeySet.Builder builder = KeySet.newBuilder();
+                        for(final SpannerSourceParameters.KeyRangeParameter keyRangeParameter : keyRanges) {
+                            final KeyRange.Endpoint startType;
+                            if(keyRangeParameter.getStartType() == null) {
+                                startType = KeyRange.Endpoint.CLOSED;
+                            } else {
+                                startType = "open".equals(keyRangeParameter.getStartType().toLowerCase()) ?
+                                        KeyRange.Endpoint.OPEN : KeyRange.Endpoint.CLOSED;
+                            }
 
-                        final KeyRange.Endpoint endType;
-                        if(keyRangeParameter.getEndType() == null) {
-                            endType = KeyRange.Endpoint.CLOSED;
-                        } else {
-                            endType = "open".equals(keyRangeParameter.getEndType().toLowerCase()) ?
-                                    KeyRange.Endpoint.OPEN : KeyRange.Endpoint.CLOSED;
+                            final KeyRange.Endpoint endType;
+                            if(keyRangeParameter.getEndType() == null) {
+                                endType = KeyRange.Endpoint.CLOSED;
+                            } else {
+                                endType = "open".equals(keyRangeParameter.getEndType().toLowerCase()) ?
+                                        KeyRange.Endpoint.OPEN : KeyRange.Endpoint.CLOSED;
+                            }
+                            final Key start = createRangeKey(keyFields, keyRangeParameter.getStartKeys());
+                            final Key end   = createRangeKey(keyFields, keyRangeParameter.getEndKeys());
+
+                            builder.addRange(KeyRange.newBuilder()
+                                    .setStartType(startType)
+                                    .setEndType(endType)
+                                    .setStart(start)
+                                    .setEnd(end)
+                                    .build());
                         }
-                        final Key start = createRangeKey(keyFields, keyRangeParameter.getStartKeys());
-                        final Key end   = createRangeKey(keyFields, keyRangeParameter.getEndKeys());
-
-                        builder.addRange(KeyRange.newBuilder()
-                                .setStartType(startType)
-                                .setEndType(endType)
-                                .setStart(start)
-                                .setEnd(end)
-                                .build());
+                        keySet = builder.build();
                     }
-                    keySet = builder.build();
-                }
 
-                structs = begin
-                        .apply("ReadSpannerTable", SpannerIO.read()
-                                .withProjectId(projectId)
-                                .withInstanceId(instanceId)
-                                .withDatabaseId(databaseId)
-                                .withTable(table)
-                                .withKeySet(keySet)
-                                .withColumns(columns)
-                                .withBatching(true)
-                                .withTimestampBound(toTimestampBound(timestampBound)));
+                    structs = begin
+                            .apply("ReadSpannerTable", SpannerIO.read()
+                                    .withProjectId(projectId)
+                                    .withInstanceId(instanceId)
+                                    .withDatabaseId(databaseId)
+                                    .withTable(table)
+                                    .withKeySet(keySet)
+                                    .withColumns(columns)
+                                    .withBatching(true)
+                                    .withTimestampBound(toTimestampBound(timestampBound)));
+                }
             } else {
                 throw new IllegalArgumentException("spanner module support only query or table");
             }
@@ -412,6 +554,17 @@ public class SpannerSource implements SourceModule {
             if(parameters.getQuery() == null && parameters.getTable() == null) {
                 errorMessages.add("Parameter must contain query or table");
             }
+            if(parameters.getNumKeyRangeSplits() != null && parameters.getNumKeyRangeSplits() < 1) {
+                errorMessages.add("Parameter numKeyRangeSplits must be greater than zero");
+            }
+            if(parameters.getSplitTable() != null) {
+                if(parameters.getQuery() == null) {
+                    errorMessages.add("Parameter splitTable is used only with query");
+                }
+                if(parameters.getNumKeyRangeSplits() == null) {
+                    errorMessages.add("Parameter numKeyRangeSplits is required when splitTable is specified");
+                }
+            }
 
             if(errorMessages.size() > 0) {
                 throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
@@ -478,6 +631,9 @@ public class SpannerSource implements SourceModule {
             private final String databaseId;
             private final String timestampBound;
             private final Boolean emulator;
+            private final String splitTable;
+            private final String splitKeyColumn;
+            private final Integer numKeyRangeSplits;
             private final PCollectionView<Transaction> transactionView;
 
             private QueryPartitionSpannerDoFn(
@@ -486,12 +642,18 @@ public class SpannerSource implements SourceModule {
                     final String databaseId,
                     final String timestampBound,
                     final Boolean emulator,
+                    final String splitTable,
+                    final String splitKeyColumn,
+                    final Integer numKeyRangeSplits,
                     final PCollectionView<Transaction> transactionView) {
                 this.projectId = projectId;
                 this.instanceId = instanceId;
                 this.databaseId = databaseId;
                 this.timestampBound = timestampBound;
                 this.emulator = emulator;
+                this.splitTable = splitTable;
+                this.splitKeyColumn = splitKeyColumn;
+                this.numKeyRangeSplits = numKeyRangeSplits;
                 this.transactionView = transactionView;
             }
 
@@ -529,6 +691,17 @@ public class SpannerSource implements SourceModule {
                         if (!e.getErrorCode().equals(ErrorCode.INVALID_ARGUMENT)) {
                             throw e;
                         }
+                        if(splitTable != null) {
+                            final List<Value> boundaries = SpannerUtil.getKeyRangeBoundaries(
+                                    transaction, splitTable, splitKeyColumn, numKeyRangeSplits);
+                            final List<Statement> statements = SpannerUtil.createKeyRangeStatements(query, splitKeyColumn, boundaries);
+                            LOG.warn(String.format("Query [%s] is not root partitionable. Retrying as [%d] key range queries of table [%s].",
+                                    query, statements.size(), splitTable));
+                            for(final Statement keyRangeStatement : statements) {
+                                c.output(tagOutputReadOperation, ReadOperation.create().withQuery(keyRangeStatement));
+                            }
+                            return;
+                        }
                         LOG.warn(String.format("Query [%s] could not be executed. Retrying as single query.", query));
                         try (final ResultSet resultSet = transaction.executeQuery(statement)) {
                             int count = 0;
@@ -550,7 +723,72 @@ public class SpannerSource implements SourceModule {
 
         }
 
-        public static class ReadStructSpannerDoFn extends DoFn<KV<String, Iterable<KV<BatchTransactionId, Partition>>>, Struct> {
+        /**
+         * Divides the table into key ranges of the first primary key column by sampling keys in the transaction to read.
+         */
+        public static class KeyRangeSplitDoFn extends DoFn<String, ReadOperation> {
+
+            private static final Logger LOG = LoggerFactory.getLogger(KeyRangeSplitDoFn.class);
+
+            private final String projectId;
+            private final String instanceId;
+            private final String databaseId;
+            private final Boolean emulator;
+            private final String keyColumn;
+            private final List<String> columns;
+            private final Integer numKeyRangeSplits;
+            private final PCollectionView<Transaction> transactionView;
+
+            private KeyRangeSplitDoFn(final String projectId,
+                                      final String instanceId,
+                                      final String databaseId,
+                                      final Boolean emulator,
+                                      final String keyColumn,
+                                      final List<String> columns,
+                                      final Integer numKeyRangeSplits,
+                                      final PCollectionView<Transaction> transactionView) {
+
+                this.projectId = projectId;
+                this.instanceId = instanceId;
+                this.databaseId = databaseId;
+                this.emulator = emulator;
+                this.keyColumn = keyColumn;
+                this.columns = columns;
+                this.numKeyRangeSplits = numKeyRangeSplits;
+                this.transactionView = transactionView;
+            }
+
+            @ProcessElement
+            public void processElement(final ProcessContext c) {
+                final String table = c.element();
+                final Transaction tx = c.sideInput(transactionView);
+                try(final Spanner spanner = SpannerUtil.connectSpanner(projectId, 1, 1, 1, true, this.emulator)) {
+                    final BatchReadOnlyTransaction transaction = spanner
+                            .getBatchClient(DatabaseId.of(projectId, instanceId, databaseId))
+                            .batchReadOnlyTransaction(tx.transactionId());
+
+                    final List<Value> boundaries = SpannerUtil.getKeyRangeBoundaries(
+                            transaction, table, keyColumn, numKeyRangeSplits);
+                    final List<KeyRange> keyRanges = SpannerUtil.createKeyRanges(boundaries);
+                    LOG.info(String.format("Table [%s] divided to [%d] key ranges by column [%s].", table, keyRanges.size(), keyColumn));
+                    for(final KeyRange keyRange : keyRanges) {
+                        c.output(ReadOperation.create()
+                                .withTable(table)
+                                .withColumns(columns)
+                                .withKeySet(KeySet.range(keyRange)));
+                    }
+                }
+            }
+
+        }
+
+        /**
+         * Reads rows of a partition. Partitions are redistributed by Reshuffle before this step, so they are read in parallel.
+         * Partitions are opaque to the client and the order of their rows is not guaranteed,
+         * so a partition can not be split and is read again from the start when a bundle is retried.
+         * Large tables are balanced by the key range splits before partitioning instead.
+         */
+        public static class ReadStructSpannerDoFn extends DoFn<KV<String, KV<BatchTransactionId, Partition>>, Struct> {
 
             private static final Logger LOG = LoggerFactory.getLogger(ReadStructSpannerDoFn.class);
 
@@ -584,22 +822,21 @@ public class SpannerSource implements SourceModule {
 
             @ProcessElement
             public void processElement(final ProcessContext c) {
-                final KV<String, Iterable<KV<BatchTransactionId, Partition>>> kv = c.element();
-                final String partitionNumberQuery = kv.getKey();
-                final KV<BatchTransactionId, Partition> value = kv.getValue().iterator().next();
+                final KV<String, KV<BatchTransactionId, Partition>> kv = c.element();
+                final String partitionNumber = kv.getKey().split("-")[0];
+                final Partition partition = kv.getValue().getValue();
 
                 final Transaction tx = c.sideInput(transactionView);
                 final BatchReadOnlyTransaction transaction = this.batchClient.batchReadOnlyTransaction(tx.transactionId()); // DO NOT CLOSE!!!
-                final Partition partition = value.getValue();
 
                 try(final ResultSet resultSet = transaction.execute(partition)) {
-                    LOG.info(String.format("Started %s th partition[%s] query.", partitionNumberQuery.split("-")[0], partition));
+                    LOG.info(String.format("Started %s th partition[%s] query.", partitionNumber, partition));
                     int count = 0;
-                    while (resultSet.next()) {
+                    while(resultSet.next()) {
                         c.output(resultSet.getCurrentRowAsStruct());
                         count++;
                     }
-                    LOG.info(String.format("%s th partition completed to read record: [%d]", partitionNumberQuery.split("-")[0], count));
+                    LOG.info(String.format("%s th partition completed to read record: [%d]", partitionNumber, count));
                 }
             }
 
@@ -646,6 +883,12 @@ public class SpannerSource implements SourceModule {
             if(parameters.getQuery() == null && parameters.getTable() == null) {
                 errorMessages.add("Parameter must contain query or table");
             }
+            if(parameters.getCatchupParallelism() != null && parameters.getCatchupParallelism() < 1) {
+                errorMessages.add("Parameter catchupParallelism must be greater than zero");
+            }
+            if(Boolean.TRUE.equals(parameters.getAdaptiveInterval()) && parameters.getOutputCheckpoint() == null) {
+                errorMessages.add("Parameter adaptiveInterval requires outputCheckpoint");
+            }
 
             if(errorMessages.size() > 0) {
                 throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
@@ -671,6 +914,15 @@ public class SpannerSource implements SourceModule {
             if(parameters.getUseCheckpointAsStartDatetime() == null) {
                 parameters.setUseCheckpointAsStartDatetime(false);
             }
+            if(parameters.getAdaptiveInterval() == null) {
+                parameters.setAdaptiveInterval(false);
+            }
+            if(parameters.getCatchupParallelism() == null) {
+                parameters.setCatchupParallelism(1);
+            }
+            if(parameters.getParallelism() == null) {
+                parameters.setParallelism(DEFAULT_MICROBATCH_PARALLELISM);
+            }
         }
 
         public PCollection<Struct> expand(final PCollection<Long> beat) {
@@ -689,7 +941,9 @@ public class SpannerSource implements SourceModule {
                     parameters.getOutputCheckpoint(),
                     parameters.getCatchupIntervalSecond(),
                     parameters.getUseCheckpointAsStartDatetime(),
-                    new MicrobatchQueryDoFn(parameters.getProjectId(), parameters.getInstanceId(), parameters.getDatabaseId(), timestampAttribute)
+                    parameters.getAdaptiveInterval(),
+                    parameters.getCatchupParallelism(),
+                    new MicrobatchQueryDoFn(parameters.getProjectId(), parameters.getInstanceId(), parameters.getDatabaseId(), timestampAttribute, parameters.getParallelism())
             ));
         }
 
@@ -697,30 +951,60 @@ public class SpannerSource implements SourceModule {
 
             private static final Logger LOG = LoggerFactory.getLogger(MicrobatchQueryDoFn.class);
 
+            // Marks the end of a partition in the queue shared by partition readers.
+            private static final Object PARTITION_END = new Object();
+            private static final int QUEUE_CAPACITY = 10000;
+
             private final String projectId;
             private final String instanceId;
             private final String databaseId;
             private final String timestampAttribute;
+            private final Integer parallelism;
 
             private transient Spanner spanner;
             private transient BatchClient client;
+            private transient ExecutorService executor;
 
-            private MicrobatchQueryDoFn(final String projectId, final String instanceId, final String databaseId, final String timestampAttribute) {
+            private MicrobatchQueryDoFn(final String projectId, final String instanceId, final String databaseId,
+                                        final String timestampAttribute, final Integer parallelism) {
                 this.projectId = projectId;
                 this.instanceId = instanceId;
                 this.databaseId = databaseId;
                 this.timestampAttribute = timestampAttribute;
+                this.parallelism = parallelism;
             }
 
             @Setup
             public void setup() {
                 this.spanner = SpannerUtil.connectSpanner(projectId, 1, 1, 1, true, false);
                 this.client = spanner.getBatchClient(DatabaseId.of(projectId, instanceId, databaseId));
+                this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("spanner-microbatch-partition-%d")
+                        .build());
+            }
+
+            @Teardown
+            public void teardown() {
+                if(this.executor != null) {
+                    this.executor.shutdownNow();
+                }
+                if(this.spanner != null) {
+                    this.spanner.close();
+                }
             }
 
             @ProcessElement
-            public void processElement(ProcessContext c) {
+            public void processElement(ProcessContext c) throws InterruptedException {
+                MicrobatchQuery.recordQueryStart();
+                try {
+                    executeQuery(c);
+                } finally {
+                    MicrobatchQuery.recordQueryEnd();
+                }
+            }
 
+            private void executeQuery(final ProcessContext c) throws InterruptedException {
                 final String query = c.element().getValue();
                 final Statement statement = Statement.of(query);
                 try(final BatchReadOnlyTransaction transaction = this.client
@@ -731,24 +1015,12 @@ public class SpannerSource implements SourceModule {
                         final List<Partition> partitions = transaction
                                 .partitionQuery(PartitionOptions.newBuilder().build(), statement);
 
-                        int count = 0;
                         final Instant start = Instant.now();
-                        for (final Partition partition : partitions) {
-                            try (final ResultSet resultSet = transaction.execute(partition)) {
-                                while (resultSet.next()) {
-                                    final Struct struct = resultSet.getCurrentRowAsStruct();
-                                    if(timestampAttribute == null) {
-                                        c.output(struct);
-                                    } else {
-                                        c.outputWithTimestamp(struct, StructSchemaUtil.getTimestamp(struct, timestampAttribute, eventTimestamp));
-                                    }
-                                    count += 1;
-                                }
-                            }
-                        }
+                        final long count = executePartitions(c, transaction, partitions, eventTimestamp);
                         final long time = Instant.now().getMillis() - start.getMillis();
                         LOG.info(String.format("Partition Query [%s] divided to [%d] partitions and result num [%d], took [%d] millisec to execute the query.",
                                 statement.getSql(), partitions.size(), count, time));
+                        MicrobatchQuery.recordQueryResult(c, count, time);
                         c.output(new TupleTag<>("checkpoint"), c.element().getKey());
                     } catch (SpannerException e) {
                         if (!e.getErrorCode().equals(ErrorCode.INVALID_ARGUMENT)) {
@@ -759,22 +1031,81 @@ public class SpannerSource implements SourceModule {
                             int count = 0;
                             while (resultSet.next()) {
                                 final Struct struct = resultSet.getCurrentRowAsStruct();
-                                if(timestampAttribute == null) {
-                                    c.output(struct);
-                                } else {
-                                    c.outputWithTimestamp(struct, StructSchemaUtil.getTimestamp(struct, timestampAttribute, eventTimestamp));
-                                }
+                                output(c, struct, eventTimestamp);
                                 count += 1;
                             }
                             final long time = Instant.now().getMillis() - start.getMillis();
                             LOG.info(String.format("Single query [%s] result num [%d], took [%d] millisec to execute the query.",
                                     statement.getSql(), count, time));
+                            MicrobatchQuery.recordQueryResult(c, count, time);
                             c.output(new TupleTag<>("checkpoint"), c.element().getKey());
                         }
                     }
                 }
             }
 
+            /**
+             * Reads partitions in parallel with the thread pool. Rows are passed to this thread through a bounded queue
+             * because outputs must be emitted from the thread processing the element.
+             * The checkpoint of the interval is output by the caller after all partitions are read.
+             */
+            private long executePartitions(final ProcessContext c,
+                                           final BatchReadOnlyTransaction transaction,
+                                           final List<Partition> partitions,
+                                           final Instant eventTimestamp) throws InterruptedException {
+
+                final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+                final List<Future<?>> futures = new ArrayList<>();
+                for(final Partition partition : partitions) {
+                    futures.add(executor.submit(() -> {
+                        try(final ResultSet resultSet = transaction.execute(partition)) {
+                            while(resultSet.next()) {
+                                queue.put(resultSet.getCurrentRowAsStruct());
+                            }
+                            queue.put(PARTITION_END);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (Throwable e) {
+                            queue.put(e);
+                        }
+                        return null;
+                    }));
+                }
+
+                long count = 0;
+                int remaining = partitions.size();
+                try {
+                    while(remaining > 0) {
+                        final Object value = queue.take();
+                        if(value == PARTITION_END) {
+                            remaining--;
+                        } else if(value instanceof RuntimeException) {
+                            throw (RuntimeException) value;
+                        } else if(value instanceof Throwable) {
+                            throw new IllegalStateException("Failed to read partition", (Throwable) value);
+                        } else {
+                            output(c, (Struct) value, eventTimestamp);
+                            count++;
+                        }
+                    }
+                } finally {
+                    if(remaining > 0) {
+                        for(final Future<?> future : futures) {
+                            future.cancel(true);
+                        }
+                    }
+                }
+                return count;
+            }
+
+            private void output(final ProcessContext c, final Struct struct, final Instant eventTimestamp) {
+                if(timestampAttribute == null) {
+                    c.output(struct);
+                } else {
+                    c.outputWithTimestamp(struct, StructSchemaUtil.getTimestamp(struct, timestampAttribute, eventTimestamp));
+                }
+            }
+
             @Override
             public org.joda.time.Duration getAllowedTimestampSkew() {
                 if(timestampAttribute != null) {
@@ -788,6 +1119,735 @@ public class SpannerSource implements SourceModule {
 
     }
 
+    /**
+     * Reads data change records of a change stream as Structs, one per modified row.
+     * The first partitions of the change stream are output as separate elements and redistributed,
+     * and each of them is read by a splittable DoFn keeping the partitions in its restriction.
+     * Each round queries every partition from its current timestamp, and a partition is replaced by its
+     * child partitions when it ends, so the number of partitions read in parallel follows the change stream.
+     * Partitions not being queried can be split off to other elements by the runner.
+     */
+    static class SpannerChangeStreamRead extends PTransform<PBegin, PCollection<Struct>> {
+
+        static final Type TYPE = Type.struct(
+                Type.StructField.of("table_name", Type.string()),
+                Type.StructField.of("mod_type", Type.string()),
+                Type.StructField.of("commit_timestamp", Type.timestamp()),
+                Type.StructField.of("record_sequence", Type.string()),
+                Type.StructField.of("server_transaction_id", Type.string()),
+                Type.StructField.of("value_capture_type", Type.string()),
+                Type.StructField.of("keys", Type.string()),
+                Type.StructField.of("new_values", Type.string()),
+                Type.StructField.of("old_values", Type.string()),
+                Type.StructField.of("partition_token", Type.string()));
+
+        private final SpannerSourceParameters parameters;
+
+        private SpannerChangeStreamRead(final SourceConfig config) {
+            this.parameters = new Gson().fromJson(config.getParameters(), SpannerSourceParameters.class);
+            validateParameters();
+            setDefaultParameters();
+        }
+
+        private void validateParameters() {
+            if(this.parameters == null) {
+                throw new IllegalArgumentException("Spanner SourceConfig must not be empty!");
+            }
+
+            // check required parameters filled
+            final List<String> errorMessages = new ArrayList<>();
+            if(parameters.getProjectId() == null) {
+                errorMessages.add("Parameter must contain projectId");
+            }
+            if(parameters.getInstanceId() == null) {
+                errorMessages.add("Parameter must contain instanceId");
+            }
+            if(parameters.getDatabaseId() == null) {
+                errorMessages.add("Parameter must contain databaseId");
+            }
+            if(parameters.getChangeStream() == null || !parameters.getChangeStream().matches("[A-Za-z][A-Za-z0-9_]*")) {
+                errorMessages.add("Parameter changeStream must be a change stream name");
+            }
+            if(parameters.getParallelism() != null && parameters.getParallelism() < 1) {
+                errorMessages.add("Parameter parallelism must be greater than zero");
+            }
+
+            if(errorMessages.size() > 0) {
+                throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
+            }
+        }
+
+        private void setDefaultParameters() {
+            if(parameters.getEmulator() == null) {
+                parameters.setEmulator(false);
+            }
+            if(parameters.getStartDatetime() == null) {
+                parameters.setStartDatetime(Instant.now().toString());
+            }
+            if(parameters.getParallelism() == null) {
+                parameters.setParallelism(DEFAULT_MICROBATCH_PARALLELISM);
+            }
+        }
+
+        public PCollection<Struct> expand(final PBegin begin) {
+            final Timestamp startTimestamp = toTimestamp(Instant.parse(parameters.getStartDatetime()));
+            final Timestamp endTimestamp = parameters.getEndDatetime() == null ? null : toTimestamp(Instant.parse(parameters.getEndDatetime()));
+            final ReadChangeStreamDoFn readChangeStreamDoFn;
+            if(endTimestamp == null) {
+                readChangeStreamDoFn = new UnboundedReadChangeStreamDoFn(
+                        parameters.getProjectId(), parameters.getInstanceId(), parameters.getDatabaseId(),
+                        parameters.getEmulator(), parameters.getParallelism(), parameters.getChangeStream());
+            } else {
+                readChangeStreamDoFn = new BoundedReadChangeStreamDoFn(
+                        parameters.getProjectId(), parameters.getInstanceId(), parameters.getDatabaseId(),
+                        parameters.getEmulator(), parameters.getParallelism(), parameters.getChangeStream(), endTimestamp);
+            }
+            return begin
+                    .apply("Seed", Create.of(parameters.getChangeStream()))
+                    .apply("QueryPartitions", ParDo.of(new QueryInitialPartitionsDoFn(
+                            parameters.getProjectId(), parameters.getInstanceId(), parameters.getDatabaseId(),
+                            parameters.getEmulator(), startTimestamp, endTimestamp)))
+                    .setCoder(SerializableCoder.of(PartitionPosition.class))
+                    .apply("ReshufflePartition", Reshuffle.viaRandomKey())
+                    .apply("ReadChangeStream", ParDo.of(readChangeStreamDoFn))
+                    .setCoder(SerializableCoder.of(Struct.class));
+        }
+
+        private static Timestamp toTimestamp(final Instant instant) {
+            return Timestamp.ofTimeMicroseconds(instant.getMillis() * 1000);
+        }
+
+        /**
+         * Reads the change stream continuously.
+         */
+        @DoFn.UnboundedPerElement
+        static class UnboundedReadChangeStreamDoFn extends ReadChangeStreamDoFn {
+
+            UnboundedReadChangeStreamDoFn(final String projectId, final String instanceId, final String databaseId,
+                                          final Boolean emulator, final Integer parallelism,
+                                          final String changeStream) {
+                super(projectId, instanceId, databaseId, emulator, parallelism, changeStream, null);
+            }
+
+        }
+
+        /**
+         * Reads the change stream up to endDatetime, so that the output is a bounded collection.
+         */
+        @DoFn.BoundedPerElement
+        static class BoundedReadChangeStreamDoFn extends ReadChangeStreamDoFn {
+
+            BoundedReadChangeStreamDoFn(final String projectId, final String instanceId, final String databaseId,
+                                        final Boolean emulator, final Integer parallelism,
+                                        final String changeStream, final Timestamp endTimestamp) {
+                super(projectId, instanceId, databaseId, emulator, parallelism, changeStream, endTimestamp);
+            }
+
+        }
+
+        /**
+         * Queries the root partition of the change stream and outputs the first partitions, so that they are
+         * read by separate elements.
+         */
+        static class QueryInitialPartitionsDoFn extends DoFn<String, PartitionPosition> {
+
+            private static final Logger LOG = LoggerFactory.getLogger(QueryInitialPartitionsDoFn.class);
+
+            private final String projectId;
+            private final String instanceId;
+            private final String databaseId;
+            private final Boolean emulator;
+            private final Timestamp startTimestamp;
+            private final Timestamp endTimestamp;
+
+            private transient Spanner spanner;
+            private transient DatabaseClient client;
+
+            QueryInitialPartitionsDoFn(final String projectId, final String instanceId, final String databaseId,
+                                       final Boolean emulator,
+                                       final Timestamp startTimestamp, final Timestamp endTimestamp) {
+                this.projectId = projectId;
+                this.instanceId = instanceId;
+                this.databaseId = databaseId;
+                this.emulator = emulator;
+                this.startTimestamp = startTimestamp;
+                this.endTimestamp = endTimestamp;
+            }
+
+            @Setup
+            public void setup() {
+                this.spanner = SpannerUtil.connectSpanner(projectId, 1, 1, 1, false, emulator);
+                this.client = spanner.getDatabaseClient(DatabaseId.of(projectId, instanceId, databaseId));
+            }
+
+            @Teardown
+            public void teardown() {
+                if(this.spanner != null) {
+                    this.spanner.close();
+                }
+            }
+
+            @ProcessElement
+            public void processElement(final ProcessContext c) {
+                final Timestamp roundEnd = endTimestamp == null ? Timestamp.MAX_VALUE : endTimestamp;
+                final PartitionResult result = ReadChangeStreamDoFn.queryPartition(
+                        client, c.element(), new PartitionPosition(null, startTimestamp), roundEnd);
+                LOG.info(String.format("Change stream [%s] starts with partitions %s", c.element(), result.getChildren()));
+                for(final PartitionPosition partition : result.getChildren()) {
+                    if(endTimestamp == null || partition.getTimestamp().compareTo(endTimestamp) < 0) {
+                        c.output(new PartitionPosition(partition.getToken(), partition.getTimestamp()));
+                    }
+                }
+            }
+
+        }
+
+        static abstract class ReadChangeStreamDoFn extends DoFn<PartitionPosition, Struct> {
+
+            private static final Logger LOG = LoggerFactory.getLogger(ReadChangeStreamDoFn.class);
+
+            private static final long HEARTBEAT_MILLIS = 10000L;
+            // Upper bound of the time range of a partition query, to bound the records held before they are claimed.
+            private static final long MAX_QUERY_RANGE_SECONDS = 60L;
+            private static final Duration RESUME_DELAY = Duration.standardSeconds(1L);
+
+            private final String projectId;
+            private final String instanceId;
+            private final String databaseId;
+            private final Boolean emulator;
+            private final Integer parallelism;
+            private final String changeStream;
+            private final Timestamp endTimestamp;
+
+            private transient Spanner spanner;
+            private transient DatabaseClient client;
+            private transient ExecutorService executor;
+
+            ReadChangeStreamDoFn(final String projectId, final String instanceId, final String databaseId,
+                                 final Boolean emulator, final Integer parallelism,
+                                 final String changeStream, final Timestamp endTimestamp) {
+                this.projectId = projectId;
+                this.instanceId = instanceId;
+                this.databaseId = databaseId;
+                this.emulator = emulator;
+                this.parallelism = parallelism;
+                this.changeStream = changeStream;
+                this.endTimestamp = endTimestamp;
+            }
+
+            @Setup
+            public void setup() {
+                this.spanner = SpannerUtil.connectSpanner(projectId, 1, parallelism, parallelism, false, emulator);
+                this.client = spanner.getDatabaseClient(DatabaseId.of(projectId, instanceId, databaseId));
+                this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("spanner-changestream-partition-%d")
+                        .build());
+            }
+
+            @Teardown
+            public void teardown() {
+                if(this.executor != null) {
+                    this.executor.shutdownNow();
+                }
+                if(this.spanner != null) {
+                    this.spanner.close();
+                }
+            }
+
+            @GetInitialRestriction
+            public PartitionSet getInitialRestriction(@Element PartitionPosition partition) {
+                return new PartitionSet(Collections.singletonList(partition), new ArrayList<>(), endTimestamp);
+            }
+
+            @NewTracker
+            public PartitionSetTracker newTracker(@Restriction PartitionSet restriction) {
+                return new PartitionSetTracker(restriction);
+            }
+
+            @GetRestrictionCoder
+            public Coder<PartitionSet> getRestrictionCoder() {
+                return SerializableCoder.of(PartitionSet.class);
+            }
+
+            @GetInitialWatermarkEstimatorState
+            public Instant getInitialWatermarkEstimatorState(@Restriction PartitionSet restriction) {
+                return restriction.getMinTimestamp();
+            }
+
+            @GetWatermarkEstimatorStateCoder
+            public Coder<Instant> getWatermarkEstimatorStateCoder() {
+                return InstantCoder.of();
+            }
+
+            @NewWatermarkEstimator
+            public WatermarkEstimators.Manual newWatermarkEstimator(@WatermarkEstimatorState Instant watermark) {
+                return new WatermarkEstimators.Manual(watermark);
+            }
+
+            @ProcessElement
+            public ProcessContinuation processElement(
+                    final RestrictionTracker<PartitionSet, PartitionResult> tracker,
+                    final ManualWatermarkEstimator<Instant> watermarkEstimator,
+                    final OutputReceiver<Struct> receiver) throws InterruptedException {
+
+                final Timestamp now = Timestamp.now();
+                final Timestamp roundEnd = endTimestamp != null && endTimestamp.compareTo(now) < 0 ? endTimestamp : now;
+
+                // Partitions are queried concurrently. Results are claimed and output by this thread in order of completion.
+                final CompletionService<PartitionResult> completion = new ExecutorCompletionService<>(executor);
+                final List<Future<PartitionResult>> futures = new ArrayList<>();
+                for(final PartitionPosition position : tracker.currentRestriction().getPartitions()) {
+                    futures.add(completion.submit(() -> queryPartition(client, changeStream, position, roundEnd)));
+                }
+
+                try {
+                    for(int i=0; i<futures.size(); i++) {
+                        final PartitionResult result = completion.take().get();
+                        // Claim fails after the runner has checkpointed the restriction,
+                        // and the remaining partitions are read by the residual.
+                        if(!tracker.tryClaim(result)) {
+                            return ProcessContinuation.stop();
+                        }
+                        for(final Struct record : result.getRecords()) {
+                            receiver.outputWithTimestamp(record, Instant.ofEpochMilli(
+                                    record.getTimestamp("commit_timestamp").toSqlTimestamp().getTime()));
+                        }
+                        if(result.getChildren().size() > 0) {
+                            LOG.info(String.format("Partition [%s] ended with child partitions %s",
+                                    result.getToken(), result.getChildren()));
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Failed to query change stream: " + changeStream, e.getCause());
+                } finally {
+                    futures.forEach(f -> f.cancel(true));
+                }
+
+                final PartitionSet restriction = tracker.currentRestriction();
+                if(restriction.getPartitions().isEmpty() && restriction.getPending().isEmpty()) {
+                    return ProcessContinuation.stop();
+                }
+                watermarkEstimator.setWatermark(restriction.getMinTimestamp());
+                return ProcessContinuation.resume().withResumeDelay(RESUME_DELAY);
+            }
+
+            static PartitionResult queryPartition(final DatabaseClient client,
+                                                  final String changeStream,
+                                                  final PartitionPosition partition,
+                                                  final Timestamp roundEnd) {
+
+                final Timestamp start = partition.getTimestamp();
+                final Timestamp rangeEnd = Timestamp.ofTimeSecondsAndNanos(
+                        start.getSeconds() + MAX_QUERY_RANGE_SECONDS, start.getNanos());
+                final Timestamp end = rangeEnd.compareTo(roundEnd) < 0 ? rangeEnd : roundEnd;
+                if(start.compareTo(end) >= 0) {
+                    return new PartitionResult(partition.getToken(), start, false, new ArrayList<>(), new ArrayList<>());
+                }
+
+                final Statement statement = Statement.newBuilder(createQuery(changeStream))
+                        .bind("start").to(start)
+                        .bind("end").to(end)
+                        .bind("token").to(partition.getToken())
+                        .bind("heartbeat").to(HEARTBEAT_MILLIS)
+                        .build();
+
+                final List<Struct> records = new ArrayList<>();
+                final List<PartitionPosition> children = new ArrayList<>();
+                try(final ResultSet resultSet = client.singleUse().executeQuery(statement)) {
+                    while(resultSet.next()) {
+                        for(final Struct changeRecord : resultSet.getStructList(0)) {
+                            for(final Struct dataChange : changeRecord.getStructList("data_change_record")) {
+                                records.addAll(convertDataChangeRecord(dataChange, partition.getToken()));
+                            }
+                            for(final Struct childPartitions : changeRecord.getStructList("child_partitions_record")) {
+                                children.addAll(createChildPartitions(childPartitions));
+                            }
+                        }
+                    }
+                }
+                // The root query only returns the first partitions, and a partition ends after its child partitions record.
+                final boolean finished = partition.getToken() == null || !children.isEmpty();
+                return new PartitionResult(partition.getToken(), end, finished, records, children);
+            }
+
+            /**
+             * JSON columns of mods are converted to STRING in the query, as the client library does not support the JSON type.
+             */
+            static String createQuery(final String changeStream) {
+                return String.format("SELECT ARRAY(SELECT AS STRUCT "
+                        + "ARRAY(SELECT AS STRUCT d.commit_timestamp, d.record_sequence, d.server_transaction_id, "
+                        + "d.table_name, d.mod_type, d.value_capture_type, "
+                        + "ARRAY(SELECT AS STRUCT TO_JSON_STRING(m.keys) AS keys, "
+                        + "TO_JSON_STRING(m.new_values) AS new_values, TO_JSON_STRING(m.old_values) AS old_values "
+                        + "FROM UNNEST(d.mods) AS m) AS mods "
+                        + "FROM UNNEST(r.data_change_record) AS d) AS data_change_record, "
+                        + "r.child_partitions_record "
+                        + "FROM UNNEST(c.ChangeRecord) AS r) AS ChangeRecord "
+                        + "FROM READ_%s (start_timestamp => @start, end_timestamp => @end, "
+                        + "partition_token => @token, heartbeat_milliseconds => @heartbeat) AS c", changeStream);
+            }
+
+            static List<Struct> convertDataChangeRecord(final Struct dataChange, final String token) {
+                final List<Struct> records = new ArrayList<>();
+                for(final Struct mod : dataChange.getStructList("mods")) {
+                    records.add(Struct.newBuilder()
+                            .set("table_name").to(dataChange.getString("table_name"))
+                            .set("mod_type").to(dataChange.getString("mod_type"))
+                            .set("commit_timestamp").to(dataChange.getTimestamp("commit_timestamp"))
+                            .set("record_sequence").to(dataChange.getString("record_sequence"))
+                            .set("server_transaction_id").to(dataChange.getString("server_transaction_id"))
+                            .set("value_capture_type").to(dataChange.getString("value_capture_type"))
+                            .set("keys").to(getJsonString(mod, "keys"))
+                            .set("new_values").to(getJsonString(mod, "new_values"))
+                            .set("old_values").to(getJsonString(mod, "old_values"))
+                            .set("partition_token").to(token)
+                            .build());
+                }
+                return records;
+            }
+
+            /**
+             * A child partition with several parents (merge) is reported by each of them.
+             * Parents are kept with the child, so that the reader of the child can tell which of them to wait for.
+             */
+            static List<PartitionPosition> createChildPartitions(final Struct childPartitions) {
+                final Timestamp childStart = childPartitions.getTimestamp("start_timestamp");
+                final List<PartitionPosition> children = new ArrayList<>();
+                for(final Struct child : childPartitions.getStructList("child_partitions")) {
+                    children.add(new PartitionPosition(
+                            child.getString("token"), childStart, child.getStringList("parent_partition_tokens")));
+                }
+                return children;
+            }
+
+            private static String getJsonString(final Struct struct, final String field) {
+                return struct.isNull(field) ? null : struct.getString(field);
+            }
+
+        }
+
+        static class PartitionPosition implements Serializable {
+
+            private final String token;
+            private final Timestamp timestamp;
+            private final List<String> parents;
+
+            PartitionPosition(final String token, final Timestamp timestamp) {
+                this(token, timestamp, new ArrayList<>());
+            }
+
+            PartitionPosition(final String token, final Timestamp timestamp, final List<String> parents) {
+                this.token = token;
+                this.timestamp = timestamp;
+                this.parents = new ArrayList<>(parents);
+            }
+
+            public String getToken() {
+                return token;
+            }
+
+            public Timestamp getTimestamp() {
+                return timestamp;
+            }
+
+            public List<String> getParents() {
+                return parents;
+            }
+
+            @Override
+            public boolean equals(final Object o) {
+                if(!(o instanceof PartitionPosition)) {
+                    return false;
+                }
+                final PartitionPosition other = (PartitionPosition) o;
+                return Objects.equals(token, other.token) && Objects.equals(timestamp, other.timestamp)
+                        && parents.equals(other.parents);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(token, timestamp, parents);
+            }
+
+            @Override
+            public String toString() {
+                if(parents.isEmpty()) {
+                    return String.format("%s@%s", token, timestamp);
+                }
+                return String.format("%s@%s(waiting %s)", token, timestamp, parents);
+            }
+
+        }
+
+        static class PartitionSet implements Serializable {
+
+            private final List<PartitionPosition> partitions;
+            private final List<PartitionPosition> pending;
+            private final Timestamp endTimestamp;
+
+            PartitionSet(final List<PartitionPosition> partitions,
+                         final List<PartitionPosition> pending,
+                         final Timestamp endTimestamp) {
+                this.partitions = partitions;
+                this.pending = pending;
+                this.endTimestamp = endTimestamp;
+            }
+
+            public List<PartitionPosition> getPartitions() {
+                return partitions;
+            }
+
+            /**
+             * Merged child partitions waiting for the parents in this restriction that have not ended yet.
+             */
+            public List<PartitionPosition> getPending() {
+                return pending;
+            }
+
+            public Timestamp getEndTimestamp() {
+                return endTimestamp;
+            }
+
+            public Instant getMinTimestamp() {
+                return partitions.stream()
+                        .map(p -> Instant.ofEpochMilli(p.getTimestamp().toSqlTimestamp().getTime()))
+                        .min(Comparator.naturalOrder())
+                        .orElse(endTimestamp == null ? Instant.now() : Instant.ofEpochMilli(endTimestamp.toSqlTimestamp().getTime()));
+            }
+
+            @Override
+            public boolean equals(final Object o) {
+                if(!(o instanceof PartitionSet)) {
+                    return false;
+                }
+                final PartitionSet other = (PartitionSet) o;
+                return partitions.equals(other.partitions) && pending.equals(other.pending)
+                        && Objects.equals(endTimestamp, other.endTimestamp);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(partitions, pending, endTimestamp);
+            }
+
+            @Override
+            public String toString() {
+                return String.format("partitions: %s, pending: %s, end: %s", partitions, pending, endTimestamp);
+            }
+
+        }
+
+        static class PartitionResult {
+
+            private final String token;
+            private final Timestamp timestamp;
+            private final boolean finished;
+            private final List<Struct> records;
+            private final List<PartitionPosition> children;
+
+            PartitionResult(final String token, final Timestamp timestamp, final boolean finished,
+                            final List<Struct> records, final List<PartitionPosition> children) {
+                this.token = token;
+                this.timestamp = timestamp;
+                this.finished = finished;
+                this.records = records;
+                this.children = children;
+            }
+
+            public String getToken() {
+                return token;
+            }
+
+            public Timestamp getTimestamp() {
+                return timestamp;
+            }
+
+            public List<Struct> getRecords() {
+                return records;
+            }
+
+            public List<PartitionPosition> getChildren() {
+                return children;
+            }
+
+            public boolean isFinished() {
+                return finished;
+            }
+
+        }
+
+        /**
+         * Claims the result of a partition query, advancing the partition or replacing it with its children.
+         * Partitions are queried concurrently and claimed in order of completion, so a claim can not be refused
+         * in the middle of processing. Therefore a split with a fraction moves to the residual only partitions
+         * that are not being queried, which are the ones claimed or added since the tracker was created.
+         * A merged child partition is read by the restriction holding the first of its parents,
+         * waiting for the other parents held by the same restriction, which are kept with it on split.
+         */
+        static class PartitionSetTracker extends RestrictionTracker<PartitionSet, PartitionResult>
+                implements RestrictionTracker.HasProgress {
+
+            private PartitionSet restriction;
+            private boolean stopped;
+            private long claimed;
+            private final Set<String> queried;
+
+            PartitionSetTracker(final PartitionSet restriction) {
+                this.restriction = restriction;
+                this.stopped = false;
+                this.claimed = 0;
+                this.queried = restriction.getPartitions().stream()
+                        .map(PartitionPosition::getToken)
+                        .collect(Collectors.toCollection(HashSet::new));
+            }
+
+            @Override
+            public boolean tryClaim(final PartitionResult result) {
+                if(stopped) {
+                    return false;
+                }
+                final List<PartitionPosition> partitions = new ArrayList<>();
+                boolean found = false;
+                for(final PartitionPosition partition : restriction.getPartitions()) {
+                    if(!found && Objects.equals(partition.getToken(), result.getToken())) {
+                        found = true;
+                        if(!result.isFinished() && !isEnd(result.getTimestamp())) {
+                            partitions.add(new PartitionPosition(result.getToken(), result.getTimestamp()));
+                        }
+                    } else {
+                        partitions.add(partition);
+                    }
+                }
+                if(!found) {
+                    throw new IllegalStateException(String.format(
+                            "Partition [%s] is not in the restriction %s", result.getToken(), restriction));
+                }
+                final List<PartitionPosition> pending = new ArrayList<>(restriction.getPending());
+                for(final PartitionPosition child : result.getChildren()) {
+                    if(isEnd(child.getTimestamp())) {
+                        continue;
+                    }
+                    final PartitionPosition readable = addChild(partitions, pending, child, result.getToken());
+                    if(readable != null) {
+                        partitions.add(readable);
+                    }
+                }
+                this.restriction = new PartitionSet(partitions, pending, restriction.getEndTimestamp());
+                this.queried.remove(result.getToken());
+                this.claimed++;
+                return true;
+            }
+
+            @Override
+            public PartitionSet currentRestriction() {
+                return restriction;
+            }
+
+            @Override
+            public SplitResult<PartitionSet> trySplit(final double fractionOfRemainder) {
+                if(stopped || (restriction.getPartitions().isEmpty() && restriction.getPending().isEmpty())) {
+                    return null;
+                }
+                if(fractionOfRemainder == 0D) {
+                    this.stopped = true;
+                    final PartitionSet primary = new PartitionSet(
+                            new ArrayList<>(), new ArrayList<>(), restriction.getEndTimestamp());
+                    final PartitionSet residual = restriction;
+                    this.restriction = primary;
+                    return SplitResult.of(primary, residual);
+                }
+
+                final Set<String> waited = restriction.getPending().stream()
+                        .flatMap(p -> p.getParents().stream())
+                        .collect(Collectors.toSet());
+                final List<PartitionPosition> movables = restriction.getPartitions().stream()
+                        .filter(p -> !queried.contains(p.getToken()) && !waited.contains(p.getToken()))
+                        .collect(Collectors.toList());
+                final int residualSize = Math.min(movables.size(),
+                        (int) Math.floor(restriction.getPartitions().size() * (1D - fractionOfRemainder)));
+                if(residualSize <= 0) {
+                    return null;
+                }
+                final List<PartitionPosition> residualPartitions = new ArrayList<>(
+                        movables.subList(movables.size() - residualSize, movables.size()));
+                final List<PartitionPosition> primaryPartitions = new ArrayList<>(restriction.getPartitions());
+                primaryPartitions.removeAll(residualPartitions);
+
+                final PartitionSet primary = new PartitionSet(
+                        primaryPartitions, restriction.getPending(), restriction.getEndTimestamp());
+                final PartitionSet residual = new PartitionSet(
+                        residualPartitions, new ArrayList<>(), restriction.getEndTimestamp());
+                this.restriction = primary;
+                return SplitResult.of(primary, residual);
+            }
+
+            @Override
+            public void checkDone() throws IllegalStateException {
+                if(!stopped && !(restriction.getPartitions().isEmpty() && restriction.getPending().isEmpty())) {
+                    throw new IllegalStateException(String.format(
+                            "Partitions %s are not read to the end and not checkpointed", restriction));
+                }
+            }
+
+            @Override
+            public IsBounded isBounded() {
+                return restriction.getEndTimestamp() == null ? IsBounded.UNBOUNDED : IsBounded.BOUNDED;
+            }
+
+            @Override
+            public Progress getProgress() {
+                return Progress.from(claimed, restriction.getPartitions().size() + restriction.getPending().size());
+            }
+
+            private boolean isEnd(final Timestamp timestamp) {
+                return restriction.getEndTimestamp() != null && timestamp.compareTo(restriction.getEndTimestamp()) >= 0;
+            }
+
+            /**
+             * Returns the child partition if it can be read, otherwise keeps it in pending until the parents
+             * read by this restriction have ended, as records of a key in the child must be read after the ones in its parents.
+             * A merged child is reported by every parent, and only the restriction reading the first parent reads it,
+             * because the other parents may be read by other restrictions. Records of parents read by other restrictions
+             * have earlier commit timestamps than the child, and the watermark is held by those restrictions until they end.
+             */
+            private static PartitionPosition addChild(final List<PartitionPosition> partitions,
+                                                      final List<PartitionPosition> pending,
+                                                      final PartitionPosition child,
+                                                      final String parent) {
+
+                if(child.getParents().size() <= 1) {
+                    return new PartitionPosition(child.getToken(), child.getTimestamp());
+                }
+                final List<String> parents;
+                final Optional<PartitionPosition> waiting = pending.stream()
+                        .filter(p -> p.getToken().equals(child.getToken()))
+                        .findAny();
+                if(waiting.isPresent()) {
+                    pending.remove(waiting.get());
+                    parents = new ArrayList<>(waiting.get().getParents());
+                    parents.remove(parent);
+                } else if(parent.equals(Collections.min(child.getParents()))) {
+                    final Set<String> reading = partitions.stream()
+                            .map(PartitionPosition::getToken)
+                            .collect(Collectors.toSet());
+                    parents = child.getParents().stream()
+                            .filter(p -> !p.equals(parent) && reading.contains(p))
+                            .collect(Collectors.toList());
+                } else {
+                    return null;
+                }
+                if(parents.isEmpty()) {
+                    return new PartitionPosition(child.getToken(), child.getTimestamp());
+                }
+                pending.add(new PartitionPosition(child.getToken(), child.getTimestamp(), parents));
+                return null;
+            }
+
+        }
+
+    }
+
     public static class CreateTransactionFn extends DoFn<Object, Transaction> {
 
         private static final Logger LOG = LoggerFactory.getLogger(CreateTransactionFn.class);
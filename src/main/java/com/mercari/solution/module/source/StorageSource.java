@@ -1,35 +1,86 @@
 package com.mercari.solution.module.source;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
 import com.mercari.solution.config.SourceConfig;
 import com.mercari.solution.module.DataType;
 import com.mercari.solution.module.FCollection;
 import com.mercari.solution.module.SourceModule;
+import com.mercari.solution.util.Filter.ConditionLeaf;
+import com.mercari.solution.util.Filter.ConditionNode;
+import com.mercari.solution.util.OrcUtil;
+import com.mercari.solution.util.ParquetUtil;
+import com.mercari.solution.util.XmlUtil;
 import com.mercari.solution.util.schema.AvroSchemaUtil;
 import com.mercari.solution.util.aws.S3Util;
 import com.mercari.solution.util.converter.*;
 import com.mercari.solution.util.gcp.StorageUtil;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.beam.sdk.coders.AvroCoder;
+import org.apache.beam.sdk.coders.*;
 import org.apache.beam.sdk.io.AvroIO;
 import org.apache.beam.sdk.io.Compression;
+import org.apache.beam.sdk.io.FileIO;
+import org.apache.beam.sdk.io.FileSystems;
 import org.apache.beam.sdk.io.TextIO;
 import org.apache.beam.sdk.io.aws.options.AwsOptions;
-import org.apache.beam.sdk.io.parquet.ParquetIO;
+import org.apache.beam.sdk.io.fs.MatchResult;
+import org.apache.beam.sdk.io.fs.MetadataCoder;
+import org.apache.beam.sdk.io.range.OffsetRange;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.transforms.*;
+import org.apache.beam.sdk.transforms.splittabledofn.OffsetRangeTracker;
+import org.apache.beam.sdk.transforms.splittabledofn.RestrictionTracker;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
 import org.apache.beam.sdk.values.TypeDescriptor;
-
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.orc.StripeInformation;
+import org.apache.orc.TypeDescription;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.joda.time.Duration;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class StorageSource implements SourceModule {
 
+    private static final int DEFAULT_POLL_INTERVAL_SECONDS = 60;
+    private static final int MAX_POLL_INTERVAL_SECONDS = 3600;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_MAX_BATCH_DELAY_SECONDS = 10;
+    // Number of keys files are grouped by, bounding the parallelism of reading batches.
+    private static final int BATCH_SHARDS = 64;
+
     private class StorageSourceParameters implements Serializable {
 
         private String input;
@@ -37,6 +88,15 @@ public class StorageSource implements SourceModule {
         private String compression;
         private String filterPrefix;
         private String targetFormat;
+        private List<String> fields;
+        private JsonElement filter;
+        private String recordPath;
+        private Integer splitSizeMB;
+
+        // for streaming mode
+        private Integer pollIntervalSeconds;
+        private Integer batchSize;
+        private Integer maxBatchDelaySeconds;
 
         public String getInput() {
             return input;
@@ -77,14 +137,69 @@ public class StorageSource implements SourceModule {
         public void setTargetFormat(String targetFormat) {
             this.targetFormat = targetFormat;
         }
+
+        public List<String> getFields() {
+            return fields;
+        }
+
+        public void setFields(List<String> fields) {
+            this.fields = fields;
+        }
+
+        public JsonElement getFilter() {
+            return filter;
+        }
+
+        public void setFilter(JsonElement filter) {
+            this.filter = filter;
+        }
+
+        public String getRecordPath() {
+            return recordPath;
+        }
+
+        public void setRecordPath(String recordPath) {
+            this.recordPath = recordPath;
+        }
+
+        public Integer getSplitSizeMB() {
+            return splitSizeMB;
+        }
+
+        public void setSplitSizeMB(Integer splitSizeMB) {
+            this.splitSizeMB = splitSizeMB;
+        }
+
+        public Integer getPollIntervalSeconds() {
+            return pollIntervalSeconds;
+        }
+
+        public void setPollIntervalSeconds(Integer pollIntervalSeconds) {
+            this.pollIntervalSeconds = pollIntervalSeconds;
+        }
+
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Integer getMaxBatchDelaySeconds() {
+            return maxBatchDelaySeconds;
+        }
+
+        public void setMaxBatchDelaySeconds(Integer maxBatchDelaySeconds) {
+            this.maxBatchDelaySeconds = maxBatchDelaySeconds;
+        }
     }
 
     public String getName() { return "storage"; }
 
     public Map<String, FCollection<?>> expand(PBegin begin, SourceConfig config, PCollection<Long> beats, List<FCollection<?>> waits) {
         if (config.getMicrobatch() != null && config.getMicrobatch()) {
-            //inputs.put(config.getName(), beats.apply(config.getName(), StorageSource.microbatch(config)));
-            return Collections.emptyMap();
+            return Collections.singletonMap(config.getName(), StorageSource.stream(begin, config));
         } else {
             return Collections.singletonMap(config.getName(), StorageSource.batch(begin, config));
         }
@@ -95,11 +210,18 @@ public class StorageSource implements SourceModule {
         validateParameters(parameters);
         switch (parameters.getFormat().toLowerCase()) {
             case "avro":
-            case "parquet": {
+            case "parquet":
+            case "orc": {
                 final StorageAvroBatchSource sourceAvro = new StorageAvroBatchSource(config);
                 final PCollection<GenericRecord> outputAvro = begin.apply(config.getName(), sourceAvro);
                 return FCollection.of(config.getName(), outputAvro, DataType.AVRO, sourceAvro.schema);
             }
+            case "jsonarray":
+            case "xml": {
+                final StorageDocumentAvroBatchSource sourceDocument = new StorageDocumentAvroBatchSource(config);
+                final PCollection<GenericRecord> outputDocument = begin.apply(config.getName(), sourceDocument);
+                return FCollection.of(config.getName(), outputDocument, DataType.AVRO, sourceDocument.schema);
+            }
             case "csv":
             case "json": {
                 if(parameters.getTargetFormat() != null && "row".equals(parameters.getTargetFormat().trim().toLowerCase())) {
@@ -129,18 +251,82 @@ public class StorageSource implements SourceModule {
         }
         if(!"avro".equals(parameters.getFormat().toLowerCase())
                 && !"parquet".equals(parameters.getFormat().toLowerCase())
+                && !"orc".equals(parameters.getFormat().toLowerCase())
                 && !"csv".equals(parameters.getFormat().toLowerCase())
-                && !"json".equals(parameters.getFormat().toLowerCase())) {
+                && !"json".equals(parameters.getFormat().toLowerCase())
+                && !"jsonarray".equals(parameters.getFormat().toLowerCase())
+                && !"xml".equals(parameters.getFormat().toLowerCase())) {
             errorMessages.add("Parameter not support format: " + parameters.getFormat());
         }
+        if("xml".equals(parameters.getFormat().toLowerCase())
+                && parseRecordPath(parameters.getRecordPath()).isEmpty()) {
+            errorMessages.add("Parameter must contain recordPath for xml format");
+        }
+        if(parameters.getSplitSizeMB() != null && parameters.getSplitSizeMB() < 1) {
+            errorMessages.add("Parameter splitSizeMB must be greater than zero");
+        }
 
         if(errorMessages.size() > 0) {
             throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
         }
     }
 
-    public static StorageMicrobatchRead microbatch(final SourceConfig config) {
-        return new StorageMicrobatchRead(config);
+    public static FCollection stream(final PBegin begin, final SourceConfig config) {
+        final StorageSourceParameters parameters = new Gson().fromJson(config.getParameters(), StorageSourceParameters.class);
+        validateParameters(parameters);
+        validateStreamParameters(parameters);
+        setDefaultStreamParameters(parameters);
+        // Watch outputs each matched file path only once, so files already read are not read again.
+        final PCollection<MatchResult.Metadata> files = begin
+                .apply(config.getName() + "MatchContinuously", FileIO.match()
+                        .filepattern(parameters.getInput())
+                        .continuously(Duration.standardSeconds(parameters.getPollIntervalSeconds()), Watch.Growth.never()));
+        return readFiles(files, config, parameters);
+    }
+
+    static FCollection<GenericRecord> readFiles(final PCollection<MatchResult.Metadata> files, final SourceConfig config) {
+        final StorageSourceParameters parameters = new Gson().fromJson(config.getParameters(), StorageSourceParameters.class);
+        validateParameters(parameters);
+        validateStreamParameters(parameters);
+        setDefaultStreamParameters(parameters);
+        return readFiles(files, config, parameters);
+    }
+
+    private static FCollection<GenericRecord> readFiles(final PCollection<MatchResult.Metadata> files,
+                                                        final SourceConfig config,
+                                                        final StorageSourceParameters parameters) {
+        final StorageStreamSource source = new StorageStreamSource(config, parameters);
+        final PCollection<GenericRecord> output = files.apply(config.getName(), source);
+        return FCollection.of(config.getName(), output, DataType.AVRO, source.schema);
+    }
+
+    private static void validateStreamParameters(final StorageSourceParameters parameters) {
+        final List<String> errorMessages = new ArrayList<>();
+        if(parameters.getPollIntervalSeconds() != null
+                && (parameters.getPollIntervalSeconds() < 1 || parameters.getPollIntervalSeconds() > MAX_POLL_INTERVAL_SECONDS)) {
+            errorMessages.add("Parameter pollIntervalSeconds must be between 1 and " + MAX_POLL_INTERVAL_SECONDS);
+        }
+        if(parameters.getBatchSize() != null && parameters.getBatchSize() < 1) {
+            errorMessages.add("Parameter batchSize must be greater than zero");
+        }
+        if(parameters.getMaxBatchDelaySeconds() != null && parameters.getMaxBatchDelaySeconds() < 1) {
+            errorMessages.add("Parameter maxBatchDelaySeconds must be greater than zero");
+        }
+        if(errorMessages.size() > 0) {
+            throw new IllegalArgumentException(errorMessages.stream().collect(Collectors.joining(", ")));
+        }
+    }
+
+    private static void setDefaultStreamParameters(final StorageSourceParameters parameters) {
+        if(parameters.getPollIntervalSeconds() == null) {
+            parameters.setPollIntervalSeconds(DEFAULT_POLL_INTERVAL_SECONDS);
+        }
+        if(parameters.getBatchSize() == null) {
+            parameters.setBatchSize(DEFAULT_BATCH_SIZE);
+        }
+        if(parameters.getMaxBatchDelaySeconds() == null) {
+            parameters.setMaxBatchDelaySeconds(DEFAULT_MAX_BATCH_DELAY_SECONDS);
+        }
     }
 
     public static class StorageAvroBatchSource
@@ -170,35 +356,296 @@ public class StorageSource implements SourceModule {
             final String input = parameters.getInput();
             final String format = parameters.getFormat();
 
+            // Fields used by the filter are read as well, and dropped after filtering.
+            final List<String> readFields = getReadFields(parameters.getFields(), parameters.getFilter());
+            final String filterString = parameters.getFilter() == null ? null : parameters.getFilter().toString();
+
             final PCollection<GenericRecord> records;
             switch (format.trim().toLowerCase()) {
                 case "avro": {
-                    this.schema = getAvroSchema(parameters.getInput(), inputSchema, options);
+                    final org.apache.avro.Schema fileSchema = getAvroSchema(parameters.getInput(), inputSchema, options);
+                    // Avro skips fields not in the reader schema without decoding them.
+                    final org.apache.avro.Schema readSchema = selectFields(fileSchema, readFields);
+                    this.schema = selectFields(fileSchema, parameters.getFields());
                     records = begin
                             .apply("ReadAvro", AvroIO
-                                    .readGenericRecords(this.schema)
+                                    .readGenericRecords(readSchema)
                                     .from(input));
                     break;
                 }
                 case "parquet": {
-                    this.schema = getParquetSchema(parameters.getInput(), inputSchema, options);
+                    final org.apache.avro.Schema fileSchema = getParquetSchema(parameters.getInput(), inputSchema, options);
+                    final org.apache.avro.Schema readSchema = selectFields(fileSchema, readFields);
+                    this.schema = selectFields(fileSchema, parameters.getFields());
                     records = begin
-                            .apply("ReadParquet", ParquetIO
-                                    .read(this.schema)
-                                    .from(input));
+                            .apply("MatchParquet", FileIO.match().filepattern(input))
+                            .apply("ReadMatches", FileIO.readMatches())
+                            .apply("ReadParquet", ParDo.of(new ReadParquetDoFn(
+                                    fileSchema.toString(), readSchema.toString(), filterString)))
+                            .setCoder(AvroCoder.of(readSchema));
+                    break;
+                }
+                case "orc": {
+                    final org.apache.avro.Schema fileSchema = getOrcSchema(parameters.getInput(), inputSchema, options);
+                    final org.apache.avro.Schema readSchema = selectFields(fileSchema, readFields);
+                    this.schema = selectFields(fileSchema, parameters.getFields());
+                    records = begin
+                            .apply("MatchOrc", FileIO.match().filepattern(input))
+                            .apply("ReadMatches", FileIO.readMatches())
+                            .apply("ReadOrc", ParDo.of(new ReadOrcDoFn(readSchema.toString())))
+                            .setCoder(AvroCoder.of(readSchema));
                     break;
                 }
                 default:
                     throw new IllegalArgumentException("Storage module not support format: " + format);
             }
 
+            final PCollection<GenericRecord> outputs;
+            if(filterString == null && readFields == null) {
+                outputs = records;
+            } else {
+                outputs = records
+                        .apply("FilterAndSelect", ParDo.of(new FilterAndSelectDoFn(filterString, this.schema.toString())))
+                        .setCoder(AvroCoder.of(this.schema));
+            }
+
             if(timestampAttribute == null) {
-                return records;
+                return outputs;
             } else {
-                return records.apply("WithTimestamp", DataTypeTransform
+                return outputs.apply("WithTimestamp", DataTypeTransform
                         .withTimestamp(DataType.AVRO, timestampAttribute, timestampDefault));
             }
         }
+
+        static List<String> getReadFields(final List<String> fields, final JsonElement filter) {
+            if(fields == null || fields.size() == 0) {
+                return null;
+            }
+            final List<String> readFields = new ArrayList<>(fields);
+            if(filter != null) {
+                collectKeys(parseFilter(filter), readFields);
+            }
+            return readFields;
+        }
+
+        private static void collectKeys(final ConditionNode condition, final List<String> keys) {
+            if(condition.getLeaves() != null) {
+                for(final ConditionLeaf leaf : condition.getLeaves()) {
+                    final String key = leaf.getKey().split("\\.", 2)[0];
+                    if(!keys.contains(key)) {
+                        keys.add(key);
+                    }
+                }
+            }
+            if(condition.getNodes() != null) {
+                for(final ConditionNode node : condition.getNodes()) {
+                    collectKeys(node, keys);
+                }
+            }
+        }
+
+        static org.apache.avro.Schema selectFields(final org.apache.avro.Schema schema, final List<String> fields) {
+            if(fields == null || fields.size() == 0) {
+                return schema;
+            }
+            final List<org.apache.avro.Schema.Field> selectedFields = new ArrayList<>();
+            for(final String field : fields) {
+                final org.apache.avro.Schema.Field selectedField = schema.getField(field);
+                if(selectedField == null) {
+                    throw new IllegalArgumentException("Storage source field: " + field + " not found in schema: " + schema);
+                }
+                selectedFields.add(new org.apache.avro.Schema.Field(selectedField, selectedField.schema()));
+            }
+            // Keep the record name so that the reader schema resolves against the file schema.
+            return org.apache.avro.Schema.createRecord(
+                    schema.getName(), schema.getDoc(), schema.getNamespace(), schema.isError(), selectedFields);
+        }
+
+    }
+
+    /**
+     * Reads a parquet file requesting only the columns of readSchema.
+     * Row groups and pages whose column statistics do not match the filter are skipped.
+     */
+    private static class ReadParquetDoFn extends DoFn<FileIO.ReadableFile, GenericRecord> {
+
+        private final String fileSchemaString;
+        private final String readSchemaString;
+        private final String filterString;
+
+        private transient org.apache.avro.Schema readSchema;
+        private transient FilterCompat.Filter filter;
+
+        ReadParquetDoFn(final String fileSchemaString, final String readSchemaString, final String filterString) {
+            this.fileSchemaString = fileSchemaString;
+            this.readSchemaString = readSchemaString;
+            this.filterString = filterString;
+        }
+
+        @Setup
+        public void setup() {
+            this.readSchema = new org.apache.avro.Schema.Parser().parse(readSchemaString);
+            this.filter = createParquetFilter(fileSchemaString, filterString);
+        }
+
+        @ProcessElement
+        public void processElement(final @Element FileIO.ReadableFile file,
+                                   final OutputReceiver<GenericRecord> receiver) throws IOException {
+            readParquet(file.openSeekable(), readSchema, filter, receiver);
+        }
+
+    }
+
+    private static FilterCompat.Filter createParquetFilter(final String fileSchemaString, final String filterString) {
+        if(filterString == null) {
+            return FilterCompat.NOOP;
+        }
+        final org.apache.avro.Schema fileSchema = new org.apache.avro.Schema.Parser().parse(fileSchemaString);
+        final FilterPredicate predicate = ParquetUtil.createFilterPredicate(
+                fileSchema, parseFilter(filterString));
+        return predicate == null ? FilterCompat.NOOP : FilterCompat.get(predicate);
+    }
+
+    private static void readParquet(final SeekableByteChannel channel,
+                                    final org.apache.avro.Schema readSchema,
+                                    final FilterCompat.Filter filter,
+                                    final DoFn.OutputReceiver<GenericRecord> receiver) throws IOException {
+
+        final Configuration conf = new Configuration();
+        AvroReadSupport.setRequestedProjection(conf, readSchema);
+        AvroReadSupport.setAvroReadSchema(conf, readSchema);
+        try(final ParquetReader<GenericRecord> reader = AvroParquetReader
+                .<GenericRecord>builder(new ParquetUtil.ChannelInputFile(channel))
+                .withDataModel(GenericData.get())
+                .withConf(conf)
+                .withFilter(filter)
+                .build()) {
+
+            GenericRecord record;
+            while((record = reader.read()) != null) {
+                receiver.output(record);
+            }
+        }
+    }
+
+    /**
+     * Reads orc files stripe by stripe, so that a large file is read by many workers.
+     * Only the columns in the schema are read, and each batch is converted into records column by column.
+     */
+    private static class ReadOrcDoFn extends DoFn<FileIO.ReadableFile, GenericRecord> {
+
+        private final String schemaString;
+
+        private transient org.apache.avro.Schema schema;
+
+        ReadOrcDoFn(final String schemaString) {
+            this.schemaString = schemaString;
+        }
+
+        @Setup
+        public void setup() {
+            this.schema = new org.apache.avro.Schema.Parser().parse(schemaString);
+        }
+
+        @GetInitialRestriction
+        public OffsetRange getInitialRestriction(@Element FileIO.ReadableFile file) throws IOException {
+            try(final Reader reader = OrcUtil.createReader(file.getMetadata().resourceId(), file.getMetadata().sizeBytes())) {
+                return new OffsetRange(0, reader.getStripes().size());
+            }
+        }
+
+        @SplitRestriction
+        public void splitRestriction(@Restriction OffsetRange range, OutputReceiver<OffsetRange> receiver) {
+            for(final OffsetRange stripe : range.split(1, 1)) {
+                receiver.output(stripe);
+            }
+        }
+
+        @NewTracker
+        public OffsetRangeTracker newTracker(@Restriction OffsetRange range) {
+            return new OffsetRangeTracker(range);
+        }
+
+        @GetRestrictionCoder
+        public Coder<OffsetRange> getRestrictionCoder() {
+            return SerializableCoder.of(OffsetRange.class);
+        }
+
+        @ProcessElement
+        public void processElement(final @Element FileIO.ReadableFile file,
+                                   final RestrictionTracker<OffsetRange, Long> tracker,
+                                   final OutputReceiver<GenericRecord> receiver) throws IOException {
+
+            try(final Reader reader = OrcUtil.createReader(file.getMetadata().resourceId(), file.getMetadata().sizeBytes())) {
+                final boolean[] include = createOrcInclude(reader.getSchema(), schema);
+                final List<StripeInformation> stripes = reader.getStripes();
+                final VectorizedRowBatch batch = reader.getSchema().createRowBatch();
+                for(long i = tracker.currentRestriction().getFrom(); tracker.tryClaim(i); i++) {
+                    final StripeInformation stripe = stripes.get((int) i);
+                    final Reader.Options readerOptions = new Reader.Options()
+                            .range(stripe.getOffset(), stripe.getLength())
+                            .include(include);
+                    readOrc(reader, readerOptions, batch, schema, receiver);
+                }
+            }
+        }
+
+    }
+
+    private static boolean[] createOrcInclude(final TypeDescription type, final org.apache.avro.Schema schema) {
+        return OrcUtil.createInclude(type, schema.getFields().stream()
+                .map(org.apache.avro.Schema.Field::name)
+                .collect(Collectors.toList()));
+    }
+
+    private static void readOrc(final Reader reader,
+                                final Reader.Options readerOptions,
+                                final VectorizedRowBatch batch,
+                                final org.apache.avro.Schema schema,
+                                final DoFn.OutputReceiver<GenericRecord> receiver) throws IOException {
+
+        final TypeDescription type = reader.getSchema();
+        try(final RecordReader rows = reader.rows(readerOptions)) {
+            while(rows.nextBatch(batch)) {
+                for(final GenericRecord record : OrcUtil.convert(batch, type, schema)) {
+                    receiver.output(record);
+                }
+            }
+        }
+    }
+
+    private static class FilterAndSelectDoFn extends DoFn<GenericRecord, GenericRecord> {
+
+        private final String filterString;
+        private final String schemaString;
+
+        private transient ConditionNode condition;
+        private transient org.apache.avro.Schema schema;
+
+        FilterAndSelectDoFn(final String filterString, final String schemaString) {
+            this.filterString = filterString;
+            this.schemaString = schemaString;
+        }
+
+        @Setup
+        public void setup() {
+            this.condition = filterString == null ? null : parseFilter(filterString);
+            this.schema = new org.apache.avro.Schema.Parser().parse(schemaString);
+        }
+
+        @ProcessElement
+        public void processElement(final ProcessContext c) {
+            final GenericRecord record = c.element();
+            if(condition != null && !isMatched(record, condition)) {
+                return;
+            }
+            if(record.getSchema().getFields().size() == schema.getFields().size()) {
+                c.output(record);
+            } else {
+                c.output(AvroSchemaUtil.toBuilder(schema, record).build());
+            }
+        }
+
     }
 
     public static class StorageTextAvroBatchSource
@@ -346,20 +793,490 @@ public class StorageSource implements SourceModule {
         }
     }
 
-    private static class StorageMicrobatchRead extends PTransform<PCollection<Long>, PCollection<Row>> {
+    /**
+     * Reads files as they arrive, matching the input pattern continuously.
+     * Matched files are grouped into batches, so that many small files are read in one bundle.
+     */
+    private static class StorageStreamSource extends PTransform<PCollection<MatchResult.Metadata>, PCollection<GenericRecord>> {
+
+        private org.apache.avro.Schema schema;
 
-        private final SourceConfig config;
+        private final StorageSourceParameters parameters;
+        private final SourceConfig.InputSchema inputSchema;
+        private final String timestampAttribute;
+        private final String timestampDefault;
 
-        private StorageMicrobatchRead(final SourceConfig config) {
-            this.config = config;
+        private StorageStreamSource(final SourceConfig config, final StorageSourceParameters parameters) {
+            this.inputSchema = config.getSchema();
+            this.parameters = parameters;
+            this.timestampAttribute = config.getTimestampAttribute();
+            this.timestampDefault = config.getTimestampDefault();
         }
 
-        public PCollection<Row> expand(final PCollection<Long> begin) {
-            return null;
+        public PCollection<GenericRecord> expand(final PCollection<MatchResult.Metadata> files) {
+
+            final PipelineOptions options = files.getPipeline().getOptions();
+            final String format = parameters.getFormat().trim().toLowerCase();
+
+            final org.apache.avro.Schema fileSchema;
+            final List<String> readFields;
+            final String filterString;
+            switch (format) {
+                case "avro":
+                case "parquet":
+                case "orc": {
+                    if("avro".equals(format)) {
+                        fileSchema = getAvroSchema(parameters.getInput(), inputSchema, options);
+                    } else if("parquet".equals(format)) {
+                        fileSchema = getParquetSchema(parameters.getInput(), inputSchema, options);
+                    } else {
+                        fileSchema = getOrcSchema(parameters.getInput(), inputSchema, options);
+                    }
+                    readFields = StorageAvroBatchSource.getReadFields(parameters.getFields(), parameters.getFilter());
+                    filterString = parameters.getFilter() == null ? null : parameters.getFilter().toString();
+                    this.schema = StorageAvroBatchSource.selectFields(fileSchema, parameters.getFields());
+                    break;
+                }
+                case "csv":
+                case "json":
+                case "jsonarray":
+                case "xml": {
+                    if (this.inputSchema == null || (inputSchema.getAvroSchema() == null && inputSchema.getFields() == null)) {
+                        fileSchema = TextToRecordConverter.DEFAULT_SCHEMA;
+                    } else {
+                        fileSchema = SourceConfig.convertAvroSchema(inputSchema);
+                    }
+                    readFields = null;
+                    filterString = null;
+                    this.schema = fileSchema;
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Storage module not support format: " + format);
+            }
+            final org.apache.avro.Schema readSchema = StorageAvroBatchSource.selectFields(fileSchema, readFields);
+
+            final PCollection<GenericRecord> records = files
+                    .apply("WithShardKey", WithKeys.of((MatchResult.Metadata metadata) ->
+                            Math.floorMod(metadata.resourceId().toString().hashCode(), BATCH_SHARDS))
+                            .withKeyType(TypeDescriptors.integers()))
+                    .setCoder(KvCoder.of(VarIntCoder.of(), MetadataCoder.of()))
+                    .apply("BatchFiles", GroupIntoBatches.<Integer, MatchResult.Metadata>ofSize(parameters.getBatchSize())
+                            .withMaxBufferingDuration(Duration.standardSeconds(parameters.getMaxBatchDelaySeconds())))
+                    .apply("ReadFiles", ParDo.of(new ReadFileBatchDoFn(
+                            format, fileSchema.toString(), readSchema.toString(), filterString,
+                            parameters.getCompression(), parameters.getFilterPrefix(), parameters.getRecordPath())))
+                    .setCoder(AvroCoder.of(readSchema));
+
+            final PCollection<GenericRecord> outputs;
+            if(filterString == null && readFields == null) {
+                outputs = records;
+            } else {
+                outputs = records
+                        .apply("FilterAndSelect", ParDo.of(new FilterAndSelectDoFn(filterString, this.schema.toString())))
+                        .setCoder(AvroCoder.of(this.schema));
+            }
+
+            if(timestampAttribute == null) {
+                return outputs;
+            } else {
+                return outputs.apply("WithTimestamp", DataTypeTransform
+                        .withTimestamp(DataType.AVRO, timestampAttribute, timestampDefault));
+            }
         }
 
     }
 
+    private static class ReadFileBatchDoFn extends DoFn<KV<Integer, Iterable<MatchResult.Metadata>>, GenericRecord> {
+
+        private final String format;
+        private final String fileSchemaString;
+        private final String readSchemaString;
+        private final String filterString;
+        private final String compression;
+        private final String filterPrefix;
+        private final List<String> recordPath;
+
+        private transient org.apache.avro.Schema readSchema;
+        private transient FilterCompat.Filter parquetFilter;
+
+        ReadFileBatchDoFn(final String format,
+                          final String fileSchemaString,
+                          final String readSchemaString,
+                          final String filterString,
+                          final String compression,
+                          final String filterPrefix,
+                          final String recordPath) {
+
+            this.format = format;
+            this.fileSchemaString = fileSchemaString;
+            this.readSchemaString = readSchemaString;
+            this.filterString = filterString;
+            this.compression = compression;
+            this.filterPrefix = filterPrefix;
+            this.recordPath = parseRecordPath(recordPath);
+        }
+
+        @Setup
+        public void setup() {
+            this.readSchema = new org.apache.avro.Schema.Parser().parse(readSchemaString);
+            if("parquet".equals(format)) {
+                this.parquetFilter = createParquetFilter(fileSchemaString, filterString);
+            }
+        }
+
+        @ProcessElement
+        public void processElement(final @Element KV<Integer, Iterable<MatchResult.Metadata>> element,
+                                   final OutputReceiver<GenericRecord> receiver) throws IOException {
+
+            for(final MatchResult.Metadata metadata : element.getValue()) {
+                switch (format) {
+                    case "avro": {
+                        // Fields not in the read schema are skipped by schema resolution.
+                        try(final InputStream is = Channels.newInputStream(FileSystems.open(metadata.resourceId()));
+                            final DataFileStream<GenericRecord> stream = new DataFileStream<>(is, new GenericDatumReader<>(readSchema))) {
+                            while(stream.hasNext()) {
+                                receiver.output(stream.next());
+                            }
+                        }
+                        break;
+                    }
+                    case "parquet": {
+                        readParquet((SeekableByteChannel) FileSystems.open(metadata.resourceId()), readSchema, parquetFilter, receiver);
+                        break;
+                    }
+                    case "orc": {
+                        try(final Reader reader = OrcUtil.createReader(metadata.resourceId(), metadata.sizeBytes())) {
+                            final Reader.Options readerOptions = new Reader.Options()
+                                    .include(createOrcInclude(reader.getSchema(), readSchema));
+                            readOrc(reader, readerOptions, reader.getSchema().createRowBatch(), readSchema, receiver);
+                        }
+                        break;
+                    }
+                    case "csv":
+                    case "json": {
+                        readText(metadata, receiver);
+                        break;
+                    }
+                    case "jsonarray": {
+                        readJsonArray(openDecompressed(metadata), recordPath, readSchema, receiver);
+                        break;
+                    }
+                    case "xml": {
+                        readXml(openDecompressed(metadata), recordPath, readSchema, receiver);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Storage module not support format: " + format);
+                }
+            }
+        }
+
+        private void readText(final MatchResult.Metadata metadata,
+                              final OutputReceiver<GenericRecord> receiver) throws IOException {
+
+            final ReadableByteChannel channel = openDecompressed(metadata);
+            try(final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8))) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    if(filterPrefix != null && line.startsWith(filterPrefix)) {
+                        continue;
+                    }
+                    if("csv".equals(format)) {
+                        receiver.output(CsvToRecordConverter.convert(readSchema, line));
+                    } else {
+                        receiver.output(JsonToRecordConverter.convert(readSchema, line));
+                    }
+                }
+            }
+        }
+
+        private ReadableByteChannel openDecompressed(final MatchResult.Metadata metadata) throws IOException {
+            // Compression.AUTO can not decompress by itself, so the compression is detected from the file name.
+            final Compression fileCompression;
+            if(compression == null || "AUTO".equals(compression.trim().toUpperCase())) {
+                fileCompression = Compression.detect(metadata.resourceId().getFilename());
+            } else {
+                fileCompression = Compression.valueOf(compression.trim().toUpperCase());
+            }
+            return fileCompression.readDecompressed(FileSystems.open(metadata.resourceId()));
+        }
+
+    }
+
+    /**
+     * Reads files of a single json array or xml document, emitting one record per array element or repeating element.
+     * Documents are parsed as streams, so memory does not grow with the size of the file.
+     */
+    public static class StorageDocumentAvroBatchSource
+            extends PTransform<PBegin, PCollection<GenericRecord>> {
+
+        private org.apache.avro.Schema schema;
+
+        private final StorageSourceParameters parameters;
+        private final SourceConfig.InputSchema inputSchema;
+        private final String timestampAttribute;
+        private final String timestampDefault;
+
+        public StorageSourceParameters getParameters() {
+            return parameters;
+        }
+
+        private StorageDocumentAvroBatchSource(final SourceConfig config) {
+            this.inputSchema = config.getSchema();
+            this.parameters = new Gson().fromJson(config.getParameters(), StorageSourceParameters.class);
+            this.timestampAttribute = config.getTimestampAttribute();
+            this.timestampDefault = config.getTimestampDefault();
+        }
+
+        public PCollection<GenericRecord> expand(final PBegin begin) {
+
+            final String format = parameters.getFormat().trim().toLowerCase();
+            if (this.inputSchema == null || (inputSchema.getAvroSchema() == null && inputSchema.getFields() == null)) {
+                this.schema = TextToRecordConverter.DEFAULT_SCHEMA;
+            } else {
+                this.schema = SourceConfig.convertAvroSchema(inputSchema);
+            }
+
+            final Compression compression = parameters.getCompression() == null
+                    ? Compression.AUTO : Compression.valueOf(parameters.getCompression().trim().toUpperCase());
+            final PCollection<FileIO.ReadableFile> files = begin
+                    .apply("Match", FileIO.match().filepattern(parameters.getInput()))
+                    .apply("ReadMatches", FileIO.readMatches().withCompression(compression));
+
+            final PCollection<GenericRecord> records;
+            if("xml".equals(format) && parameters.getSplitSizeMB() != null) {
+                final List<String> recordPath = parseRecordPath(parameters.getRecordPath());
+                records = files
+                        .apply("ReadXmlRanges", ParDo.of(new ReadXmlRangeDoFn(
+                                recordPath.get(recordPath.size() - 1), schema.toString(),
+                                parameters.getSplitSizeMB() * 1024L * 1024L)))
+                        .setCoder(AvroCoder.of(schema));
+            } else {
+                records = files
+                        .apply("ReadDocuments", ParDo.of(new ReadDocumentDoFn(format, parameters.getRecordPath(), schema.toString())))
+                        .setCoder(AvroCoder.of(schema));
+            }
+
+            if(timestampAttribute == null) {
+                return records;
+            } else {
+                return records.apply("WithTimestamp", DataTypeTransform
+                        .withTimestamp(DataType.AVRO, timestampAttribute, timestampDefault));
+            }
+        }
+
+    }
+
+    private static class ReadDocumentDoFn extends DoFn<FileIO.ReadableFile, GenericRecord> {
+
+        private final String format;
+        private final List<String> recordPath;
+        private final String schemaString;
+
+        private transient org.apache.avro.Schema schema;
+
+        ReadDocumentDoFn(final String format, final String recordPath, final String schemaString) {
+            this.format = format;
+            this.recordPath = parseRecordPath(recordPath);
+            this.schemaString = schemaString;
+        }
+
+        @Setup
+        public void setup() {
+            this.schema = new org.apache.avro.Schema.Parser().parse(schemaString);
+        }
+
+        @ProcessElement
+        public void processElement(final @Element FileIO.ReadableFile file,
+                                   final OutputReceiver<GenericRecord> receiver) throws IOException {
+            if("xml".equals(format)) {
+                readXml(file.open(), recordPath, schema, receiver);
+            } else {
+                readJsonArray(file.open(), recordPath, schema, receiver);
+            }
+        }
+
+    }
+
+    /**
+     * Reads xml files by byte ranges, locating each record by the start tag of the repeating element.
+     * Compressed files can not be split, and are read as a single range.
+     */
+    private static class ReadXmlRangeDoFn extends DoFn<FileIO.ReadableFile, GenericRecord> {
+
+        private final String elementName;
+        private final String schemaString;
+        private final long splitSize;
+
+        private transient org.apache.avro.Schema schema;
+        private transient XMLInputFactory factory;
+
+        ReadXmlRangeDoFn(final String elementName, final String schemaString, final long splitSize) {
+            this.elementName = elementName;
+            this.schemaString = schemaString;
+            this.splitSize = splitSize;
+        }
+
+        @Setup
+        public void setup() {
+            this.schema = new org.apache.avro.Schema.Parser().parse(schemaString);
+            // Records are parsed out of their document, so namespace prefixes declared by ancestors can not be resolved.
+            this.factory = XmlUtil.createInputFactory(false);
+        }
+
+        @GetInitialRestriction
+        public OffsetRange getInitialRestriction(@Element FileIO.ReadableFile file) {
+            if(Compression.UNCOMPRESSED.equals(file.getCompression())) {
+                return new OffsetRange(0, file.getMetadata().sizeBytes());
+            }
+            return new OffsetRange(0, 1);
+        }
+
+        @SplitRestriction
+        public void splitRestriction(@Restriction OffsetRange range, OutputReceiver<OffsetRange> receiver) {
+            for(final OffsetRange split : range.split(splitSize, splitSize)) {
+                receiver.output(split);
+            }
+        }
+
+        @NewTracker
+        public OffsetRangeTracker newTracker(@Restriction OffsetRange range) {
+            return new OffsetRangeTracker(range);
+        }
+
+        @GetRestrictionCoder
+        public Coder<OffsetRange> getRestrictionCoder() {
+            return SerializableCoder.of(OffsetRange.class);
+        }
+
+        @GetSize
+        public double getSize(@Restriction OffsetRange range) {
+            return range.getTo() - range.getFrom();
+        }
+
+        @ProcessElement
+        public void processElement(final @Element FileIO.ReadableFile file,
+                                   final RestrictionTracker<OffsetRange, Long> tracker,
+                                   final OutputReceiver<GenericRecord> receiver) throws IOException {
+
+            final boolean splittable = Compression.UNCOMPRESSED.equals(file.getCompression());
+            final long from = tracker.currentRestriction().getFrom();
+            if(!splittable && !tracker.tryClaim(from)) {
+                return;
+            }
+            final InputStream is;
+            if(splittable) {
+                final SeekableByteChannel channel = file.openSeekable();
+                channel.position(from);
+                is = Channels.newInputStream(channel);
+            } else {
+                is = Channels.newInputStream(file.open());
+            }
+
+            try(final InputStream bis = new BufferedInputStream(is)) {
+                final XmlUtil.ElementScanner scanner = new XmlUtil.ElementScanner(bis, from, elementName);
+                long offset;
+                while((offset = scanner.next()) >= 0) {
+                    if(splittable && !tracker.tryClaim(offset)) {
+                        return;
+                    }
+                    final XMLStreamReader reader = factory.createXMLStreamReader(
+                            new ByteArrayInputStream(scanner.readElement()), StandardCharsets.UTF_8.name());
+                    reader.nextTag();
+                    receiver.output(convertDocumentElement(schema, XmlUtil.readElement(reader)));
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Failed to parse xml element: " + elementName + " in file: "
+                        + file.getMetadata().resourceId(), e);
+            }
+            if(splittable) {
+                tracker.tryClaim(Long.MAX_VALUE);
+            }
+        }
+
+    }
+
+    private static List<String> parseRecordPath(final String recordPath) {
+        if(recordPath == null) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(recordPath.split("/"))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static void readJsonArray(final ReadableByteChannel channel,
+                                      final List<String> recordPath,
+                                      final org.apache.avro.Schema schema,
+                                      final DoFn.OutputReceiver<GenericRecord> receiver) throws IOException {
+
+        try(final JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8)))) {
+
+            for(final String name : recordPath) {
+                reader.beginObject();
+                boolean found = false;
+                while(reader.hasNext()) {
+                    if(name.equals(reader.nextName())) {
+                        found = true;
+                        break;
+                    }
+                    reader.skipValue();
+                }
+                if(!found) {
+                    throw new IllegalArgumentException("recordPath: " + String.join("/", recordPath) + " not found in json");
+                }
+            }
+
+            final Gson gson = new Gson();
+            reader.beginArray();
+            while(reader.hasNext()) {
+                final JsonElement element = gson.fromJson(reader, JsonElement.class);
+                receiver.output(convertDocumentElement(schema, element));
+            }
+        }
+    }
+
+    private static void readXml(final ReadableByteChannel channel,
+                                final List<String> recordPath,
+                                final org.apache.avro.Schema schema,
+                                final DoFn.OutputReceiver<GenericRecord> receiver) throws IOException {
+
+        try(final InputStream is = new BufferedInputStream(Channels.newInputStream(channel))) {
+            final XMLStreamReader reader = XmlUtil.createInputFactory(true).createXMLStreamReader(is);
+            final List<String> elements = new ArrayList<>();
+            while(reader.hasNext()) {
+                final int event = reader.next();
+                if(event == XMLStreamConstants.START_ELEMENT) {
+                    elements.add(reader.getLocalName());
+                    if(elements.equals(recordPath)) {
+                        receiver.output(convertDocumentElement(schema, XmlUtil.readElement(reader)));
+                        elements.remove(elements.size() - 1);
+                    }
+                } else if(event == XMLStreamConstants.END_ELEMENT) {
+                    elements.remove(elements.size() - 1);
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to parse xml", e);
+        }
+    }
+
+    private static GenericRecord convertDocumentElement(final org.apache.avro.Schema schema, final JsonElement element) {
+        if(TextToRecordConverter.DEFAULT_SCHEMA.equals(schema)) {
+            return TextToRecordConverter.convert(element.toString());
+        }
+        if(!element.isJsonObject()) {
+            throw new IllegalArgumentException("Record must be json object when schema is specified, but was: " + element);
+        }
+        return JsonToRecordConverter.convert(schema, element.getAsJsonObject());
+    }
+
     private static class ToRecordDoFn extends DoFn<String, GenericRecord> {
 
         private final String format;
@@ -451,6 +1368,46 @@ public class StorageSource implements SourceModule {
 
     }
 
+    private static org.apache.avro.Schema getOrcSchema(
+            final String input,
+            final SourceConfig.InputSchema inputSchema,
+            final PipelineOptions options) {
+
+        final AwsOptions awsOptions = options.as(AwsOptions.class);
+
+        org.apache.avro.Schema avroSchema = getAvroSchema(inputSchema, awsOptions);
+        if(avroSchema != null) {
+            return avroSchema;
+        }
+
+        if(input.startsWith("gs://")) {
+            avroSchema = StorageUtil.getOrcSchema(input);
+            if(avroSchema != null) {
+                return avroSchema;
+            }
+            return StorageUtil.listFiles(input)
+                    .stream()
+                    .map(StorageUtil::getOrcSchema)
+                    .filter(Objects::nonNull)
+                    .findAny()
+                    .orElseThrow(() -> new IllegalStateException("Avro schema not found!"));
+        } else if(input.startsWith("s3://")) {
+            avroSchema = S3Util.getOrcSchema(input, awsOptions);
+            if(avroSchema != null) {
+                return avroSchema;
+            }
+            return S3Util.listFiles(input, awsOptions)
+                    .stream()
+                    .map(path -> S3Util.getOrcSchema(path, awsOptions))
+                    .filter(Objects::nonNull)
+                    .findAny()
+                    .orElseThrow(() -> new IllegalStateException("Avro schema not found!"));
+        } else {
+            throw new IllegalArgumentException("Avro schema not found for input: " + input);
+        }
+
+    }
+
     private static org.apache.avro.Schema getParquetSchema(
             final String input,
             final SourceConfig.InputSchema inputSchema,
@@ -491,4 +1448,17 @@ public class StorageSource implements SourceModule {
 
     }
 
+    // Util Filter is referred by these helpers, as its simple name is taken by beam Filter transform.
+    private static ConditionNode parseFilter(final JsonElement filter) {
+        return com.mercari.solution.util.Filter.parse(filter);
+    }
+
+    private static ConditionNode parseFilter(final String filterString) {
+        return parseFilter(new Gson().fromJson(filterString, JsonElement.class));
+    }
+
+    private static boolean isMatched(final GenericRecord record, final ConditionNode condition) {
+        return com.mercari.solution.util.Filter.filter(record, AvroSchemaUtil::getValue, condition);
+    }
+
 }
@@ -7,6 +7,7 @@ import com.google.datastore.v1.Value;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.NullValue;
 import com.mercari.solution.config.TransformConfig;
 import com.mercari.solution.module.DataType;
 import com.mercari.solution.module.FCollection;
@@ -14,7 +15,7 @@ import com.mercari.solution.module.TransformModule;
 import com.mercari.solution.util.*;
 import com.mercari.solution.util.converter.JsonToMapConverter;
 import com.mercari.solution.util.gcp.StorageUtil;
-import com.mercari.solution.util.hashicorp.VaultClient;
+import com.mercari.solution.util.hashicorp.VaultSecretCache;
 import com.mercari.solution.util.schema.AvroSchemaUtil;
 import com.mercari.solution.util.schema.EntitySchemaUtil;
 import com.mercari.solution.util.schema.RowSchemaUtil;
@@ -32,7 +33,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.security.Key;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CryptoTransform implements TransformModule {
 
@@ -40,6 +43,9 @@ public class CryptoTransform implements TransformModule {
     private static final Logger LOG = LoggerFactory.getLogger(CryptoTransform.class);
     private static final String OUTPUT_SUFFIX_FAILURES = ".failures";
 
+    private static final String MODE_DECRYPT = "decrypt";
+    private static final String MODE_ENCRYPT = "encrypt";
+
     private class CryptoTransformParameters implements Serializable {
 
         private String mode; // decrypt or encrypt
@@ -274,94 +280,90 @@ public class CryptoTransform implements TransformModule {
             switch (input.getDataType()) {
                 case AVRO: {
                     final FCollection<GenericRecord> inputCollection = (FCollection<GenericRecord>) input;
-                    if("decrypt".equals(parameters.getMode().trim().toLowerCase())) {
-                        final Decrypt<GenericRecord> transform = new Decrypt<>(
-                                parameters,
-                                AvroSchemaUtil::getBytes,
-                                (GenericRecord r, Map<String, byte[]> decryptedBytes) -> {
-                                    final GenericRecordBuilder builder = AvroSchemaUtil.copy(r, r.getSchema());
-                                    for (var entry : decryptedBytes.entrySet()) {
-                                        if(entry.getValue() == null) {
-                                            builder.set(entry.getKey(), null);
-                                        } else {
-                                            builder.set(entry.getKey(), ByteBuffer.wrap(entry.getValue()));
-                                        }
+                    final Crypto<GenericRecord> transform = new Crypto<>(
+                            parameters,
+                            AvroSchemaUtil::getBytes,
+                            (GenericRecord r, Map<String, byte[]> values) -> {
+                                final GenericRecordBuilder builder = AvroSchemaUtil.copy(r, r.getSchema());
+                                for (var entry : values.entrySet()) {
+                                    if(entry.getValue() == null) {
+                                        builder.set(entry.getKey(), null);
+                                    } else {
+                                        builder.set(entry.getKey(), ByteBuffer.wrap(entry.getValue()));
                                     }
-                                    return builder.build();
-                                });
-                        final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
-                        final PCollection<?> output = outputs.get(transform.outputTag);
-                        final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
-                        results.put(name, FCollection.of(config.getName(), output, DataType.AVRO, inputCollection.getAvroSchema()));
-                        results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.AVRO, inputCollection.getAvroSchema()));
-                    }
+                                }
+                                return builder.build();
+                            });
+                    final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
+                    final PCollection<?> output = outputs.get(transform.outputTag);
+                    final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
+                    results.put(name, FCollection.of(config.getName(), output, DataType.AVRO, inputCollection.getAvroSchema()));
+                    results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.AVRO, inputCollection.getAvroSchema()));
                     break;
                 }
                 case ROW: {
                     final FCollection<Row> inputCollection = (FCollection<Row>) input;
-                    if("decrypt".equals(parameters.getMode().trim().toLowerCase())) {
-                        final Decrypt<Row> transform = new Decrypt<>(
-                                parameters,
-                                RowSchemaUtil::getBytes,
-                                (Row row, Map<String, byte[]> decryptedBytes) -> {
-                                    final Row.FieldValueBuilder builder = Row.fromRow(row);
-                                    for (var entry : decryptedBytes.entrySet()) {
-                                        builder.withFieldValue(entry.getKey(), entry.getValue());
-                                    }
-                                    return builder.build();
-                                });
-                        final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
-                        final PCollection<?> output = outputs.get(transform.outputTag);
-                        final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
-                        results.put(name, FCollection.of(config.getName(), output, DataType.ROW, inputCollection.getSchema()));
-                        results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.ROW, inputCollection.getSchema()));
-                    }
+                    final Crypto<Row> transform = new Crypto<>(
+                            parameters,
+                            RowSchemaUtil::getBytes,
+                            (Row row, Map<String, byte[]> values) -> {
+                                final Row.FieldValueBuilder builder = Row.fromRow(row);
+                                for (var entry : values.entrySet()) {
+                                    builder.withFieldValue(entry.getKey(), entry.getValue());
+                                }
+                                return builder.build();
+                            });
+                    final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
+                    final PCollection<?> output = outputs.get(transform.outputTag);
+                    final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
+                    results.put(name, FCollection.of(config.getName(), output, DataType.ROW, inputCollection.getSchema()));
+                    results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.ROW, inputCollection.getSchema()));
                     break;
                 }
                 case STRUCT: {
                     final FCollection<Struct> inputCollection = (FCollection<Struct>) input;
-                    if("decrypt".equals(parameters.getMode().trim().toLowerCase())) {
-                        final Decrypt<Struct> transform = new Decrypt<>(
-                                parameters,
-                                StructSchemaUtil::getBytes,
-                                (Struct struct, Map<String, byte[]> decryptedBytes) -> {
-                                    final Struct.Builder builder = StructSchemaUtil.toBuilder(struct, null, decryptedBytes.keySet());
-                                    for (var entry : decryptedBytes.entrySet()) {
-                                        if(entry.getValue() == null) {
-                                            builder.set(entry.getKey()).to((ByteArray) null);
-                                        } else {
-                                            builder.set(entry.getKey()).to(ByteArray.copyFrom(entry.getValue()));
-                                        }
+                    final Crypto<Struct> transform = new Crypto<>(
+                            parameters,
+                            StructSchemaUtil::getBytes,
+                            (Struct struct, Map<String, byte[]> values) -> {
+                                final Struct.Builder builder = StructSchemaUtil.toBuilder(struct, null, values.keySet());
+                                for (var entry : values.entrySet()) {
+                                    if(entry.getValue() == null) {
+                                        builder.set(entry.getKey()).to((ByteArray) null);
+                                    } else {
+                                        builder.set(entry.getKey()).to(ByteArray.copyFrom(entry.getValue()));
                                     }
-                                    return builder.build();
-                                });
-                        final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
-                        final PCollection<?> output = outputs.get(transform.outputTag);
-                        final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
-                        results.put(name, FCollection.of(config.getName(), output, DataType.STRUCT, inputCollection.getSpannerType()));
-                        results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.STRUCT, inputCollection.getSpannerType()));
-                    }
+                                }
+                                return builder.build();
+                            });
+                    final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
+                    final PCollection<?> output = outputs.get(transform.outputTag);
+                    final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
+                    results.put(name, FCollection.of(config.getName(), output, DataType.STRUCT, inputCollection.getSpannerType()));
+                    results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.STRUCT, inputCollection.getSpannerType()));
                     break;
                 }
                 case ENTITY: {
                     final FCollection<Entity> inputCollection = (FCollection<Entity>) input;
-                    if("decrypt".equals(parameters.getMode().trim().toLowerCase())) {
-                        final Decrypt<Entity> transform = new Decrypt<>(
-                                parameters,
-                                EntitySchemaUtil::getBytes,
-                                (Entity entity, Map<String, byte[]> decryptedBytes) -> {
-                                    final Entity.Builder builder = EntitySchemaUtil.toBuilder(entity, null, decryptedBytes.keySet());
-                                    for (var entry : decryptedBytes.entrySet()) {
+                    final Crypto<Entity> transform = new Crypto<>(
+                            parameters,
+                            EntitySchemaUtil::getBytes,
+                            (Entity entity, Map<String, byte[]> values) -> {
+                                final Entity.Builder builder = EntitySchemaUtil.toBuilder(entity, null, values.keySet());
+                                for (var entry : values.entrySet()) {
+                                    if(entry.getValue() == null) {
+                                        builder.putProperties(entry.getKey(), Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build());
+                                    } else {
                                         builder.putProperties(entry.getKey(), Value.newBuilder().setBlobValue(ByteString.copyFrom(entry.getValue())).build());
                                     }
-                                    return builder.build();
-                                });
-                        final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
-                        final PCollection<?> output = outputs.get(transform.outputTag);
-                        final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
-                        results.put(name, FCollection.of(config.getName(), output, DataType.ENTITY, inputCollection.getSpannerType()));
-                        results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.ENTITY, inputCollection.getAvroSchema()));
-                    }
+                                }
+                                return builder.build();
+                            });
+                    final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
+                    final PCollection<?> output = outputs.get(transform.outputTag);
+                    final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
+                    results.put(name, FCollection.of(config.getName(), output, DataType.ENTITY, inputCollection.getSpannerType()));
+                    results.put(name + OUTPUT_SUFFIX_FAILURES, FCollection.of(config.getName(), failures, DataType.ENTITY, inputCollection.getAvroSchema()));
                     break;
                 }
                 default:
@@ -380,8 +382,9 @@ public class CryptoTransform implements TransformModule {
         final List<String> errorMessages = new ArrayList<>();
         if(parameters.getMode() == null) {
             errorMessages.add("CryptoTransform config parameters `mode` must be specified decrypt or encrypt.");
-        } else if(!parameters.getMode().trim().toLowerCase().equals("decrypt")) {
-            errorMessages.add("CryptoTransform config parameters `mode` must be specified decrypt. but: " + parameters.getMode());
+        } else if(!MODE_DECRYPT.equals(parameters.getMode().trim().toLowerCase())
+                && !MODE_ENCRYPT.equals(parameters.getMode().trim().toLowerCase())) {
+            errorMessages.add("CryptoTransform config parameters `mode` must be specified decrypt or encrypt. but: " + parameters.getMode());
         }
         if(parameters.getFields() == null || parameters.getFields().size() == 0) {
             errorMessages.add("CryptoTransform config parameters `fields` must be specified.");
@@ -420,12 +423,16 @@ public class CryptoTransform implements TransformModule {
     }
 
     private static void setDefaultParameters(CryptoTransformParameters parameters) {
+        parameters.setMode(parameters.getMode().trim().toLowerCase());
+        if(parameters.getAlgorithm() == null) {
+            parameters.setAlgorithm("AES256");
+        }
         if(parameters.getFailFast() == null) {
             parameters.setFailFast(true);
         }
     }
 
-    public static class Decrypt<T> extends PTransform<PCollection<T>, PCollectionTuple> {
+    public static class Crypto<T> extends PTransform<PCollection<T>, PCollectionTuple> {
 
         private final TupleTag<T> outputTag = new TupleTag<>(){};
         private final TupleTag<T> failuresTag = new TupleTag<>(){};
@@ -435,9 +442,9 @@ public class CryptoTransform implements TransformModule {
         private final FieldGetter<T> getter;
         private final FieldSetter<T> setter;
 
-        private Decrypt(final CryptoTransformParameters parameters,
-                        final FieldGetter<T> getter,
-                        final FieldSetter<T> setter) {
+        private Crypto(final CryptoTransformParameters parameters,
+                       final FieldGetter<T> getter,
+                       final FieldSetter<T> setter) {
 
             this.parameters = parameters;
             this.getter = getter;
@@ -447,7 +454,8 @@ public class CryptoTransform implements TransformModule {
         @Override
         public PCollectionTuple expand(final PCollection<T> input) {
 
-            final DecryptDoFn dofn = new DecryptDoFn(
+            final CryptoDoFn dofn = new CryptoDoFn(
+                    parameters.getMode(),
                     parameters.getFields(),
                     parameters.getAlgorithm(),
                     input.getPipeline().getOptions().as(DataflowPipelineOptions.class).getServiceAccount(),
@@ -459,15 +467,18 @@ public class CryptoTransform implements TransformModule {
                     setter,
                     parameters.getVault());
 
-            return input.apply("Decrypt", ParDo
+            final String stepName = MODE_ENCRYPT.equals(parameters.getMode()) ? "Encrypt" : "Decrypt";
+            return input.apply(stepName, ParDo
                     .of(dofn)
                     .withOutputTags(outputTag, TupleTagList.of(failuresTag)));
         }
 
-        private class DecryptDoFn extends DoFn<T, T> {
+        private class CryptoDoFn extends DoFn<T, T> {
 
             // Common required parameters
+            private final String mode;
             private final List<String> fields;
+            private final String algorithm;
             private final String serviceAccount;
             private final Boolean failFast;
 
@@ -482,25 +493,33 @@ public class CryptoTransform implements TransformModule {
             // Hashicorp.Vault parameters
             private final CryptoTransformParameters.VaultParameter vaultParameter;
 
+            // Identifies the key material shared by DoFn instances in the same worker
+            private final String keyMaterialId;
+            // Vault paths of the key information, null if Vault is not used
+            private final VaultSecretCache.SecretPath secretPath;
+
             // Runtime variables
-            private transient byte[] keyBytes;
-            private transient String algorithm;
-            private transient Object secret;
+            private transient boolean encrypt;
+            private transient Key key;
 
             private transient CryptoUtil crypto;
+            private transient KeyMaterial keyMaterial;
             private transient Template templateKeyExtractor;
-
-            DecryptDoFn(final List<String> fields,
-                        final String algorithm,
-                        final String serviceAccount,
-                        final Boolean failFast,
-                        final CryptoTransformParameters.KeyProviderParameter keyProvider,
-                        final CryptoTransformParameters.KeyDecryptorParameter keyDecryptor,
-                        final CryptoTransformParameters.KeyExtractorParameter keyExtractor,
-                        final FieldGetter<T> getter,
-                        final FieldSetter<T> setter,
-                        final CryptoTransformParameters.VaultParameter vaultParameter) {
-
+            private transient Map<String, Object> templateData;
+
+            CryptoDoFn(final String mode,
+                       final List<String> fields,
+                       final String algorithm,
+                       final String serviceAccount,
+                       final Boolean failFast,
+                       final CryptoTransformParameters.KeyProviderParameter keyProvider,
+                       final CryptoTransformParameters.KeyDecryptorParameter keyDecryptor,
+                       final CryptoTransformParameters.KeyExtractorParameter keyExtractor,
+                       final FieldGetter<T> getter,
+                       final FieldSetter<T> setter,
+                       final CryptoTransformParameters.VaultParameter vaultParameter) {
+
+                this.mode = mode;
                 this.fields = fields;
                 this.algorithm = algorithm;
                 this.serviceAccount = serviceAccount;
@@ -514,109 +533,166 @@ public class CryptoTransform implements TransformModule {
                 this.setter = setter;
 
                 this.vaultParameter = vaultParameter;
+
+                final Gson gson = new Gson();
+                this.keyMaterialId = String.join("\n",
+                        serviceAccount,
+                        gson.toJson(keyProvider),
+                        gson.toJson(keyDecryptor),
+                        gson.toJson(keyExtractor),
+                        gson.toJson(vaultParameter));
+
+                final boolean useVaultProvider = keyProvider.getVault() != null;
+                final boolean useVaultDecryptor = keyDecryptor != null && keyDecryptor.getVault() != null;
+                if(useVaultProvider || useVaultDecryptor) {
+                    this.secretPath = new VaultSecretCache.SecretPath(
+                            vaultParameter.getHost(),
+                            serviceAccount,
+                            vaultParameter.getNamespace(),
+                            vaultParameter.getRole(),
+                            vaultParameter.getTokenPath(),
+                            useVaultProvider ? keyProvider.getVault().getKvPath() : null,
+                            useVaultProvider ? null : keyProvider.getBase64text(),
+                            useVaultDecryptor ? keyDecryptor.getVault().getTransitPath() : null,
+                            useVaultDecryptor ? keyDecryptor.getJsonPath() : null);
+                } else {
+                    this.secretPath = null;
+                }
             }
 
             @Setup
-            public void setup() throws Exception {
+            public void setup() {
                 this.crypto = new CryptoUtil();
+                this.encrypt = MODE_ENCRYPT.equals(mode);
+
+                updateKeyMaterial();
+            }
 
-                // KeyProvide
-                final JsonElement keyProvider;
-                if(keyProviderParameter.getBase64text() != null) {
-                    keyProvider = JsonUtil.fromJson(keyProviderParameter.getBase64text());
-                } else if(keyProviderParameter.getVault() != null) {
-                    var vaultKeyProvider = keyProviderParameter.getVault();
-                    var client = new VaultClient(vaultParameter.getHost(), serviceAccount, vaultParameter.getNamespace(), vaultParameter.getRole(), vaultParameter.getTokenPath());
-                    String kvPath = TemplateUtil.executeStrictTemplate(vaultKeyProvider.getKvPath(), new HashMap<>());
-                    keyProvider = client.readKVSecret(kvPath);
-                    client.revokeToken();
+            @StartBundle
+            public void startBundle(StartBundleContext c) {
+                // Picks up key information refreshed in background for long-running streaming jobs.
+                if(secretPath != null) {
+                    updateKeyMaterial();
+                }
+            }
+
+            private void updateKeyMaterial() {
+                final JsonElement keyInfo;
+                if(secretPath != null) {
+                    keyInfo = VaultSecretCache.getInstance().get(secretPath);
+                } else if(keyProviderParameter.getBase64text() != null) {
+                    keyInfo = JsonUtil.fromJson(keyProviderParameter.getBase64text());
                 } else {
-                    throw new IllegalArgumentException("");
+                    throw new IllegalArgumentException("CryptoTransform keyProvider is not specified");
+                }
+                if(this.keyMaterial != null && this.keyMaterial.source.equals(keyInfo)) {
+                    return;
                 }
 
-                // KeyDecryption
-                final JsonElement decryptedKey;
-                if(keyDecryptorParameter == null) {
-                    decryptedKey = keyProvider;
-                } else if(keyDecryptorParameter.getVault() != null) {
-                    var vaultKeyDecriptor = keyDecryptorParameter.getVault();
-                    var client = new VaultClient(vaultParameter.getHost(), serviceAccount, vaultParameter.getNamespace(), vaultParameter.getRole(), vaultParameter.getTokenPath());
-                    if(keyDecryptorParameter.getJsonPath() != null) {
-                        final Map<String, Object> data = JsonToMapConverter.convert(keyProvider);
-                        final String path = TemplateUtil.executeStrictTemplate(vaultKeyDecriptor.getTransitPath(), data);
-                        decryptedKey = client.decryptSecrets(path, keyDecryptorParameter.getJsonPath(), keyProvider);
-                    } else {
-                        final String decryptedString = client.decryptSecret(vaultKeyDecriptor.getTransitPath(), keyProvider.getAsString());
-                        decryptedKey = JsonUtil.fromJson(decryptedString);
+                this.keyMaterial = KEY_MATERIALS.compute(keyMaterialId, (id, current) -> {
+                    if(current != null && current.source.equals(keyInfo)) {
+                        return current;
+                    }
+                    try {
+                        return createKeyMaterial(keyInfo);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed to setup crypto key", e);
                     }
-                    client.revokeToken();
+                });
+
+                if(keyMaterial.keyBytes != null) {
+                    this.key = CryptoUtil.createKey(algorithm, keyMaterial.keyBytes);
+                    this.templateKeyExtractor = null;
+                    this.templateData = null;
+                } else {
+                    this.key = null;
+                    this.templateKeyExtractor = keyMaterial.template;
+                    this.templateData = new HashMap<>();
+                    this.templateData.put("_Crypto", crypto);
+                    this.templateData.put("_algorithm", algorithm);
+                    this.templateData.put("_mode", mode);
+                    this.templateData.put("_secret", keyMaterial.secret);
+                }
+            }
+
+            private KeyMaterial createKeyMaterial(final JsonElement decryptedKey) throws Exception {
+
+                final Object secret;
+                if(decryptedKey.isJsonPrimitive()) {
+                    secret = decryptedKey.getAsString();
                 } else {
-                    decryptedKey = keyProvider;
+                    secret = JsonToMapConverter.convert(decryptedKey);
                 }
 
                 // KeyExtraction
                 final String extractedKey;
+                final Template template;
                 if(keyExtractorParameter == null) {
                     extractedKey = decryptedKey.getAsString();
+                    template = null;
                 } else if(keyExtractorParameter.getTemplate() != null) {
+                    final String templateText;
                     if(keyExtractorParameter.getTemplate().startsWith("gs://")) {
-                        this.templateKeyExtractor = TemplateUtil
-                                .createStrictTemplate("config", StorageUtil
-                                        .readString(keyExtractorParameter.getTemplate()));
+                        templateText = StorageUtil.readString(keyExtractorParameter.getTemplate());
+                    } else {
+                        templateText = keyExtractorParameter.getTemplate();
+                    }
+                    template = TemplateUtil.createStrictTemplate("config", templateText);
+                    final Map<String, Object> data = new HashMap<>();
+                    data.put("_Crypto", crypto);
+                    data.put("_algorithm", algorithm);
+                    data.put("_mode", mode);
+                    data.put("_secret", secret);
+                    // Other variables are the same for all values, so the template reads _value only if it processes each value by itself.
+                    if(TemplateUtil.extractVariables(template, data).contains("_value")) {
+                        extractedKey = null;
                     } else {
-                        this.templateKeyExtractor = TemplateUtil
-                                .createStrictTemplate("config", keyExtractorParameter.getTemplate());
+                        // Template only extracts key from secret, so it is rendered once here.
+                        extractedKey = TemplateUtil.executeStrictTemplate(template, data).trim();
                     }
-                    extractedKey = null;
                 } else if(keyExtractorParameter.getJsonPath() != null) {
                     final List<KV<String, Object>> data = JsonUtil.read(decryptedKey.getAsJsonObject(), keyExtractorParameter.getJsonPath());
                     if(data.size() != 1) {
                         throw new IllegalStateException();
                     }
                     extractedKey = data.get(0).getValue().toString();
+                    template = null;
                 } else {
                     extractedKey = decryptedKey.getAsString();
+                    template = null;
                 }
 
                 // Set Key
                 if(extractedKey != null) {
-                    this.keyBytes = Base64.getDecoder().decode(extractedKey);
-                    this.secret = null;
+                    return new KeyMaterial(decryptedKey, Base64.getDecoder().decode(extractedKey), null, null);
                 } else {
-                    this.keyBytes = null;
-                    if(decryptedKey.isJsonPrimitive()) {
-                        this.secret = decryptedKey.getAsString();
-                    } else {
-                        this.secret = JsonToMapConverter.convert(decryptedKey);
-                    }
+                    return new KeyMaterial(decryptedKey, null, secret, template);
                 }
             }
 
             @ProcessElement
             public void processElement(ProcessContext c) {
                 final T input = c.element();
-                final Map<String, byte[]> decryptedValues = new HashMap<>();
+                final Map<String, byte[]> values = new HashMap<>();
                 try {
                     for (final String field : fields) {
-                        final byte[] encryptedBytes = getter.getBytes(input, field);
-                        final byte[] decryptedBytes;
+                        final byte[] bytes = getter.getBytes(input, field);
+                        final byte[] processedBytes;
                         if (templateKeyExtractor != null) {
-                            final Map<String, Object> data = new HashMap<>();
-                            data.put("_Crypto", crypto);
-                            data.put("_algorithm", algorithm);
-                            data.put("_secret", secret);
-                            data.put("_value", encryptedBytes);
-                            final String decryptedText = TemplateUtil.executeStrictTemplate(templateKeyExtractor, data).trim();
-                            decryptedBytes = Base64.getDecoder().decode(decryptedText);
+                            templateData.put("_value", bytes);
+                            final String processedText = TemplateUtil.executeStrictTemplate(templateKeyExtractor, templateData).trim();
+                            processedBytes = Base64.getDecoder().decode(processedText);
+                        } else if(encrypt) {
+                            processedBytes = crypto.encrypt(algorithm, key, bytes);
                         } else {
-                            decryptedBytes = crypto.decrypt(algorithm, keyBytes, encryptedBytes);
+                            processedBytes = crypto.decrypt(algorithm, key, bytes);
                         }
-                        decryptedValues.put(field, decryptedBytes);
+                        values.put(field, processedBytes);
                     }
-                    final T output = setter.setValues(input, decryptedValues);
+                    final T output = setter.setValues(input, values);
                     c.output(output);
                 } catch (Exception e) {
-                    final String message = "Failed to decrypt record: " + input + ", cause: " + e.toString();
+                    final String message = "Failed to " + mode + " record: " + input + ", cause: " + e.toString();
                     if(failFast) {
                         throw new IllegalStateException(message, e);
                     } else {
@@ -630,6 +706,26 @@ public class CryptoTransform implements TransformModule {
 
     }
 
+    // Key material is derived once per worker and shared by all DoFn instances with the same key settings.
+    // It is derived again only when the key information (source) fetched from Vault has changed.
+    private static final Map<String, KeyMaterial> KEY_MATERIALS = new ConcurrentHashMap<>();
+
+    private static class KeyMaterial {
+
+        private final JsonElement source;
+        private final byte[] keyBytes;
+        private final Object secret;
+        private final Template template;
+
+        KeyMaterial(final JsonElement source, final byte[] keyBytes, final Object secret, final Template template) {
+            this.source = source;
+            this.keyBytes = keyBytes;
+            this.secret = secret;
+            this.template = template;
+        }
+
+    }
+
     private interface FieldGetter<T> extends Serializable {
         byte[] getBytes(final T value, final String field);
     }
@@ -5,31 +5,56 @@ import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
+import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
+import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
+import javax.script.*;
 import java.io.Serializable;
-import java.util.Arrays;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 public class JavaScriptTransform {
 
+    private static final Logger LOG = LoggerFactory.getLogger(JavaScriptTransform.class);
+
+    public static <ElementT> Transform<ElementT> transform(
+            final ValueProvider<String> script,
+            final ValueProvider<String> fieldFuncMap,
+            final ValueProvider<Boolean> skipScriptError,
+            final ValueProvider<Boolean> hideScriptError,
+            final ScriptExecutor<ElementT> executor) {
+        return new Transform(script, fieldFuncMap, skipScriptError, hideScriptError, ValueProvider.StaticValueProvider.of(false), executor);
+    }
+
     public static <ElementT> Transform<ElementT> transform(
             final ValueProvider<String> script,
             final ValueProvider<String> fieldFuncMap,
             final ValueProvider<Boolean> skipScriptError,
             final ValueProvider<Boolean> hideScriptError,
+            final ValueProvider<Boolean> compileScript,
             final ScriptExecutor<ElementT> executor) {
-        return new Transform(script, fieldFuncMap, skipScriptError, hideScriptError, executor);
+        return new Transform(script, fieldFuncMap, skipScriptError, hideScriptError, compileScript, executor);
+    }
+
+    public static <ElementT> BatchTransform<ElementT> batchTransform(
+            final ValueProvider<String> script,
+            final ValueProvider<String> fieldFuncMap,
+            final ValueProvider<Boolean> skipScriptError,
+            final ValueProvider<Boolean> hideScriptError,
+            final ValueProvider<Boolean> compileScript,
+            final ValueProvider<Integer> batchSize,
+            final BatchScriptExecutor<ElementT> executor) {
+        return new BatchTransform(script, fieldFuncMap, skipScriptError, hideScriptError, compileScript, batchSize, executor);
     }
 
     public static class Transform<ElementT> extends PTransform<PCollection<ElementT>, PCollectionTuple> {
@@ -43,17 +68,20 @@ public class JavaScriptTransform {
         private final ValueProvider<String> script;
         private final ValueProvider<Boolean> skipScriptError;
         private final ValueProvider<Boolean> hideScriptError;
+        private final ValueProvider<Boolean> compileScript;
         private final ScriptExecutor<ElementT> executor;
 
         private Transform(final ValueProvider<String> script,
                           final ValueProvider<String> fieldFunc,
                           final ValueProvider<Boolean> skipScriptError,
                           final ValueProvider<Boolean> hideScriptError,
+                          final ValueProvider<Boolean> compileScript,
                           final ScriptExecutor<ElementT> executor) {
             this.script = script;
             this.fieldFunc = fieldFunc;
             this.skipScriptError = skipScriptError;
             this.hideScriptError = hideScriptError;
+            this.compileScript = compileScript;
             this.executor = executor;
         }
 
@@ -62,6 +90,7 @@ public class JavaScriptTransform {
             return elements.apply("ExecuteJS", ParDo.of(new DoFn<ElementT, ElementT>() {
 
                 private transient Invocable invocable;
+                private transient CompiledScriptPool pool;
                 private transient Map<String,String> fieldFuncMap;
                 private transient Boolean skipScriptErrorFlag;
                 private transient Boolean hideScriptErrorFlag;
@@ -71,25 +100,29 @@ public class JavaScriptTransform {
                     if(script.get() == null || fieldFunc.get() == null || !fieldFunc.get().contains(":")) {
                         this.invocable = null;
                         LOG.info("Not use JSTransform");
+                    } else if(compileScript.get() != null && compileScript.get()) {
+                        this.pool = CompiledScriptPool.of(script.get());
+                        this.invocable = this.pool.borrow();
+                        this.fieldFuncMap = parseFieldFuncMap(fieldFunc.get());
                     } else {
-                        String scriptText = script.get();
-                        if(scriptText.startsWith("gs://")) {
-                            scriptText = StorageUtil.readString(scriptText);
-                            LOG.info("scriptText");
-                            LOG.info(scriptText);
-                        }
+                        final String scriptText = readScript(script.get());
                         final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
                         engine.eval(scriptText);
                         this.invocable = (Invocable)engine;
-                        this.fieldFuncMap = Arrays.stream(fieldFunc.get().split(","))
-                                .map(s -> s.split(":"))
-                                .filter(s -> s.length == 2)
-                                .collect(Collectors.toMap(s -> s[0].trim(), s-> s[1].trim()));
+                        this.fieldFuncMap = parseFieldFuncMap(fieldFunc.get());
                     }
                     this.skipScriptErrorFlag = skipScriptError.get();
                     this.hideScriptErrorFlag = hideScriptError.get();
                 }
 
+                @Teardown
+                public void teardown() {
+                    if(this.pool != null && this.invocable != null) {
+                        this.pool.release((ContextInvocable) this.invocable);
+                        this.invocable = null;
+                    }
+                }
+
                 @ProcessElement
                 public void processElement(ProcessContext c) throws ScriptException, NoSuchMethodException {
                     final ElementT element = c.element();
@@ -122,10 +155,306 @@ public class JavaScriptTransform {
         }
     }
 
+    /**
+     * Executes the script for up to batchSize elements per call.
+     * Elements are buffered per window and the buffer is executed when it is full or when the bundle finishes.
+     * Outputs of a buffer executed in processElement get the timestamp of the current element if theirs is earlier,
+     * because outputs can not be emitted before the timestamp of the element being processed.
+     */
+    public static class BatchTransform<ElementT> extends PTransform<PCollection<ElementT>, PCollectionTuple> {
+
+        public final TupleTag<ElementT> tagMain  = new TupleTag<ElementT>(){ private static final long serialVersionUID = 1L; };
+        public final TupleTag<ElementT> tagError = new TupleTag<ElementT>(){ private static final long serialVersionUID = 1L; };
+
+        private static final Logger LOG = LoggerFactory.getLogger(BatchTransform.class);
+
+        private static final int DEFAULT_BATCH_SIZE = 100;
+
+        private final ValueProvider<String> fieldFunc;
+        private final ValueProvider<String> script;
+        private final ValueProvider<Boolean> skipScriptError;
+        private final ValueProvider<Boolean> hideScriptError;
+        private final ValueProvider<Boolean> compileScript;
+        private final ValueProvider<Integer> batchSize;
+        private final BatchScriptExecutor<ElementT> executor;
+
+        private BatchTransform(final ValueProvider<String> script,
+                               final ValueProvider<String> fieldFunc,
+                               final ValueProvider<Boolean> skipScriptError,
+                               final ValueProvider<Boolean> hideScriptError,
+                               final ValueProvider<Boolean> compileScript,
+                               final ValueProvider<Integer> batchSize,
+                               final BatchScriptExecutor<ElementT> executor) {
+            this.script = script;
+            this.fieldFunc = fieldFunc;
+            this.skipScriptError = skipScriptError;
+            this.hideScriptError = hideScriptError;
+            this.compileScript = compileScript;
+            this.batchSize = batchSize;
+            this.executor = executor;
+        }
+
+        @Override
+        public PCollectionTuple expand(PCollection<ElementT> elements) {
+            return elements.apply("ExecuteBatchJS", ParDo.of(new DoFn<ElementT, ElementT>() {
+
+                private transient Invocable invocable;
+                private transient CompiledScriptPool pool;
+                private transient Map<String,String> fieldFuncMap;
+                private transient Boolean skipScriptErrorFlag;
+                private transient Boolean hideScriptErrorFlag;
+                private transient int batchSizeValue;
+                private transient Map<BoundedWindow, List<TimestampedValue<ElementT>>> buffers;
+
+                @Setup
+                public void setup() throws ScriptException {
+                    if(script.get() == null || fieldFunc.get() == null || !fieldFunc.get().contains(":")) {
+                        this.invocable = null;
+                        LOG.info("Not use JSTransform");
+                    } else if(compileScript.get() != null && compileScript.get()) {
+                        this.pool = CompiledScriptPool.of(script.get());
+                        this.invocable = this.pool.borrow();
+                        this.fieldFuncMap = parseFieldFuncMap(fieldFunc.get());
+                    } else {
+                        final String scriptText = readScript(script.get());
+                        final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+                        engine.eval(scriptText);
+                        this.invocable = (Invocable)engine;
+                        this.fieldFuncMap = parseFieldFuncMap(fieldFunc.get());
+                    }
+                    this.skipScriptErrorFlag = skipScriptError.get();
+                    this.hideScriptErrorFlag = hideScriptError.get();
+                    this.batchSizeValue = batchSize.get() == null || batchSize.get() <= 0 ? DEFAULT_BATCH_SIZE : batchSize.get();
+                }
+
+                @StartBundle
+                public void startBundle() {
+                    this.buffers = new LinkedHashMap<>();
+                }
+
+                @Teardown
+                public void teardown() {
+                    if(this.pool != null && this.invocable != null) {
+                        this.pool.release((ContextInvocable) this.invocable);
+                        this.invocable = null;
+                    }
+                }
+
+                @ProcessElement
+                public void processElement(ProcessContext c, BoundedWindow window) throws ScriptException, NoSuchMethodException {
+                    if(this.invocable == null) {
+                        c.output(c.element());
+                        return;
+                    }
+                    final List<TimestampedValue<ElementT>> buffer = this.buffers.computeIfAbsent(window, w -> new ArrayList<>());
+                    buffer.add(TimestampedValue.of(c.element(), c.timestamp()));
+                    if(buffer.size() >= this.batchSizeValue) {
+                        this.buffers.remove(window);
+                        execute(buffer, (tag, output) -> c.outputWithTimestamp(tag, output.getValue(),
+                                output.getTimestamp().isBefore(c.timestamp()) ? c.timestamp() : output.getTimestamp()));
+                    }
+                }
+
+                @FinishBundle
+                public void finishBundle(FinishBundleContext c) throws ScriptException, NoSuchMethodException {
+                    for(final Map.Entry<BoundedWindow, List<TimestampedValue<ElementT>>> entry : this.buffers.entrySet()) {
+                        execute(entry.getValue(), (tag, output) -> c.output(tag, output.getValue(), output.getTimestamp(), entry.getKey()));
+                    }
+                    this.buffers.clear();
+                }
+
+                private void execute(final List<TimestampedValue<ElementT>> buffer,
+                                     final BiConsumer<TupleTag<ElementT>, TimestampedValue<ElementT>> output)
+                        throws ScriptException, NoSuchMethodException {
+
+                    final List<ElementT> inputs = buffer.stream()
+                            .map(TimestampedValue::getValue)
+                            .collect(Collectors.toList());
+                    try {
+                        final List<ElementT> results = executeBatch(inputs);
+                        for(int i=0; i<buffer.size(); i++) {
+                            output.accept(tagMain, TimestampedValue.of(results.get(i), buffer.get(i).getTimestamp()));
+                        }
+                        return;
+                    } catch (Exception e) {
+                        if(!this.skipScriptErrorFlag) {
+                            throw e;
+                        }
+                    }
+
+                    // Execute elements of the failed batch one by one to find which elements failed.
+                    for(final TimestampedValue<ElementT> element : buffer) {
+                        try {
+                            final List<ElementT> results = executeBatch(Collections.singletonList(element.getValue()));
+                            output.accept(tagMain, TimestampedValue.of(results.get(0), element.getTimestamp()));
+                        } catch (Exception e) {
+                            if(e instanceof ScriptException) {
+                                LOG.warn(String.format("JSTransform ScriptException: %s", hideScriptErrorFlag ? "" : e.getMessage()));
+                            } else if(e instanceof NoSuchMethodException) {
+                                LOG.warn(String.format("JSTransform NoSuchMethodException: %s", e.getMessage()));
+                            } else {
+                                LOG.warn(String.format("JSTransform Script Exception: %s", e.getMessage()));
+                            }
+                            output.accept(tagError, element);
+                        }
+                    }
+                }
+
+                private List<ElementT> executeBatch(final List<ElementT> inputs) throws ScriptException, NoSuchMethodException {
+                    final List<ElementT> results = executor.execute(inputs, this.invocable, this.fieldFuncMap);
+                    if(results == null || results.size() != inputs.size()) {
+                        throw new ScriptException(String.format("JSTransform batch returned %s results for %d elements",
+                                results == null ? null : results.size(), inputs.size()));
+                    }
+                    return results;
+                }
+
+            }).withOutputTags(tagMain, TupleTagList.of(tagError)));
+        }
+    }
+
+    /**
+     * Calls the function with the values as one JavaScript array and returns the elements of the returned array.
+     */
+    public static List<Object> invokeBatch(final Invocable invocable, final String function, final List<?> values)
+            throws ScriptException, NoSuchMethodException {
+
+        final Object java;
+        if(invocable instanceof ContextInvocable) {
+            java = ((ContextInvocable) invocable).global.get("Java");
+        } else if(invocable instanceof ScriptEngine) {
+            java = ((ScriptEngine) invocable).get("Java");
+        } else {
+            throw new IllegalArgumentException("Not supported invocable for batch: " + invocable);
+        }
+        final Object array = invocable.invokeMethod(java, "from", values);
+        final Object result = invocable.invokeFunction(function, array);
+        final Object[] outputs = (Object[]) invocable.invokeMethod(java, "to", result, "java.lang.Object[]");
+        if(outputs.length != values.size()) {
+            throw new ScriptException(String.format("Function %s returned %d results for %d values", function, outputs.length, values.size()));
+        }
+        return Arrays.asList(outputs);
+    }
+
+    private static String readScript(final String script) {
+        if(script.startsWith("gs://")) {
+            final String scriptText = StorageUtil.readString(script);
+            LOG.info("scriptText");
+            LOG.info(scriptText);
+            return scriptText;
+        }
+        return script;
+    }
+
+    private static final Map<String, Map<String,String>> FIELD_FUNC_MAPS = new ConcurrentHashMap<>();
+
+    private static Map<String,String> parseFieldFuncMap(final String fieldFunc) {
+        return FIELD_FUNC_MAPS.computeIfAbsent(fieldFunc, f -> Collections.unmodifiableMap(Arrays.stream(f.split(","))
+                .map(s -> s.split(":"))
+                .filter(s -> s.length == 2)
+                .collect(Collectors.toMap(s -> s[0].trim(), s-> s[1].trim()))));
+    }
+
+    /**
+     * Holds a script compiled once per worker JVM and a pool of script contexts evaluated from it.
+     * Each DoFn instance borrows one context in setup and returns it in teardown,
+     * so the script is never re-parsed when Beam creates DoFn instances for new threads.
+     * The engine is shared by all contexts. Nashorn keeps script state in the global object of each context
+     * and never uses the engine default context here, so threads can invoke their own contexts concurrently.
+     * A context itself is used by one DoFn instance, and so by one thread, at a time.
+     */
+    static class CompiledScriptPool {
+
+        private static final Map<String, CompiledScriptPool> POOLS = new ConcurrentHashMap<>();
+
+        private final ScriptEngine engine;
+        private final CompiledScript compiledScript;
+        private final Queue<ContextInvocable> idles;
+
+        private CompiledScriptPool(final String scriptText) throws ScriptException {
+            this.engine = new ScriptEngineManager().getEngineByName("JavaScript");
+            if(!(this.engine instanceof Compilable) || !(this.engine instanceof Invocable)) {
+                throw new IllegalStateException("JavaScript engine does not support compile: " + this.engine);
+            }
+            this.compiledScript = ((Compilable) this.engine).compile(scriptText);
+            this.idles = new ConcurrentLinkedQueue<>();
+        }
+
+        static CompiledScriptPool of(final String script) {
+            return POOLS.computeIfAbsent(script, s -> {
+                try {
+                    return new CompiledScriptPool(readScript(s));
+                } catch (ScriptException e) {
+                    throw new IllegalStateException("Failed to compile script: " + s, e);
+                }
+            });
+        }
+
+        ContextInvocable borrow() throws ScriptException {
+            final ContextInvocable idle = idles.poll();
+            if(idle != null) {
+                return idle;
+            }
+            final ScriptContext context = new SimpleScriptContext();
+            final Bindings bindings = engine.createBindings();
+            context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+            compiledScript.eval(context);
+            return new ContextInvocable((Invocable) engine, bindings);
+        }
+
+        void release(final ContextInvocable invocable) {
+            idles.offer(invocable);
+        }
+
+    }
+
+    /**
+     * Invocable bound to a pooled script context.
+     * The engine scope bindings created by the engine are the global object of the script evaluated in the context,
+     * so global functions are invoked as methods of the bindings without touching the engine default context.
+     */
+    static class ContextInvocable implements Invocable {
+
+        private final Invocable invocable;
+        private final Bindings global;
+
+        private ContextInvocable(final Invocable invocable, final Bindings global) {
+            this.invocable = invocable;
+            this.global = global;
+        }
+
+        @Override
+        public Object invokeFunction(final String name, final Object... args) throws ScriptException, NoSuchMethodException {
+            return invocable.invokeMethod(global, name, args);
+        }
+
+        @Override
+        public Object invokeMethod(final Object thiz, final String name, final Object... args) throws ScriptException, NoSuchMethodException {
+            return invocable.invokeMethod(thiz, name, args);
+        }
+
+        @Override
+        public <T> T getInterface(final Class<T> clasz) {
+            return invocable.getInterface(global, clasz);
+        }
+
+        @Override
+        public <T> T getInterface(final Object thiz, final Class<T> clasz) {
+            return invocable.getInterface(thiz, clasz);
+        }
+
+    }
+
     public interface ScriptExecutor<ElementT> extends Serializable {
         ElementT execute(ElementT element,
                          Invocable invocable,
                          Map<String,String> fieldFuncMap) throws ScriptException, NoSuchMethodException;
     }
 
+    public interface BatchScriptExecutor<ElementT> extends Serializable {
+        List<ElementT> execute(List<ElementT> elements,
+                               Invocable invocable,
+                               Map<String,String> fieldFuncMap) throws ScriptException, NoSuchMethodException;
+    }
+
 }
@@ -25,6 +25,7 @@ import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -32,10 +33,13 @@ import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PDFExtractTransform implements TransformModule {
 
@@ -54,10 +58,18 @@ public class PDFExtractTransform implements TransformModule {
     private static final String FIELD_NAME_MODIFICATIONDATE = "ModificationDate";
     private static final String FIELD_NAME_TRAPPED = "Trapped";
 
-    private class PDFExtractTransformParameters {
+    private static final String OUTPUT_MODE_DOCUMENT = "document";
+    private static final String OUTPUT_MODE_PAGE = "page";
+
+    private class PDFExtractTransformParameters implements Serializable {
 
         private String field;
         private String prefix;
+        private String outputMode;
+        private Integer parallelism;
+        private Integer timeoutSecond;
+        private Boolean useTempFile;
+        private Long maxMainMemoryBytes;
 
         public String getField() {
             return field;
@@ -74,6 +86,46 @@ public class PDFExtractTransform implements TransformModule {
         public void setPrefix(String prefix) {
             this.prefix = prefix;
         }
+
+        public String getOutputMode() {
+            return outputMode;
+        }
+
+        public void setOutputMode(String outputMode) {
+            this.outputMode = outputMode;
+        }
+
+        public Integer getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(Integer parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public Integer getTimeoutSecond() {
+            return timeoutSecond;
+        }
+
+        public void setTimeoutSecond(Integer timeoutSecond) {
+            this.timeoutSecond = timeoutSecond;
+        }
+
+        public Boolean getUseTempFile() {
+            return useTempFile;
+        }
+
+        public void setUseTempFile(Boolean useTempFile) {
+            this.useTempFile = useTempFile;
+        }
+
+        public Long getMaxMainMemoryBytes() {
+            return maxMainMemoryBytes;
+        }
+
+        public void setMaxMainMemoryBytes(Long maxMainMemoryBytes) {
+            this.maxMainMemoryBytes = maxMainMemoryBytes;
+        }
     }
 
     public String getName() { return "pdfextract"; }
@@ -441,12 +493,32 @@ public class PDFExtractTransform implements TransformModule {
         if(parameters.getField() == null) {
             throw new IllegalArgumentException("PDFExtract module required field parameter!");
         }
+        if(parameters.getOutputMode() != null
+                && !OUTPUT_MODE_DOCUMENT.equals(parameters.getOutputMode())
+                && !OUTPUT_MODE_PAGE.equals(parameters.getOutputMode())) {
+            throw new IllegalArgumentException("PDFExtract module outputMode must be document or page, but: " + parameters.getOutputMode());
+        }
+        if(parameters.getParallelism() != null && parameters.getParallelism() < 1) {
+            throw new IllegalArgumentException("PDFExtract module parallelism must be greater than zero, but: " + parameters.getParallelism());
+        }
+        if(parameters.getTimeoutSecond() != null && parameters.getTimeoutSecond() < 1) {
+            throw new IllegalArgumentException("PDFExtract module timeoutSecond must be greater than zero, but: " + parameters.getTimeoutSecond());
+        }
     }
 
     private static void setDefaultParameters(final PDFExtractTransformParameters parameters) {
         if(parameters.getPrefix() == null) {
             parameters.setPrefix("");
         }
+        if(parameters.getOutputMode() == null) {
+            parameters.setOutputMode(OUTPUT_MODE_DOCUMENT);
+        }
+        if(parameters.getParallelism() == null) {
+            parameters.setParallelism(1);
+        }
+        if(parameters.getUseTempFile() == null) {
+            parameters.setUseTempFile(false);
+        }
     }
 
     public static class PDFExtract<T,InputSchemaT,RuntimeSchemaT> extends PTransform<PCollection<T>, PCollection<T>> {
@@ -465,6 +537,7 @@ public class PDFExtractTransform implements TransformModule {
                            final SchemaConverter<InputSchemaT, RuntimeSchemaT> schemaConverter) {
 
             this.parameters = new Gson().fromJson(config.getParameters(), PDFExtractTransformParameters.class);
+            setDefaultParameters(this.parameters);
             this.contentExtractor = contentExtractor;
             this.contentSetter = contentSetter;
             this.schema = schema;
@@ -475,6 +548,9 @@ public class PDFExtractTransform implements TransformModule {
         public PCollection<T> expand(final PCollection<T> input) {
             return input.apply("ExtractText", ParDo.of(new PDFExtractDoFn<>(
                     parameters.getField(), parameters.getPrefix(),
+                    OUTPUT_MODE_PAGE.equals(parameters.getOutputMode()),
+                    parameters.getParallelism(), parameters.getTimeoutSecond(),
+                    parameters.getUseTempFile(), parameters.getMaxMainMemoryBytes(),
                     contentExtractor, contentSetter,
                     schema, schemaConverter)));
         }
@@ -483,8 +559,16 @@ public class PDFExtractTransform implements TransformModule {
 
             private final Logger log = LoggerFactory.getLogger(PDFExtractDoFn.class);
 
+            // Shared by all DoFn instances in the worker to bound the number of extraction threads.
+            private static final Map<Integer, ExecutorService> EXECUTORS = new ConcurrentHashMap<>();
+
             private final String field;
             private final String prefix;
+            private final boolean splitPages;
+            private final int parallelism;
+            private final Integer timeoutSecond;
+            private final boolean useTempFile;
+            private final Long maxMainMemoryBytes;
             private final ContentExtractor<T> contentExtractor;
             private final ContentSetter<T, RuntimeSchemaT> contentSetter;
 
@@ -493,8 +577,14 @@ public class PDFExtractTransform implements TransformModule {
 
             private transient RuntimeSchemaT runtimeSchema;
             private transient PDFTextStripper stripper;
+            private transient ExecutorService executor;
 
             PDFExtractDoFn(final String field, final String prefix,
+                           final boolean splitPages,
+                           final int parallelism,
+                           final Integer timeoutSecond,
+                           final boolean useTempFile,
+                           final Long maxMainMemoryBytes,
                            final ContentExtractor<T> contentExtractor,
                            final ContentSetter<T, RuntimeSchemaT> contentSetter,
                            final InputSchemaT schema,
@@ -502,6 +592,11 @@ public class PDFExtractTransform implements TransformModule {
 
                 this.field = field;
                 this.prefix = prefix;
+                this.splitPages = splitPages;
+                this.parallelism = parallelism;
+                this.timeoutSecond = timeoutSecond;
+                this.useTempFile = useTempFile;
+                this.maxMainMemoryBytes = maxMainMemoryBytes;
                 this.contentExtractor = contentExtractor;
                 this.contentSetter = contentSetter;
                 this.schema = schema;
@@ -510,8 +605,18 @@ public class PDFExtractTransform implements TransformModule {
 
             @Setup
             public void setup() throws IOException {
-                this.stripper = new PDFTextStripper();
+                this.stripper = createStripper();
                 this.runtimeSchema = schemaConverter.convert(schema);
+                if(parallelism > 1 || timeoutSecond != null) {
+                    final int poolSize = Math.max(parallelism, Runtime.getRuntime().availableProcessors());
+                    this.executor = EXECUTORS.computeIfAbsent(poolSize, size -> Executors.newFixedThreadPool(size, r -> {
+                        final Thread thread = new Thread(r, "pdfextract-" + size);
+                        thread.setDaemon(true);
+                        return thread;
+                    }));
+                } else {
+                    this.executor = null;
+                }
             }
 
             @ProcessElement
@@ -519,8 +624,14 @@ public class PDFExtractTransform implements TransformModule {
                 final T input = c.element();
                 final byte[] bytes = contentExtractor.getContent(input, field);
                 final PDFContent pdfContent = extract(bytes);
-                final T output = contentSetter.setContent(input, runtimeSchema, prefix, pdfContent);
-                c.output(output);
+                if(splitPages && pdfContent.getTexts().size() > 0) {
+                    for(int i=0; i<pdfContent.getTexts().size(); i++) {
+                        c.output(contentSetter.setContent(input, runtimeSchema, prefix, pdfContent.page(i)));
+                    }
+                } else {
+                    final T output = contentSetter.setContent(input, runtimeSchema, prefix, pdfContent);
+                    c.output(output);
+                }
             }
 
             private PDFContent extract(final byte[] bytes) {
@@ -528,33 +639,136 @@ public class PDFExtractTransform implements TransformModule {
                     LOG.warn("Content is null!");
                     return PDFContent.of();
                 }
-                try(final PDDocument document = PDDocument.load(bytes)) {
-                    final List<String> textContents = new ArrayList<>();
-                    int pageCount = document.getPages().getCount();
-                    for (int page = 0; page < pageCount; page++) {
-                        stripper.setStartPage(page);
-                        stripper.setEndPage(page);
-                        stripper.setSortByPosition(true);
-                        stripper.setLineSeparator("");
-                        stripper.setAddMoreFormatting(true);
-                        stripper.setSuppressDuplicateOverlappingText(true);
-                        stripper.setShouldSeparateByBeads(true);
-                        try {
-                            final String text = stripper.getText(document);
-                            textContents.add(text);
-                        } catch (Exception e) {
-                            log.error("error: " + e.getMessage());
-                            textContents.add(" ");
+                try {
+                    final PDDocument document = load(bytes);
+                    final int pageCount;
+                    final PDFDocumentInformation information;
+                    try {
+                        pageCount = document.getNumberOfPages();
+                        information = PDFDocumentInformation.of(document.getDocumentInformation());
+                    } catch (RuntimeException e) {
+                        document.close();
+                        throw e;
+                    }
+                    final List<String> textContents;
+                    if(executor == null || pageCount == 0) {
+                        try(document) {
+                            textContents = extractPages(document, stripper, 1, pageCount);
+                        }
+                    } else {
+                        // The document is handed over to extractPagesConcurrently, which closes it.
+                        textContents = extractPagesConcurrently(document, bytes, pageCount);
+                        if(textContents == null) {
+                            return PDFContent.of();
                         }
                     }
-                    final PDFDocumentInformation information = PDFDocumentInformation.of(document.getDocumentInformation());
-                    return PDFContent.of(textContents, document.getNumberOfPages(), bytes.length, information);
+                    return PDFContent.of(textContents, pageCount, bytes.length, information);
                 } catch (IOException e) {
                     log.error("miss: " + e.getMessage());
                     return PDFContent.of();
                 }
             }
 
+            // Splits pages into contiguous ranges. PDDocument is not thread-safe, so the first range uses the
+            // already loaded document and each other range loads its own copy once.
+            // The loaded document is closed by the first range task, or by this method if the task never started.
+            private List<String> extractPagesConcurrently(final PDDocument document, final byte[] bytes, final int pageCount) {
+                final int rangeCount = Math.max(1, Math.min(parallelism, pageCount));
+                final int rangeSize = (pageCount + rangeCount - 1) / rangeCount;
+                final AtomicBoolean documentClaimed = new AtomicBoolean(false);
+                final List<Future<List<String>>> futures = new ArrayList<>();
+                final List<String> textContents = new ArrayList<>();
+                try {
+                    for(int startPage = 1; startPage <= pageCount; startPage += rangeSize) {
+                        final int start = startPage;
+                        final int end = Math.min(pageCount, startPage + rangeSize - 1);
+                        if(start == 1) {
+                            futures.add(executor.submit(() -> {
+                                if(!documentClaimed.compareAndSet(false, true)) {
+                                    return new ArrayList<>();
+                                }
+                                try(document) {
+                                    return extractPages(document, createStripper(), start, end);
+                                }
+                            }));
+                        } else {
+                            futures.add(executor.submit(() -> {
+                                try(final PDDocument rangeDocument = load(bytes)) {
+                                    return extractPages(rangeDocument, createStripper(), start, end);
+                                }
+                            }));
+                        }
+                    }
+
+                    final long deadline = timeoutSecond == null ? 0 : System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSecond);
+                    for(final Future<List<String>> future : futures) {
+                        if(timeoutSecond == null) {
+                            textContents.addAll(future.get());
+                        } else {
+                            textContents.addAll(future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                        }
+                    }
+                    return textContents;
+                } catch (TimeoutException e) {
+                    log.error("Timeout to extract pdf in " + timeoutSecond + " seconds. pages: " + pageCount + ", bytes: " + bytes.length);
+                } catch (ExecutionException e) {
+                    log.error("miss: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                } finally {
+                    // Interrupts running tasks so that they stop at the next page and release their documents.
+                    futures.forEach(f -> f.cancel(true));
+                    if(documentClaimed.compareAndSet(false, true)) {
+                        try {
+                            document.close();
+                        } catch (IOException e) {
+                            log.error("Failed to close pdf document: " + e.getMessage());
+                        }
+                    }
+                }
+                return null;
+            }
+
+            private List<String> extractPages(final PDDocument document, final PDFTextStripper stripper, final int startPage, final int endPage) {
+                final List<String> textContents = new ArrayList<>();
+                for (int page = startPage; page <= endPage; page++) {
+                    if(Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    try {
+                        final String text = stripper.getText(document);
+                        textContents.add(text);
+                    } catch (Exception e) {
+                        log.error("error: " + e.getMessage());
+                        textContents.add(" ");
+                    }
+                }
+                return textContents;
+            }
+
+            private PDDocument load(final byte[] bytes) throws IOException {
+                if(!useTempFile) {
+                    return PDDocument.load(bytes);
+                }
+                final MemoryUsageSetting setting = maxMainMemoryBytes == null
+                        ? MemoryUsageSetting.setupTempFileOnly()
+                        : MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+                return PDDocument.load(new ByteArrayInputStream(bytes), setting);
+            }
+
+            private static PDFTextStripper createStripper() throws IOException {
+                final PDFTextStripper stripper = new PDFTextStripper();
+                stripper.setSortByPosition(true);
+                stripper.setLineSeparator("");
+                stripper.setAddMoreFormatting(true);
+                stripper.setSuppressDuplicateOverlappingText(true);
+                stripper.setShouldSeparateByBeads(true);
+                return stripper;
+            }
+
         }
 
         private interface ContentExtractor<T> extends Serializable {
@@ -619,6 +833,15 @@ public class PDFExtractTransform implements TransformModule {
             return content;
         }
 
+        public PDFContent page(final int index) {
+            final PDFContent content = new PDFContent();
+            content.setTexts(Arrays.asList(texts.get(index)));
+            content.setPage(index + 1);
+            content.setFileSize(fileSize);
+            content.setInformation(information);
+            return content;
+        }
+
         public static PDFContent of(final List<String> texts, final int page, final int fileSize, final PDFDocumentInformation information) {
             final PDFContent content = new PDFContent();
             content.setTexts(texts);
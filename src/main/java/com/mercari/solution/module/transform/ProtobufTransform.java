@@ -72,6 +72,7 @@ public class ProtobufTransform implements TransformModule {
             private String field;
             private String messageName;
             private String outputField;
+            private List<String> selectFields;
 
             public String getField() {
                 return field;
@@ -96,6 +97,14 @@ public class ProtobufTransform implements TransformModule {
             public void setOutputField(String outputField) {
                 this.outputField = outputField;
             }
+
+            public List<String> getSelectFields() {
+                return selectFields;
+            }
+
+            public void setSelectFields(List<String> selectFields) {
+                this.selectFields = selectFields;
+            }
         }
 
     }
@@ -134,7 +143,9 @@ public class ProtobufTransform implements TransformModule {
                     final Map<String, String> messageSchemas = new HashMap<>();
                     final SchemaBuilder.FieldAssembler<Schema> fieldAssembler = avroSchemaBuilder.fields();
                     for(var field : parameters.getFields()) {
-                        final Schema messageSchema = ProtoToRecordConverter.convertSchema(descriptors.get(field.getMessageName()));
+                        final Schema messageSchema = selectFields(
+                                ProtoToRecordConverter.convertSchema(descriptors.get(field.getMessageName())),
+                                field.getSelectFields());
                         messageSchemas.put(field.getField(), messageSchema.toString());
                         fieldAssembler
                                 .name(field.getOutputField() == null ? field.getField() : field.getOutputField())
@@ -155,7 +166,7 @@ public class ProtobufTransform implements TransformModule {
                                 }
                                 return builder.build();
                             },
-                            ProtoToRecordConverter::convert);
+                            (Schema s, Descriptors.Descriptor d, JsonFormat.Printer p) -> ProtoDecoder.of(s, d, p)::decode);
                     final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
                     final PCollection<?> output = outputs.get(transform.outputTag).setCoder(AvroCoder.of(outputSchema));
                     final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
@@ -171,7 +182,9 @@ public class ProtobufTransform implements TransformModule {
                             .filter(f -> !excludeFields.contains(f.getName()))
                             .collect(Collectors.toList());
                     for(var field : parameters.getFields()) {
-                        final org.apache.beam.sdk.schemas.Schema messageSchema = ProtoToRowConverter.convertSchema(descriptors.get(field.getMessageName()));
+                        final org.apache.beam.sdk.schemas.Schema messageSchema = RowSchemaUtil.toBuilder(
+                                ProtoToRowConverter.convertSchema(descriptors.get(field.getMessageName())),
+                                field.getSelectFields()).build();
                         messageTypes.put(field.getField(), messageSchema);
                         fields.add(org.apache.beam.sdk.schemas.Schema.Field.of(
                                 field.getOutputField() == null ? field.getField() : field.getOutputField(),
@@ -188,7 +201,7 @@ public class ProtobufTransform implements TransformModule {
                             s -> s,
                             RowSchemaUtil::getBytes,
                             RowSchemaUtil::merge,
-                            ProtoToRowConverter::convert);
+                            (org.apache.beam.sdk.schemas.Schema s, Descriptors.Descriptor d, JsonFormat.Printer p) -> ProtoDecoder.of(s, d, p)::decode);
                     final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
                     final PCollection<?> output = outputs.get(transform.outputTag).setCoder(RowCoder.of(outputSchema));
                     final PCollection<?> failures = outputs.get(transform.failuresTag).setCoder(inputCollection.getCollection().getCoder());
@@ -197,6 +210,7 @@ public class ProtobufTransform implements TransformModule {
                     break;
                 }
                 case STRUCT: {
+                    validateSelectFields(parameters, input.getDataType());
                     final FCollection<Struct> inputCollection = (FCollection<Struct>) input;
                     final Type inputSchema = inputCollection.getSpannerType();
                     final Map<String, Type> messageTypes = new HashMap<>();
@@ -225,7 +239,7 @@ public class ProtobufTransform implements TransformModule {
                                     }
                                     return builder.build();
                             },
-                            ProtoToStructConverter::convert);
+                            (Type t, Descriptors.Descriptor d, JsonFormat.Printer p) -> bytes -> ProtoToStructConverter.convert(t, d, bytes, p));
 
                     final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
                     final PCollection<?> output = outputs.get(transform.outputTag);
@@ -235,6 +249,7 @@ public class ProtobufTransform implements TransformModule {
                     break;
                 }
                 case ENTITY: {
+                    validateSelectFields(parameters, input.getDataType());
                     final FCollection<Entity> inputCollection = (FCollection<Entity>) input;
                     final org.apache.beam.sdk.schemas.Schema inputSchema = inputCollection.getSchema();
                     final Map<String, org.apache.beam.sdk.schemas.Schema> messageTypes = new HashMap<>();
@@ -263,7 +278,7 @@ public class ProtobufTransform implements TransformModule {
                                 }
                                 return builder.build();
                             },
-                            ProtoToEntityConverter::convert);
+                            (org.apache.beam.sdk.schemas.Schema s, Descriptors.Descriptor d, JsonFormat.Printer p) -> bytes -> ProtoToEntityConverter.convert(s, d, bytes, p));
 
                     final PCollectionTuple outputs = inputCollection.getCollection().apply(name, transform);
                     final PCollection<?> output = outputs.get(transform.outputTag);
@@ -311,6 +326,13 @@ public class ProtobufTransform implements TransformModule {
         for(var field : parameters.getFields()) {
             if(!descriptors.containsKey(field.getMessageName())) {
                 errorMessages.add("Descriptor file does not contain messageName: " + field.getMessageName());
+            } else if(field.getSelectFields() != null) {
+                final Descriptors.Descriptor descriptor = descriptors.get(field.getMessageName());
+                for(final String selectField : field.getSelectFields()) {
+                    if(descriptor.findFieldByName(selectField) == null) {
+                        errorMessages.add("Message: " + field.getMessageName() + " does not contain selectFields: " + selectField);
+                    }
+                }
             }
         }
 
@@ -320,6 +342,21 @@ public class ProtobufTransform implements TransformModule {
         }
     }
 
+    private static void validateSelectFields(final ProtobufTransformParameters parameters, final DataType dataType) {
+        for(var field : parameters.getFields()) {
+            if(field.getSelectFields() != null) {
+                throw new IllegalArgumentException("ProtobufTransform config parameters.fields.selectFields is not supported for input type: " + dataType.name());
+            }
+        }
+    }
+
+    private static Schema selectFields(final Schema schema, final List<String> selectFields) {
+        if(selectFields == null) {
+            return schema;
+        }
+        return AvroSchemaUtil.toSchemaBuilder(schema, selectFields, null).fields().endRecord();
+    }
+
     private static void setDefaultParameters(ProtobufTransformParameters parameters) {
         if(parameters.getFailFast() == null) {
             parameters.setFailFast(true);
@@ -343,7 +380,7 @@ public class ProtobufTransform implements TransformModule {
         private final SerializableFunction<InputSchemaT, RuntimeSchemaT> schemaConverter;
         private final FieldGetter<T> getter;
         private final FieldSetter<T, RuntimeSchemaT> setter;
-        private final ProtoContenter<T, RuntimeSchemaT> converter;
+        private final ProtoDecoderCreator<T, RuntimeSchemaT> decoderCreator;
 
         private Transform(final ProtobufTransformParameters parameters,
                           final Map<String, InputSchemaT> inputMessageSchemas,
@@ -351,7 +388,7 @@ public class ProtobufTransform implements TransformModule {
                           final SerializableFunction<InputSchemaT, RuntimeSchemaT> schemaConverter,
                           final FieldGetter<T> getter,
                           final FieldSetter<T, RuntimeSchemaT> setter,
-                          final ProtoContenter<T, RuntimeSchemaT> converter) {
+                          final ProtoDecoderCreator<T, RuntimeSchemaT> decoderCreator) {
 
             this.parameters = parameters;
 
@@ -360,7 +397,7 @@ public class ProtobufTransform implements TransformModule {
             this.schemaConverter = schemaConverter;
             this.getter = getter;
             this.setter = setter;
-            this.converter = converter;
+            this.decoderCreator = decoderCreator;
 
             this.outputTag = new TupleTag<>(){};
             this.failuresTag = new TupleTag<>(){};
@@ -382,7 +419,7 @@ public class ProtobufTransform implements TransformModule {
                     schemaConverter,
                     getter,
                     setter,
-                    converter,
+                    decoderCreator,
                     parameters.getFailFast());
 
             return input.apply("Deserialize", ParDo
@@ -400,7 +437,7 @@ public class ProtobufTransform implements TransformModule {
             private final FieldGetter<T> getter;
             private final FieldSetter<T, RuntimeSchemaT> setter;
             private final SerializableFunction<InputSchemaT, RuntimeSchemaT> schemaConverter;
-            private final ProtoContenter<T, RuntimeSchemaT> converter;
+            private final ProtoDecoderCreator<T, RuntimeSchemaT> decoderCreator;
 
             private final boolean failFast;
 
@@ -408,6 +445,7 @@ public class ProtobufTransform implements TransformModule {
             private transient RuntimeSchemaT resultSchema;
             private transient Map<String, Descriptors.Descriptor> messageDescriptors;
             private transient Map<String, Descriptors.Descriptor> descriptors;
+            private transient Map<String, ProtoDecoderFunction<T>> decoders;
 
             private transient JsonFormat.Printer printer;
 
@@ -418,7 +456,7 @@ public class ProtobufTransform implements TransformModule {
                          final SerializableFunction<InputSchemaT, RuntimeSchemaT> schemaConverter,
                          final FieldGetter<T> getter,
                          final FieldSetter<T, RuntimeSchemaT> setter,
-                         final ProtoContenter<T, RuntimeSchemaT> converter,
+                         final ProtoDecoderCreator<T, RuntimeSchemaT> decoderCreator,
                          final boolean failFast) {
 
                 this.descriptorPath = descriptorPath;
@@ -428,7 +466,7 @@ public class ProtobufTransform implements TransformModule {
                 this.schemaConverter = schemaConverter;
                 this.getter = getter;
                 this.setter = setter;
-                this.converter = converter;
+                this.decoderCreator = decoderCreator;
                 this.failFast = failFast;
             }
 
@@ -445,6 +483,12 @@ public class ProtobufTransform implements TransformModule {
                 final JsonFormat.TypeRegistry.Builder builder = JsonFormat.TypeRegistry.newBuilder();
                 this.descriptors.forEach((k, v) -> builder.add(v));
                 this.printer = JsonFormat.printer().usingTypeRegistry(builder.build());
+
+                // Decoders compile descriptors into field lookup tables once per DoFn instance.
+                this.decoders = new HashMap<>();
+                for(final Map.Entry<String, Descriptors.Descriptor> entry : messageDescriptors.entrySet()) {
+                    this.decoders.put(entry.getKey(), decoderCreator.create(messageSchemas.get(entry.getKey()), entry.getValue(), printer));
+                }
             }
 
             @ProcessElement
@@ -452,11 +496,9 @@ public class ProtobufTransform implements TransformModule {
                 final T input = c.element();
                 try {
                     final Map<String, T> messages = new HashMap<>();
-                    for (var entry : messageDescriptors.entrySet()) {
+                    for (var entry : decoders.entrySet()) {
                         final byte[] protoBytes = getter.getBytes(input, entry.getKey());
-                        final T message = converter.convert(
-                                messageSchemas.get(entry.getKey()),
-                                messageDescriptors.get(entry.getKey()), protoBytes, printer);
+                        final T message = entry.getValue().decode(protoBytes);
                         messages.put(entry.getKey(), message);
                     }
                     final T output = setter.setValue(resultSchema, input, messages);
@@ -482,11 +524,14 @@ public class ProtobufTransform implements TransformModule {
         }
     }
 
-    private interface ProtoContenter<T, SchemaT> extends Serializable {
-        T convert(final SchemaT schema,
-                  final Descriptors.Descriptor messageDescriptor,
-                  final byte[] bytes,
-                  final JsonFormat.Printer printer);
+    private interface ProtoDecoderCreator<T, SchemaT> extends Serializable {
+        ProtoDecoderFunction<T> create(final SchemaT schema,
+                                       final Descriptors.Descriptor messageDescriptor,
+                                       final JsonFormat.Printer printer);
+    }
+
+    private interface ProtoDecoderFunction<T> {
+        T decode(final byte[] bytes);
     }
 
     private interface FieldGetter<T> extends Serializable {
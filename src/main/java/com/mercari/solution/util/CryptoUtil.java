@@ -1,35 +1,107 @@
 package com.mercari.solution.util;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.util.Arrays;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 
 public class CryptoUtil {
 
+    // CTR is a stream mode, so no padding is applied. Newer JDKs reject CTR with PKCS5Padding.
+    private static final String CIPHER_AES_CTR = "AES/CTR/NoPadding";
+    private static final String CIPHER_AES_GCM = "AES/GCM/NoPadding";
+
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    // Cipher.getInstance is costly (provider lookup), so instances are reused per thread.
+    // The default SunJCE provider uses AES-NI/CLMUL intrinsics for AES and GCM when available.
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<SecureRandom> RANDOMS = ThreadLocal.withInitial(SecureRandom::new);
+
     public byte[] decrypt(
             final String algorithm,
             final byte[] keyBytes,
             final byte[] encryptedBytes) throws Exception {
 
+        if(encryptedBytes == null || encryptedBytes.length == 0) {
+            return null;
+        }
+        return decrypt(algorithm, createKey(algorithm, keyBytes), encryptedBytes);
+    }
+
+    public byte[] decrypt(
+            final String algorithm,
+            final Key key,
+            final byte[] encryptedBytes) throws GeneralSecurityException {
+
         if(encryptedBytes == null || encryptedBytes.length == 0) {
             return null;
         }
 
-        final java.security.Key key = new SecretKeySpec(keyBytes, findAlgorithmForKeySpec(algorithm));
         final String cipherAlgorithm = findAlgorithmForCipher(algorithm);
-        final Cipher decrypter = Cipher.getInstance(cipherAlgorithm);
-        final byte[] dataToDecrypt;
+        final Cipher decrypter = getCipher(cipherAlgorithm);
         // Block cipher algorithm such as AES/CTR must set block size.
-        if("AES/CTR/PKCS5Padding".equals(cipherAlgorithm)) {
-            final IvParameterSpec iv = new IvParameterSpec(Arrays.copyOf(encryptedBytes, decrypter.getBlockSize()));
+        if(CIPHER_AES_CTR.equals(cipherAlgorithm)) {
+            final int blockSize = decrypter.getBlockSize();
+            final IvParameterSpec iv = new IvParameterSpec(encryptedBytes, 0, blockSize);
+            decrypter.init(Cipher.DECRYPT_MODE, key, iv);
+            return decrypter.doFinal(encryptedBytes, blockSize, encryptedBytes.length - blockSize);
+        } else if(CIPHER_AES_GCM.equals(cipherAlgorithm)) {
+            final GCMParameterSpec iv = new GCMParameterSpec(GCM_TAG_BITS, encryptedBytes, 0, GCM_IV_LENGTH);
             decrypter.init(Cipher.DECRYPT_MODE, key, iv);
-            dataToDecrypt = Arrays.copyOfRange(encryptedBytes, decrypter.getBlockSize(), encryptedBytes.length);
+            return decrypter.doFinal(encryptedBytes, GCM_IV_LENGTH, encryptedBytes.length - GCM_IV_LENGTH);
+        } else {
+            throw new IllegalArgumentException(cipherAlgorithm + " is not supported!");
+        }
+    }
+
+    public byte[] encrypt(
+            final String algorithm,
+            final byte[] keyBytes,
+            final byte[] bytes) throws Exception {
+
+        if(bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return encrypt(algorithm, createKey(algorithm, keyBytes), bytes);
+    }
+
+    public byte[] encrypt(
+            final String algorithm,
+            final Key key,
+            final byte[] bytes) throws GeneralSecurityException {
+
+        if(bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        final String cipherAlgorithm = findAlgorithmForCipher(algorithm);
+        final Cipher encrypter = getCipher(cipherAlgorithm);
+        // Encrypted bytes are prefixed with the random IV so that decrypt can restore it.
+        if(CIPHER_AES_CTR.equals(cipherAlgorithm)) {
+            final byte[] iv = new byte[encrypter.getBlockSize()];
+            RANDOMS.get().nextBytes(iv);
+            encrypter.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+            return concat(iv, encrypter, bytes);
+        } else if(CIPHER_AES_GCM.equals(cipherAlgorithm)) {
+            final byte[] iv = new byte[GCM_IV_LENGTH];
+            RANDOMS.get().nextBytes(iv);
+            encrypter.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            return concat(iv, encrypter, bytes);
         } else {
             throw new IllegalArgumentException(cipherAlgorithm + " is not supported!");
         }
-        return decrypter.doFinal(dataToDecrypt);
+    }
+
+    public static Key createKey(final String algorithm, final byte[] keyBytes) {
+        return new SecretKeySpec(keyBytes, findAlgorithmForKeySpec(algorithm));
     }
 
     public String toString(byte[] bytes) {
@@ -44,10 +116,34 @@ public class CryptoUtil {
         return Base64.getDecoder().decode(text);
     }
 
+    private static byte[] concat(final byte[] iv, final Cipher cipher, final byte[] bytes) throws GeneralSecurityException {
+        final byte[] output = new byte[iv.length + cipher.getOutputSize(bytes.length)];
+        System.arraycopy(iv, 0, output, 0, iv.length);
+        final int size = cipher.doFinal(bytes, 0, bytes.length, output, iv.length);
+        if(iv.length + size == output.length) {
+            return output;
+        }
+        final byte[] trimmed = new byte[iv.length + size];
+        System.arraycopy(output, 0, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+
+    private static Cipher getCipher(final String cipherAlgorithm) throws GeneralSecurityException {
+        final Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(cipherAlgorithm);
+        if(cipher == null) {
+            cipher = Cipher.getInstance(cipherAlgorithm);
+            ciphers.put(cipherAlgorithm, cipher);
+        }
+        return cipher;
+    }
+
     private static String findAlgorithmForKeySpec(final String algorithm) {
         switch (algorithm.toUpperCase()) {
             case "AES":
             case "AES256":
+            case "AES/GCM":
+            case "AES256/GCM":
                 return "AES";
             default:
                 throw new IllegalArgumentException("Not found algorithm: " + algorithm);
@@ -58,7 +154,10 @@ public class CryptoUtil {
         switch (algorithm.toUpperCase()) {
             case "AES":
             case "AES256":
-                return "AES/CTR/PKCS5Padding";
+                return CIPHER_AES_CTR;
+            case "AES/GCM":
+            case "AES256/GCM":
+                return CIPHER_AES_GCM;
             default:
                 throw new IllegalArgumentException("Not found algorithm: " + algorithm);
         }
@@ -2,10 +2,13 @@ package com.mercari.solution.util;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import org.joda.time.ReadableInstant;
+import org.joda.time.format.ISODateTimeFormat;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -255,8 +258,15 @@ public class Filter implements Serializable {
                 c = new BigDecimal(value.toString()).compareTo(leaf.getValue().getAsBigDecimal());
             } else if(value instanceof String) {
                 c = ((String)value).compareTo(leaf.getValue().getAsString());
+            } else if(value instanceof LocalDate) {
+                final JsonElement v = leaf.getValue();
+                c = ((LocalDate)value).compareTo(isString(v) ? LocalDate.parse(v.getAsString()) : LocalDate.ofEpochDay(v.getAsLong()));
+            } else if(value instanceof ReadableInstant) {
+                final JsonElement v = leaf.getValue();
+                final long millis = isString(v) ? ISODateTimeFormat.dateTimeParser().withZoneUTC().parseMillis(v.getAsString()) : v.getAsLong();
+                c = Long.compare(((ReadableInstant)value).getMillis(), millis);
             } else {
-                throw new IllegalArgumentException("Condition compare op must be Number or String. : " + value.getClass());
+                throw new IllegalArgumentException("Condition compare op must be Number, String, Date or Timestamp. : " + value.getClass());
             }
 
             switch (leaf.getOp()) {
@@ -282,6 +292,10 @@ public class Filter implements Serializable {
         }
     }
 
+    private static boolean isString(final JsonElement element) {
+        return element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+    }
+
     public interface Getter<T> extends Serializable {
         Object getValue(final T value, final String field);
     }
@@ -0,0 +1,162 @@
+package com.mercari.solution.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads records of LevelDB log format, used by Datastore managed export files.
+ * A file consists of 32KB blocks, and a record is stored as one FULL fragment or FIRST, MIDDLE.., LAST fragments
+ * spanning blocks. Reading can start at any block. Fragments of a record started in a previous block are skipped,
+ * so that a file can be split at block boundaries.
+ * See https://github.com/google/leveldb/blob/main/doc/log_format.md
+ */
+public class LevelDBLogReader {
+
+    public static final int BLOCK_SIZE = 32 * 1024;
+
+    private static final int HEADER_SIZE = 7;
+    private static final int TYPE_ZERO = 0;
+    private static final int TYPE_FULL = 1;
+    private static final int TYPE_FIRST = 2;
+    private static final int TYPE_MIDDLE = 3;
+    private static final int TYPE_LAST = 4;
+    private static final int MASK_DELTA = 0xa282ead8;
+
+    private final InputStream input;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final ByteArrayOutputStream fragments = new ByteArrayOutputStream();
+
+    private long blockIndex;
+    private int blockLength;
+    private int position;
+    private boolean eof;
+
+    private long recordBlock = -1;
+
+    /**
+     * @param input stream positioned at the start of the block startBlock.
+     */
+    public LevelDBLogReader(final InputStream input, final long startBlock) {
+        this.input = input;
+        this.blockIndex = startBlock - 1;
+        this.blockLength = 0;
+        this.position = 0;
+        this.eof = false;
+    }
+
+    public static long getBlockCount(final long fileSize) {
+        return (fileSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the next record starting at or after the start block, or null if the end of the input is reached.
+     */
+    public byte[] next() throws IOException {
+        boolean inFragments = false;
+        while(true) {
+            if(position + HEADER_SIZE > blockLength) {
+                // Less than a header left in the block is the trailer filled with zeros.
+                if(!readBlock()) {
+                    return null;
+                }
+                continue;
+            }
+
+            final int length = (block[position + 4] & 0xff) | ((block[position + 5] & 0xff) << 8);
+            final int type = block[position + 6] & 0xff;
+            if(type == TYPE_ZERO && length == 0) {
+                // Preallocated area, nothing follows in the block.
+                position = blockLength;
+                continue;
+            }
+            final int dataStart = position + HEADER_SIZE;
+            if(dataStart + length > blockLength) {
+                throw new IOException("Record length: " + length + " exceeds block: " + blockIndex);
+            }
+            if(!isValidChecksum(dataStart, length, type)) {
+                throw new IOException("Record checksum mismatch in block: " + blockIndex);
+            }
+            position = dataStart + length;
+
+            switch (type) {
+                case TYPE_FULL: {
+                    fragments.reset();
+                    recordBlock = blockIndex;
+                    final byte[] record = new byte[length];
+                    System.arraycopy(block, dataStart, record, 0, length);
+                    return record;
+                }
+                case TYPE_FIRST: {
+                    fragments.reset();
+                    fragments.write(block, dataStart, length);
+                    recordBlock = blockIndex;
+                    inFragments = true;
+                    break;
+                }
+                case TYPE_MIDDLE: {
+                    if(inFragments) {
+                        fragments.write(block, dataStart, length);
+                    }
+                    break;
+                }
+                case TYPE_LAST: {
+                    // Skip the tail of a record started before the start block.
+                    if(inFragments) {
+                        fragments.write(block, dataStart, length);
+                        final byte[] record = fragments.toByteArray();
+                        fragments.reset();
+                        return record;
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown record type: " + type + " in block: " + blockIndex);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the block where the record last returned starts.
+     */
+    public long getRecordBlock() {
+        return recordBlock;
+    }
+
+    private boolean readBlock() throws IOException {
+        if(eof) {
+            return false;
+        }
+        int read = 0;
+        while(read < BLOCK_SIZE) {
+            final int n = input.read(block, read, BLOCK_SIZE - read);
+            if(n < 0) {
+                eof = true;
+                break;
+            }
+            read += n;
+        }
+        blockIndex++;
+        blockLength = read;
+        position = 0;
+        return read > 0;
+    }
+
+    private boolean isValidChecksum(final int dataStart, final int length, final int type) {
+        final int expected = (block[position] & 0xff)
+                | ((block[position + 1] & 0xff) << 8)
+                | ((block[position + 2] & 0xff) << 16)
+                | ((block[position + 3] & 0xff) << 24);
+        final CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(block, dataStart, length);
+        final int actual = (int) crc.getValue();
+        return expected == mask(actual);
+    }
+
+    public static int mask(final int crc) {
+        return ((crc >>> 15) | (crc << 17)) + MASK_DELTA;
+    }
+
+}
@@ -0,0 +1,411 @@
+package com.mercari.solution.util;
+
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.fs.ResourceId;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hive.ql.exec.vector.*;
+import org.apache.hadoop.util.Progressable;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.TypeDescription;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class OrcUtil {
+
+    private static final String ROOT_NAME = "root";
+
+    public static Schema getAvroSchema(final byte[] bytes) throws IOException {
+        try(final Reader reader = createReader(bytes)) {
+            return convertSchema(reader.getSchema());
+        }
+    }
+
+    public static Reader createReader(final byte[] bytes) throws IOException {
+        return createReader(new Path("/" + ROOT_NAME + ".orc"), bytes.length, () -> new BytesInputStream(bytes));
+    }
+
+    public static Reader createReader(final ResourceId resourceId, final long size) throws IOException {
+        return createReader(new Path(resourceId.toString()), size,
+                () -> new ChannelInputStream((SeekableByteChannel) FileSystems.open(resourceId)));
+    }
+
+    private static Reader createReader(final Path path, final long size, final StreamOpener opener) throws IOException {
+        final Configuration conf = new Configuration();
+        final FileSystem fs = new StreamFileSystem(path, size, opener, conf);
+        return OrcFile.createReader(path, OrcFile.readerOptions(conf).filesystem(fs).maxLength(size));
+    }
+
+    public static Schema convertSchema(final TypeDescription type) {
+        if(!TypeDescription.Category.STRUCT.equals(type.getCategory())) {
+            throw new IllegalArgumentException("Orc root type must be struct, but was: " + type);
+        }
+        return convertRecordSchema(type, ROOT_NAME, null);
+    }
+
+    /**
+     * Returns column ids to read for the top-level fields, or null to read all columns.
+     */
+    public static boolean[] createInclude(final TypeDescription type, final Collection<String> fields) {
+        if(fields == null || fields.size() == 0) {
+            return null;
+        }
+        final boolean[] include = new boolean[type.getMaximumId() + 1];
+        include[0] = true;
+        for(final String field : fields) {
+            final int index = type.getFieldNames().indexOf(field);
+            if(index < 0) {
+                throw new IllegalArgumentException("Orc field: " + field + " not found in schema: " + type);
+            }
+            final TypeDescription child = type.getChildren().get(index);
+            for(int id = child.getId(); id <= child.getMaximumId(); id++) {
+                include[id] = true;
+            }
+        }
+        return include;
+    }
+
+    /**
+     * Converts the rows of a batch into records of the schema, column by column.
+     * The schema can contain a subset of the top-level fields of the orc type.
+     */
+    public static List<GenericRecord> convert(final VectorizedRowBatch batch, final TypeDescription type, final Schema schema) {
+        final List<GenericRecord> records = new ArrayList<>(batch.size);
+        for(int i=0; i<batch.size; i++) {
+            records.add(new GenericData.Record(schema));
+        }
+        for(final Schema.Field field : schema.getFields()) {
+            final int index = type.getFieldNames().indexOf(field.name());
+            if(index < 0) {
+                throw new IllegalArgumentException("Field: " + field.name() + " not found in orc schema: " + type);
+            }
+            final ColumnVector vector = batch.cols[index];
+            final TypeDescription fieldType = type.getChildren().get(index);
+            final Schema fieldSchema = AvroSchemaUtil.unnestUnion(field.schema());
+            for(int i=0; i<batch.size; i++) {
+                final int row = batch.selectedInUse ? batch.selected[i] : i;
+                records.get(i).put(field.pos(), getValue(vector, fieldType, fieldSchema, row));
+            }
+        }
+        return records;
+    }
+
+    private static Schema convertRecordSchema(final TypeDescription type, final String name, final String namespace) {
+        final String childNamespace = namespace == null ? name : namespace + "." + name;
+        final List<Schema.Field> fields = new ArrayList<>();
+        for(int i=0; i<type.getFieldNames().size(); i++) {
+            final String fieldName = type.getFieldNames().get(i);
+            final Schema fieldSchema = convertFieldSchema(type.getChildren().get(i), fieldName, childNamespace);
+            fields.add(new Schema.Field(fieldName, AvroSchemaUtil.toNullable(fieldSchema), null, (Object) null));
+        }
+        return Schema.createRecord(name, null, namespace, false, fields);
+    }
+
+    private static Schema convertFieldSchema(final TypeDescription type, final String name, final String namespace) {
+        switch (type.getCategory()) {
+            case BOOLEAN:
+                return Schema.create(Schema.Type.BOOLEAN);
+            case BYTE:
+            case SHORT:
+            case INT:
+                return Schema.create(Schema.Type.INT);
+            case LONG:
+                return Schema.create(Schema.Type.LONG);
+            case FLOAT:
+                return Schema.create(Schema.Type.FLOAT);
+            case DOUBLE:
+                return Schema.create(Schema.Type.DOUBLE);
+            case STRING:
+            case VARCHAR:
+            case CHAR:
+                return Schema.create(Schema.Type.STRING);
+            case BINARY:
+                return Schema.create(Schema.Type.BYTES);
+            case DATE:
+                return LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT));
+            case TIMESTAMP:
+            case TIMESTAMP_INSTANT:
+                return LogicalTypes.timestampMicros().addToSchema(Schema.create(Schema.Type.LONG));
+            case DECIMAL:
+                return LogicalTypes.decimal(type.getPrecision(), type.getScale()).addToSchema(Schema.create(Schema.Type.BYTES));
+            case LIST:
+                return Schema.createArray(AvroSchemaUtil.toNullable(
+                        convertFieldSchema(type.getChildren().get(0), name, namespace)));
+            case MAP:
+                return Schema.createMap(AvroSchemaUtil.toNullable(
+                        convertFieldSchema(type.getChildren().get(1), name, namespace)));
+            case STRUCT:
+                return convertRecordSchema(type, name, namespace);
+            case UNION:
+            default:
+                throw new IllegalArgumentException("Not supported orc type: " + type + " for field: " + name);
+        }
+    }
+
+    private static Object getValue(final ColumnVector vector, final TypeDescription type, final Schema schema, final int row) {
+        final int index = vector.isRepeating ? 0 : row;
+        if(!vector.noNulls && vector.isNull[index]) {
+            return null;
+        }
+        switch (type.getCategory()) {
+            case BOOLEAN:
+                return ((LongColumnVector) vector).vector[index] != 0;
+            case BYTE:
+            case SHORT:
+            case INT:
+            case DATE:
+                return (int) ((LongColumnVector) vector).vector[index];
+            case LONG:
+                return ((LongColumnVector) vector).vector[index];
+            case FLOAT:
+                return (float) ((DoubleColumnVector) vector).vector[index];
+            case DOUBLE:
+                return ((DoubleColumnVector) vector).vector[index];
+            case STRING:
+            case VARCHAR:
+            case CHAR: {
+                final BytesColumnVector bytesVector = (BytesColumnVector) vector;
+                return new String(bytesVector.vector[index], bytesVector.start[index], bytesVector.length[index], StandardCharsets.UTF_8);
+            }
+            case BINARY: {
+                final BytesColumnVector bytesVector = (BytesColumnVector) vector;
+                final int start = bytesVector.start[index];
+                return ByteBuffer.wrap(Arrays.copyOfRange(bytesVector.vector[index], start, start + bytesVector.length[index]));
+            }
+            case TIMESTAMP:
+            case TIMESTAMP_INSTANT: {
+                // time holds epoch millis, nanos holds the whole fraction of the second.
+                final TimestampColumnVector timestampVector = (TimestampColumnVector) vector;
+                return timestampVector.time[index] * 1000L + (timestampVector.nanos[index] / 1000) % 1000;
+            }
+            case DECIMAL: {
+                final BigDecimal decimal = ((DecimalColumnVector) vector).vector[index].getHiveDecimal().bigDecimalValue()
+                        .setScale(type.getScale(), RoundingMode.HALF_UP);
+                return ByteBuffer.wrap(decimal.unscaledValue().toByteArray());
+            }
+            case LIST: {
+                final ListColumnVector listVector = (ListColumnVector) vector;
+                final int offset = (int) listVector.offsets[index];
+                final int length = (int) listVector.lengths[index];
+                final TypeDescription elementType = type.getChildren().get(0);
+                final Schema elementSchema = AvroSchemaUtil.unnestUnion(schema.getElementType());
+                final List<Object> values = new ArrayList<>(length);
+                for(int i=offset; i<offset + length; i++) {
+                    values.add(getValue(listVector.child, elementType, elementSchema, i));
+                }
+                return values;
+            }
+            case MAP: {
+                final MapColumnVector mapVector = (MapColumnVector) vector;
+                final int offset = (int) mapVector.offsets[index];
+                final int length = (int) mapVector.lengths[index];
+                final TypeDescription keyType = type.getChildren().get(0);
+                final TypeDescription valueType = type.getChildren().get(1);
+                final Schema valueSchema = AvroSchemaUtil.unnestUnion(schema.getValueType());
+                final Map<String, Object> values = new HashMap<>();
+                for(int i=offset; i<offset + length; i++) {
+                    // Avro map keys are always string.
+                    final Object key = getValue(mapVector.keys, keyType, null, i);
+                    values.put(String.valueOf(key), getValue(mapVector.values, valueType, valueSchema, i));
+                }
+                return values;
+            }
+            case STRUCT: {
+                final StructColumnVector structVector = (StructColumnVector) vector;
+                final GenericData.Record record = new GenericData.Record(schema);
+                for(final Schema.Field field : schema.getFields()) {
+                    final int fieldIndex = type.getFieldNames().indexOf(field.name());
+                    record.put(field.pos(), getValue(structVector.fields[fieldIndex], type.getChildren().get(fieldIndex),
+                            AvroSchemaUtil.unnestUnion(field.schema()), index));
+                }
+                return record;
+            }
+            case UNION:
+            default:
+                throw new IllegalArgumentException("Not supported orc type: " + type);
+        }
+    }
+
+    private interface StreamOpener {
+        FSInputStream open() throws IOException;
+    }
+
+    /**
+     * Read-only hadoop FileSystem for a single file, so that orc reader can read files through beam FileSystems
+     * (or from memory) without hadoop filesystem connectors for gcs or s3.
+     */
+    private static class StreamFileSystem extends FileSystem {
+
+        private final Path path;
+        private final long size;
+        private final StreamOpener opener;
+
+        StreamFileSystem(final Path path, final long size, final StreamOpener opener, final Configuration conf) {
+            this.path = path;
+            this.size = size;
+            this.opener = opener;
+            setConf(conf);
+        }
+
+        @Override
+        public URI getUri() {
+            return path.toUri();
+        }
+
+        @Override
+        public FSDataInputStream open(final Path f, final int bufferSize) throws IOException {
+            return new FSDataInputStream(opener.open());
+        }
+
+        @Override
+        public FileStatus getFileStatus(final Path f) {
+            return new FileStatus(size, false, 1, size, 0, path);
+        }
+
+        @Override
+        public FileStatus[] listStatus(final Path f) {
+            return new FileStatus[]{ getFileStatus(f) };
+        }
+
+        @Override
+        public FSDataOutputStream create(final Path f, final FsPermission permission, final boolean overwrite,
+                                         final int bufferSize, final short replication, final long blockSize,
+                                         final Progressable progress) {
+            throw new UnsupportedOperationException("StreamFileSystem is read only");
+        }
+
+        @Override
+        public FSDataOutputStream append(final Path f, final int bufferSize, final Progressable progress) {
+            throw new UnsupportedOperationException("StreamFileSystem is read only");
+        }
+
+        @Override
+        public boolean rename(final Path src, final Path dst) {
+            throw new UnsupportedOperationException("StreamFileSystem is read only");
+        }
+
+        @Override
+        public boolean delete(final Path f, final boolean recursive) {
+            throw new UnsupportedOperationException("StreamFileSystem is read only");
+        }
+
+        @Override
+        public boolean mkdirs(final Path f, final FsPermission permission) {
+            throw new UnsupportedOperationException("StreamFileSystem is read only");
+        }
+
+        @Override
+        public void setWorkingDirectory(final Path dir) {
+
+        }
+
+        @Override
+        public Path getWorkingDirectory() {
+            return path.getParent();
+        }
+
+    }
+
+    private static class ChannelInputStream extends FSInputStream {
+
+        private final SeekableByteChannel channel;
+
+        ChannelInputStream(final SeekableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void seek(final long pos) throws IOException {
+            channel.position(pos);
+        }
+
+        @Override
+        public long getPos() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public boolean seekToNewSource(final long targetPos) {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            final int length = channel.read(buffer);
+            return length <= 0 ? -1 : buffer.get(0) & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+    }
+
+    private static class BytesInputStream extends FSInputStream {
+
+        private final byte[] bytes;
+        private int pos;
+
+        BytesInputStream(final byte[] bytes) {
+            this.bytes = bytes;
+            this.pos = 0;
+        }
+
+        @Override
+        public void seek(final long pos) throws IOException {
+            if(pos < 0 || pos > bytes.length) {
+                throw new IOException("Illegal seek position: " + pos + ", size: " + bytes.length);
+            }
+            this.pos = (int) pos;
+        }
+
+        @Override
+        public long getPos() {
+            return pos;
+        }
+
+        @Override
+        public boolean seekToNewSource(final long targetPos) {
+            return false;
+        }
+
+        @Override
+        public int read() {
+            return pos < bytes.length ? bytes[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if(pos >= bytes.length) {
+                return -1;
+            }
+            final int length = Math.min(len, bytes.length - pos);
+            System.arraycopy(bytes, pos, b, off, length);
+            pos += length;
+            return length;
+        }
+
+    }
+
+}
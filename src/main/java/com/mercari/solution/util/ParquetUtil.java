@@ -0,0 +1,269 @@
+package com.mercari.solution.util;
+
+import com.google.gson.JsonElement;
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParquetUtil {
+
+    /**
+     * Converts filter conditions into a parquet filter predicate, used to skip row groups and pages by column statistics.
+     * Conditions that can not be evaluated by parquet are left out, so the records read must still be filtered.
+     * Returns null if no condition can be pushed down.
+     */
+    public static FilterPredicate createFilterPredicate(final Schema schema, final Filter.ConditionNode condition) {
+        if(condition == null || condition.getType() == null) {
+            return null;
+        }
+        final List<FilterPredicate> predicates = new ArrayList<>();
+        boolean complete = true;
+        if(condition.getLeaves() != null) {
+            for(final Filter.ConditionLeaf leaf : condition.getLeaves()) {
+                final FilterPredicate predicate = createFilterPredicate(schema, leaf);
+                if(predicate == null) {
+                    complete = false;
+                } else {
+                    predicates.add(predicate);
+                }
+            }
+        }
+        if(condition.getNodes() != null) {
+            for(final Filter.ConditionNode node : condition.getNodes()) {
+                final FilterPredicate predicate = createFilterPredicate(schema, node);
+                if(predicate == null) {
+                    complete = false;
+                } else {
+                    predicates.add(predicate);
+                }
+            }
+        }
+
+        switch (condition.getType()) {
+            case AND:
+                // Dropping a condition from AND only widens the records read.
+                return reduce(predicates, true);
+            case OR:
+                return complete ? reduce(predicates, false) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static FilterPredicate createFilterPredicate(final Schema schema, final Filter.ConditionLeaf leaf) {
+        if(leaf.getKey().contains(".") || schema.getField(leaf.getKey()) == null) {
+            return null;
+        }
+        final Schema fieldSchema = AvroSchemaUtil.unnestUnion(schema.getField(leaf.getKey()).schema());
+        final String key = leaf.getKey();
+        final JsonElement value = leaf.getValue();
+        switch (leaf.getOp()) {
+            case IN:
+            case NOT_IN: {
+                if(value == null || !value.isJsonArray() || value.getAsJsonArray().size() == 0) {
+                    return null;
+                }
+                final List<FilterPredicate> predicates = new ArrayList<>();
+                for(final JsonElement element : value.getAsJsonArray()) {
+                    final FilterPredicate predicate = createComparison(
+                            fieldSchema, key, leaf.getOp() == Filter.Op.IN ? Filter.Op.EQUAL : Filter.Op.NOT_EQUAL, element);
+                    if(predicate == null) {
+                        return null;
+                    }
+                    predicates.add(predicate);
+                }
+                return reduce(predicates, leaf.getOp() == Filter.Op.NOT_IN);
+            }
+            default:
+                return createComparison(fieldSchema, key, leaf.getOp(), value);
+        }
+    }
+
+    private static FilterPredicate createComparison(final Schema fieldSchema, final String key,
+                                                    final Filter.Op op, final JsonElement value) {
+
+        final boolean isNull = value == null || value.isJsonNull();
+        if(isNull && op != Filter.Op.EQUAL && op != Filter.Op.NOT_EQUAL) {
+            return null;
+        }
+        final LogicalType logicalType = fieldSchema.getLogicalType();
+        switch (fieldSchema.getType()) {
+            case BOOLEAN: {
+                final Operators.BooleanColumn column = FilterApi.booleanColumn(key);
+                final Boolean v = isNull ? null : value.getAsBoolean();
+                if(op == Filter.Op.EQUAL) {
+                    return FilterApi.eq(column, v);
+                } else if(op == Filter.Op.NOT_EQUAL) {
+                    return FilterApi.notEq(column, v);
+                }
+                return null;
+            }
+            case INT: {
+                final Long v = isNull ? null : toPhysicalValue(logicalType, value);
+                if(!isNull && (v == null || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)) {
+                    return null;
+                }
+                return compare(FilterApi.intColumn(key), op, isNull ? null : v.intValue());
+            }
+            case LONG: {
+                final Long v = isNull ? null : toPhysicalValue(logicalType, value);
+                if(!isNull && v == null) {
+                    return null;
+                }
+                return compare(FilterApi.longColumn(key), op, v);
+            }
+            case FLOAT:
+                return compare(FilterApi.floatColumn(key), op, isNull ? null : value.getAsFloat());
+            case DOUBLE:
+                return compare(FilterApi.doubleColumn(key), op, isNull ? null : value.getAsDouble());
+            case ENUM:
+            case STRING: {
+                if(logicalType != null) {
+                    return null;
+                }
+                return compare(FilterApi.binaryColumn(key), op, isNull ? null : Binary.fromString(value.getAsString()));
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Converts a filter value into the value stored in an INT or LONG column, as defined by the logical type.
+     * Date, time and timestamp values can be given as ISO strings such as `2021-01-01` or `2021-01-01T00:00:00Z`,
+     * or as numbers already in the column unit. Returns null if the value can not be converted.
+     */
+    private static Long toPhysicalValue(final LogicalType logicalType, final JsonElement value) {
+        try {
+            if(logicalType == null || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+                return value.getAsLong();
+            }
+            final String text = value.getAsString().trim();
+            if(LogicalTypes.date().equals(logicalType)) {
+                return LocalDate.parse(text).toEpochDay();
+            } else if(LogicalTypes.timeMillis().equals(logicalType)) {
+                return LocalTime.parse(text).toNanoOfDay() / 1000_000L;
+            } else if(LogicalTypes.timeMicros().equals(logicalType)) {
+                return LocalTime.parse(text).toNanoOfDay() / 1000L;
+            } else if(LogicalTypes.timestampMillis().equals(logicalType)) {
+                return parseInstant(text).toEpochMilli();
+            } else if(LogicalTypes.timestampMicros().equals(logicalType)) {
+                final Instant instant = parseInstant(text);
+                return instant.getEpochSecond() * 1000_000L + instant.getNano() / 1000L;
+            }
+            return value.getAsLong();
+        } catch (DateTimeParseException | NumberFormatException | IllegalStateException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static Instant parseInstant(final String text) {
+        if(text.length() == 10) {
+            return LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant();
+        }
+        final TemporalAccessor temporal = DateTimeFormatter.ISO_DATE_TIME.parseBest(text, ZonedDateTime::from, LocalDateTime::from);
+        if(temporal instanceof ZonedDateTime) {
+            return ((ZonedDateTime) temporal).toInstant();
+        }
+        return ((LocalDateTime) temporal).toInstant(ZoneOffset.UTC);
+    }
+
+    private static <T extends Comparable<T>, C extends Operators.Column<T> & Operators.SupportsLtGt> FilterPredicate compare(
+            final C column, final Filter.Op op, final T value) {
+
+        switch (op) {
+            case EQUAL:
+                return FilterApi.eq(column, value);
+            case NOT_EQUAL:
+                return FilterApi.notEq(column, value);
+            case GREATER:
+                return FilterApi.gt(column, value);
+            case GREATER_OR_EQUAL:
+                return FilterApi.gtEq(column, value);
+            case LESSER:
+                return FilterApi.lt(column, value);
+            case LESSER_OR_EQUAL:
+                return FilterApi.ltEq(column, value);
+            default:
+                return null;
+        }
+    }
+
+    private static FilterPredicate reduce(final List<FilterPredicate> predicates, final boolean and) {
+        FilterPredicate result = null;
+        for(final FilterPredicate predicate : predicates) {
+            if(result == null) {
+                result = predicate;
+            } else {
+                result = and ? FilterApi.and(result, predicate) : FilterApi.or(result, predicate);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * InputFile reading a file through a seekable channel, such as the one opened from FileIO.ReadableFile,
+     * so that parquet reads only the footer and the column chunks requested.
+     */
+    public static class ChannelInputFile implements InputFile {
+
+        private final SeekableByteChannel channel;
+
+        public ChannelInputFile(final SeekableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableInputStream newStream() {
+            return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+
+                @Override
+                public long getPos() throws IOException {
+                    return channel.position();
+                }
+
+                @Override
+                public void seek(final long newPos) throws IOException {
+                    channel.position(newPos);
+                }
+
+                @Override
+                public int read(final ByteBuffer buf) throws IOException {
+                    return channel.read(buf);
+                }
+
+            };
+        }
+
+    }
+
+}
@@ -7,7 +7,9 @@ import org.apache.commons.csv.CSVRecord;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class TemplateUtil {
 
@@ -49,6 +51,33 @@ public class TemplateUtil {
         }
     }
 
+    /**
+     * Returns the names of top-level variables read by the template when it is rendered with the data.
+     * Variables missing from the data are included. Rendering stops at the first missing variable.
+     */
+    public static Set<String> extractVariables(final Template template, final Map<String, Object> data) {
+        final Set<String> variables = new HashSet<>();
+        final ObjectWrapper wrapper = template.getObjectWrapper();
+        final TemplateHashModel model = new TemplateHashModel() {
+            @Override
+            public TemplateModel get(final String key) throws TemplateModelException {
+                variables.add(key);
+                return wrapper.wrap(data.get(key));
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return data.isEmpty();
+            }
+        };
+        try(final StringWriter writer = new StringWriter()) {
+            template.process(model, writer);
+        } catch (IOException | TemplateException e) {
+            // Variables read until the failure are already recorded.
+        }
+        return variables;
+    }
+
     static class ImputeSameVariablesTemplateExceptionHandler implements TemplateExceptionHandler {
 
         @Override
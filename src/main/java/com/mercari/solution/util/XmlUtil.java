@@ -1,7 +1,10 @@
 package com.mercari.solution.util;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
@@ -9,18 +12,28 @@ import org.xml.sax.InputSource;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class XmlUtil {
 
+    public static final String TEXT_FIELD = "_text";
+
     public static Document createDocument(final String root) {
         final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         try {
@@ -117,4 +130,174 @@ public class XmlUtil {
     }
 
 
+    public static XMLInputFactory createInputFactory(final boolean namespaceAware) {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, namespaceAware);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Reads the element at the current START_ELEMENT event into json, leaving the reader at its END_ELEMENT event.
+     * Attributes and child elements become fields, repeated child elements become an array,
+     * and the text of an element with attributes or children is set to `_text` field.
+     */
+    public static JsonObject readElement(final XMLStreamReader reader) throws XMLStreamException {
+        final JsonElement value = readValue(reader);
+        if(value.isJsonObject()) {
+            return value.getAsJsonObject();
+        }
+        final JsonObject jsonObject = new JsonObject();
+        jsonObject.add(TEXT_FIELD, value);
+        return jsonObject;
+    }
+
+    private static JsonElement readValue(final XMLStreamReader reader) throws XMLStreamException {
+        final JsonObject jsonObject = new JsonObject();
+        for(int i=0; i<reader.getAttributeCount(); i++) {
+            jsonObject.addProperty(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        final StringBuilder text = new StringBuilder();
+        while(reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT: {
+                    final String name = reader.getLocalName();
+                    final JsonElement child = readValue(reader);
+                    if(!jsonObject.has(name)) {
+                        jsonObject.add(name, child);
+                    } else if(jsonObject.get(name).isJsonArray()) {
+                        jsonObject.getAsJsonArray(name).add(child);
+                    } else {
+                        final JsonArray array = new JsonArray();
+                        array.add(jsonObject.get(name));
+                        array.add(child);
+                        jsonObject.add(name, array);
+                    }
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    text.append(reader.getText());
+                    break;
+                case XMLStreamConstants.END_ELEMENT: {
+                    final String value = text.toString().trim();
+                    if(jsonObject.size() == 0) {
+                        return value.isEmpty() ? JsonNull.INSTANCE : new JsonPrimitive(value);
+                    }
+                    if(!value.isEmpty()) {
+                        jsonObject.addProperty(TEXT_FIELD, value);
+                    }
+                    return jsonObject;
+                }
+                default:
+                    break;
+            }
+        }
+        throw new IllegalStateException("Xml ended before the end of element");
+    }
+
+    /**
+     * Finds elements of a name in a byte stream without parsing the document, so that reading can start from any offset.
+     * The element must not contain an element of the same name, and the document must be in an ascii compatible encoding.
+     */
+    public static class ElementScanner {
+
+        private final InputStream is;
+        private final byte[] startTag;
+        private final byte[] endTag;
+
+        private long position;
+        private int delimiter;
+
+        public ElementScanner(final InputStream is, final long position, final String name) {
+            this.is = is;
+            this.position = position;
+            this.startTag = ("<" + name).getBytes(StandardCharsets.UTF_8);
+            this.endTag = ("</" + name + ">").getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Moves to the next start tag of the element, and returns its offset. Returns -1 at the end of stream.
+         */
+        public long next() throws IOException {
+            int matched = 0;
+            int b;
+            while((b = read()) >= 0) {
+                if(matched == startTag.length) {
+                    if(b == '>' || b == '/' || Character.isWhitespace(b)) {
+                        this.delimiter = b;
+                        return position - startTag.length - 1;
+                    }
+                    matched = 0;
+                }
+                if(b == startTag[matched]) {
+                    matched++;
+                } else {
+                    matched = b == startTag[0] ? 1 : 0;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the bytes of the element found by next(), from the start tag to the end tag.
+         */
+        public byte[] readElement() throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(startTag);
+            bytes.write(delimiter);
+
+            // Read the rest of the start tag, skipping quoted attribute values.
+            int previous = -1;
+            int quote = -1;
+            int b = delimiter;
+            while(true) {
+                if(quote >= 0) {
+                    if(b == quote) {
+                        quote = -1;
+                    }
+                } else if(b == '"' || b == '\'') {
+                    quote = b;
+                } else if(b == '>') {
+                    break;
+                }
+                previous = b;
+                b = read();
+                if(b < 0) {
+                    throw new IllegalStateException("Xml ended in start tag of element: " + new String(startTag, StandardCharsets.UTF_8));
+                }
+                bytes.write(b);
+            }
+            if(previous == '/') {
+                return bytes.toByteArray();
+            }
+
+            int matched = 0;
+            while(matched < endTag.length) {
+                b = read();
+                if(b < 0) {
+                    throw new IllegalStateException("Xml ended before end tag of element: " + new String(startTag, StandardCharsets.UTF_8));
+                }
+                bytes.write(b);
+                if(b == endTag[matched]) {
+                    matched++;
+                } else {
+                    matched = b == endTag[0] ? 1 : 0;
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        private int read() throws IOException {
+            final int b = is.read();
+            if(b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+    }
+
 }
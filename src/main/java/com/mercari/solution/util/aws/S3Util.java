@@ -4,6 +4,7 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.*;
 import com.google.common.io.ByteStreams;
+import com.mercari.solution.util.OrcUtil;
 import com.mercari.solution.util.gcp.StorageUtil;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileStream;
@@ -181,6 +182,33 @@ public class S3Util {
         }
     }
 
+    public static Schema getOrcSchema(final String s3Path,
+                                      final AwsOptions options) {
+        final AmazonS3 s3 = storage(options);
+        final String[] paths = parseS3Path(s3Path);
+        return getOrcSchema(s3, paths[0], paths[1]);
+    }
+
+    public static Schema getOrcSchema(final S3ObjectSummary object,
+                                      final AwsOptions options) {
+        final AmazonS3 s3 = storage(options);
+        return getOrcSchema(s3, object.getBucketName(), object.getKey());
+    }
+
+    public static Schema getOrcSchema(final AmazonS3 s3, final String bucket, final String object) {
+        final byte[] bytes;
+        try {
+            bytes = readBytes(s3, bucket, object);
+        } catch (AmazonS3Exception e) {
+            return null;
+        }
+        try {
+            return OrcUtil.getAvroSchema(bytes);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     public static class ParquetStream implements InputFile {
         private final byte[] data;
 
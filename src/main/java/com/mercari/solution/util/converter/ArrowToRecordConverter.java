@@ -0,0 +1,195 @@
+package com.mercari.solution.util.converter;
+
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.util.Text;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converts Arrow record batches into Avro GenericRecords.
+ * Values are read column by column with the typed vector accessors and then assembled into records,
+ * so each vector is scanned once per batch instead of once per row and field.
+ */
+public class ArrowToRecordConverter {
+
+    private static final DateTimeFormatter FORMATTER_DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final DateTimeFormatter FORMATTER_DATETIME_MICROS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS");
+
+    public static List<GenericRecord> convert(final Schema schema, final VectorSchemaRoot root) {
+        final int rowCount = root.getRowCount();
+        final List<ValueVector> vectors = new ArrayList<>();
+        for(final Schema.Field field : schema.getFields()) {
+            vectors.add(root.getVector(field.name()));
+        }
+        return convertRecords(schema, vectors, 0, rowCount);
+    }
+
+    private static List<GenericRecord> convertRecords(final Schema schema, final List<ValueVector> vectors,
+                                                      final int start, final int count) {
+
+        final GenericData.Record[] records = new GenericData.Record[count];
+        for(int i=0; i<count; i++) {
+            records[i] = new GenericData.Record(schema);
+        }
+        for(final Schema.Field field : schema.getFields()) {
+            final ValueVector vector = vectors.get(field.pos());
+            if(vector == null) {
+                continue;
+            }
+            final Object[] values = convertColumn(field.schema(), vector, start, count);
+            for(int i=0; i<count; i++) {
+                records[i].put(field.pos(), values[i]);
+            }
+        }
+        return Arrays.asList(records);
+    }
+
+    private static Object[] convertColumn(final Schema fieldSchema, final ValueVector vector,
+                                          final int start, final int count) {
+
+        final Schema schema = AvroSchemaUtil.unnestUnion(fieldSchema);
+        final Object[] values = new Object[count];
+        if(vector instanceof BigIntVector) {
+            final BigIntVector v = (BigIntVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : v.get(start + i);
+            }
+        } else if(vector instanceof Float8Vector) {
+            final Float8Vector v = (Float8Vector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : v.get(start + i);
+            }
+        } else if(vector instanceof BitVector) {
+            final BitVector v = (BitVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : v.get(start + i) != 0;
+            }
+        } else if(vector instanceof VarCharVector) {
+            final VarCharVector v = (VarCharVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : new String(v.get(start + i), StandardCharsets.UTF_8);
+            }
+        } else if(vector instanceof VarBinaryVector) {
+            final VarBinaryVector v = (VarBinaryVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : ByteBuffer.wrap(v.get(start + i));
+            }
+        } else if(vector instanceof DateDayVector) {
+            final DateDayVector v = (DateDayVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : v.get(start + i);
+            }
+        } else if(vector instanceof TimeMicroVector) {
+            final TimeMicroVector v = (TimeMicroVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : v.get(start + i);
+            }
+        } else if(vector instanceof TimeStampMicroTZVector) {
+            final TimeStampMicroTZVector v = (TimeStampMicroTZVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : v.get(start + i);
+            }
+        } else if(vector instanceof TimeStampMicroVector) {
+            // BigQuery DATETIME is given as a timestamp without time zone, but avro schema expects string.
+            final TimeStampMicroVector v = (TimeStampMicroVector) vector;
+            final boolean asString = Schema.Type.STRING.equals(schema.getType());
+            for(int i=0; i<count; i++) {
+                if(v.isNull(start + i)) {
+                    values[i] = null;
+                } else if(asString) {
+                    values[i] = convertMicrosToDatetimeString(v.get(start + i));
+                } else {
+                    values[i] = v.get(start + i);
+                }
+            }
+        } else if(vector instanceof DecimalVector) {
+            final DecimalVector v = (DecimalVector) vector;
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : convertDecimal(schema, v.getObject(start + i));
+            }
+        } else if(vector instanceof StructVector) {
+            final StructVector v = (StructVector) vector;
+            final List<ValueVector> children = new ArrayList<>();
+            for(final Schema.Field field : schema.getFields()) {
+                children.add(v.getChild(field.name()));
+            }
+            final List<GenericRecord> records = convertRecords(schema, children, start, count);
+            for(int i=0; i<count; i++) {
+                values[i] = v.isNull(start + i) ? null : records.get(i);
+            }
+        } else if(vector instanceof ListVector) {
+            final ListVector v = (ListVector) vector;
+            if(count == 0) {
+                return values;
+            }
+            final int first = v.getElementStartIndex(start);
+            final int last = v.getElementEndIndex(start + count - 1);
+            final Object[] elements = convertColumn(schema.getElementType(), v.getDataVector(), first, last - first);
+            for(int i=0; i<count; i++) {
+                if(v.isNull(start + i)) {
+                    // BigQuery repeated fields are not nullable.
+                    values[i] = Collections.emptyList();
+                } else {
+                    final int from = v.getElementStartIndex(start + i) - first;
+                    final int to = v.getElementEndIndex(start + i) - first;
+                    values[i] = new ArrayList<>(Arrays.asList(elements).subList(from, to));
+                }
+            }
+        } else {
+            for(int i=0; i<count; i++) {
+                values[i] = convertObject(schema, vector.getObject(start + i));
+            }
+        }
+        return values;
+    }
+
+    private static Object convertObject(final Schema schema, final Object value) {
+        if(value == null) {
+            return null;
+        }
+        if(value instanceof BigDecimal) {
+            return convertDecimal(schema, (BigDecimal) value);
+        } else if(value instanceof Text) {
+            return value.toString();
+        } else if(value instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) value);
+        } else if(value instanceof LocalDateTime) {
+            final LocalDateTime localDateTime = (LocalDateTime) value;
+            return localDateTime.getNano() == 0 ? localDateTime.format(FORMATTER_DATETIME) : localDateTime.format(FORMATTER_DATETIME_MICROS);
+        }
+        return value;
+    }
+
+    private static Object convertDecimal(final Schema schema, final BigDecimal decimal) {
+        if(!AvroSchemaUtil.isLogicalTypeDecimal(schema)) {
+            return decimal.toString();
+        }
+        final LogicalTypes.Decimal logicalType = AvroSchemaUtil.getLogicalTypeDecimal(schema);
+        return ByteBuffer.wrap(decimal.setScale(logicalType.getScale(), RoundingMode.HALF_UP).unscaledValue().toByteArray());
+    }
+
+    private static String convertMicrosToDatetimeString(final long micros) {
+        final long seconds = Math.floorDiv(micros, 1000_000L);
+        final int nanos = (int) Math.floorMod(micros, 1000_000L) * 1000;
+        final LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        return nanos == 0 ? localDateTime.format(FORMATTER_DATETIME) : localDateTime.format(FORMATTER_DATETIME_MICROS);
+    }
+
+}
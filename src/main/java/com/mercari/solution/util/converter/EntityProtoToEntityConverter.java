@@ -0,0 +1,330 @@
+package com.mercari.solution.util.converter;
+
+import com.google.datastore.v1.ArrayValue;
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Key;
+import com.google.datastore.v1.PartitionId;
+import com.google.datastore.v1.Value;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.NullValue;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.WireFormat;
+import com.google.type.LatLng;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts App Engine EntityProto bytes, the record format of Datastore managed export files, into Datastore v1 Entity.
+ * EntityProto is decoded by field numbers of storage_onestore_v3 entity.proto, as its classes are not published.
+ * Values of a property with multiple values are stored as separate properties of the same name, and merged into an array.
+ */
+public class EntityProtoToEntityConverter {
+
+    // EntityProto
+    private static final int ENTITY_KEY = 13;
+    private static final int ENTITY_PROPERTY = 14;
+    private static final int ENTITY_RAW_PROPERTY = 15;
+
+    // Reference
+    private static final int REFERENCE_APP = 13;
+    private static final int REFERENCE_PATH = 14;
+    private static final int REFERENCE_NAMESPACE = 20;
+
+    // Path
+    private static final int PATH_ELEMENT = 1;
+    private static final int PATH_ELEMENT_TYPE = 2;
+    private static final int PATH_ELEMENT_ID = 3;
+    private static final int PATH_ELEMENT_NAME = 4;
+
+    // Property
+    private static final int PROPERTY_MEANING = 1;
+    private static final int PROPERTY_NAME = 3;
+    private static final int PROPERTY_MULTIPLE = 4;
+    private static final int PROPERTY_VALUE = 5;
+
+    // PropertyValue
+    private static final int VALUE_INT64 = 1;
+    private static final int VALUE_BOOLEAN = 2;
+    private static final int VALUE_STRING = 3;
+    private static final int VALUE_DOUBLE = 4;
+    private static final int VALUE_POINT = 5;
+    private static final int VALUE_POINT_X = 6;
+    private static final int VALUE_POINT_Y = 7;
+    private static final int VALUE_USER = 8;
+    private static final int VALUE_USER_EMAIL = 9;
+    private static final int VALUE_USER_AUTH_DOMAIN = 10;
+    private static final int VALUE_USER_NICKNAME = 11;
+    private static final int VALUE_REFERENCE = 12;
+    private static final int VALUE_REFERENCE_APP = 13;
+    private static final int VALUE_REFERENCE_PATH_ELEMENT = 14;
+    private static final int VALUE_REFERENCE_PATH_ELEMENT_TYPE = 15;
+    private static final int VALUE_REFERENCE_PATH_ELEMENT_ID = 16;
+    private static final int VALUE_REFERENCE_PATH_ELEMENT_NAME = 17;
+    private static final int VALUE_REFERENCE_NAMESPACE = 20;
+
+    // Property.Meaning
+    private static final int MEANING_GD_WHEN = 7;
+    private static final int MEANING_BLOB = 14;
+    private static final int MEANING_BYTESTRING = 16;
+    private static final int MEANING_ENTITY_PROTO = 19;
+    private static final int MEANING_EMPTY_LIST = 24;
+
+    public static Entity convert(final byte[] bytes) throws IOException {
+        return convertEntity(CodedInputStream.newInstance(bytes), true);
+    }
+
+    private static Entity convertEntity(final CodedInputStream input, final boolean root) throws IOException {
+        final Entity.Builder builder = Entity.newBuilder();
+        final Map<String, List<Value>> multipleValues = new LinkedHashMap<>();
+        int tag;
+        while((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case ENTITY_KEY: {
+                    final int limit = input.pushLimit(input.readRawVarint32());
+                    final Key key = convertReference(input);
+                    input.popLimit(limit);
+                    if(root || key.getPathCount() > 0) {
+                        builder.setKey(key);
+                    }
+                    break;
+                }
+                case ENTITY_PROPERTY:
+                case ENTITY_RAW_PROPERTY: {
+                    final boolean indexed = WireFormat.getTagFieldNumber(tag) == ENTITY_PROPERTY;
+                    final int limit = input.pushLimit(input.readRawVarint32());
+                    convertProperty(input, indexed, builder, multipleValues);
+                    input.popLimit(limit);
+                    break;
+                }
+                default:
+                    input.skipField(tag);
+            }
+        }
+        for(final Map.Entry<String, List<Value>> entry : multipleValues.entrySet()) {
+            builder.putProperties(entry.getKey(), Value.newBuilder()
+                    .setArrayValue(ArrayValue.newBuilder().addAllValues(entry.getValue()))
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private static Key convertReference(final CodedInputStream input) throws IOException {
+        final Key.Builder builder = Key.newBuilder();
+        final PartitionId.Builder partitionId = PartitionId.newBuilder();
+        int tag;
+        while((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case REFERENCE_APP:
+                    partitionId.setProjectId(convertProjectId(input.readString()));
+                    break;
+                case REFERENCE_NAMESPACE:
+                    partitionId.setNamespaceId(input.readString());
+                    break;
+                case REFERENCE_PATH: {
+                    final int limit = input.pushLimit(input.readRawVarint32());
+                    int pathTag;
+                    while((pathTag = input.readTag()) != 0) {
+                        if(WireFormat.getTagFieldNumber(pathTag) == PATH_ELEMENT
+                                && WireFormat.getTagWireType(pathTag) == WireFormat.WIRETYPE_START_GROUP) {
+                            builder.addPath(convertPathElement(input, PATH_ELEMENT_TYPE, PATH_ELEMENT_ID, PATH_ELEMENT_NAME));
+                        } else {
+                            input.skipField(pathTag);
+                        }
+                    }
+                    input.popLimit(limit);
+                    break;
+                }
+                default:
+                    input.skipField(tag);
+            }
+        }
+        return builder.setPartitionId(partitionId).build();
+    }
+
+    private static Key.PathElement convertPathElement(final CodedInputStream input,
+                                                      final int typeField, final int idField, final int nameField) throws IOException {
+        final Key.PathElement.Builder builder = Key.PathElement.newBuilder();
+        int tag;
+        while((tag = input.readTag()) != 0 && WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_END_GROUP) {
+            final int field = WireFormat.getTagFieldNumber(tag);
+            if(field == typeField) {
+                builder.setKind(input.readString());
+            } else if(field == idField) {
+                builder.setId(input.readInt64());
+            } else if(field == nameField) {
+                builder.setName(input.readString());
+            } else {
+                input.skipField(tag);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void convertProperty(final CodedInputStream input,
+                                        final boolean indexed,
+                                        final Entity.Builder builder,
+                                        final Map<String, List<Value>> multipleValues) throws IOException {
+
+        int meaning = 0;
+        String name = null;
+        boolean multiple = false;
+        Value.Builder value = null;
+        int tag;
+        while((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case PROPERTY_MEANING:
+                    meaning = input.readInt32();
+                    break;
+                case PROPERTY_NAME:
+                    name = input.readString();
+                    break;
+                case PROPERTY_MULTIPLE:
+                    multiple = input.readBool();
+                    break;
+                case PROPERTY_VALUE: {
+                    final int limit = input.pushLimit(input.readRawVarint32());
+                    value = convertPropertyValue(input);
+                    input.popLimit(limit);
+                    break;
+                }
+                default:
+                    input.skipField(tag);
+            }
+        }
+        if(name == null) {
+            return;
+        }
+
+        if(meaning == MEANING_EMPTY_LIST) {
+            builder.putProperties(name, Value.newBuilder()
+                    .setArrayValue(ArrayValue.getDefaultInstance())
+                    .build());
+            return;
+        }
+        if(value == null) {
+            value = Value.newBuilder().setNullValue(NullValue.NULL_VALUE);
+        } else if(value.getValueTypeCase() == Value.ValueTypeCase.INTEGER_VALUE && meaning == MEANING_GD_WHEN) {
+            final long micros = value.getIntegerValue();
+            value.setTimestampValue(Timestamp.newBuilder()
+                    .setSeconds(Math.floorDiv(micros, 1000_000L))
+                    .setNanos((int) Math.floorMod(micros, 1000_000L) * 1000));
+        } else if(value.getValueTypeCase() == Value.ValueTypeCase.BLOB_VALUE) {
+            // String values are kept as bytes until the meaning is known.
+            final ByteString bytes = value.getBlobValue();
+            if(meaning == MEANING_ENTITY_PROTO) {
+                value.setEntityValue(convertEntity(bytes.newCodedInput(), false));
+            } else if(meaning != MEANING_BLOB && meaning != MEANING_BYTESTRING) {
+                value.setStringValue(bytes.toStringUtf8());
+            }
+        }
+        if(!indexed) {
+            value.setExcludeFromIndexes(true);
+        }
+
+        if(multiple) {
+            multipleValues.computeIfAbsent(name, k -> new ArrayList<>()).add(value.build());
+        } else {
+            builder.putProperties(name, value.build());
+        }
+    }
+
+    private static Value.Builder convertPropertyValue(final CodedInputStream input) throws IOException {
+        Value.Builder builder = null;
+        int tag;
+        while((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case VALUE_INT64:
+                    builder = Value.newBuilder().setIntegerValue(input.readInt64());
+                    break;
+                case VALUE_BOOLEAN:
+                    builder = Value.newBuilder().setBooleanValue(input.readBool());
+                    break;
+                case VALUE_STRING:
+                    builder = Value.newBuilder().setBlobValue(input.readBytes());
+                    break;
+                case VALUE_DOUBLE:
+                    builder = Value.newBuilder().setDoubleValue(input.readDouble());
+                    break;
+                case VALUE_POINT: {
+                    final LatLng.Builder latLng = LatLng.newBuilder();
+                    int pointTag;
+                    while((pointTag = input.readTag()) != 0 && WireFormat.getTagWireType(pointTag) != WireFormat.WIRETYPE_END_GROUP) {
+                        switch (WireFormat.getTagFieldNumber(pointTag)) {
+                            case VALUE_POINT_X:
+                                latLng.setLatitude(input.readDouble());
+                                break;
+                            case VALUE_POINT_Y:
+                                latLng.setLongitude(input.readDouble());
+                                break;
+                            default:
+                                input.skipField(pointTag);
+                        }
+                    }
+                    builder = Value.newBuilder().setGeoPointValue(latLng);
+                    break;
+                }
+                case VALUE_USER: {
+                    final Entity.Builder user = Entity.newBuilder();
+                    int userTag;
+                    while((userTag = input.readTag()) != 0 && WireFormat.getTagWireType(userTag) != WireFormat.WIRETYPE_END_GROUP) {
+                        switch (WireFormat.getTagFieldNumber(userTag)) {
+                            case VALUE_USER_EMAIL:
+                                user.putProperties("email", Value.newBuilder().setStringValue(input.readString()).build());
+                                break;
+                            case VALUE_USER_AUTH_DOMAIN:
+                                user.putProperties("auth_domain", Value.newBuilder().setStringValue(input.readString()).build());
+                                break;
+                            case VALUE_USER_NICKNAME:
+                                user.putProperties("nickname", Value.newBuilder().setStringValue(input.readString()).build());
+                                break;
+                            default:
+                                input.skipField(userTag);
+                        }
+                    }
+                    builder = Value.newBuilder().setEntityValue(user);
+                    break;
+                }
+                case VALUE_REFERENCE: {
+                    final Key.Builder key = Key.newBuilder();
+                    final PartitionId.Builder partitionId = PartitionId.newBuilder();
+                    int referenceTag;
+                    while((referenceTag = input.readTag()) != 0 && WireFormat.getTagWireType(referenceTag) != WireFormat.WIRETYPE_END_GROUP) {
+                        switch (WireFormat.getTagFieldNumber(referenceTag)) {
+                            case VALUE_REFERENCE_APP:
+                                partitionId.setProjectId(convertProjectId(input.readString()));
+                                break;
+                            case VALUE_REFERENCE_NAMESPACE:
+                                partitionId.setNamespaceId(input.readString());
+                                break;
+                            case VALUE_REFERENCE_PATH_ELEMENT:
+                                key.addPath(convertPathElement(input,
+                                        VALUE_REFERENCE_PATH_ELEMENT_TYPE,
+                                        VALUE_REFERENCE_PATH_ELEMENT_ID,
+                                        VALUE_REFERENCE_PATH_ELEMENT_NAME));
+                                break;
+                            default:
+                                input.skipField(referenceTag);
+                        }
+                    }
+                    builder = Value.newBuilder().setKeyValue(key.setPartitionId(partitionId));
+                    break;
+                }
+                default:
+                    input.skipField(tag);
+            }
+        }
+        return builder;
+    }
+
+    // App id is prefixed by the partition, such as 's~myproject'.
+    private static String convertProjectId(final String app) {
+        final int index = app.indexOf('~');
+        return index < 0 ? app : app.substring(index + 1);
+    }
+
+}
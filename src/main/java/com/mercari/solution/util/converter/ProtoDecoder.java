@@ -0,0 +1,537 @@
+package com.mercari.solution.util.converter;
+
+import com.google.protobuf.*;
+import com.google.protobuf.util.JsonFormat;
+import com.google.protobuf.util.Timestamps;
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import com.mercari.solution.util.schema.ProtoSchemaUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.schemas.logicaltypes.EnumerationType;
+import org.apache.beam.sdk.values.Row;
+import org.joda.time.Instant;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Decodes serialized protobuf messages directly into Avro GenericRecord or Beam Row without
+ * building an intermediate DynamicMessage.
+ * The descriptor is compiled once into a lookup table from field number to output field index,
+ * and fields not contained in the output schema are skipped on the wire without being decoded.
+ * Output values follow the same conventions as ProtoToRecordConverter and ProtoToRowConverter.
+ */
+public class ProtoDecoder<T> {
+
+    private static final int MAX_DENSE_FIELD_NUMBER = 1024;
+    // Well-known types (google.type.*, google.protobuf.*) use field numbers below this value.
+    private static final int MAX_BUILT_IN_FIELD_NUMBER = 10;
+
+    private static final LocalDate DEFAULT_DATE = LocalDate.of(1, 1, 1);
+    private static final long DEFAULT_EPOCH_MILLIS = LocalDateTime.of(1, 1, 1, 0, 0, 0, 0)
+            .atOffset(ZoneOffset.UTC)
+            .toInstant()
+            .toEpochMilli();
+
+    private final MessageDecoder root;
+
+    private ProtoDecoder(final MessageDecoder root) {
+        this.root = root;
+    }
+
+    public static ProtoDecoder<GenericRecord> of(final Schema schema,
+                                                 final Descriptors.Descriptor descriptor,
+                                                 final JsonFormat.Printer printer) {
+
+        return new ProtoDecoder<>(new MessageDecoder(descriptor, schema, null, false, printer));
+    }
+
+    public static ProtoDecoder<Row> of(final org.apache.beam.sdk.schemas.Schema schema,
+                                       final Descriptors.Descriptor descriptor,
+                                       final JsonFormat.Printer printer) {
+
+        return new ProtoDecoder<>(new MessageDecoder(descriptor, null, schema, false, printer));
+    }
+
+    public T decode(final byte[] bytes) {
+        try {
+            return (T) root.decode(CodedInputStream.newInstance(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode protobuf message: " + root.descriptor.getFullName(), e);
+        }
+    }
+
+    private static class MessageDecoder {
+
+        private final Descriptors.Descriptor descriptor;
+        private final Schema avroSchema;
+        private final org.apache.beam.sdk.schemas.Schema rowSchema;
+        private final boolean mapEntry;
+
+        private final FieldDecoder[] fields;
+        private final FieldDecoder[] denseFields;
+        private final Map<Integer, FieldDecoder> sparseFields;
+
+        MessageDecoder(final Descriptors.Descriptor descriptor,
+                       final Schema avroSchema,
+                       final org.apache.beam.sdk.schemas.Schema rowSchema,
+                       final boolean mapEntry,
+                       final JsonFormat.Printer printer) {
+
+            this.descriptor = descriptor;
+            this.avroSchema = avroSchema;
+            this.rowSchema = rowSchema;
+            this.mapEntry = mapEntry;
+
+            final int size = avroSchema != null ? avroSchema.getFields().size() : rowSchema.getFieldCount();
+            this.fields = new FieldDecoder[size];
+            int maxFieldNumber = 0;
+            for(int i=0; i<size; i++) {
+                final String name = avroSchema != null ? avroSchema.getFields().get(i).name() : rowSchema.getField(i).getName();
+                final Descriptors.FieldDescriptor field = descriptor.findFieldByName(name);
+                if(field == null) {
+                    continue;
+                }
+                this.fields[i] = avroSchema != null
+                        ? new FieldDecoder(i, field, avroSchema.getFields().get(i).schema(), null, printer)
+                        : new FieldDecoder(i, field, null, rowSchema.getField(i).getType(), printer);
+                maxFieldNumber = Math.max(maxFieldNumber, field.getNumber());
+            }
+
+            if(maxFieldNumber <= MAX_DENSE_FIELD_NUMBER) {
+                this.denseFields = new FieldDecoder[maxFieldNumber + 1];
+                this.sparseFields = null;
+                for(final FieldDecoder field : fields) {
+                    if(field != null) {
+                        this.denseFields[field.field.getNumber()] = field;
+                    }
+                }
+            } else {
+                this.denseFields = null;
+                this.sparseFields = new HashMap<>();
+                for(final FieldDecoder field : fields) {
+                    if(field != null) {
+                        this.sparseFields.put(field.field.getNumber(), field);
+                    }
+                }
+            }
+        }
+
+        Object decode(final CodedInputStream input) throws IOException {
+            final Object[] values = new Object[fields.length];
+            merge(input, values);
+            return build(values);
+        }
+
+        Object decodeDelimited(final CodedInputStream input) throws IOException {
+            final Object[] values = new Object[fields.length];
+            mergeDelimited(input, values);
+            return build(values);
+        }
+
+        void mergeDelimited(final CodedInputStream input, final Object[] values) throws IOException {
+            final int limit = input.pushLimit(input.readRawVarint32());
+            merge(input, values);
+            input.popLimit(limit);
+        }
+
+        private void merge(final CodedInputStream input, final Object[] values) throws IOException {
+            int tag;
+            while((tag = input.readTag()) != 0) {
+                final FieldDecoder field = find(WireFormat.getTagFieldNumber(tag));
+                if(field == null) {
+                    input.skipField(tag);
+                } else {
+                    field.read(input, tag, values);
+                }
+            }
+        }
+
+        private FieldDecoder find(final int fieldNumber) {
+            if(denseFields != null) {
+                return fieldNumber < denseFields.length ? denseFields[fieldNumber] : null;
+            }
+            return sparseFields.get(fieldNumber);
+        }
+
+        private Object build(final Object[] values) {
+            for(int i=0; i<fields.length; i++) {
+                values[i] = fields[i] == null ? null : fields[i].complete(values[i]);
+            }
+            if(avroSchema != null) {
+                final GenericData.Record record = new GenericData.Record(avroSchema);
+                for(int i=0; i<values.length; i++) {
+                    record.put(i, values[i]);
+                }
+                return record;
+            } else if(mapEntry) {
+                return values;
+            } else {
+                return Row.withSchema(rowSchema).attachValues(Arrays.asList(values));
+            }
+        }
+
+    }
+
+    private static class FieldDecoder {
+
+        private final int index;
+        private final Descriptors.FieldDescriptor field;
+        private final boolean avro;
+        private final JsonFormat.Printer printer;
+
+        // Set for MESSAGE fields. message is used for custom messages and map entries.
+        private final ProtoSchemaUtil.ProtoType messageType;
+        private final MessageDecoder message;
+
+        // Set for ENUM fields.
+        private final Map<Integer, Object> enumValues;
+        private final Object defaultEnumValue;
+
+        FieldDecoder(final int index,
+                     final Descriptors.FieldDescriptor field,
+                     final Schema avroSchema,
+                     final org.apache.beam.sdk.schemas.Schema.FieldType rowType,
+                     final JsonFormat.Printer printer) {
+
+            this.index = index;
+            this.field = field;
+            this.avro = avroSchema != null;
+            this.printer = printer;
+
+            final Schema avroElementSchema = avro ? (field.isRepeated()
+                    ? AvroSchemaUtil.unnestUnion(AvroSchemaUtil.unnestUnion(avroSchema).getElementType())
+                    : AvroSchemaUtil.unnestUnion(avroSchema)) : null;
+
+            if(field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+                if(field.isMapField()) {
+                    this.messageType = ProtoSchemaUtil.ProtoType.CUSTOM;
+                    this.message = avro
+                            ? new MessageDecoder(field.getMessageType(), avroElementSchema, null, true, printer)
+                            : new MessageDecoder(field.getMessageType(), null, org.apache.beam.sdk.schemas.Schema.builder()
+                                    .addField("key", rowType.getMapKeyType())
+                                    .addField("value", rowType.getMapValueType())
+                                    .build(), true, printer);
+                } else {
+                    this.messageType = ProtoSchemaUtil.ProtoType.of(field.getMessageType().getFullName());
+                    if(ProtoSchemaUtil.ProtoType.CUSTOM.equals(this.messageType)) {
+                        this.message = avro
+                                ? new MessageDecoder(field.getMessageType(), avroElementSchema, null, false, printer)
+                                : new MessageDecoder(field.getMessageType(), null, (field.isRepeated()
+                                        ? rowType.getCollectionElementType()
+                                        : rowType).getRowSchema(), false, printer);
+                    } else {
+                        this.message = null;
+                    }
+                }
+            } else {
+                this.messageType = null;
+                this.message = null;
+            }
+
+            if(field.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM) {
+                this.enumValues = new HashMap<>();
+                for(final Descriptors.EnumValueDescriptor value : field.getEnumType().getValues()) {
+                    this.enumValues.put(value.getNumber(), avro
+                            ? new GenericData.EnumSymbol(avroElementSchema, value.getName())
+                            : new EnumerationType.Value(value.getIndex()));
+                }
+                this.defaultEnumValue = avro
+                        ? new GenericData.EnumSymbol(avroElementSchema, avroElementSchema.getEnumSymbols().get(0))
+                        : new EnumerationType.Value(0);
+            } else {
+                this.enumValues = null;
+                this.defaultEnumValue = null;
+            }
+        }
+
+        void read(final CodedInputStream input, final int tag, final Object[] values) throws IOException {
+            if(field.isMapField()) {
+                final Object entry = message.decodeDelimited(input);
+                if(avro) {
+                    list(values).add(entry);
+                } else {
+                    final Object[] keyValue = (Object[]) entry;
+                    map(values).put(keyValue[0], keyValue[1]);
+                }
+            } else if(field.isRepeated()) {
+                final List<Object> list = list(values);
+                if(field.isPackable() && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    final int limit = input.pushLimit(input.readRawVarint32());
+                    while(input.getBytesUntilLimit() > 0) {
+                        list.add(readValue(input));
+                    }
+                    input.popLimit(limit);
+                } else {
+                    final Object value = readValue(input);
+                    if(avro || value != null) {
+                        list.add(value);
+                    }
+                }
+            } else if(message != null) {
+                // Embedded messages appearing more than once are merged, as protobuf parsers do.
+                Object[] state = (Object[]) values[index];
+                if(state == null) {
+                    state = new Object[message.fields.length];
+                    values[index] = state;
+                }
+                message.mergeDelimited(input, state);
+            } else {
+                values[index] = readValue(input);
+            }
+        }
+
+        Object complete(final Object value) {
+            if(field.isMapField()) {
+                if(value == null) {
+                    return avro ? new ArrayList<>() : new HashMap<>();
+                }
+                return value;
+            } else if(field.isRepeated()) {
+                return value == null ? new ArrayList<>() : value;
+            } else if(message != null) {
+                return message.build(value == null ? new Object[message.fields.length] : (Object[]) value);
+            } else if(value == null) {
+                return defaultValue();
+            } else {
+                return value;
+            }
+        }
+
+        private Object readValue(final CodedInputStream input) throws IOException {
+            switch (field.getType()) {
+                case BOOL:
+                    return input.readBool();
+                case INT32:
+                    return input.readInt32();
+                case SINT32:
+                    return input.readSInt32();
+                case SFIXED32:
+                    return input.readSFixed32();
+                case UINT32:
+                    return input.readUInt32();
+                case FIXED32:
+                    return input.readFixed32();
+                case INT64:
+                    return input.readInt64();
+                case SINT64:
+                    return input.readSInt64();
+                case SFIXED64:
+                    return input.readSFixed64();
+                case UINT64:
+                    return input.readUInt64();
+                case FIXED64:
+                    return input.readFixed64();
+                case FLOAT:
+                    return input.readFloat();
+                case DOUBLE:
+                    return input.readDouble();
+                case STRING:
+                    return input.readString();
+                case BYTES: {
+                    final byte[] bytes = input.readByteArray();
+                    return avro ? ByteBuffer.wrap(bytes) : bytes;
+                }
+                case ENUM: {
+                    final Object value = enumValues.get(input.readEnum());
+                    return value == null ? defaultEnumValue : value;
+                }
+                case MESSAGE: {
+                    if(message != null) {
+                        return message.decodeDelimited(input);
+                    }
+                    return readBuiltInValue(input);
+                }
+                case GROUP:
+                default:
+                    throw new IllegalStateException("Not supported field type: " + field.getType() + " for field: " + field.getFullName());
+            }
+        }
+
+        private Object defaultValue() {
+            switch (field.getJavaType()) {
+                case BOOLEAN:
+                    return false;
+                case INT:
+                    return 0;
+                case LONG:
+                    return 0L;
+                case FLOAT:
+                    return 0f;
+                case DOUBLE:
+                    return 0d;
+                case STRING:
+                    return "";
+                case BYTE_STRING:
+                    return avro ? ByteBuffer.wrap(new byte[0]) : new byte[0];
+                case ENUM:
+                    return defaultEnumValue;
+                case MESSAGE:
+                    return convertBuiltInValue(null);
+                default:
+                    throw new IllegalStateException("Not supported field type: " + field.getType() + " for field: " + field.getFullName());
+            }
+        }
+
+        /**
+         * Reads well-known type fields by wire type only: none of them use zigzag encoding.
+         * As with DynamicMessage in proto3, a message whose fields all have default values is treated as not set.
+         */
+        private Object readBuiltInValue(final CodedInputStream input) throws IOException {
+            final int limit = input.pushLimit(input.readRawVarint32());
+            final Object[] values = new Object[MAX_BUILT_IN_FIELD_NUMBER];
+            boolean isNull = true;
+            int tag;
+            while((tag = input.readTag()) != 0) {
+                final int number = WireFormat.getTagFieldNumber(tag);
+                if(number >= MAX_BUILT_IN_FIELD_NUMBER) {
+                    input.skipField(tag);
+                    continue;
+                }
+                switch (WireFormat.getTagWireType(tag)) {
+                    case WireFormat.WIRETYPE_VARINT: {
+                        final long value = input.readRawVarint64();
+                        values[number] = value;
+                        isNull = isNull && value == 0;
+                        break;
+                    }
+                    case WireFormat.WIRETYPE_FIXED64: {
+                        final long value = input.readRawLittleEndian64();
+                        values[number] = value;
+                        isNull = isNull && value == 0;
+                        break;
+                    }
+                    case WireFormat.WIRETYPE_FIXED32: {
+                        final long value = input.readRawLittleEndian32();
+                        values[number] = value;
+                        isNull = isNull && value == 0;
+                        break;
+                    }
+                    case WireFormat.WIRETYPE_LENGTH_DELIMITED: {
+                        final ByteString value = input.readBytes();
+                        values[number] = value;
+                        isNull = isNull && value.isEmpty();
+                        break;
+                    }
+                    default:
+                        input.skipField(tag);
+                        break;
+                }
+            }
+            input.popLimit(limit);
+            return convertBuiltInValue(isNull ? null : values);
+        }
+
+        private Object convertBuiltInValue(final Object[] values) {
+            final boolean isNull = values == null;
+            switch (messageType) {
+                case BOOL_VALUE:
+                    return !isNull && getLong(values, 1) != 0;
+                case STRING_VALUE:
+                    return isNull ? "" : getBytes(values, 1).toStringUtf8();
+                case BYTES_VALUE: {
+                    final byte[] bytes = isNull ? new byte[0] : getBytes(values, 1).toByteArray();
+                    return avro ? ByteBuffer.wrap(bytes) : bytes;
+                }
+                case INT32_VALUE:
+                case UINT32_VALUE:
+                    return isNull ? 0 : (int) getLong(values, 1);
+                case INT64_VALUE:
+                case UINT64_VALUE:
+                    return isNull ? 0L : getLong(values, 1);
+                case FLOAT_VALUE:
+                    return isNull ? 0f : Float.intBitsToFloat((int) getLong(values, 1));
+                case DOUBLE_VALUE:
+                    return isNull ? 0d : Double.longBitsToDouble(getLong(values, 1));
+                case DATE: {
+                    final LocalDate date = isNull ? DEFAULT_DATE : LocalDate.of(
+                            (int) getLong(values, 1), (int) getLong(values, 2), (int) getLong(values, 3));
+                    return avro ? (int) date.toEpochDay() : date;
+                }
+                case TIME: {
+                    final LocalTime time = isNull ? LocalTime.MIDNIGHT : LocalTime.of(
+                            (int) getLong(values, 1), (int) getLong(values, 2),
+                            (int) getLong(values, 3), (int) getLong(values, 4));
+                    return avro ? time.toSecondOfDay() * 1000_000L : time;
+                }
+                case DATETIME: {
+                    // Same as the existing converters, time_offset is not applied and the value is treated as UTC.
+                    final long epochMillis = isNull ? DEFAULT_EPOCH_MILLIS : LocalDateTime.of(
+                            (int) getLong(values, 1), (int) getLong(values, 2), (int) getLong(values, 3),
+                            (int) getLong(values, 4), (int) getLong(values, 5),
+                            (int) getLong(values, 6), (int) getLong(values, 7))
+                            .atOffset(ZoneOffset.UTC)
+                            .toInstant()
+                            .toEpochMilli();
+                    return avro ? epochMillis * 1000L : Instant.ofEpochMilli(epochMillis);
+                }
+                case TIMESTAMP: {
+                    if(isNull) {
+                        return avro ? DEFAULT_EPOCH_MILLIS * 1000L : Instant.ofEpochMilli(DEFAULT_EPOCH_MILLIS);
+                    }
+                    final Timestamp timestamp = Timestamp.newBuilder()
+                            .setSeconds(getLong(values, 1))
+                            .setNanos((int) getLong(values, 2))
+                            .build();
+                    return avro ? Timestamps.toMicros(timestamp) : Instant.ofEpochMilli(Timestamps.toMillis(timestamp));
+                }
+                case ANY: {
+                    if(isNull) {
+                        return "";
+                    }
+                    final Any any = Any.newBuilder()
+                            .setTypeUrl(getBytes(values, 1).toStringUtf8())
+                            .setValue(getBytes(values, 2))
+                            .build();
+                    try {
+                        return printer.print(any);
+                    } catch (InvalidProtocolBufferException e) {
+                        return any.getValue().toStringUtf8();
+                    }
+                }
+                case EMPTY:
+                case NULL_VALUE:
+                    return null;
+                case CUSTOM:
+                default:
+                    throw new IllegalStateException("Not built-in message type: " + field.getMessageType().getFullName());
+            }
+        }
+
+        private List<Object> list(final Object[] values) {
+            List<Object> list = (List<Object>) values[index];
+            if(list == null) {
+                list = new ArrayList<>();
+                values[index] = list;
+            }
+            return list;
+        }
+
+        private Map<Object, Object> map(final Object[] values) {
+            Map<Object, Object> map = (Map<Object, Object>) values[index];
+            if(map == null) {
+                map = new HashMap<>();
+                values[index] = map;
+            }
+            return map;
+        }
+
+        private static long getLong(final Object[] values, final int number) {
+            final Object value = values[number];
+            return value instanceof Long ? (Long) value : 0L;
+        }
+
+        private static ByteString getBytes(final Object[] values, final int number) {
+            final Object value = values[number];
+            return value instanceof ByteString ? (ByteString) value : ByteString.EMPTY;
+        }
+
+    }
+
+}
@@ -0,0 +1,583 @@
+package com.mercari.solution.util.converter;
+
+import com.google.protobuf.*;
+import com.google.protobuf.util.JsonFormat;
+import com.google.type.Date;
+import com.google.type.DateTime;
+import com.google.type.TimeOfDay;
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import com.mercari.solution.util.schema.ProtoSchemaUtil;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.schemas.logicaltypes.EnumerationType;
+import org.apache.beam.sdk.values.Row;
+import org.joda.time.ReadableInstant;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes Avro GenericRecord or Beam Row into serialized protobuf messages without building a DynamicMessage.
+ * Like ProtoDecoder, the descriptor is compiled once against the input schema into a list of
+ * (input field index, field tag) pairs, so each record is written field by field with CodedOutputStream.
+ * Fields of the input schema not contained in the descriptor are ignored.
+ * An encoder reuses its internal buffers and is not thread-safe.
+ */
+public class ProtoEncoder<T> {
+
+    private final MessageEncoder root;
+
+    private ProtoEncoder(final MessageEncoder root) {
+        this.root = root;
+    }
+
+    public static ProtoEncoder<GenericRecord> of(final Schema schema,
+                                                 final Descriptors.Descriptor descriptor,
+                                                 final JsonFormat.Parser parser) {
+
+        return new ProtoEncoder<>(MessageEncoder.of(descriptor, schema, parser));
+    }
+
+    public static ProtoEncoder<Row> of(final org.apache.beam.sdk.schemas.Schema schema,
+                                       final Descriptors.Descriptor descriptor,
+                                       final JsonFormat.Parser parser) {
+
+        return new ProtoEncoder<>(MessageEncoder.of(descriptor, schema, parser));
+    }
+
+    public byte[] encode(final T value) {
+        if(value == null) {
+            return null;
+        }
+        try {
+            return root.encode(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode protobuf message: " + root.descriptor.getFullName(), e);
+        }
+    }
+
+    private static class MessageEncoder {
+
+        private final Descriptors.Descriptor descriptor;
+        private final List<FieldEncoder> fields;
+
+        private final ByteArrayOutputStream buffer;
+        private final CodedOutputStream output;
+
+        private MessageEncoder(final Descriptors.Descriptor descriptor, final List<FieldEncoder> fields) {
+            this.descriptor = descriptor;
+            this.fields = fields;
+            this.buffer = new ByteArrayOutputStream();
+            this.output = CodedOutputStream.newInstance(buffer);
+        }
+
+        static MessageEncoder of(final Descriptors.Descriptor descriptor,
+                                 final Schema schema,
+                                 final JsonFormat.Parser parser) {
+
+            final List<FieldEncoder> fields = new ArrayList<>();
+            for(final Descriptors.FieldDescriptor field : descriptor.getFields()) {
+                final Schema.Field inputField = schema.getField(field.getName());
+                if(inputField == null) {
+                    continue;
+                }
+                fields.add(new FieldEncoder(field, inputField.pos(), inputField.schema(), null, parser));
+            }
+            return new MessageEncoder(descriptor, fields);
+        }
+
+        static MessageEncoder of(final Descriptors.Descriptor descriptor,
+                                 final org.apache.beam.sdk.schemas.Schema schema,
+                                 final JsonFormat.Parser parser) {
+
+            final List<FieldEncoder> fields = new ArrayList<>();
+            for(final Descriptors.FieldDescriptor field : descriptor.getFields()) {
+                if(!schema.hasField(field.getName())) {
+                    continue;
+                }
+                final int index = schema.indexOf(field.getName());
+                fields.add(new FieldEncoder(field, index, null, schema.getField(index).getType(), parser));
+            }
+            return new MessageEncoder(descriptor, fields);
+        }
+
+        // Map entry given as Object[]{key, value}, for Avro map type and Beam Row map type.
+        static MessageEncoder ofMapEntry(final Descriptors.Descriptor descriptor,
+                                         final Schema valueSchema,
+                                         final org.apache.beam.sdk.schemas.Schema.FieldType keyType,
+                                         final org.apache.beam.sdk.schemas.Schema.FieldType valueType,
+                                         final JsonFormat.Parser parser) {
+
+            final List<FieldEncoder> fields = new ArrayList<>();
+            final Descriptors.FieldDescriptor keyField = descriptor.findFieldByName("key");
+            final Descriptors.FieldDescriptor valueField = descriptor.findFieldByName("value");
+            if(valueSchema != null) {
+                fields.add(new FieldEncoder(keyField, 0, AvroSchemaUtil.REQUIRED_STRING, null, parser));
+                fields.add(new FieldEncoder(valueField, 1, valueSchema, null, parser));
+            } else {
+                fields.add(new FieldEncoder(keyField, 0, null, keyType, parser));
+                fields.add(new FieldEncoder(valueField, 1, null, valueType, parser));
+            }
+            return new MessageEncoder(descriptor, fields);
+        }
+
+        byte[] encode(final Object message) throws IOException {
+            buffer.reset();
+            for(final FieldEncoder field : fields) {
+                final Object value = get(message, field.inputIndex);
+                if(value != null) {
+                    field.write(output, value);
+                }
+            }
+            output.flush();
+            return buffer.toByteArray();
+        }
+
+        private static Object get(final Object message, final int index) {
+            if(message instanceof GenericRecord) {
+                return ((GenericRecord) message).get(index);
+            } else if(message instanceof Row) {
+                return ((Row) message).getValue(index);
+            } else if(message instanceof Object[]) {
+                return ((Object[]) message)[index];
+            } else {
+                throw new IllegalArgumentException("Not supported message value: " + message.getClass());
+            }
+        }
+
+    }
+
+    private static class FieldEncoder {
+
+        private final Descriptors.FieldDescriptor field;
+        private final int inputIndex;
+        private final int tag;
+        private final boolean packed;
+        private final boolean hasPresence;
+
+        // Element schema or type of the input field. Only one of them is set.
+        private final Schema avroSchema;
+        private final org.apache.beam.sdk.schemas.Schema.FieldType rowType;
+
+        private final ProtoSchemaUtil.ProtoType messageType;
+        private final MessageEncoder message;
+        private final JsonFormat.Parser parser;
+
+        FieldEncoder(final Descriptors.FieldDescriptor field,
+                     final int inputIndex,
+                     final Schema avroSchema,
+                     final org.apache.beam.sdk.schemas.Schema.FieldType rowType,
+                     final JsonFormat.Parser parser) {
+
+            this.field = field;
+            this.inputIndex = inputIndex;
+            this.packed = field.isRepeated() && field.isPackable();
+            this.tag = (field.getNumber() << 3) | (packed
+                    ? WireFormat.WIRETYPE_LENGTH_DELIMITED
+                    : field.getLiteType().getWireType());
+            this.hasPresence = field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE
+                    || field.getContainingOneof() != null;
+            this.parser = parser;
+
+            if(avroSchema != null) {
+                final Schema fieldSchema = AvroSchemaUtil.unnestUnion(avroSchema);
+                this.avroSchema = field.isRepeated() && fieldSchema.getType() == Schema.Type.ARRAY
+                        ? AvroSchemaUtil.unnestUnion(fieldSchema.getElementType())
+                        : fieldSchema;
+                this.rowType = null;
+            } else {
+                this.avroSchema = null;
+                this.rowType = field.isRepeated() && rowType.getCollectionElementType() != null
+                        ? rowType.getCollectionElementType()
+                        : rowType;
+            }
+
+            if(field.getJavaType() != Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+                this.messageType = null;
+                this.message = null;
+            } else if(field.isMapField()) {
+                this.messageType = ProtoSchemaUtil.ProtoType.CUSTOM;
+                if(this.avroSchema != null) {
+                    this.message = this.avroSchema.getType() == Schema.Type.MAP
+                            ? MessageEncoder.ofMapEntry(field.getMessageType(), this.avroSchema.getValueType(), null, null, parser)
+                            : MessageEncoder.of(field.getMessageType(), this.avroSchema, parser);
+                } else {
+                    this.message = this.rowType.getTypeName() == org.apache.beam.sdk.schemas.Schema.TypeName.MAP
+                            ? MessageEncoder.ofMapEntry(field.getMessageType(), null,
+                                    this.rowType.getMapKeyType(), this.rowType.getMapValueType(), parser)
+                            : MessageEncoder.of(field.getMessageType(), this.rowType.getRowSchema(), parser);
+                }
+            } else {
+                this.messageType = ProtoSchemaUtil.ProtoType.of(field.getMessageType().getFullName());
+                if(ProtoSchemaUtil.ProtoType.CUSTOM.equals(this.messageType)) {
+                    this.message = this.avroSchema != null
+                            ? MessageEncoder.of(field.getMessageType(), this.avroSchema, parser)
+                            : MessageEncoder.of(field.getMessageType(), this.rowType.getRowSchema(), parser);
+                } else {
+                    this.message = null;
+                }
+            }
+        }
+
+        void write(final CodedOutputStream output, final Object value) throws IOException {
+            if(field.isMapField()) {
+                if(value instanceof Map) {
+                    for(final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                        final Object key = avroSchema != null ? entry.getKey().toString() : entry.getKey();
+                        writeElement(output, message.encode(new Object[]{ key, entry.getValue() }));
+                    }
+                } else {
+                    for(final Object entry : (Iterable<?>) value) {
+                        writeElement(output, message.encode(entry));
+                    }
+                }
+            } else if(field.isRepeated()) {
+                final List<Object> values = new ArrayList<>();
+                for(final Object element : (Iterable<?>) value) {
+                    if(element != null) {
+                        values.add(convert(element));
+                    }
+                }
+                if(values.isEmpty()) {
+                    return;
+                }
+                if(packed) {
+                    int size = 0;
+                    for(final Object element : values) {
+                        size += computeSizeNoTag(element);
+                    }
+                    output.writeUInt32NoTag(tag);
+                    output.writeUInt32NoTag(size);
+                    for(final Object element : values) {
+                        writeNoTag(output, element);
+                    }
+                } else {
+                    for(final Object element : values) {
+                        writeElement(output, element);
+                    }
+                }
+            } else {
+                final Object converted = convert(value);
+                // proto3 does not serialize scalar fields with default values unless they belong to oneof.
+                if(!hasPresence && isDefault(converted)) {
+                    return;
+                }
+                writeElement(output, converted);
+            }
+        }
+
+        private void writeElement(final CodedOutputStream output, final Object value) throws IOException {
+            output.writeUInt32NoTag(tag);
+            writeNoTag(output, value);
+        }
+
+        private void writeNoTag(final CodedOutputStream output, final Object value) throws IOException {
+            switch (field.getType()) {
+                case BOOL:
+                    output.writeBoolNoTag((Boolean) value);
+                    return;
+                case INT32:
+                    output.writeInt32NoTag((Integer) value);
+                    return;
+                case SINT32:
+                    output.writeSInt32NoTag((Integer) value);
+                    return;
+                case SFIXED32:
+                    output.writeSFixed32NoTag((Integer) value);
+                    return;
+                case UINT32:
+                    output.writeUInt32NoTag((Integer) value);
+                    return;
+                case FIXED32:
+                    output.writeFixed32NoTag((Integer) value);
+                    return;
+                case INT64:
+                    output.writeInt64NoTag((Long) value);
+                    return;
+                case SINT64:
+                    output.writeSInt64NoTag((Long) value);
+                    return;
+                case SFIXED64:
+                    output.writeSFixed64NoTag((Long) value);
+                    return;
+                case UINT64:
+                    output.writeUInt64NoTag((Long) value);
+                    return;
+                case FIXED64:
+                    output.writeFixed64NoTag((Long) value);
+                    return;
+                case FLOAT:
+                    output.writeFloatNoTag((Float) value);
+                    return;
+                case DOUBLE:
+                    output.writeDoubleNoTag((Double) value);
+                    return;
+                case ENUM:
+                    output.writeEnumNoTag((Integer) value);
+                    return;
+                case STRING:
+                    output.writeStringNoTag((String) value);
+                    return;
+                case BYTES:
+                case MESSAGE:
+                    output.writeByteArrayNoTag((byte[]) value);
+                    return;
+                case GROUP:
+                default:
+                    throw new IllegalStateException("Not supported field type: " + field.getType() + " for field: " + field.getFullName());
+            }
+        }
+
+        private int computeSizeNoTag(final Object value) {
+            switch (field.getType()) {
+                case BOOL:
+                    return CodedOutputStream.computeBoolSizeNoTag((Boolean) value);
+                case INT32:
+                    return CodedOutputStream.computeInt32SizeNoTag((Integer) value);
+                case SINT32:
+                    return CodedOutputStream.computeSInt32SizeNoTag((Integer) value);
+                case SFIXED32:
+                    return CodedOutputStream.computeSFixed32SizeNoTag((Integer) value);
+                case UINT32:
+                    return CodedOutputStream.computeUInt32SizeNoTag((Integer) value);
+                case FIXED32:
+                    return CodedOutputStream.computeFixed32SizeNoTag((Integer) value);
+                case INT64:
+                    return CodedOutputStream.computeInt64SizeNoTag((Long) value);
+                case SINT64:
+                    return CodedOutputStream.computeSInt64SizeNoTag((Long) value);
+                case SFIXED64:
+                    return CodedOutputStream.computeSFixed64SizeNoTag((Long) value);
+                case UINT64:
+                    return CodedOutputStream.computeUInt64SizeNoTag((Long) value);
+                case FIXED64:
+                    return CodedOutputStream.computeFixed64SizeNoTag((Long) value);
+                case FLOAT:
+                    return CodedOutputStream.computeFloatSizeNoTag((Float) value);
+                case DOUBLE:
+                    return CodedOutputStream.computeDoubleSizeNoTag((Double) value);
+                case ENUM:
+                    return CodedOutputStream.computeEnumSizeNoTag((Integer) value);
+                default:
+                    throw new IllegalStateException("Not packable field type: " + field.getType() + " for field: " + field.getFullName());
+            }
+        }
+
+        private boolean isDefault(final Object value) {
+            switch (field.getType()) {
+                case BOOL:
+                    return !(Boolean) value;
+                case FLOAT:
+                    return Float.floatToRawIntBits((Float) value) == 0;
+                case DOUBLE:
+                    return Double.doubleToRawLongBits((Double) value) == 0;
+                case STRING:
+                    return ((String) value).isEmpty();
+                case BYTES:
+                    return ((byte[]) value).length == 0;
+                case MESSAGE:
+                    return false;
+                default:
+                    return ((Number) value).longValue() == 0;
+            }
+        }
+
+        /**
+         * Converts input value to the value type written by writeNoTag.
+         */
+        private Object convert(final Object value) throws IOException {
+            switch (field.getJavaType()) {
+                case BOOLEAN:
+                    return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+                case INT:
+                    return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString());
+                case LONG:
+                    return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString());
+                case FLOAT:
+                    return value instanceof Number ? ((Number) value).floatValue() : Float.valueOf(value.toString());
+                case DOUBLE:
+                    return value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(value.toString());
+                case STRING:
+                    return value.toString();
+                case BYTE_STRING:
+                    return toBytes(value);
+                case ENUM:
+                    return toEnumNumber(value);
+                case MESSAGE: {
+                    if(message != null) {
+                        return message.encode(value);
+                    }
+                    return convertBuiltInValue(value).toByteArray();
+                }
+                default:
+                    throw new IllegalStateException("Not supported field type: " + field.getType() + " for field: " + field.getFullName());
+            }
+        }
+
+        private Message convertBuiltInValue(final Object value) throws IOException {
+            switch (messageType) {
+                case BOOL_VALUE:
+                    return BoolValue.of(value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString()));
+                case STRING_VALUE:
+                    return StringValue.of(value.toString());
+                case BYTES_VALUE:
+                    return BytesValue.of(ByteString.copyFrom(toBytes(value)));
+                case INT32_VALUE:
+                    return Int32Value.of(((Number) value).intValue());
+                case INT64_VALUE:
+                    return Int64Value.of(((Number) value).longValue());
+                case UINT32_VALUE:
+                    return UInt32Value.of(((Number) value).intValue());
+                case UINT64_VALUE:
+                    return UInt64Value.of(((Number) value).longValue());
+                case FLOAT_VALUE:
+                    return FloatValue.of(((Number) value).floatValue());
+                case DOUBLE_VALUE:
+                    return DoubleValue.of(((Number) value).doubleValue());
+                case DATE: {
+                    final LocalDate date = toLocalDate(value);
+                    return Date.newBuilder()
+                            .setYear(date.getYear())
+                            .setMonth(date.getMonthValue())
+                            .setDay(date.getDayOfMonth())
+                            .build();
+                }
+                case TIME: {
+                    final LocalTime time = toLocalTime(value);
+                    return TimeOfDay.newBuilder()
+                            .setHours(time.getHour())
+                            .setMinutes(time.getMinute())
+                            .setSeconds(time.getSecond())
+                            .setNanos(time.getNano())
+                            .build();
+                }
+                case DATETIME: {
+                    final long epochMicros = toEpochMicros(value);
+                    final LocalDateTime datetime = LocalDateTime.ofEpochSecond(
+                            Math.floorDiv(epochMicros, 1000_000L),
+                            (int) Math.floorMod(epochMicros, 1000_000L) * 1000,
+                            ZoneOffset.UTC);
+                    return DateTime.newBuilder()
+                            .setYear(datetime.getYear())
+                            .setMonth(datetime.getMonthValue())
+                            .setDay(datetime.getDayOfMonth())
+                            .setHours(datetime.getHour())
+                            .setMinutes(datetime.getMinute())
+                            .setSeconds(datetime.getSecond())
+                            .setNanos(datetime.getNano())
+                            .setUtcOffset(Duration.getDefaultInstance())
+                            .build();
+                }
+                case TIMESTAMP: {
+                    final long epochMicros = toEpochMicros(value);
+                    return Timestamp.newBuilder()
+                            .setSeconds(Math.floorDiv(epochMicros, 1000_000L))
+                            .setNanos((int) Math.floorMod(epochMicros, 1000_000L) * 1000)
+                            .build();
+                }
+                case ANY: {
+                    final String json = value.toString();
+                    if(json.isEmpty()) {
+                        return Any.getDefaultInstance();
+                    }
+                    final Any.Builder builder = Any.newBuilder();
+                    parser.merge(json, builder);
+                    return builder.build();
+                }
+                case EMPTY:
+                case NULL_VALUE:
+                    return Empty.getDefaultInstance();
+                case CUSTOM:
+                default:
+                    throw new IllegalStateException("Not built-in message type: " + field.getMessageType().getFullName());
+            }
+        }
+
+        private int toEnumNumber(final Object value) {
+            if(value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+            final String name;
+            if(value instanceof EnumerationType.Value) {
+                if(rowType != null && rowType.getLogicalType() instanceof EnumerationType) {
+                    name = ((EnumerationType) rowType.getLogicalType()).toString((EnumerationType.Value) value);
+                } else {
+                    return field.getEnumType().getValues().get(((EnumerationType.Value) value).getValue()).getNumber();
+                }
+            } else {
+                name = value.toString();
+            }
+            final Descriptors.EnumValueDescriptor enumValue = field.getEnumType().findValueByName(name);
+            if(enumValue == null) {
+                throw new IllegalArgumentException("Enum: " + field.getEnumType().getFullName() + " does not contain value: " + name);
+            }
+            return enumValue.getNumber();
+        }
+
+        private long toEpochMicros(final Object value) {
+            if(value instanceof ReadableInstant) {
+                return ((ReadableInstant) value).getMillis() * 1000L;
+            } else if(value instanceof java.time.Instant) {
+                final java.time.Instant instant = (java.time.Instant) value;
+                return instant.getEpochSecond() * 1000_000L + instant.getNano() / 1000;
+            } else if(value instanceof Number) {
+                if(avroSchema != null && LogicalTypes.timestampMillis().equals(avroSchema.getLogicalType())) {
+                    return ((Number) value).longValue() * 1000L;
+                }
+                return ((Number) value).longValue();
+            } else {
+                return toEpochMicros(java.time.Instant.parse(value.toString()));
+            }
+        }
+
+        private LocalDate toLocalDate(final Object value) {
+            if(value instanceof LocalDate) {
+                return (LocalDate) value;
+            } else if(value instanceof Number) {
+                return LocalDate.ofEpochDay(((Number) value).longValue());
+            } else {
+                return LocalDate.parse(value.toString());
+            }
+        }
+
+        private LocalTime toLocalTime(final Object value) {
+            if(value instanceof LocalTime) {
+                return (LocalTime) value;
+            } else if(value instanceof Number) {
+                if(avroSchema != null && LogicalTypes.timeMillis().equals(avroSchema.getLogicalType())) {
+                    return LocalTime.ofNanoOfDay(((Number) value).longValue() * 1000_000L);
+                }
+                return LocalTime.ofNanoOfDay(((Number) value).longValue() * 1000L);
+            } else {
+                return LocalTime.parse(value.toString());
+            }
+        }
+
+        private static byte[] toBytes(final Object value) {
+            if(value instanceof byte[]) {
+                return (byte[]) value;
+            } else if(value instanceof ByteBuffer) {
+                final ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+                final byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            } else if(value instanceof ByteString) {
+                return ((ByteString) value).toByteArray();
+            } else {
+                return value.toString().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+    }
+
+}
@@ -4,25 +4,18 @@ import com.mercari.solution.util.schema.AvroSchemaUtil;
 import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.commons.compress.utils.IOUtils;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
-import org.joda.time.Days;
-import org.joda.time.MutableDateTime;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.sql.*;
-import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
 public class ResultSetToRecordConverter {
 
-    private static final MutableDateTime EPOCH_DATETIME = new MutableDateTime(0, DateTimeZone.UTC);
-
     public static Schema convertSchema(final ResultSet resultSet)  throws SQLException {
 
         final SchemaBuilder.FieldAssembler<Schema> schemaFields = SchemaBuilder.record("root").fields();
@@ -118,147 +111,156 @@ public class ResultSetToRecordConverter {
         return schemaFields.endRecord();
     }
 
+    /**
+     * Converts the current row with the schema rebuilt from the result set metadata.
+     * For converting many rows of a query, use {@link #bind(Schema, ResultSetMetaData)} instead.
+     */
     public static GenericRecord convert(final ResultSet resultSet) throws SQLException, IOException {
-        final ResultSetMetaData meta = resultSet.getMetaData();
+        return bind(convertSchema(resultSet), resultSet.getMetaData()).convert(resultSet);
+    }
+
+    /**
+     * Creates a converter bound to the metadata of a query result.
+     * The field position and the value extractor of each column are resolved once here,
+     * so that converting each row only reads the column values by index.
+     * Columns without the field of the same name in the schema are skipped.
+     */
+    public static RecordConverter bind(final Schema schema, final ResultSetMetaData meta) throws SQLException {
         final int columnCount = meta.getColumnCount();
-        final Schema schema = convertSchema(resultSet);
-        final GenericRecordBuilder builder = new GenericRecordBuilder(schema);
+        final int[] positions = new int[columnCount];
+        final ColumnExtractor[] extractors = new ColumnExtractor[columnCount];
         for (int column = 1; column <= columnCount; ++column) {
-            final String fieldName = meta.getColumnName(column);
-            switch (meta.getColumnType(column)) {
-                case Types.BIT:
-                case Types.BOOLEAN:
-                    builder.set(fieldName, resultSet.getBoolean(column));
-                    break;
-                case Types.NUMERIC:
-                case Types.DECIMAL:
-                    BigDecimal decimal = resultSet.getBigDecimal(column);
-                    if(decimal == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        builder.set(fieldName, ByteBuffer.wrap(decimal.unscaledValue().toByteArray()));
-                    }
-                    break;
-                case Types.TINYINT:
-                case Types.SMALLINT:
-                case Types.INTEGER:
-                    builder.set(fieldName, resultSet.getInt(column));
-                    break;
-                case Types.BIGINT:
-                    if("java.math.BigInteger".equals(meta.getColumnClassName(column))) {
-                        BigDecimal bigintDecimal = resultSet.getBigDecimal(column);
-                        if(bigintDecimal == null) {
-                            builder.set(fieldName, null);
-                        } else {
-                            //builder.set(fieldName, ByteBuffer.wrap(bigintDecimal.unscaledValue().toByteArray()));
-                            builder.set(fieldName, bigintDecimal.unscaledValue().longValue());
-                        }
-                    } else {
-                        builder.set(fieldName, resultSet.getLong(column));
-                    }
-                    break;
-                case Types.REAL:
-                    builder.set(fieldName, resultSet.getFloat(column));
-                    break;
-                case Types.FLOAT:
-                case Types.DOUBLE:
-                    builder.set(fieldName, resultSet.getDouble(column));
-                    break;
-                case Types.CHAR:
-                case Types.VARCHAR:
-                case Types.LONGVARCHAR:
-                    builder.set(fieldName, resultSet.getString(column));
-                    break;
-                case Types.NVARCHAR:
-                case Types.NCHAR:
-                case Types.LONGNVARCHAR:
-                    builder.set(fieldName, resultSet.getNString(column));
-                    break;
-                case Types.ROWID:
-                    final RowId rowId = resultSet.getRowId(column);
-                    if(rowId == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        builder.set(fieldName, rowId.toString());
-                    }
-                    break;
-                case Types.BINARY:
-                case Types.VARBINARY:
-                case Types.LONGVARBINARY:
-                    byte[] binary = resultSet.getBytes(column);
-                    if(binary == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        builder.set(fieldName, ByteBuffer.wrap(binary));
-                    }
-                    break;
-                case Types.BLOB:
-                    final Blob blob = resultSet.getBlob(column);
-                    if(blob == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        byte[] bytes = IOUtils.toByteArray(blob.getBinaryStream());
-                        builder.set(fieldName, ByteBuffer.wrap(bytes));
-                    }
-                    break;
-                case Types.TIME:
-                    final Time time = resultSet.getTime(column);
-                    if(time == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        builder.set(fieldName, time.toLocalTime().format(DateTimeFormatter.ISO_LOCAL_TIME));
-                    }
-                    break;
-                case Types.DATE:
-                    final java.sql.Date sqlDate = resultSet.getDate(column);
-                    if(sqlDate == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        final LocalDate localDate = sqlDate.toLocalDate();
-                        final DateTime datetime = new DateTime(localDate.getYear(), localDate.getMonthValue(), localDate.getDayOfMonth(), 0, 0, DateTimeZone.UTC);
-                        final Days days = Days.daysBetween(EPOCH_DATETIME, datetime);
-                        builder.set(fieldName, days.getDays());
-                    }
-                    break;
-                case Types.TIMESTAMP:
-                    final java.sql.Timestamp timestamp = resultSet.getTimestamp(column);
-                    if(timestamp == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        builder.set(fieldName, timestamp.getTime() * 1000);
-                    }
-                    break;
-                case Types.TIME_WITH_TIMEZONE:
-                    final Time timeWT = resultSet.getTime(column);
-                    if(timeWT == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        builder.set(fieldName, timeWT.toLocalTime().format(DateTimeFormatter.ISO_LOCAL_TIME));
-                    }
-                    break;
-                case Types.TIMESTAMP_WITH_TIMEZONE:
-                    final java.sql.Timestamp timestampWT = resultSet.getTimestamp(column);
-                    if(timestampWT == null) {
-                        builder.set(fieldName, null);
-                    } else {
-                        builder.set(fieldName, timestampWT.getTime() * 1000);
-                    }
-                    break;
-                case Types.DATALINK:
-                case Types.JAVA_OBJECT:
-                case Types.DISTINCT:
-                case Types.STRUCT:
-                case Types.ARRAY:
-                    break;
-                case Types.CLOB:
-                case Types.REF:
-                case Types.SQLXML:
-                case Types.NCLOB:
-                case Types.REF_CURSOR:
-                    break;
+            final Schema.Field field = schema.getField(meta.getColumnName(column));
+            positions[column - 1] = field == null ? -1 : field.pos();
+            extractors[column - 1] = field == null ? null : createExtractor(meta, column);
+        }
+        return new RecordConverter(schema, positions, extractors);
+    }
+
+    public static class RecordConverter {
+
+        private final Schema schema;
+        private final int[] positions;
+        private final ColumnExtractor[] extractors;
+
+        private RecordConverter(final Schema schema, final int[] positions, final ColumnExtractor[] extractors) {
+            this.schema = schema;
+            this.positions = positions;
+            this.extractors = extractors;
+        }
+
+        public Schema getSchema() {
+            return schema;
+        }
+
+        public GenericRecord convert(final ResultSet resultSet) throws SQLException, IOException {
+            final GenericData.Record record = new GenericData.Record(schema);
+            for (int i = 0; i < extractors.length; i++) {
+                if(extractors[i] != null) {
+                    record.put(positions[i], extractors[i].extract(resultSet, i + 1));
+                }
             }
+            return record;
+        }
+
+    }
+
+    private interface ColumnExtractor {
+        Object extract(final ResultSet resultSet, final int column) throws SQLException, IOException;
+    }
+
+    private static ColumnExtractor createExtractor(final ResultSetMetaData meta, final int column) throws SQLException {
+        switch (meta.getColumnType(column)) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return (resultSet, c) -> {
+                    final boolean value = resultSet.getBoolean(c);
+                    return resultSet.wasNull() ? null : value;
+                };
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return (resultSet, c) -> {
+                    final BigDecimal decimal = resultSet.getBigDecimal(c);
+                    return decimal == null ? null : ByteBuffer.wrap(decimal.unscaledValue().toByteArray());
+                };
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return (resultSet, c) -> {
+                    final int value = resultSet.getInt(c);
+                    return resultSet.wasNull() ? null : value;
+                };
+            case Types.BIGINT:
+                if("java.math.BigInteger".equals(meta.getColumnClassName(column))) {
+                    return (resultSet, c) -> {
+                        final BigDecimal decimal = resultSet.getBigDecimal(c);
+                        return decimal == null ? null : decimal.unscaledValue().longValue();
+                    };
+                }
+                return (resultSet, c) -> {
+                    final long value = resultSet.getLong(c);
+                    return resultSet.wasNull() ? null : value;
+                };
+            case Types.REAL:
+                return (resultSet, c) -> {
+                    final float value = resultSet.getFloat(c);
+                    return resultSet.wasNull() ? null : value;
+                };
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return (resultSet, c) -> {
+                    final double value = resultSet.getDouble(c);
+                    return resultSet.wasNull() ? null : value;
+                };
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                return ResultSet::getString;
+            case Types.NVARCHAR:
+            case Types.NCHAR:
+            case Types.LONGNVARCHAR:
+                return ResultSet::getNString;
+            case Types.ROWID:
+                return (resultSet, c) -> {
+                    final RowId rowId = resultSet.getRowId(c);
+                    return rowId == null ? null : rowId.toString();
+                };
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return (resultSet, c) -> {
+                    final byte[] binary = resultSet.getBytes(c);
+                    return binary == null ? null : ByteBuffer.wrap(binary);
+                };
+            case Types.BLOB:
+                return (resultSet, c) -> {
+                    final Blob blob = resultSet.getBlob(c);
+                    return blob == null ? null : ByteBuffer.wrap(IOUtils.toByteArray(blob.getBinaryStream()));
+                };
+            case Types.TIME:
+                return (resultSet, c) -> {
+                    final Time time = resultSet.getTime(c);
+                    return time == null ? null : time.toLocalTime().toNanoOfDay() / 1000L;
+                };
+            case Types.DATE:
+                return (resultSet, c) -> {
+                    final java.sql.Date sqlDate = resultSet.getDate(c);
+                    return sqlDate == null ? null : (int) sqlDate.toLocalDate().toEpochDay();
+                };
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return (resultSet, c) -> {
+                    final java.sql.Timestamp timestamp = resultSet.getTimestamp(c);
+                    return timestamp == null ? null : timestamp.getTime() * 1000;
+                };
+            case Types.TIME_WITH_TIMEZONE:
+                return (resultSet, c) -> {
+                    final Time time = resultSet.getTime(c);
+                    return time == null ? null : time.toLocalTime().format(DateTimeFormatter.ISO_LOCAL_TIME);
+                };
+            default:
+                return null;
         }
-        return builder.build();
     }
 
 }
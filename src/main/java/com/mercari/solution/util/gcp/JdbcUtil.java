@@ -45,17 +45,28 @@ public class JdbcUtil {
             final String driverClassName, final String url,
             final String username, final String password) {
 
+        return createDataSource(driverClassName, url, username, password, null, 1);
+    }
+
+    public static DataSource createDataSource(
+            final String driverClassName, final String url,
+            final String username, final String password,
+            final String connectionProperties, final int maxPoolSize) {
+
         final BasicDataSource basicDataSource = new BasicDataSource();
         basicDataSource.setDriverClassName(driverClassName);
         basicDataSource.setUrl(url);
         basicDataSource.setUsername(username);
         basicDataSource.setPassword(password);
+        if(connectionProperties != null) {
+            basicDataSource.setConnectionProperties(connectionProperties);
+        }
 
         // Wrapping the datasource as a pooling datasource
         final DataSourceConnectionFactory connectionFactory = new DataSourceConnectionFactory(basicDataSource);
         final PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(connectionFactory, null);
         final GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-        poolConfig.setMaxTotal(1);
+        poolConfig.setMaxTotal(maxPoolSize);
         poolConfig.setMinIdle(0);
         poolConfig.setMinEvictableIdleTimeMillis(10000);
         poolConfig.setSoftMinEvictableIdleTimeMillis(30000);
@@ -97,6 +108,8 @@ public class JdbcUtil {
                              .prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
 
                     statement.setFetchSize(1);
+                    // Without a row limit, drivers such as MySQL fetch the whole result set only to read the metadata.
+                    statement.setMaxRows(1);
                     try (ResultSet resultSet = statement.executeQuery()) {
                         if(resultSet.next()) {
                             return ResultSetToRecordConverter.convertSchema(resultSet);
@@ -110,6 +123,68 @@ public class JdbcUtil {
         }
     }
 
+    /**
+     * Returns the minimum and maximum values of the partition column in the query results.
+     * Both values are null if the query results are empty.
+     */
+    public static Long[] getMinMax(
+            final String driverClassName, final String url,
+            final String username, final String password,
+            final String query, final String column) throws Exception {
+
+        final String minMaxQuery = String.format("SELECT MIN(%s), MAX(%s) FROM (%s) MinMaxQuery",
+                column, column, trimQuery(query));
+        try(final BasicDataSource basicDataSource = new BasicDataSource()) {
+            basicDataSource.setDriverClassName(driverClassName);
+            basicDataSource.setUrl(url);
+            basicDataSource.setUsername(username);
+            basicDataSource.setPassword(password);
+
+            try (final Connection connection = basicDataSource.getConnection();
+                 final PreparedStatement statement = connection.prepareStatement(minMaxQuery);
+                 final ResultSet resultSet = statement.executeQuery()) {
+
+                if(!resultSet.next()) {
+                    return new Long[]{ null, null };
+                }
+                final long min = resultSet.getLong(1);
+                final Long lowerBound = resultSet.wasNull() ? null : min;
+                final long max = resultSet.getLong(2);
+                final Long upperBound = resultSet.wasNull() ? null : max;
+                return new Long[]{ lowerBound, upperBound };
+            }
+        }
+    }
+
+    /**
+     * Adds the connection properties required for the driver to stream results by fetch size,
+     * unless they are already specified. MySQL buffers the whole result set in client memory without useCursorFetch.
+     * PostgreSQL streams results when autocommit is disabled, which JdbcIO does on read.
+     */
+    public static String createConnectionProperties(final String driverClassName, final String connectionProperties) {
+        if(driverClassName == null || !driverClassName.startsWith("com.mysql.")) {
+            return connectionProperties;
+        }
+        if(connectionProperties == null || connectionProperties.trim().isEmpty()) {
+            return "useCursorFetch=true";
+        }
+        if(connectionProperties.contains("useCursorFetch")) {
+            return connectionProperties;
+        }
+        return connectionProperties + ";useCursorFetch=true";
+    }
+
+    /**
+     * Removes the trailing semicolon so that the query can be wrapped as a subquery.
+     */
+    public static String trimQuery(final String query) {
+        String trimmed = query.trim();
+        while(trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
     public static String buildCreateTableSQL(final Schema schema,
                                              final String table,
                                              final DB db,
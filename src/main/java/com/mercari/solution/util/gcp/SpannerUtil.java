@@ -40,6 +40,9 @@ public class SpannerUtil {
             "LATERAL","LEFT","LIKE","LIMIT","LOOKUP","MERGE","NATURAL","NEW","NO","NOT","NULL","NULLS",
             "OF","ON","OR","ORDER","OUTER","OVER","PARTITION","PRECEDING","PROTO","RANGE");
 
+    // Number of sampled keys per split to find the boundaries of key ranges
+    private static final int KEY_SAMPLES_PER_SPLIT = 100;
+
     private static final Pattern PATTERN_ARRAY_ELEMENT = Pattern.compile("(?<=\\<).*?(?=\\>)");
 
 
@@ -236,6 +239,107 @@ public class SpannerUtil {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Samples values of the key column from the table and returns up to splitNum - 1 distinct values
+     * that divide the sampled keys into ranges of nearly the same size, in ascending order.
+     */
+    public static List<Value> getKeyRangeBoundaries(final ReadContext context,
+                                                    final String table,
+                                                    final String keyColumn,
+                                                    final int splitNum) {
+
+        final String query = String.format(
+                "SELECT %s FROM (SELECT %s FROM %s TABLESAMPLE RESERVOIR (%d ROWS)) WHERE %s IS NOT NULL ORDER BY %s",
+                keyColumn, keyColumn, table, splitNum * KEY_SAMPLES_PER_SPLIT, keyColumn, keyColumn);
+        final List<Value> samples = new ArrayList<>();
+        try(final ResultSet resultSet = context.executeQuery(Statement.of(query))) {
+            while(resultSet.next()) {
+                samples.add(resultSet.getCurrentRowAsStruct().getValue(0));
+            }
+        }
+
+        final List<Value> boundaries = new ArrayList<>();
+        for(int i=1; i<splitNum; i++) {
+            final int index = (int)((long) samples.size() * i / splitNum);
+            if(index >= samples.size()) {
+                break;
+            }
+            final Value boundary = samples.get(index);
+            if(boundaries.isEmpty() || !boundaries.get(boundaries.size() - 1).equals(boundary)) {
+                boundaries.add(boundary);
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * Creates disjoint key ranges covering the whole table, divided at the boundaries of the first key column.
+     */
+    public static List<KeyRange> createKeyRanges(final List<Value> boundaries) {
+        if(boundaries.isEmpty()) {
+            return Collections.singletonList(KeyRange.closedClosed(Key.of(), Key.of()));
+        }
+        final List<KeyRange> keyRanges = new ArrayList<>();
+        keyRanges.add(KeyRange.closedOpen(Key.of(), toKey(boundaries.get(0))));
+        for(int i=1; i<boundaries.size(); i++) {
+            keyRanges.add(KeyRange.closedOpen(toKey(boundaries.get(i - 1)), toKey(boundaries.get(i))));
+        }
+        keyRanges.add(KeyRange.closedClosed(toKey(boundaries.get(boundaries.size() - 1)), Key.of()));
+        return keyRanges;
+    }
+
+    /**
+     * Creates disjoint statements covering all results of the query, filtering the key column output by the query.
+     * Rows with null key are read by the first statement.
+     */
+    public static List<Statement> createKeyRangeStatements(final String query,
+                                                           final String keyColumn,
+                                                           final List<Value> boundaries) {
+
+        final String base = String.format("SELECT * FROM (%s) WHERE ", query);
+        if(boundaries.isEmpty()) {
+            return Collections.singletonList(Statement.of(query));
+        }
+        final List<Statement> statements = new ArrayList<>();
+        statements.add(Statement.newBuilder(base + String.format("%s < @end OR %s IS NULL", keyColumn, keyColumn))
+                .bind("end").to(boundaries.get(0))
+                .build());
+        for(int i=1; i<boundaries.size(); i++) {
+            statements.add(Statement.newBuilder(base + String.format("%s >= @start AND %s < @end", keyColumn, keyColumn))
+                    .bind("start").to(boundaries.get(i - 1))
+                    .bind("end").to(boundaries.get(i))
+                    .build());
+        }
+        statements.add(Statement.newBuilder(base + String.format("%s >= @start", keyColumn))
+                .bind("start").to(boundaries.get(boundaries.size() - 1))
+                .build());
+        return statements;
+    }
+
+    private static Key toKey(final Value value) {
+        final Key.Builder builder = Key.newBuilder();
+        switch (value.getType().getCode()) {
+            case BOOL:
+                return builder.append(value.getBool()).build();
+            case INT64:
+                return builder.append(value.getInt64()).build();
+            case FLOAT64:
+                return builder.append(value.getFloat64()).build();
+            case NUMERIC:
+                return builder.append(value.getNumeric()).build();
+            case STRING:
+                return builder.append(value.getString()).build();
+            case BYTES:
+                return builder.append(value.getBytes()).build();
+            case DATE:
+                return builder.append(value.getDate()).build();
+            case TIMESTAMP:
+                return builder.append(value.getTimestamp()).build();
+            default:
+                throw new IllegalArgumentException("Not supported key type: " + value.getType());
+        }
+    }
+
     private static List<Struct> getSchemaFieldsFromTable(final String projectId,
                                                          final String instanceId,
                                                          final String databaseId,
@@ -14,6 +14,7 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.hadoop.util.ChainingHttpRequestInitializer;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
+import com.mercari.solution.util.OrcUtil;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileStream;
 import org.apache.avro.generic.GenericDatumReader;
@@ -234,6 +235,24 @@ public class StorageUtil {
         }
     }
 
+    public static Schema getOrcSchema(final String gcsPath) {
+        final String[] paths = parseGcsPath(gcsPath);
+        return getOrcSchema(paths[0], paths[1]);
+    }
+
+    public static Schema getOrcSchema(final StorageObject object) {
+        return getOrcSchema(object.getBucket(), object.getName());
+    }
+
+    public static Schema getOrcSchema(final String bucket, final String object) {
+        final byte[] bytes = readBytes(bucket, object);
+        try {
+            return OrcUtil.getAvroSchema(bytes);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     private static InputStream readStream(final String bucket, final String object) {
         try {
             return storage().objects().get(bucket, object).executeMediaAsInputStream();
@@ -24,7 +24,7 @@ public class VaultClient {
     private static final String HEADER_TOKEN = "X-Vault-Token";
     private static final String HEADER_NAMESPACE = "X-Vault-Namespace";
 
-    private static final String DEFAULT_ENDPOINT_GCP_AUTH = "%s/v1/auth/gcp/login";
+    private static final String DEFAULT_ENDPOINT_GCP_AUTH = "/v1/auth/gcp/login";
     private static final String ENDPOINT_VAULT_REVOKE = "/v1/auth/token/revoke-self";
 
     private final String vaultHost;
@@ -51,11 +51,7 @@ public class VaultClient {
         this.serviceAccount = serviceAccount;
         this.namespace = namespace;
         this.role = role;
-        this.client = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .followRedirects(HttpClient.Redirect.NEVER)
-                .connectTimeout(Duration.ofSeconds(60))
-                .build();
+        this.client = createHttpClient();
 
         this.endpointToken = endpointToken == null ? DEFAULT_ENDPOINT_GCP_AUTH : endpointToken;
 
@@ -63,6 +59,32 @@ public class VaultClient {
         this.token = getToken(jwt);
     }
 
+    // Uses an already issued token instead of GCP auth login. (e.g. for local vault server)
+    public VaultClient(final String vaultHost,
+                       final String namespace,
+                       final String token) {
+
+        if(!vaultHost.startsWith("http://") && !vaultHost.startsWith("https://")) {
+            throw new IllegalArgumentException("host must be start with http:// or https://, got: " + vaultHost);
+        }
+
+        this.vaultHost = vaultHost;
+        this.serviceAccount = null;
+        this.namespace = namespace;
+        this.role = null;
+        this.client = createHttpClient();
+        this.endpointToken = null;
+        this.token = token;
+    }
+
+    private static HttpClient createHttpClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(60))
+                .build();
+    }
+
     // Calling Vault API: https://www.vaultproject.io/api/auth/gcp#login
     private String getToken(final String jwt) {
 
@@ -73,12 +95,14 @@ public class VaultClient {
 
         final String url = createUrl(vaultHost, endpointToken);
 
-        final HttpRequest request = HttpRequest.newBuilder()
+        final HttpRequest.Builder builder = HttpRequest.newBuilder()
                 .uri(URI.create(url))
-                .header(HEADER_NAMESPACE, namespace)
                 .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(jwtString))
-                .build();
+                .POST(HttpRequest.BodyPublishers.ofString(jwtString));
+        if(namespace != null) {
+            builder.header(HEADER_NAMESPACE, namespace);
+        }
+        final HttpRequest request = builder.build();
 
         try {
             final HttpResponse response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -107,7 +131,6 @@ public class VaultClient {
                 HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body);
         final HttpRequest.Builder request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
-                .header(HEADER_TOKEN, token)
                 .header("Content-Type", "application/json")
                 .method(method, bodyPublisher);
 
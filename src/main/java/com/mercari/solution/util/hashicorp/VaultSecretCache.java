@@ -0,0 +1,184 @@
+package com.mercari.solution.util.hashicorp;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.mercari.solution.util.JsonUtil;
+import com.mercari.solution.util.TemplateUtil;
+import com.mercari.solution.util.converter.JsonToMapConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * JVM-wide cache of secrets read from Vault, keyed by the Vault paths they are read from.
+ * Concurrent requests for the same path wait for a single fetch, and cached secrets are
+ * reloaded in the background after the refresh interval while the old value keeps being served.
+ */
+public class VaultSecretCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VaultSecretCache.class);
+
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(10);
+    private static final Duration DEFAULT_EXPIRATION = Duration.ofHours(1);
+
+    private static final VaultSecretCache instance = new VaultSecretCache(
+            SecretPath::fetch, DEFAULT_REFRESH_INTERVAL, DEFAULT_EXPIRATION);
+
+    private final LoadingCache<SecretPath, JsonElement> cache;
+
+    public static VaultSecretCache getInstance() {
+        return instance;
+    }
+
+    VaultSecretCache(final Function<SecretPath, JsonElement> fetcher,
+                     final Duration refreshInterval,
+                     final Duration expiration) {
+
+        final CacheLoader<SecretPath, JsonElement> loader = new CacheLoader<>() {
+            @Override
+            public JsonElement load(final SecretPath path) {
+                LOG.info("Fetch vault secret: " + path);
+                return fetcher.apply(path);
+            }
+        };
+        this.cache = CacheBuilder.newBuilder()
+                .refreshAfterWrite(refreshInterval)
+                .expireAfterWrite(expiration)
+                .build(CacheLoader.asyncReloading(loader, Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("vault-secret-refresh-%d")
+                        .build())));
+    }
+
+    public JsonElement get(final SecretPath path) {
+        try {
+            return cache.get(path);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to fetch vault secret: " + path, e.getCause());
+        }
+    }
+
+    public void invalidate(final SecretPath path) {
+        cache.invalidate(path);
+    }
+
+    public static class SecretPath implements Serializable {
+
+        private final String host;
+        private final String serviceAccount;
+        private final String namespace;
+        private final String role;
+        private final String tokenPath;
+
+        // Secret source. kvPath or text (secret given directly) must be specified.
+        private final String kvPath;
+        private final String text;
+
+        // Optional transit decryption
+        private final String transitPath;
+        private final String jsonPath;
+
+        public SecretPath(final String host,
+                          final String serviceAccount,
+                          final String namespace,
+                          final String role,
+                          final String tokenPath,
+                          final String kvPath,
+                          final String text,
+                          final String transitPath,
+                          final String jsonPath) {
+
+            this.host = host;
+            this.serviceAccount = serviceAccount;
+            this.namespace = namespace;
+            this.role = role;
+            this.tokenPath = tokenPath;
+            this.kvPath = kvPath;
+            this.text = text;
+            this.transitPath = transitPath;
+            this.jsonPath = jsonPath;
+        }
+
+        JsonElement fetch() {
+            final VaultClient client = new VaultClient(host, serviceAccount, namespace, role, tokenPath);
+            try {
+                return fetch(client);
+            } finally {
+                try {
+                    client.revokeToken();
+                } catch (Exception e) {
+                    LOG.warn("Failed to revoke vault token, cause: " + e.getMessage());
+                }
+            }
+        }
+
+        JsonElement fetch(final VaultClient client) {
+            try {
+                final JsonElement secret;
+                if(kvPath != null) {
+                    secret = client.readKVSecret(TemplateUtil.executeStrictTemplate(kvPath, new HashMap<>()));
+                } else {
+                    secret = JsonUtil.fromJson(text);
+                }
+
+                if(transitPath == null) {
+                    return secret;
+                } else if(jsonPath != null) {
+                    final Map<String, Object> data = JsonToMapConverter.convert(secret);
+                    final String path = TemplateUtil.executeStrictTemplate(transitPath, data);
+                    return client.decryptSecrets(path, jsonPath, secret);
+                } else {
+                    final String decryptedString = client.decryptSecret(transitPath, secret.getAsString());
+                    return JsonUtil.fromJson(decryptedString);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to fetch vault secret: " + this, e);
+            }
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof SecretPath)) {
+                return false;
+            }
+            final SecretPath that = (SecretPath) o;
+            return Objects.equals(host, that.host)
+                    && Objects.equals(serviceAccount, that.serviceAccount)
+                    && Objects.equals(namespace, that.namespace)
+                    && Objects.equals(role, that.role)
+                    && Objects.equals(tokenPath, that.tokenPath)
+                    && Objects.equals(kvPath, that.kvPath)
+                    && Objects.equals(text, that.text)
+                    && Objects.equals(transitPath, that.transitPath)
+                    && Objects.equals(jsonPath, that.jsonPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, serviceAccount, namespace, role, tokenPath, kvPath, text, transitPath, jsonPath);
+        }
+
+        @Override
+        public String toString() {
+            // text may contain the secret itself, so it is not included.
+            return String.format("host: %s, kvPath: %s, transitPath: %s, jsonPath: %s",
+                    host, kvPath, transitPath, jsonPath);
+        }
+
+    }
+
+}
@@ -411,6 +411,71 @@ public class EntitySchemaUtil {
         return builder.build();
     }
 
+    /**
+     * Infers schema from property values of entities, such as sampled from Datastore export files.
+     * Properties are merged across entities. Properties with only null, key or geo point values are skipped.
+     */
+    public static Schema inferSchema(final List<Entity> entities) {
+        final Map<String, List<Value>> values = new TreeMap<>();
+        for(final Entity entity : entities) {
+            for(final Map.Entry<String, Value> entry : entity.getPropertiesMap().entrySet()) {
+                values.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(entry.getValue());
+            }
+        }
+        final Schema.Builder builder = Schema.builder();
+        for(final Map.Entry<String, List<Value>> entry : values.entrySet()) {
+            final Schema.FieldType fieldType = inferFieldType(entry.getValue());
+            if(fieldType != null) {
+                builder.addField(Schema.Field.of(entry.getKey(), fieldType.withNullable(true)));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Schema.FieldType inferFieldType(final List<Value> values) {
+        final List<Entity> entities = new ArrayList<>();
+        final List<Value> elements = new ArrayList<>();
+        boolean isArray = false;
+        for(final Value value : values) {
+            switch (value.getValueTypeCase()) {
+                case STRING_VALUE:
+                    return Schema.FieldType.STRING;
+                case INTEGER_VALUE:
+                    return Schema.FieldType.INT64;
+                case DOUBLE_VALUE:
+                    return Schema.FieldType.DOUBLE;
+                case BOOLEAN_VALUE:
+                    return Schema.FieldType.BOOLEAN;
+                case TIMESTAMP_VALUE:
+                    return Schema.FieldType.DATETIME;
+                case BLOB_VALUE:
+                    return Schema.FieldType.BYTES;
+                case ENTITY_VALUE:
+                    entities.add(value.getEntityValue());
+                    break;
+                case ARRAY_VALUE:
+                    isArray = true;
+                    elements.addAll(value.getArrayValue().getValuesList());
+                    break;
+                case KEY_VALUE:
+                case GEO_POINT_VALUE:
+                case NULL_VALUE:
+                case VALUETYPE_NOT_SET:
+                default:
+                    break;
+            }
+        }
+        if(isArray) {
+            final Schema.FieldType elementType = inferFieldType(elements);
+            return elementType == null ? null : Schema.FieldType.array(elementType);
+        }
+        if(entities.size() > 0) {
+            final Schema childSchema = inferSchema(entities);
+            return childSchema.getFieldCount() == 0 ? null : Schema.FieldType.row(childSchema);
+        }
+        return null;
+    }
+
     private static Schema.FieldType convertFieldType(final String type) {
         switch (type) {
             case "Blob":
@@ -98,6 +98,12 @@ public class ProtoSchemaUtil {
         return JsonFormat.printer().usingTypeRegistry(builder.build());
     }
 
+    public static JsonFormat.Parser createJsonParser(final Map<String, Descriptors.Descriptor> descriptors) {
+        final JsonFormat.TypeRegistry.Builder builder = JsonFormat.TypeRegistry.newBuilder();
+        descriptors.values().forEach(builder::add);
+        return JsonFormat.parser().usingTypeRegistry(builder.build());
+    }
+
     public static Object getValue(final DynamicMessage message,
                                   final String fieldName,
                                   final JsonFormat.Printer printer) {
@@ -0,0 +1,238 @@
+package com.mercari.solution.module.source;
+
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Key;
+import com.google.datastore.v1.Value;
+import com.google.gson.Gson;
+import com.google.protobuf.Timestamp;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.FCollection;
+import com.mercari.solution.util.LevelDBLogReader;
+import com.mercari.solution.util.LevelDBLogReaderTest;
+import com.mercari.solution.util.ResourceUtil;
+import com.mercari.solution.util.converter.EntityProtoToEntityConverter;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.mercari.solution.util.converter.EntityProtoToEntityConverterTest.encode;
+import static com.mercari.solution.util.converter.EntityProtoToEntityConverterTest.int64Value;
+import static com.mercari.solution.util.converter.EntityProtoToEntityConverterTest.property;
+import static com.mercari.solution.util.converter.EntityProtoToEntityConverterTest.reference;
+import static com.mercari.solution.util.converter.EntityProtoToEntityConverterTest.stringValue;
+
+public class DatastoreExportSourceTest {
+
+    private static final double DELTA = 1e-15;
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Rule
+    public final transient TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCreateFilePattern() {
+        Assert.assertEquals("gs://bucket/export/*/kind_Item/output-*",
+                DatastoreExportSource.createFilePattern("gs://bucket/export", "Item"));
+        Assert.assertEquals("gs://bucket/export/*/kind_Item/output-*",
+                DatastoreExportSource.createFilePattern("gs://bucket/export/export.overall_export_metadata", "Item"));
+        Assert.assertEquals("gs://bucket/export/namespace_ns/kind_Item/output-*",
+                DatastoreExportSource.createFilePattern("gs://bucket/export/namespace_ns/kind_Item/namespace_ns_kind_Item.export_metadata", null));
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        final File root = folder.newFolder("export");
+        final File kindDir = new File(root, "all_namespaces/kind_Item");
+        final File otherDir = new File(root, "all_namespaces/kind_Other");
+        Assert.assertTrue(kindDir.mkdirs() && otherDir.mkdirs());
+        Files.write(new File(root, "export.overall_export_metadata").toPath(), new byte[0]);
+        Files.write(new File(kindDir, "all_namespaces_kind_Item.export_metadata").toPath(), new byte[0]);
+
+        // Files larger than splitSizeMB, so that records spanning blocks are read across splits.
+        final char[] text = new char[1000];
+        Arrays.fill(text, 'a');
+        final List<String> expected = new ArrayList<>();
+        for(int file=0; file<2; file++) {
+            final List<byte[]> records = new ArrayList<>();
+            for(long i=file*2000; i<(file+1)*2000; i++) {
+                records.add(createEntity("Item", i, new String(text)));
+                expected.add(i + ":item" + i + ":" + i * 10);
+            }
+            Files.write(new File(kindDir, "output-" + file).toPath(), LevelDBLogReaderTest.write(records));
+        }
+        Files.write(new File(otherDir, "output-0").toPath(), LevelDBLogReaderTest.write(
+                Collections.singletonList(createEntity("Other", 1, ""))));
+
+        final SourceConfig config = new Gson().fromJson("{" +
+                "\"name\": \"export\", \"module\": \"datastoreExport\"," +
+                "\"parameters\": {\"input\": \"" + root.getAbsolutePath() + "/export.overall_export_metadata\"," +
+                "\"kind\": \"Item\", \"splitSizeMB\": 1, \"sampleSize\": 10}}", SourceConfig.class);
+
+        final FCollection<Entity> output = DatastoreExportSource.batch(pipeline.begin(), config);
+
+        final Schema schema = output.getSchema();
+        Assert.assertEquals(3, schema.getFieldCount());
+        Assert.assertEquals(Schema.TypeName.STRING, schema.getField("description").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.STRING, schema.getField("name").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.INT64, schema.getField("price").getType().getTypeName());
+
+        final PCollection<String> values = output.getCollection()
+                .apply("Format", MapElements
+                        .into(TypeDescriptors.strings())
+                        .via(entity -> entity.getKey().getPath(0).getId()
+                                + ":" + entity.getPropertiesOrThrow("name").getStringValue()
+                                + ":" + entity.getPropertiesOrThrow("price").getIntegerValue()));
+
+        PAssert.that(values).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+    /**
+     * Reads data/datastore_export, which has the layout of a managed export of kind Item.
+     * Its output-0 is written from the storage_onestore_v3 entity.proto definitions, including fields ignored by the
+     * converter such as entity_group, searchable and locale, and a record fragmented across blocks.
+     */
+    @Test
+    public void testDecodeExportFile() throws IOException {
+        final byte[] file = ResourceUtil.getResourceFileAsBytes("data/datastore_export/all_namespaces/kind_Item/output-0");
+        final LevelDBLogReader reader = new LevelDBLogReader(new ByteArrayInputStream(file), 0);
+        final List<Entity> entities = new ArrayList<>();
+        byte[] record;
+        while((record = reader.next()) != null) {
+            entities.add(EntityProtoToEntityConverter.convert(record));
+        }
+        Assert.assertEquals(3, entities.size());
+
+        // All value types
+        final Entity apple = entities.get(0);
+        Assert.assertEquals("sample-project", apple.getKey().getPartitionId().getProjectId());
+        Assert.assertEquals("", apple.getKey().getPartitionId().getNamespaceId());
+        Assert.assertEquals(1, apple.getKey().getPathCount());
+        Assert.assertEquals("Item", apple.getKey().getPath(0).getKind());
+        Assert.assertEquals(1L, apple.getKey().getPath(0).getId());
+        Assert.assertEquals(14, apple.getPropertiesCount());
+
+        Assert.assertTrue(apple.getPropertiesOrThrow("available").getBooleanValue());
+        final Key category = apple.getPropertiesOrThrow("category").getKeyValue();
+        Assert.assertEquals("sample-project", category.getPartitionId().getProjectId());
+        Assert.assertEquals("Category", category.getPath(0).getKind());
+        Assert.assertEquals("food", category.getPath(0).getName());
+        Assert.assertEquals(Timestamp.newBuilder().setSeconds(1600000000L).setNanos(123456000).build(),
+                apple.getPropertiesOrThrow("createdAt").getTimestampValue());
+        Assert.assertEquals(35.681, apple.getPropertiesOrThrow("location").getGeoPointValue().getLatitude(), DELTA);
+        Assert.assertEquals(139.767, apple.getPropertiesOrThrow("location").getGeoPointValue().getLongitude(), DELTA);
+        Assert.assertEquals("apple", apple.getPropertiesOrThrow("name").getStringValue());
+        Assert.assertEquals(Value.ValueTypeCase.NULL_VALUE, apple.getPropertiesOrThrow("note").getValueTypeCase());
+        final Entity owner = apple.getPropertiesOrThrow("owner").getEntityValue();
+        Assert.assertEquals("owner@example.com", owner.getPropertiesOrThrow("email").getStringValue());
+        Assert.assertEquals("example.com", owner.getPropertiesOrThrow("auth_domain").getStringValue());
+        Assert.assertEquals(100L, apple.getPropertiesOrThrow("price").getIntegerValue());
+        Assert.assertEquals(0.5, apple.getPropertiesOrThrow("rate").getDoubleValue(), DELTA);
+        final List<Value> tags = apple.getPropertiesOrThrow("tags").getArrayValue().getValuesList();
+        Assert.assertEquals(2, tags.size());
+        Assert.assertEquals("red", tags.get(0).getStringValue());
+        Assert.assertEquals("fruit", tags.get(1).getStringValue());
+        Assert.assertFalse(apple.getPropertiesOrThrow("name").getExcludeFromIndexes());
+
+        // Raw properties are excluded from indexes
+        final Value description = apple.getPropertiesOrThrow("description");
+        Assert.assertEquals("A red fruit.", description.getStringValue());
+        Assert.assertTrue(description.getExcludeFromIndexes());
+        final Value detail = apple.getPropertiesOrThrow("detail");
+        Assert.assertTrue(detail.getExcludeFromIndexes());
+        Assert.assertFalse(detail.getEntityValue().hasKey());
+        Assert.assertEquals(2, detail.getEntityValue().getPropertiesCount());
+        Assert.assertEquals("red", detail.getEntityValue().getPropertiesOrThrow("color").getStringValue());
+        Assert.assertEquals(150L, detail.getEntityValue().getPropertiesOrThrow("weight").getIntegerValue());
+        Assert.assertEquals(0, apple.getPropertiesOrThrow("emptyTags").getArrayValue().getValuesCount());
+        final Value thumbnail = apple.getPropertiesOrThrow("thumbnail");
+        Assert.assertArrayEquals(new byte[]{ 0x00, 0x01, (byte) 0xff }, thumbnail.getBlobValue().toByteArray());
+        Assert.assertTrue(thumbnail.getExcludeFromIndexes());
+
+        // Namespace, ancestor, negative values and a record spanning blocks
+        final Entity banana = entities.get(1);
+        Assert.assertEquals("sample-project", banana.getKey().getPartitionId().getProjectId());
+        Assert.assertEquals("shop", banana.getKey().getPartitionId().getNamespaceId());
+        Assert.assertEquals(2, banana.getKey().getPathCount());
+        Assert.assertEquals("Store", banana.getKey().getPath(0).getKind());
+        Assert.assertEquals("tokyo", banana.getKey().getPath(0).getName());
+        Assert.assertEquals("Item", banana.getKey().getPath(1).getKind());
+        Assert.assertEquals("banana", banana.getKey().getPath(1).getName());
+        Assert.assertEquals(Timestamp.newBuilder().setSeconds(-2L).setNanos(999999000).build(),
+                banana.getPropertiesOrThrow("createdAt").getTimestampValue());
+        Assert.assertEquals(-200L, banana.getPropertiesOrThrow("price").getIntegerValue());
+        final char[] text = new char[70000];
+        Arrays.fill(text, 'b');
+        Assert.assertEquals(new String(text), banana.getPropertiesOrThrow("description").getStringValue());
+
+        final Entity cherry = entities.get(2);
+        Assert.assertEquals(3L, cherry.getKey().getPath(0).getId());
+        Assert.assertEquals(2, cherry.getPropertiesCount());
+        Assert.assertEquals("cherry", cherry.getPropertiesOrThrow("name").getStringValue());
+        Assert.assertEquals(300L, cherry.getPropertiesOrThrow("price").getIntegerValue());
+    }
+
+    @Test
+    public void testReadExportFile() {
+        final String root = ClassLoader.getSystemResource("data/datastore_export").getPath();
+        final SourceConfig config = new Gson().fromJson("{" +
+                "\"name\": \"export\", \"module\": \"datastoreExport\"," +
+                "\"parameters\": {\"input\": \"" + root + "/datastore_export.overall_export_metadata\"," +
+                "\"kind\": \"Item\"}}", SourceConfig.class);
+
+        final FCollection<Entity> output = DatastoreExportSource.batch(pipeline.begin(), config);
+
+        // Properties with only key, geo point, null or empty array values are not inferred
+        final Schema schema = output.getSchema();
+        Assert.assertEquals(10, schema.getFieldCount());
+        Assert.assertEquals(Schema.TypeName.BOOLEAN, schema.getField("available").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.DATETIME, schema.getField("createdAt").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.STRING, schema.getField("description").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.ROW, schema.getField("detail").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.ROW, schema.getField("owner").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.INT64, schema.getField("price").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.DOUBLE, schema.getField("rate").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.ARRAY, schema.getField("tags").getType().getTypeName());
+        Assert.assertEquals(Schema.TypeName.BYTES, schema.getField("thumbnail").getType().getTypeName());
+
+        final PCollection<String> values = output.getCollection()
+                .apply("Format", MapElements
+                        .into(TypeDescriptors.strings())
+                        .via(entity -> entity.getKey().getPath(entity.getKey().getPathCount() - 1).getIdTypeCase()
+                                + ":" + entity.getPropertiesOrThrow("name").getStringValue()
+                                + ":" + entity.getPropertiesOrThrow("price").getIntegerValue()));
+
+        PAssert.that(values).containsInAnyOrder("ID:apple:100", "NAME:banana:-200", "ID:cherry:300");
+
+        pipeline.run();
+    }
+
+    private static byte[] createEntity(final String kind, final long id, final String description) throws IOException {
+        return encode(output -> {
+            output.writeByteArray(13, reference("s~test-project", null, kind, id));
+            output.writeByteArray(14, property("name", 0, false, stringValue("item" + id)));
+            output.writeByteArray(14, property("price", 0, false, int64Value(id * 10)));
+            output.writeByteArray(15, property("description", 15, false, stringValue(description)));
+        });
+    }
+
+}
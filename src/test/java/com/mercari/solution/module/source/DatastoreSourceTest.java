@@ -0,0 +1,101 @@
+package com.mercari.solution.module.source;
+
+import com.google.datastore.v1.CommitRequest;
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Key;
+import com.google.datastore.v1.Mutation;
+import com.google.datastore.v1.PartitionId;
+import com.google.datastore.v1.Query;
+import com.google.datastore.v1.Value;
+import com.google.datastore.v1.client.Datastore;
+import com.google.datastore.v1.client.DatastoreFactory;
+import com.google.datastore.v1.client.DatastoreOptions;
+import com.google.gson.Gson;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.FCollection;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DatastoreSourceTest {
+
+    private static final String PROJECT = "test-project";
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Test
+    public void testCreateQuery() {
+        final Query query = DatastoreSource.createQuery("Item", Arrays.asList("name", "price"));
+        Assert.assertEquals("Item", query.getKind(0).getName());
+        Assert.assertEquals(2, query.getProjectionCount());
+        Assert.assertEquals("price", query.getProjection(1).getProperty().getName());
+        Assert.assertEquals(0, DatastoreSource.createQuery("Item", null).getProjectionCount());
+    }
+
+    @Test
+    public void testIsSplittable() {
+        Assert.assertTrue(DatastoreSource.isSplittable("SELECT * FROM Item"));
+        Assert.assertTrue(DatastoreSource.isSplittable("SELECT name FROM Item WHERE category = 'a<b' AND active = true"));
+        Assert.assertTrue(DatastoreSource.isSplittable("SELECT * FROM Item WHERE __key__ HAS ANCESTOR KEY(Shop, 1)"));
+        Assert.assertFalse(DatastoreSource.isSplittable("SELECT * FROM Item WHERE price >= 100"));
+        Assert.assertFalse(DatastoreSource.isSplittable("SELECT * FROM Item ORDER BY price"));
+        Assert.assertFalse(DatastoreSource.isSplittable("select * from Item limit 10"));
+    }
+
+    /**
+     * Requires the Datastore emulator started with strong consistency, and DATASTORE_EMULATOR_HOST set. e.g.
+     * gcloud beta emulators datastore start --no-store-on-disk --consistency=1.0
+     */
+    @Test
+    public void testReadWithEmulator() throws Exception {
+        final String host = System.getenv("DATASTORE_EMULATOR_HOST");
+        Assume.assumeNotNull(host);
+
+        final Datastore datastore = DatastoreFactory.get().create(new DatastoreOptions.Builder()
+                .projectId(PROJECT)
+                .localHost(host)
+                .build());
+        final CommitRequest.Builder commit = CommitRequest.newBuilder()
+                .setMode(CommitRequest.Mode.NON_TRANSACTIONAL);
+        final List<String> expected = new ArrayList<>();
+        for(long i=1; i<=200; i++) {
+            commit.addMutations(Mutation.newBuilder().setUpsert(Entity.newBuilder()
+                    .setKey(Key.newBuilder()
+                            .setPartitionId(PartitionId.newBuilder().setProjectId(PROJECT))
+                            .addPath(Key.PathElement.newBuilder().setKind("Item").setId(i)))
+                    .putProperties("name", Value.newBuilder().setStringValue("item" + i).build())
+                    .putProperties("price", Value.newBuilder().setIntegerValue(i * 10).build())));
+            // Projection returns only the name property
+            expected.add("1:item" + i);
+        }
+        datastore.commit(commit.build());
+
+        final SourceConfig config = new Gson().fromJson("{" +
+                "\"name\": \"datastore\", \"module\": \"datastore\"," +
+                "\"schema\": {\"fields\": [{\"name\": \"name\", \"type\": \"string\", \"mode\": \"nullable\"}]}," +
+                "\"parameters\": {\"projectId\": \"" + PROJECT + "\", \"kind\": \"Item\", \"fields\": [\"name\"]," +
+                "\"numQuerySplits\": 8, \"emulator\": true}}", SourceConfig.class);
+
+        final FCollection<Entity> output = DatastoreSource.batch(pipeline.begin(), config);
+        final PCollection<String> names = output.getCollection()
+                .apply("ExtractName", MapElements
+                        .into(TypeDescriptors.strings())
+                        .via(entity -> entity.getPropertiesCount() + ":" + entity.getPropertiesOrThrow("name").getStringValue()));
+
+        PAssert.that(names).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+}
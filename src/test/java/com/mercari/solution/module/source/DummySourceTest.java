@@ -0,0 +1,93 @@
+package com.mercari.solution.module.source;
+
+import com.google.gson.Gson;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.FCollection;
+import com.mercari.solution.util.schema.RowSchemaUtil;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DummySourceTest {
+
+    private static final String PARAMETERS = "\"fields\": [" +
+            "{\"name\": \"id\", \"type\": \"INT64 NOT NULL\"}," +
+            "{\"name\": \"name\", \"type\": \"STRING(16)\", \"range\": [\"5\"]}," +
+            "{\"name\": \"price\", \"type\": \"INT64\", \"range\": [\"100\", \"200\"], \"nullRate\": 0}," +
+            "{\"name\": \"rate\", \"type\": \"FLOAT64\"}," +
+            "{\"name\": \"active\", \"type\": \"BOOL\"}," +
+            "{\"name\": \"data\", \"type\": \"BYTES(MAX)\"}," +
+            "{\"name\": \"released\", \"type\": \"DATE\"}," +
+            "{\"name\": \"createdAt\", \"type\": \"TIMESTAMP\"}," +
+            "{\"name\": \"tags\", \"type\": \"ARRAY<STRING(8)>\"}]," +
+            "\"primaryKeyFields\": [\"id\"], \"seed\": 1";
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Test
+    public void testBatch() {
+        final SourceConfig config = new Gson().fromJson("{" +
+                "\"name\": \"dummy\", \"module\": \"dummy\"," +
+                "\"parameters\": {" + PARAMETERS + ", \"count\": 1000, \"splitSize\": 100}}", SourceConfig.class);
+
+        final FCollection<Row> output = DummySource.batch(pipeline.begin(), config);
+
+        final Schema schema = output.getSchema();
+        Assert.assertEquals(9, schema.getFieldCount());
+        Assert.assertFalse(schema.getField("id").getType().getNullable());
+        Assert.assertTrue(schema.getField("name").getType().getNullable());
+        Assert.assertEquals(Schema.TypeName.DOUBLE, schema.getField("rate").getType().getTypeName());
+        Assert.assertTrue(RowSchemaUtil.isLogicalTypeDate(schema.getField("released").getType()));
+        Assert.assertEquals(Schema.TypeName.STRING, schema.getField("tags").getType().getCollectionElementType().getTypeName());
+
+        // Primary key values are the row sequence, and others are in the range
+        final PCollection<String> values = output.getCollection()
+                .apply("Format", MapElements
+                        .into(TypeDescriptors.strings())
+                        .via(row -> row.getInt64("id") + ":"
+                                + (row.getInt64("price") >= 100 && row.getInt64("price") < 200)));
+        final List<String> expected = new ArrayList<>();
+        for(long i=0; i<1000; i++) {
+            expected.add(i + ":true");
+        }
+        PAssert.that(values).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testMicrobatch() {
+        final SourceConfig config = new Gson().fromJson("{" +
+                "\"name\": \"dummy\", \"module\": \"dummy\", \"microbatch\": true," +
+                "\"parameters\": {" + PARAMETERS + ", \"rate\": 25, \"parallelism\": 4}}", SourceConfig.class);
+
+        // Rows of the rate are generated per beat
+        final PCollection<Long> beats = pipeline.apply("Beats", Create.of(0L, 1L, 2L));
+        final FCollection<Row> output = DummySource.microbatch(beats, config);
+
+        final PCollection<Long> ids = output.getCollection()
+                .apply("Id", MapElements
+                        .into(TypeDescriptors.longs())
+                        .via(row -> row.getInt64("id")));
+        final List<Long> expected = new ArrayList<>();
+        for(long i=0; i<75; i++) {
+            expected.add(i);
+        }
+        PAssert.that(ids).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+}
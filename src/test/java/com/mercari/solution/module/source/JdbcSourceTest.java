@@ -0,0 +1,154 @@
+package com.mercari.solution.module.source;
+
+import com.google.gson.JsonObject;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.FCollection;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class JdbcSourceTest {
+
+    private static final String URL = "jdbc:h2:mem:jdbcsourcetest;DB_CLOSE_DELAY=-1";
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Test
+    public void testCreatePartitionRanges() {
+        Assert.assertEquals(Arrays.asList(
+                KV.of(Long.MIN_VALUE, 25L),
+                KV.of(26L, 50L),
+                KV.of(51L, 75L),
+                KV.of(76L, Long.MAX_VALUE)),
+                JdbcSource.createPartitionRanges(1L, 100L, 4));
+
+        // Partitions are not more than the values in bounds
+        Assert.assertEquals(Arrays.asList(
+                KV.of(Long.MIN_VALUE, 1L),
+                KV.of(2L, 2L),
+                KV.of(3L, Long.MAX_VALUE)),
+                JdbcSource.createPartitionRanges(1L, 3L, 10));
+
+        Assert.assertEquals(Arrays.asList(KV.of(Long.MIN_VALUE, Long.MAX_VALUE)),
+                JdbcSource.createPartitionRanges(Long.MIN_VALUE, Long.MAX_VALUE, 1));
+        Assert.assertEquals(2, JdbcSource.createPartitionRanges(Long.MIN_VALUE, Long.MAX_VALUE, 2).size());
+    }
+
+    @Test
+    public void testPartitionedRead() throws Exception {
+        final List<Long> expected = new ArrayList<>();
+        try(final Connection connection = DriverManager.getConnection(URL, "sa", "");
+            final Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE USERS (ID BIGINT, NAME VARCHAR(32))");
+            try(final PreparedStatement insert = connection.prepareStatement("INSERT INTO USERS VALUES (?, ?)")) {
+                for(long i=1; i<=100; i++) {
+                    insert.setLong(1, i);
+                    insert.setString(2, "user" + i);
+                    insert.executeUpdate();
+                    expected.add(i);
+                }
+                insert.setNull(1, java.sql.Types.BIGINT);
+                insert.setString(2, "nobody");
+                insert.executeUpdate();
+                expected.add(-1L);
+            }
+        }
+
+        // Bounds are derived from MIN/MAX of the partition column
+        final JsonObject parameters = new JsonObject();
+        parameters.addProperty("query", "SELECT ID, NAME FROM USERS;");
+        parameters.addProperty("url", URL);
+        parameters.addProperty("driver", "org.h2.Driver");
+        parameters.addProperty("user", "sa");
+        parameters.addProperty("password", "");
+        parameters.addProperty("partitionColumn", "ID");
+        parameters.addProperty("numPartitions", 7);
+        parameters.addProperty("fetchSize", 10);
+
+        final SourceConfig config = new SourceConfig();
+        config.setName("jdbc");
+        config.setModule("jdbc");
+        config.setParameters(parameters);
+
+        final FCollection<GenericRecord> output = JdbcSource.batch(pipeline.begin(), config);
+        final PCollection<Long> ids = output.getCollection()
+                .apply("ExtractId", MapElements
+                        .into(TypeDescriptors.longs())
+                        .via(record -> record.get("ID") == null ? -1L : (Long) record.get("ID")));
+
+        PAssert.that(ids).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testMicrobatchRead() throws Exception {
+        // Datetime values are compared as UTC strings, as the query parameters are formatted in UTC.
+        final DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS").withZoneUTC();
+        final Instant now = Instant.now();
+        try(final Connection connection = DriverManager.getConnection(URL, "sa", "");
+            final Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE EVENTS (ID BIGINT, UPDATED_AT TIMESTAMP)");
+            try(final PreparedStatement insert = connection.prepareStatement("INSERT INTO EVENTS VALUES (?, ?)")) {
+                final Duration[] offsets = {
+                        Duration.standardHours(2), Duration.standardMinutes(50),
+                        Duration.standardMinutes(20), Duration.standardMinutes(-60) };
+                for(int i=0; i<offsets.length; i++) {
+                    insert.setLong(1, i);
+                    insert.setString(2, now.minus(offsets[i]).toString(formatter));
+                    insert.executeUpdate();
+                }
+            }
+        }
+
+        final JsonObject parameters = new JsonObject();
+        parameters.addProperty("query", "SELECT ID FROM EVENTS " +
+                "WHERE UPDATED_AT >= '${__EVENT_DATETIME_PRE__}' AND UPDATED_AT < '${__EVENT_DATETIME__}'");
+        parameters.addProperty("url", URL);
+        parameters.addProperty("driver", "org.h2.Driver");
+        parameters.addProperty("user", "sa");
+        parameters.addProperty("password", "");
+        parameters.addProperty("startDatetime", now.minus(Duration.standardHours(1)).toString());
+        parameters.addProperty("fetchSize", 1);
+
+        final SourceConfig config = new SourceConfig();
+        config.setName("jdbc");
+        config.setModule("jdbc");
+        config.setMicrobatch(true);
+        config.setParameters(parameters);
+
+        // Only rows between startDatetime and now(minus gapSecond) are read by the first query.
+        final PCollection<Long> beats = pipeline.apply("Beats", Create.of(0L));
+        final FCollection<GenericRecord> output = JdbcSource.microbatch(beats, config);
+        final PCollection<Long> ids = output.getCollection()
+                .apply("ExtractId", MapElements
+                        .into(TypeDescriptors.longs())
+                        .via(record -> (Long) record.get("ID")));
+
+        PAssert.that(ids).containsInAnyOrder(1L, 2L);
+
+        pipeline.run();
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.mercari.solution.module.source;
+
+import com.google.gson.Gson;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.DataType;
+import com.mercari.solution.module.FCollection;
+import kafka.server.KafkaServerStartable;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class KafkaSourceTest {
+
+    private static final int PARTITIONS = 3;
+    private static final int COUNT = 30;
+    private static final long BASE_TIMESTAMP = 1_600_000_000_000L;
+
+    private static final Schema AVRO_SCHEMA = SchemaBuilder.record("Item").fields()
+            .requiredLong("id")
+            .optionalString("name")
+            .endRecord();
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    private static ServerCnxnFactory zookeeper;
+    private static KafkaServerStartable broker;
+    private static String bootstrapServers;
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        final File zkDir = FOLDER.newFolder("zookeeper");
+        zookeeper = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", 0), 16);
+        zookeeper.startup(new ZooKeeperServer(zkDir, zkDir, 500));
+
+        final int port;
+        try(final ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        bootstrapServers = "127.0.0.1:" + port;
+
+        final Properties props = new Properties();
+        props.put("broker.id", "0");
+        props.put("zookeeper.connect", "127.0.0.1:" + zookeeper.getLocalPort());
+        props.put("listeners", "PLAINTEXT://" + bootstrapServers);
+        props.put("log.dirs", FOLDER.newFolder("kafka").getAbsolutePath());
+        props.put("offsets.topic.replication.factor", "1");
+        props.put("offsets.topic.num.partitions", "1");
+        props.put("group.initial.rebalance.delay.ms", "0");
+        broker = KafkaServerStartable.fromProps(props);
+        broker.startup();
+
+        final Properties adminProps = new Properties();
+        adminProps.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        try(final AdminClient admin = AdminClient.create(adminProps)) {
+            admin.createTopics(List.of(
+                    new NewTopic("json", PARTITIONS, (short) 1),
+                    new NewTopic("avro", PARTITIONS, (short) 1))).all().get();
+        }
+
+        final List<byte[]> jsons = new ArrayList<>();
+        final List<byte[]> avros = new ArrayList<>();
+        for(int i=0; i<COUNT; i++) {
+            jsons.add(String.format("{\"id\": %d, \"name\": \"name%d\"}", i, i).getBytes(StandardCharsets.UTF_8));
+            final GenericRecord record = new GenericData.Record(AVRO_SCHEMA);
+            record.put("id", (long) i);
+            record.put("name", "name" + i);
+            avros.add(encode(record));
+        }
+        // Tombstones are skipped
+        jsons.add(null);
+        avros.add(null);
+        produce("json", jsons);
+        produce("avro", avros);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if(broker != null) {
+            broker.shutdown();
+            broker.awaitShutdown();
+        }
+        if(zookeeper != null) {
+            zookeeper.shutdown();
+        }
+    }
+
+    @Test
+    public void testJsonToRow() {
+        final SourceConfig config = createConfig("json",
+                "\"schema\": {\"fields\": [" +
+                        "{\"name\": \"id\", \"type\": \"int64\", \"mode\": \"required\"}," +
+                        "{\"name\": \"name\", \"type\": \"string\", \"mode\": \"nullable\"}]},");
+
+        final FCollection<?> output = KafkaSource.stream(pipeline.begin(), config);
+        Assert.assertEquals(DataType.ROW, output.getDataType());
+
+        // Element timestamps are the create time of records
+        final PCollection<String> values = ((PCollection<Row>) output.getCollection())
+                .apply("Format", ParDo.of(new DoFn<Row, String>() {
+                    @ProcessElement
+                    public void processElement(ProcessContext c) {
+                        final Row row = c.element();
+                        c.output(row.getInt64("id") + ":" + row.getString("name") + ":" + c.timestamp().getMillis());
+                    }
+                }));
+
+        final List<String> expected = new ArrayList<>();
+        for(int i=0; i<COUNT; i++) {
+            expected.add(i + ":name" + i + ":" + (BASE_TIMESTAMP + i * 1000L));
+        }
+        PAssert.that(values).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testAvroToRecord() {
+        final SourceConfig config = createConfig("avro",
+                "\"schema\": {\"avroSchema\": " + new Gson().toJson(AVRO_SCHEMA.toString()) + "},");
+
+        final FCollection<?> output = KafkaSource.stream(pipeline.begin(), config);
+        Assert.assertEquals(DataType.AVRO, output.getDataType());
+
+        final PCollection<String> values = ((PCollection<GenericRecord>) output.getCollection())
+                .apply("Format", MapElements
+                        .into(TypeDescriptors.strings())
+                        .via(record -> record.get("id") + ":" + record.get("name")));
+
+        final List<String> expected = new ArrayList<>();
+        for(int i=0; i<COUNT; i++) {
+            expected.add(i + ":name" + i);
+        }
+        PAssert.that(values).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidateParameters() {
+        final SourceConfig config = new Gson().fromJson("{" +
+                "\"name\": \"kafka\", \"module\": \"kafka\"," +
+                "\"parameters\": {\"topics\": [\"json\"], \"format\": \"json\", \"commitOffsetsInFinalize\": true}}", SourceConfig.class);
+        KafkaSource.stream(pipeline.begin(), config);
+    }
+
+    private static SourceConfig createConfig(final String topic, final String schema) {
+        return new Gson().fromJson("{" +
+                "\"name\": \"kafka\", \"module\": \"kafka\"," + schema +
+                "\"parameters\": {\"bootstrapServers\": \"" + bootstrapServers + "\"," +
+                "\"topics\": [\"" + topic + "\"], \"format\": \"" + topic + "\", \"groupId\": \"test-" + topic + "\"," +
+                "\"maxNumRecords\": " + (COUNT + 1) + "," +
+                "\"consumerProperties\": {\"auto.offset.reset\": \"earliest\"}}}", SourceConfig.class);
+    }
+
+    private static void produce(final String topic, final List<byte[]> values) {
+        final Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        try(final KafkaProducer<byte[], byte[]> producer = new KafkaProducer<>(props)) {
+            for(int i=0; i<values.size(); i++) {
+                producer.send(new ProducerRecord<>(topic, i % PARTITIONS,
+                        BASE_TIMESTAMP + i * 1000L, null, values.get(i)));
+            }
+            producer.flush();
+        }
+    }
+
+    private static byte[] encode(final GenericRecord record) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+        new GenericDatumWriter<GenericRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return bytes.toByteArray();
+    }
+
+}
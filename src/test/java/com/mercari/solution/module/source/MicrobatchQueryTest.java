@@ -0,0 +1,153 @@
+package com.mercari.solution.module.source;
+
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.metrics.DistributionResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TupleTag;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class MicrobatchQueryTest {
+
+    private static final long MIN = 60_000L;
+    private static final long MAX = 3600_000L;
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Test
+    public void testIntervalControllerWithoutStats() {
+        final MicrobatchQuery.QueryStats stats = new MicrobatchQuery.QueryStats();
+        Assert.assertEquals(600_000L, MicrobatchQuery.IntervalController.next(600_000L, MIN, MAX, 60_000L, stats));
+    }
+
+    @Test
+    public void testIntervalControllerGrowsWhenEmpty() {
+        final MicrobatchQuery.QueryStats stats = new MicrobatchQuery.QueryStats().record(0, 1000L);
+        Assert.assertEquals(1200_000L, MicrobatchQuery.IntervalController.next(600_000L, MIN, MAX, 60_000L, stats));
+        // Limited by max duration
+        Assert.assertEquals(MAX, MicrobatchQuery.IntervalController.next(2400_000L, MIN, MAX, 60_000L, stats));
+    }
+
+    @Test
+    public void testIntervalControllerFollowsLatency() {
+        // Query takes 20 seconds, so target of 30 seconds(half of 60 seconds) allows 1.5 times wider range.
+        final MicrobatchQuery.QueryStats stats = new MicrobatchQuery.QueryStats().record(1000, 20_000L);
+        Assert.assertEquals(900_000L, MicrobatchQuery.IntervalController.next(600_000L, MIN, MAX, 60_000L, stats));
+
+        // Slow queries shrink the range at most by half per step, but not below min duration.
+        final MicrobatchQuery.QueryStats slowStats = new MicrobatchQuery.QueryStats().record(1000, 600_000L);
+        Assert.assertEquals(300_000L, MicrobatchQuery.IntervalController.next(600_000L, MIN, MAX, 60_000L, slowStats));
+        Assert.assertEquals(MIN, MicrobatchQuery.IntervalController.next(90_000L, MIN, MAX, 60_000L, slowStats));
+    }
+
+    @Test
+    public void testQueryStatsMovingAverage() {
+        final MicrobatchQuery.QueryStats empty = new MicrobatchQuery.QueryStats();
+        final MicrobatchQuery.QueryStats stats = empty.record(100, 1000L).record(0, 2000L);
+        Assert.assertEquals(0, empty.getCount());
+        Assert.assertEquals(2, stats.getCount());
+        Assert.assertEquals(70D, stats.getRows(), 0.0001);
+        Assert.assertEquals(1300D, stats.getLatencyMillis(), 0.0001);
+    }
+
+    @Test
+    public void testQueryStatsJson() {
+        final MicrobatchQuery.QueryStats stats = new MicrobatchQuery.QueryStats().record(100, 1000L).record(0, 2000L);
+        final MicrobatchQuery.QueryStats restored = MicrobatchQuery.QueryStats.fromJson(stats.toJson());
+        Assert.assertEquals(2, restored.getCount());
+        Assert.assertEquals(70D, restored.getRows(), 0.0001);
+        Assert.assertEquals(1300D, restored.getLatencyMillis(), 0.0001);
+
+        final MicrobatchQuery.QueryStats.CountComparator comparator = new MicrobatchQuery.QueryStats.CountComparator();
+        Assert.assertTrue(comparator.compare(stats, stats.record(10, 10L)) < 0);
+    }
+
+    @Test
+    public void testCreateQueryWithDatetime() {
+        final String query = MicrobatchQuery.createQuery(MicrobatchQuery.createTemplate(
+                "SELECT * FROM Items WHERE UpdatedAt >= '${__EVENT_DATETIME_PRE__}' AND UpdatedAt < '${__EVENT_DATETIME__}'"),
+                Instant.parse("2021-03-01T00:00:00Z"), Instant.parse("2021-03-01T00:01:30.250Z"));
+        Assert.assertEquals("SELECT * FROM Items WHERE UpdatedAt >= '2021-03-01 00:00:00.000' AND UpdatedAt < '2021-03-01 00:01:30.250'", query);
+    }
+
+    @Test
+    public void testMetrics() {
+        final String startDatetime = Instant.now().minus(Duration.standardMinutes(30)).toString();
+        final PCollection<String> queries = pipeline
+                .apply("Beats", Create.of(0L))
+                .apply("Microbatch", MicrobatchQuery.of(
+                        "SELECT * FROM Items WHERE UpdatedAt < '${__EVENT_DATETIME__}'",
+                        startDatetime, 60, 0, 60, null, 60,
+                        false, false, 1, new FakeQueryDoFn()));
+
+        // Only one query is issued, as the range since startDatetime is shorter than maxDurationMinute.
+        PAssert.that(queries).satisfies(values -> {
+            int count = 0;
+            for(final String value : values) {
+                Assert.assertTrue(value.startsWith("SELECT * FROM Items WHERE UpdatedAt < '"));
+                count++;
+            }
+            Assert.assertEquals(1, count);
+            return null;
+        });
+
+        final PipelineResult result = pipeline.run();
+        result.waitUntilFinish();
+
+        final MetricQueryResults metrics = result.metrics().queryMetrics(MetricsFilter.builder()
+                .addNameFilter(MetricNameFilter.inNamespace(MicrobatchQuery.QueryMetrics.NAMESPACE))
+                .build());
+        Assert.assertEquals(1L, getCounter(metrics, "queries_issued"));
+        Assert.assertEquals(0L, getCounter(metrics, "queries_in_flight"));
+        Assert.assertEquals(FakeQueryDoFn.ROWS, getCounter(metrics, "rows"));
+
+        for(final MetricResult<DistributionResult> distribution : metrics.getDistributions()) {
+            if("query_latency_millis".equals(distribution.getName().getName())) {
+                Assert.assertEquals(1L, distribution.getAttempted().getCount());
+                Assert.assertEquals(FakeQueryDoFn.LATENCY, distribution.getAttempted().getMax());
+            }
+        }
+    }
+
+    private static long getCounter(final MetricQueryResults metrics, final String name) {
+        for(final MetricResult<Long> counter : metrics.getCounters()) {
+            if(name.equals(counter.getName().getName())) {
+                return counter.getAttempted();
+            }
+        }
+        throw new IllegalStateException("Counter not found: " + name);
+    }
+
+    private static class FakeQueryDoFn extends DoFn<KV<KV<Integer, KV<Long, Instant>>, String>, String> {
+
+        private static final long ROWS = 3L;
+        private static final long LATENCY = 10L;
+
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            MicrobatchQuery.recordQueryStart();
+            try {
+                c.output(c.element().getValue());
+                MicrobatchQuery.recordQueryResult(c, ROWS, LATENCY);
+                c.output(new TupleTag<>("checkpoint"), c.element().getKey());
+            } finally {
+                MicrobatchQuery.recordQueryEnd();
+            }
+        }
+
+    }
+
+}
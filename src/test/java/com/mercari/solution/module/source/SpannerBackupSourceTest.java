@@ -0,0 +1,84 @@
+package com.mercari.solution.module.source;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.coders.AvroCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.range.OffsetRange;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SpannerBackupSourceTest {
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Rule
+    public final transient TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadAvroRanges() throws Exception {
+        final Schema schema = SchemaBuilder.record("Singers").fields()
+                .requiredLong("SingerId")
+                .requiredString("Name")
+                .endRecord();
+
+        // Small sync interval makes many blocks, so that ranges start and end in the middle of blocks.
+        final File file = folder.newFile("Singers.avro-00000-of-00001");
+        final List<Long> expected = new ArrayList<>();
+        try(final DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>(schema))) {
+            writer.setSyncInterval(64);
+            writer.create(schema, file);
+            for(long i=0; i<1000; i++) {
+                final GenericRecord record = new GenericData.Record(schema);
+                record.put("SingerId", i);
+                record.put("Name", "singer" + i);
+                writer.append(record);
+                expected.add(i);
+            }
+        }
+
+        final List<KV<KV<String, String>, OffsetRange>> ranges = new ArrayList<>();
+        for(long start = 0; start < file.length(); start += 1000) {
+            ranges.add(KV.of(KV.of("Singers", file.getAbsolutePath()), new OffsetRange(start, Math.min(start + 1000, file.length()))));
+        }
+
+        final TupleTag<GenericRecord> tag = new TupleTag<>("Singers");
+        final PCollectionTuple tuple = pipeline
+                .apply("Ranges", Create.of(ranges).withCoder(KvCoder.of(
+                        KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()),
+                        SerializableCoder.of(OffsetRange.class))))
+                .apply("Read", ParDo.of(new SpannerBackupSource.SpannerBackupBatchRead.ReadAvroRangeDoFn(
+                        Collections.singletonMap("Singers", tag)))
+                        .withOutputTags(tag, TupleTagList.empty()));
+
+        final PCollection<Long> ids = tuple.get(tag)
+                .setCoder(AvroCoder.of(schema))
+                .apply("ExtractId", MapElements
+                        .into(TypeDescriptors.longs())
+                        .via(record -> (Long) record.get("SingerId")));
+
+        PAssert.that(ids).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+}
@@ -0,0 +1,345 @@
+package com.mercari.solution.module.source;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.DatabaseId;
+import com.google.cloud.spanner.ErrorCode;
+import com.google.cloud.spanner.InstanceConfigId;
+import com.google.cloud.spanner.InstanceId;
+import com.google.cloud.spanner.InstanceInfo;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.Spanner;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.SpannerOptions;
+import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.Type;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.FCollection;
+import com.mercari.solution.util.gcp.SpannerUtil;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.splittabledofn.SplitResult;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public class SpannerSourceTest {
+
+    private static final String PROJECT = "test-project";
+    private static final String INSTANCE = "test-instance";
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    /**
+     * Requires the Spanner emulator on localhost:9010, and SPANNER_EMULATOR_HOST set. e.g.
+     * gcloud emulators spanner start
+     */
+    @Test
+    public void testReadQueryWithEmulator() throws Exception {
+        Assume.assumeNotNull(System.getenv("SPANNER_EMULATOR_HOST"));
+
+        final String database = "partitions";
+        final List<String> expected = new ArrayList<>();
+        try(final Spanner spanner = connectEmulator()) {
+            createDatabase(spanner, database, Collections.singletonList(
+                    "CREATE TABLE Items (ItemId INT64 NOT NULL, Name STRING(MAX)) PRIMARY KEY (ItemId)"));
+            final List<Mutation> mutations = new ArrayList<>();
+            for(long i=1; i<=500; i++) {
+                mutations.add(Mutation.newInsertBuilder("Items").set("ItemId").to(i).set("Name").to("item" + i).build());
+                expected.add(i + ":item" + i);
+            }
+            spanner.getDatabaseClient(DatabaseId.of(PROJECT, INSTANCE, database)).write(mutations);
+        }
+
+        final FCollection<Struct> output = SpannerSource.batch(pipeline.begin(), createConfig("partitions",
+                "\"projectId\": \"" + PROJECT + "\", \"instanceId\": \"" + INSTANCE + "\", \"databaseId\": \"" + database + "\"," +
+                "\"query\": \"SELECT ItemId, Name FROM Items\", \"emulator\": true"));
+        final PCollection<String> items = output.getCollection()
+                .apply("Format", MapElements
+                        .into(TypeDescriptors.strings())
+                        .via(struct -> struct.getLong("ItemId") + ":" + struct.getString("Name")));
+
+        // Each row is read exactly once.
+        PAssert.that(items).containsInAnyOrder(expected);
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testPartitionSetTrackerClaim() {
+        final Timestamp start = Timestamp.ofTimeSecondsAndNanos(1000, 0);
+        final Timestamp next = Timestamp.ofTimeSecondsAndNanos(1060, 0);
+        final SpannerSource.SpannerChangeStreamRead.PartitionSetTracker tracker =
+                new SpannerSource.SpannerChangeStreamRead.PartitionSetTracker(new SpannerSource.SpannerChangeStreamRead.PartitionSet(
+                        Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition(null, start)), new ArrayList<>(), null));
+
+        // Root partition is replaced by the first partitions.
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(null, next, true, new ArrayList<>(), Arrays.asList(
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", start),
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("b", start)))));
+        Assert.assertEquals(2, tracker.currentRestriction().getPartitions().size());
+
+        // Partition is advanced to the end of the query.
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult("a", next, false, new ArrayList<>(), new ArrayList<>())));
+        Assert.assertEquals(Arrays.asList(
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", next),
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("b", start)),
+                tracker.currentRestriction().getPartitions());
+
+        // Partitions not being queried are split off to the residual.
+        final SplitResult<SpannerSource.SpannerChangeStreamRead.PartitionSet> split = tracker.trySplit(0.5);
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", next)),
+                split.getPrimary().getPartitions());
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("b", start)),
+                split.getResidual().getPartitions());
+
+        // Checkpoint moves all remaining partitions to the residual, and claims fail after that.
+        final SplitResult<SpannerSource.SpannerChangeStreamRead.PartitionSet> checkpoint = tracker.trySplit(0);
+        Assert.assertTrue(checkpoint.getPrimary().getPartitions().isEmpty());
+        Assert.assertEquals(1, checkpoint.getResidual().getPartitions().size());
+        Assert.assertFalse(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult("a", next, false, new ArrayList<>(), new ArrayList<>())));
+        tracker.checkDone();
+    }
+
+    @Test
+    public void testPartitionSetTrackerMergedChild() {
+        final Timestamp start = Timestamp.ofTimeSecondsAndNanos(1000, 0);
+        final Timestamp next = Timestamp.ofTimeSecondsAndNanos(1060, 0);
+        final SpannerSource.SpannerChangeStreamRead.PartitionSetTracker tracker =
+                new SpannerSource.SpannerChangeStreamRead.PartitionSetTracker(new SpannerSource.SpannerChangeStreamRead.PartitionSet(Arrays.asList(
+                        new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", start),
+                        new SpannerSource.SpannerChangeStreamRead.PartitionPosition("b", start)), new ArrayList<>(), null));
+        final SpannerSource.SpannerChangeStreamRead.PartitionPosition merged =
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("c", next, Arrays.asList("a", "b"));
+
+        // Merged child waits until all parents have ended.
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "a", next, true, new ArrayList<>(), Collections.singletonList(merged))));
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("b", start)),
+                tracker.currentRestriction().getPartitions());
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("c", next, Collections.singletonList("b"))),
+                tracker.currentRestriction().getPending());
+        Assert.assertThrows(IllegalStateException.class, tracker::checkDone);
+
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "b", next, true, new ArrayList<>(), Collections.singletonList(merged))));
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("c", next)),
+                tracker.currentRestriction().getPartitions());
+        Assert.assertTrue(tracker.currentRestriction().getPending().isEmpty());
+
+        // Read to the end
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "c", next, true, new ArrayList<>(), new ArrayList<>())));
+        tracker.checkDone();
+    }
+
+    @Test
+    public void testPartitionSetTrackerSplit() {
+        final Timestamp start = Timestamp.ofTimeSecondsAndNanos(1000, 0);
+        final Timestamp next = Timestamp.ofTimeSecondsAndNanos(1060, 0);
+        final SpannerSource.SpannerChangeStreamRead.PartitionSetTracker tracker =
+                new SpannerSource.SpannerChangeStreamRead.PartitionSetTracker(new SpannerSource.SpannerChangeStreamRead.PartitionSet(Arrays.asList(
+                        new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", start),
+                        new SpannerSource.SpannerChangeStreamRead.PartitionPosition("b", start),
+                        new SpannerSource.SpannerChangeStreamRead.PartitionPosition("c", start)), new ArrayList<>(), null));
+        final SpannerSource.SpannerChangeStreamRead.PartitionPosition merged =
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("m", next, Arrays.asList("b", "c"));
+
+        // All partitions are being queried
+        Assert.assertNull(tracker.trySplit(0.5));
+
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "a", next, false, new ArrayList<>(), new ArrayList<>())));
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "b", next, true, new ArrayList<>(), Arrays.asList(
+                        new SpannerSource.SpannerChangeStreamRead.PartitionPosition("d", next, Collections.singletonList("b")),
+                        merged))));
+        Assert.assertEquals(Arrays.asList(
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", next),
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("c", start),
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("d", next)),
+                tracker.currentRestriction().getPartitions());
+
+        // Partition c is being queried and waited by the merged child, so it stays with the child in the primary.
+        final SplitResult<SpannerSource.SpannerChangeStreamRead.PartitionSet> split = tracker.trySplit(0.5);
+        Assert.assertEquals(Arrays.asList(
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", next),
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("c", start)),
+                split.getPrimary().getPartitions());
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("m", next, Collections.singletonList("c"))),
+                split.getPrimary().getPending());
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("d", next)),
+                split.getResidual().getPartitions());
+        Assert.assertTrue(split.getResidual().getPending().isEmpty());
+
+        Assert.assertTrue(tracker.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "c", next, true, new ArrayList<>(), Collections.singletonList(merged))));
+        Assert.assertEquals(Arrays.asList(
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", next),
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("m", next)),
+                tracker.currentRestriction().getPartitions());
+        Assert.assertTrue(tracker.currentRestriction().getPending().isEmpty());
+    }
+
+    @Test
+    public void testPartitionSetTrackerMergedChildAcrossRestrictions() {
+        final Timestamp start = Timestamp.ofTimeSecondsAndNanos(1000, 0);
+        final Timestamp next = Timestamp.ofTimeSecondsAndNanos(1060, 0);
+        final SpannerSource.SpannerChangeStreamRead.PartitionSetTracker trackerA =
+                new SpannerSource.SpannerChangeStreamRead.PartitionSetTracker(new SpannerSource.SpannerChangeStreamRead.PartitionSet(
+                        Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("a", start)), new ArrayList<>(), null));
+        final SpannerSource.SpannerChangeStreamRead.PartitionSetTracker trackerB =
+                new SpannerSource.SpannerChangeStreamRead.PartitionSetTracker(new SpannerSource.SpannerChangeStreamRead.PartitionSet(
+                        Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("b", start)), new ArrayList<>(), null));
+        final SpannerSource.SpannerChangeStreamRead.PartitionPosition merged =
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("m", next, Arrays.asList("b", "a"));
+
+        // The merged child is read once, by the restriction reading the first parent.
+        Assert.assertTrue(trackerB.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "b", next, true, new ArrayList<>(), Collections.singletonList(merged))));
+        Assert.assertTrue(trackerB.currentRestriction().getPartitions().isEmpty());
+        Assert.assertTrue(trackerB.currentRestriction().getPending().isEmpty());
+        trackerB.checkDone();
+
+        Assert.assertTrue(trackerA.tryClaim(new SpannerSource.SpannerChangeStreamRead.PartitionResult(
+                "a", next, true, new ArrayList<>(), Collections.singletonList(merged))));
+        Assert.assertEquals(Collections.singletonList(new SpannerSource.SpannerChangeStreamRead.PartitionPosition("m", next)),
+                trackerA.currentRestriction().getPartitions());
+        Assert.assertTrue(trackerA.currentRestriction().getPending().isEmpty());
+    }
+
+    @Test
+    public void testCreateChildPartitions() {
+        final Type childType = Type.struct(
+                Type.StructField.of("token", Type.string()),
+                Type.StructField.of("parent_partition_tokens", Type.array(Type.string())));
+        final List<Struct> children = Arrays.asList(
+                Struct.newBuilder().set("token").to("c").set("parent_partition_tokens").toStringArray(Arrays.asList("a", "b")).build(),
+                Struct.newBuilder().set("token").to("d").set("parent_partition_tokens").toStringArray(Collections.singletonList("b")).build());
+        final Timestamp childStart = Timestamp.ofTimeSecondsAndNanos(1000, 0);
+        final Struct record = Struct.newBuilder()
+                .set("start_timestamp").to(childStart)
+                .set("record_sequence").to("0")
+                .set("child_partitions").toStructArray(childType, children)
+                .build();
+
+        Assert.assertEquals(Arrays.asList(
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("c", childStart, Arrays.asList("a", "b")),
+                new SpannerSource.SpannerChangeStreamRead.PartitionPosition("d", childStart, Collections.singletonList("b"))),
+                SpannerSource.SpannerChangeStreamRead.ReadChangeStreamDoFn.createChildPartitions(record));
+    }
+
+    @Test
+    public void testChangeStreamBoundedness() {
+        pipeline.enableAbandonedNodeEnforcement(false);
+        final String parameters = "\"projectId\": \"" + PROJECT + "\", \"instanceId\": \"" + INSTANCE + "\"," +
+                "\"databaseId\": \"db\", \"changeStream\": \"ItemStream\", \"startDatetime\": \"2021-01-01T00:00:00Z\"";
+
+        final FCollection<Struct> bounded = SpannerSource.changeStream(pipeline.begin(), createConfig("bounded",
+                parameters + ", \"endDatetime\": \"2021-01-01T01:00:00Z\""));
+        Assert.assertEquals(PCollection.IsBounded.BOUNDED, bounded.getCollection().isBounded());
+
+        final FCollection<Struct> unbounded = SpannerSource.changeStream(pipeline.begin(), createConfig("unbounded", parameters));
+        Assert.assertEquals(PCollection.IsBounded.UNBOUNDED, unbounded.getCollection().isBounded());
+    }
+
+    /**
+     * Requires the Spanner emulator supporting change streams on localhost:9010, and SPANNER_EMULATOR_HOST set. e.g.
+     * gcloud emulators spanner start
+     */
+    @Test
+    public void testReadChangeStreamWithEmulator() throws Exception {
+        Assume.assumeNotNull(System.getenv("SPANNER_EMULATOR_HOST"));
+
+        final String database = "changestream";
+        final Instant start;
+        try(final Spanner spanner = connectEmulator()) {
+            createDatabase(spanner, database, Arrays.asList(
+                    "CREATE TABLE Items (ItemId INT64 NOT NULL, Name STRING(MAX)) PRIMARY KEY (ItemId)",
+                    "CREATE CHANGE STREAM ItemStream FOR Items"));
+            start = Instant.now();
+            final DatabaseClient client = spanner.getDatabaseClient(DatabaseId.of(PROJECT, INSTANCE, database));
+            for(long i=1; i<=3; i++) {
+                client.write(Collections.singletonList(Mutation.newInsertBuilder("Items")
+                        .set("ItemId").to(i).set("Name").to("item" + i).build()));
+            }
+            client.write(Collections.singletonList(Mutation.newUpdateBuilder("Items")
+                    .set("ItemId").to(1L).set("Name").to("item1-updated").build()));
+        }
+        final Instant end = Instant.now().plus(Duration.standardSeconds(1));
+
+        final FCollection<Struct> output = SpannerSource.changeStream(pipeline.begin(), createConfig("changestream",
+                "\"projectId\": \"" + PROJECT + "\", \"instanceId\": \"" + INSTANCE + "\", \"databaseId\": \"" + database + "\"," +
+                "\"changeStream\": \"ItemStream\", \"startDatetime\": \"" + start + "\", \"endDatetime\": \"" + end + "\"," +
+                "\"emulator\": true"));
+
+        // JSON columns are read as strings
+        final PCollection<String> changes = output.getCollection()
+                .apply("Format", MapElements
+                        .into(TypeDescriptors.strings())
+                        .via(struct -> {
+                            final JsonObject keys = new Gson().fromJson(struct.getString("keys"), JsonObject.class);
+                            final JsonObject newValues = new Gson().fromJson(struct.getString("new_values"), JsonObject.class);
+                            return struct.getString("table_name") + ":" + struct.getString("mod_type") + ":"
+                                    + keys.get("ItemId").getAsString() + ":" + newValues.get("Name").getAsString();
+                        }));
+
+        PAssert.that(changes).containsInAnyOrder(
+                "Items:INSERT:1:item1", "Items:INSERT:2:item2", "Items:INSERT:3:item3", "Items:UPDATE:1:item1-updated");
+
+        pipeline.run();
+    }
+
+    private static SourceConfig createConfig(final String name, final String parameters) {
+        return new Gson().fromJson("{\"name\": \"" + name + "\", \"module\": \"spanner\"," +
+                "\"parameters\": {" + parameters + "}}", SourceConfig.class);
+    }
+
+    private static Spanner connectEmulator() {
+        return SpannerOptions.newBuilder()
+                .setProjectId(PROJECT)
+                .setEmulatorHost(SpannerUtil.SPANNER_HOST_EMULATOR)
+                .build()
+                .getService();
+    }
+
+    private static void createDatabase(final Spanner spanner, final String database, final List<String> ddl) throws Exception {
+        try {
+            spanner.getInstanceAdminClient().createInstance(InstanceInfo.newBuilder(InstanceId.of(PROJECT, INSTANCE))
+                    .setInstanceConfigId(InstanceConfigId.of(PROJECT, "emulator-config"))
+                    .setDisplayName(INSTANCE)
+                    .setNodeCount(1)
+                    .build()).get();
+        } catch (ExecutionException e) {
+            // Instance is shared by tests
+            if(!(e.getCause() instanceof SpannerException)
+                    || ((SpannerException) e.getCause()).getErrorCode() != ErrorCode.ALREADY_EXISTS) {
+                throw e;
+            }
+        }
+        try {
+            spanner.getDatabaseAdminClient().dropDatabase(INSTANCE, database);
+        } catch (SpannerException e) {
+            if(e.getErrorCode() != ErrorCode.NOT_FOUND) {
+                throw e;
+            }
+        }
+        spanner.getDatabaseAdminClient().createDatabase(INSTANCE, database, ddl).get();
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.mercari.solution.module.source;
+
+import com.google.gson.Gson;
+import com.mercari.solution.config.SourceConfig;
+import com.mercari.solution.module.FCollection;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.fs.MatchResult;
+import org.apache.beam.sdk.io.fs.MetadataCoder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class StorageSourceTest {
+
+    private static final String SCHEMA = "\"schema\": {\"fields\": [" +
+            "{\"name\": \"id\", \"type\": \"int64\", \"mode\": \"required\"}," +
+            "{\"name\": \"name\", \"type\": \"string\", \"mode\": \"nullable\"}]},";
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Rule
+    public final transient TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStreamReadCsv() throws IOException {
+        // Compression is not specified, so it is detected from the file name of each file.
+        final File dir = folder.newFolder("csv");
+        Files.write(new File(dir, "items0.csv").toPath(),
+                "header\n0,name0\n1,name1\n".getBytes(StandardCharsets.UTF_8));
+        writeGzip(new File(dir, "items1.csv.gz"), "header\n2,name2\n3,name3\n");
+
+        final SourceConfig config = createConfig(dir, "csv", "\"filterPrefix\": \"header\"");
+        final PCollection<String> values = format(StorageSource.readFiles(match(dir), config));
+
+        PAssert.that(values).containsInAnyOrder("0:name0", "1:name1", "2:name2", "3:name3");
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testStreamReadJsonArray() throws IOException {
+        final File dir = folder.newFolder("jsonarray");
+        writeGzip(new File(dir, "items0.json.gz"), "{\"data\": {\"items\": [" +
+                "{\"id\": 0, \"name\": \"name0\"}, {\"id\": 1, \"name\": \"name1\"}]}}");
+        Files.write(new File(dir, "items1.json").toPath(), ("{\"data\": {\"items\": [" +
+                "{\"id\": 2, \"name\": \"name2\"}]}}").getBytes(StandardCharsets.UTF_8));
+
+        final SourceConfig config = createConfig(dir, "jsonArray", "\"recordPath\": \"data/items\"");
+        final PCollection<String> values = format(StorageSource.readFiles(match(dir), config));
+
+        PAssert.that(values).containsInAnyOrder("0:name0", "1:name1", "2:name2");
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testStreamReadXml() throws IOException {
+        final File dir = folder.newFolder("xml");
+        writeGzip(new File(dir, "items0.xml.gz"), "<catalog>" +
+                "<item><id>0</id><name>name0</name></item>" +
+                "<item><id>1</id><name>name1</name></item></catalog>");
+
+        final SourceConfig config = createConfig(dir, "xml", "\"recordPath\": \"catalog/item\"");
+        final PCollection<String> values = format(StorageSource.readFiles(match(dir), config));
+
+        PAssert.that(values).containsInAnyOrder("0:name0", "1:name1");
+
+        pipeline.run();
+    }
+
+    private SourceConfig createConfig(final File dir, final String format, final String parameters) {
+        return new Gson().fromJson("{" +
+                "\"name\": \"storage\", \"module\": \"storage\", \"microbatch\": true," + SCHEMA +
+                "\"parameters\": {\"input\": \"" + dir.getAbsolutePath() + "/*\", \"format\": \"" + format + "\"," +
+                "\"batchSize\": 2, " + parameters + "}}", SourceConfig.class);
+    }
+
+    private PCollection<MatchResult.Metadata> match(final File dir) throws IOException {
+        final List<MatchResult.Metadata> files = new ArrayList<>(
+                FileSystems.match(dir.getAbsolutePath() + "/*").metadata());
+        return pipeline.apply("Files", Create.of(files).withCoder(MetadataCoder.of()));
+    }
+
+    private static PCollection<String> format(final FCollection<GenericRecord> output) {
+        return output.getCollection().apply("Format", MapElements
+                .into(TypeDescriptors.strings())
+                .via(record -> record.get("id") + ":" + record.get("name")));
+    }
+
+    private static void writeGzip(final File file, final String text) throws IOException {
+        try(final OutputStream os = new GZIPOutputStream(new FileOutputStream(file))) {
+            os.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.mercari.solution.module.transform;
+
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.options.ValueProvider;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+public class JavaScriptTransformTest {
+
+    private static final String SCRIPT = "function upper(v) { if(v === 'error') { throw 'error'; } return v.toUpperCase(); }";
+
+    private static final String BATCH_SCRIPT = "var calls = 0; "
+            + "function upperAll(values) { calls += 1; return values.map(function(v) { if(v === 'error') { throw 'error'; } return v.toUpperCase(); }); } "
+            + "function getCalls() { return calls; }";
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    public interface Counter {
+        int increment();
+    }
+
+    @Test
+    public void testTransform() {
+        final PCollection<String> inputs = pipeline.apply("CreateDummy", Create.of("a", "b", "error"));
+
+        // Interpreted and compiled scripts give the same results
+        for(final boolean compileScript : new boolean[]{ false, true }) {
+            final JavaScriptTransform.Transform<String> transform = JavaScriptTransform.transform(
+                    ValueProvider.StaticValueProvider.of(SCRIPT),
+                    ValueProvider.StaticValueProvider.of("value:upper"),
+                    ValueProvider.StaticValueProvider.of(true),
+                    ValueProvider.StaticValueProvider.of(false),
+                    ValueProvider.StaticValueProvider.of(compileScript),
+                    (element, invocable, fieldFuncMap) -> (String) invocable.invokeFunction(fieldFuncMap.get("value"), element));
+            final PCollectionTuple outputs = inputs.apply("JavaScript" + compileScript, transform);
+
+            PAssert.that(outputs.get(transform.tagMain).setCoder(StringUtf8Coder.of())).containsInAnyOrder("A", "B");
+            PAssert.that(outputs.get(transform.tagError).setCoder(StringUtf8Coder.of())).containsInAnyOrder("error");
+        }
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testBatchTransform() {
+        final PCollection<String> inputs = pipeline.apply("CreateDummy", Create.of("a", "b", "c", "error", "d"));
+
+        for(final boolean compileScript : new boolean[]{ false, true }) {
+            final JavaScriptTransform.BatchTransform<String> transform = JavaScriptTransform.batchTransform(
+                    ValueProvider.StaticValueProvider.of(BATCH_SCRIPT),
+                    ValueProvider.StaticValueProvider.of("value:upperAll"),
+                    ValueProvider.StaticValueProvider.of(true),
+                    ValueProvider.StaticValueProvider.of(false),
+                    ValueProvider.StaticValueProvider.of(compileScript),
+                    ValueProvider.StaticValueProvider.of(2),
+                    (elements, invocable, fieldFuncMap) -> JavaScriptTransform
+                            .invokeBatch(invocable, fieldFuncMap.get("value"), elements).stream()
+                            .map(v -> (String) v)
+                            .collect(Collectors.toList()));
+            final PCollectionTuple outputs = inputs.apply("BatchJavaScript" + compileScript, transform);
+
+            // Only the failed element of a failed batch goes to the error output
+            PAssert.that(outputs.get(transform.tagMain).setCoder(StringUtf8Coder.of())).containsInAnyOrder("A", "B", "C", "D");
+            PAssert.that(outputs.get(transform.tagError).setCoder(StringUtf8Coder.of())).containsInAnyOrder("error");
+        }
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testInvokeBatch() throws Exception {
+        final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+        engine.eval(BATCH_SCRIPT);
+        final Invocable pooled = JavaScriptTransform.CompiledScriptPool.of(BATCH_SCRIPT).borrow();
+
+        for(final Invocable invocable : new Invocable[]{ (Invocable) engine, pooled }) {
+            final int calls = ((Number) invocable.invokeFunction("getCalls")).intValue();
+            Assert.assertEquals(Arrays.asList("A", "B", "C"),
+                    JavaScriptTransform.invokeBatch(invocable, "upperAll", Arrays.asList("a", "b", "c")));
+            Assert.assertEquals(calls + 1, ((Number) invocable.invokeFunction("getCalls")).intValue());
+            try {
+                JavaScriptTransform.invokeBatch(invocable, "upperAll", Arrays.asList("a", "error"));
+                Assert.fail("ScriptException expected");
+            } catch (ScriptException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledScriptPool() throws Exception {
+        final JavaScriptTransform.CompiledScriptPool pool = JavaScriptTransform.CompiledScriptPool
+                .of("var count = 0; function increment() { count += 1; return count; }");
+
+        // Each borrowed context has its own global state
+        final JavaScriptTransform.ContextInvocable invocable1 = pool.borrow();
+        final JavaScriptTransform.ContextInvocable invocable2 = pool.borrow();
+        Assert.assertEquals(1, ((Number) invocable1.invokeFunction("increment")).intValue());
+        Assert.assertEquals(2, ((Number) invocable1.invokeFunction("increment")).intValue());
+        Assert.assertEquals(1, ((Number) invocable2.invokeFunction("increment")).intValue());
+        Assert.assertEquals(2, invocable2.getInterface(Counter.class).increment());
+
+        // Released context is reused with its state
+        pool.release(invocable1);
+        final JavaScriptTransform.ContextInvocable invocable3 = pool.borrow();
+        Assert.assertSame(invocable1, invocable3);
+        Assert.assertEquals(3, ((Number) invocable3.invokeFunction("increment")).intValue());
+
+        // The same script is compiled once per JVM
+        Assert.assertSame(pool, JavaScriptTransform.CompiledScriptPool
+                .of("var count = 0; function increment() { count += 1; return count; }"));
+    }
+
+    @Test
+    public void testCompiledScriptPoolConcurrently() throws Exception {
+        final JavaScriptTransform.CompiledScriptPool pool = JavaScriptTransform.CompiledScriptPool
+                .of("var total = 0; function increment() { total += 1; return total; }");
+
+        // Contexts sharing one engine are invoked from threads at the same time without mixing their state
+        final int threads = 8;
+        final int calls = 1000;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<List<Integer>>> futures = new ArrayList<>();
+            for(int t=0; t<threads; t++) {
+                futures.add(executorService.submit(() -> {
+                    final JavaScriptTransform.ContextInvocable invocable = pool.borrow();
+                    final List<Integer> counts = new ArrayList<>();
+                    for(int i=0; i<calls; i++) {
+                        counts.add(((Number) invocable.invokeFunction("increment")).intValue());
+                    }
+                    return counts;
+                }));
+            }
+            for(final Future<List<Integer>> future : futures) {
+                final List<Integer> counts = future.get();
+                for(int i=0; i<calls; i++) {
+                    Assert.assertEquals(i + 1, counts.get(i).intValue());
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompiledScriptPoolErrors() throws Exception {
+        final JavaScriptTransform.ContextInvocable invocable = JavaScriptTransform.CompiledScriptPool.of(SCRIPT).borrow();
+        Assert.assertEquals("ABC", invocable.invokeFunction("upper", "abc"));
+        try {
+            invocable.invokeFunction("lower", "abc");
+            Assert.fail("NoSuchMethodException expected");
+        } catch (NoSuchMethodException e) {
+            // expected
+        }
+        try {
+            invocable.invokeFunction("upper", "error");
+            Assert.fail("ScriptException expected");
+        } catch (ScriptException e) {
+            // expected
+        }
+    }
+
+}
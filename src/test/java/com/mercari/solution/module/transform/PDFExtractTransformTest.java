@@ -0,0 +1,116 @@
+package com.mercari.solution.module.transform;
+
+import com.google.gson.JsonObject;
+import com.mercari.solution.config.TransformConfig;
+import com.mercari.solution.module.DataType;
+import com.mercari.solution.module.FCollection;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+public class PDFExtractTransformTest {
+
+    private static final Schema SCHEMA = Schema.builder()
+            .addStringField("name")
+            .addByteArrayField("content")
+            .build();
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Test
+    public void testExtractPagesConcurrently() throws IOException {
+        final PCollection<Row> inputs = pipeline.apply("CreateDummy", Create.of(
+                        Row.withSchema(SCHEMA).addValues("five", createPDF(5)).build(),
+                        Row.withSchema(SCHEMA).addValues("one", createPDF(1)).build())
+                .withRowSchema(SCHEMA));
+
+        final PCollection<String> outputs = format(extract(inputs, "page", 3));
+
+        // Pages are output in order even when page ranges are extracted concurrently.
+        PAssert.that(outputs).containsInAnyOrder(
+                "five:1:page1", "five:2:page2", "five:3:page3", "five:4:page4", "five:5:page5",
+                "one:1:page1");
+
+        pipeline.run();
+    }
+
+    @Test
+    public void testExtractDocumentConcurrently() throws IOException {
+        final PCollection<Row> inputs = pipeline.apply("CreateDummy", Create.of(
+                        Row.withSchema(SCHEMA).addValues("five", createPDF(5)).build(),
+                        Row.withSchema(SCHEMA).addValues("broken", "not a pdf".getBytes(StandardCharsets.UTF_8)).build())
+                .withRowSchema(SCHEMA));
+
+        final PCollection<String> outputs = format(extract(inputs, "document", 2));
+
+        PAssert.that(outputs).containsInAnyOrder(
+                "five:5:page1 page2 page3 page4 page5",
+                "broken:0:null");
+
+        pipeline.run();
+    }
+
+    private static PCollection<Row> extract(final PCollection<Row> inputs, final String outputMode, final int parallelism) {
+        final TransformConfig config = new TransformConfig();
+        config.setName("pdf");
+        config.setModule("pdfextract");
+        config.setInputs(Arrays.asList("rowInput"));
+
+        final JsonObject parameters = new JsonObject();
+        parameters.addProperty("field", "content");
+        parameters.addProperty("outputMode", outputMode);
+        parameters.addProperty("parallelism", parallelism);
+        parameters.addProperty("timeoutSecond", 60);
+        config.setParameters(parameters);
+
+        final FCollection<Row> fCollection = FCollection.of("rowInput", inputs, DataType.ROW, SCHEMA);
+        final Map<String, FCollection<?>> outputs = PDFExtractTransform.transform(Arrays.asList(fCollection), config);
+        return (PCollection<Row>) outputs.get("pdf.rowInput").getCollection();
+    }
+
+    private static PCollection<String> format(final PCollection<Row> rows) {
+        return rows.apply("Format", MapElements
+                .into(TypeDescriptors.strings())
+                .via(row -> row.getString("name") + ":" + row.getInt32("Page") + ":"
+                        + (row.getString("Content") == null ? null : row.getString("Content").replaceAll("\\s+", " ").trim())));
+    }
+
+    private static byte[] createPDF(final int pageCount) throws IOException {
+        try(final PDDocument document = new PDDocument();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+
+            for(int i=1; i<=pageCount; i++) {
+                final PDPage page = new PDPage();
+                document.addPage(page);
+                try(final PDPageContentStream stream = new PDPageContentStream(document, page)) {
+                    stream.beginText();
+                    stream.setFont(PDType1Font.HELVETICA, 12);
+                    stream.newLineAtOffset(100, 700);
+                    stream.showText("page" + i);
+                    stream.endText();
+                }
+            }
+            document.save(bytes);
+            return bytes.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.mercari.solution.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Arrays;
+
+public class CryptoUtilTest {
+
+    private static final byte[] KEY_BYTES = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testEncryptDecrypt() throws Exception {
+        final CryptoUtil crypto = new CryptoUtil();
+        final byte[] plain = "plain text to be encrypted, longer than one AES block".getBytes(StandardCharsets.UTF_8);
+
+        for(final String algorithm : Arrays.asList("AES", "AES256", "AES/GCM", "AES256/GCM")) {
+            final Key key = CryptoUtil.createKey(algorithm, KEY_BYTES);
+
+            final byte[] encrypted1 = crypto.encrypt(algorithm, key, plain);
+            final byte[] encrypted2 = crypto.encrypt(algorithm, key, plain);
+            // Random IV makes each ciphertext different
+            Assert.assertFalse(algorithm, Arrays.equals(encrypted1, encrypted2));
+            Assert.assertFalse(algorithm, Arrays.equals(plain, Arrays.copyOfRange(encrypted1, encrypted1.length - plain.length, encrypted1.length)));
+
+            Assert.assertArrayEquals(algorithm, plain, crypto.decrypt(algorithm, key, encrypted1));
+            Assert.assertArrayEquals(algorithm, plain, crypto.decrypt(algorithm, key, encrypted2));
+            // Key bytes API gives the same result
+            Assert.assertArrayEquals(algorithm, plain, crypto.decrypt(algorithm, KEY_BYTES, crypto.encrypt(algorithm, KEY_BYTES, plain)));
+        }
+    }
+
+    @Test
+    public void testEncryptedLength() throws Exception {
+        final CryptoUtil crypto = new CryptoUtil();
+        final byte[] plain = new byte[20];
+
+        // AES/CTR: 16 bytes IV + ciphertext without padding
+        final byte[] ctr = crypto.encrypt("AES", KEY_BYTES, plain);
+        Assert.assertEquals(16 + 20, ctr.length);
+
+        // AES/GCM: 12 bytes IV + ciphertext + 16 bytes tag
+        final byte[] gcm = crypto.encrypt("AES/GCM", KEY_BYTES, plain);
+        Assert.assertEquals(12 + 20 + 16, gcm.length);
+    }
+
+    @Test
+    public void testEmptyValue() throws Exception {
+        final CryptoUtil crypto = new CryptoUtil();
+        Assert.assertNull(crypto.encrypt("AES", KEY_BYTES, null));
+        Assert.assertNull(crypto.encrypt("AES/GCM", KEY_BYTES, new byte[0]));
+        Assert.assertNull(crypto.decrypt("AES", KEY_BYTES, null));
+        Assert.assertNull(crypto.decrypt("AES/GCM", KEY_BYTES, new byte[0]));
+    }
+
+    @Test(expected = AEADBadTagException.class)
+    public void testDecryptTamperedGCM() throws Exception {
+        final CryptoUtil crypto = new CryptoUtil();
+        final byte[] encrypted = crypto.encrypt("AES/GCM", KEY_BYTES, "plain".getBytes(StandardCharsets.UTF_8));
+        encrypted[encrypted.length - 1] ^= 1;
+        crypto.decrypt("AES/GCM", KEY_BYTES, encrypted);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedAlgorithm() throws Exception {
+        new CryptoUtil().encrypt("DES", KEY_BYTES, new byte[1]);
+    }
+
+}
@@ -6,9 +6,11 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.mercari.solution.util.schema.StructSchemaUtil;
+import org.joda.time.Instant;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.time.LocalDate;
 import java.util.Arrays;
 
 
@@ -132,6 +134,36 @@ public class FilterTest {
         Assert.assertTrue(Filter.is("b", leaf5));
     }
 
+    @Test
+    public void testLeafCompareDateTime() {
+
+        // Date
+        var leaf1 = new Filter.ConditionLeaf();
+        leaf1.setKey("");
+        leaf1.setValue(new Gson().fromJson("\"2021-01-01\"", JsonElement.class));
+
+        leaf1.setOp(Filter.Op.EQUAL);
+        Assert.assertTrue(Filter.is(LocalDate.of(2021, 1, 1), leaf1));
+        leaf1.setOp(Filter.Op.GREATER);
+        Assert.assertTrue(Filter.is(LocalDate.of(2021, 1, 2), leaf1));
+        Assert.assertFalse(Filter.is(LocalDate.of(2020, 12, 31), leaf1));
+
+        leaf1.setValue(new Gson().fromJson("18628", JsonElement.class));
+        leaf1.setOp(Filter.Op.EQUAL);
+        Assert.assertTrue(Filter.is(LocalDate.of(2021, 1, 1), leaf1));
+
+        // Timestamp
+        var leaf2 = new Filter.ConditionLeaf();
+        leaf2.setKey("");
+        leaf2.setValue(new Gson().fromJson("\"2021-01-01T00:00:00Z\"", JsonElement.class));
+
+        leaf2.setOp(Filter.Op.GREATER_OR_EQUAL);
+        Assert.assertTrue(Filter.is(Instant.parse("2021-01-01T00:00:00Z"), leaf2));
+        Assert.assertFalse(Filter.is(Instant.parse("2020-12-31T23:59:59Z"), leaf2));
+        leaf2.setOp(Filter.Op.LESSER);
+        Assert.assertTrue(Filter.is(Instant.parse("2020-12-31T23:59:59Z"), leaf2));
+    }
+
     @Test
     public void testNodeCompare() {
         var leaf1 = new Filter.ConditionLeaf();
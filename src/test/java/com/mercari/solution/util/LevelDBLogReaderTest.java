@@ -0,0 +1,119 @@
+package com.mercari.solution.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+public class LevelDBLogReaderTest {
+
+    @Test
+    public void testRead() throws IOException {
+        final List<byte[]> records = createRecords();
+        final byte[] file = write(records);
+
+        final LevelDBLogReader reader = new LevelDBLogReader(new ByteArrayInputStream(file), 0);
+        int count = 0;
+        byte[] record;
+        while((record = reader.next()) != null) {
+            Assert.assertArrayEquals(records.get(count), record);
+            count++;
+        }
+        Assert.assertEquals(records.size(), count);
+    }
+
+    @Test
+    public void testReadSplit() throws IOException {
+        final List<byte[]> records = createRecords();
+        final byte[] file = write(records);
+        final long blockCount = LevelDBLogReader.getBlockCount(file.length);
+
+        // Each record must be read once by the range where it starts, including records spanning ranges.
+        final List<byte[]> results = new ArrayList<>();
+        for(long from = 0; from < blockCount; from += 3) {
+            final long to = Math.min(from + 3, blockCount);
+            final int offset = (int)(from * LevelDBLogReader.BLOCK_SIZE);
+            final LevelDBLogReader reader = new LevelDBLogReader(
+                    new ByteArrayInputStream(file, offset, file.length - offset), from);
+            byte[] record;
+            while((record = reader.next()) != null && reader.getRecordBlock() < to) {
+                results.add(record);
+            }
+        }
+        Assert.assertEquals(records.size(), results.size());
+        for(int i=0; i<records.size(); i++) {
+            Assert.assertArrayEquals(records.get(i), results.get(i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadCorrupted() throws IOException {
+        final byte[] file = write(createRecords());
+        file[100] = (byte)(file[100] + 1);
+        final LevelDBLogReader reader = new LevelDBLogReader(new ByteArrayInputStream(file), 0);
+        while(reader.next() != null) {
+            // read until the corrupted record
+        }
+    }
+
+    private static List<byte[]> createRecords() {
+        final Random random = new Random(1);
+        final List<byte[]> records = new ArrayList<>();
+        for(int i=0; i<500; i++) {
+            // Some records are larger than a block
+            final byte[] record = new byte[random.nextInt(i % 50 == 0 ? 100000 : 500)];
+            random.nextBytes(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Writes records in LevelDB log format, as Datastore managed export does.
+     */
+    public static byte[] write(final List<byte[]> records) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int blockOffset = 0;
+        for(final byte[] record : records) {
+            int position = 0;
+            boolean begin = true;
+            while(true) {
+                int left = LevelDBLogReader.BLOCK_SIZE - blockOffset;
+                if(left < 7) {
+                    output.write(new byte[left]);
+                    blockOffset = 0;
+                    left = LevelDBLogReader.BLOCK_SIZE;
+                }
+                final int length = Math.min(left - 7, record.length - position);
+                final boolean end = position + length == record.length;
+                final int type = begin && end ? 1 : begin ? 2 : end ? 4 : 3;
+                final CRC32C crc = new CRC32C();
+                crc.update(type);
+                crc.update(record, position, length);
+                final int masked = LevelDBLogReader.mask((int) crc.getValue());
+                output.write(masked);
+                output.write(masked >>> 8);
+                output.write(masked >>> 16);
+                output.write(masked >>> 24);
+                output.write(length);
+                output.write(length >>> 8);
+                output.write(type);
+                output.write(record, position, length);
+                position += length;
+                blockOffset += 7 + length;
+                begin = false;
+                if(end) {
+                    break;
+                }
+            }
+        }
+        return output.toByteArray();
+    }
+
+}
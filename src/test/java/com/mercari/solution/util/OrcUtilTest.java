@@ -0,0 +1,89 @@
+package com.mercari.solution.util;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ListColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class OrcUtilTest {
+
+    @Rule
+    public final transient TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConvert() throws Exception {
+        final TypeDescription type = TypeDescription.fromString("struct<id:bigint,name:string,tags:array<string>>");
+        final File file = new File(folder.getRoot(), "test.orc");
+        try(final Writer writer = OrcFile.createWriter(new Path(file.getAbsolutePath()),
+                OrcFile.writerOptions(new Configuration()).setSchema(type))) {
+
+            final VectorizedRowBatch batch = type.createRowBatch();
+            final LongColumnVector ids = (LongColumnVector) batch.cols[0];
+            final BytesColumnVector names = (BytesColumnVector) batch.cols[1];
+            final ListColumnVector tags = (ListColumnVector) batch.cols[2];
+            final BytesColumnVector tagValues = (BytesColumnVector) tags.child;
+            for(int i=0; i<3; i++) {
+                final int row = batch.size++;
+                ids.vector[row] = i;
+                if(i == 1) {
+                    names.noNulls = false;
+                    names.isNull[row] = true;
+                } else {
+                    names.setVal(row, ("name" + i).getBytes(StandardCharsets.UTF_8));
+                }
+                tags.offsets[row] = tags.childCount;
+                tags.lengths[row] = i;
+                tags.childCount += i;
+                tagValues.ensureSize(tags.childCount, true);
+                for(int j=0; j<i; j++) {
+                    tagValues.setVal((int) tags.offsets[row] + j, ("tag" + j).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            writer.addRowBatch(batch);
+        }
+
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final Schema schema = OrcUtil.getAvroSchema(bytes);
+        Assert.assertEquals(Arrays.asList("id", "name", "tags"),
+                Arrays.asList(schema.getFields().get(0).name(), schema.getFields().get(1).name(), schema.getFields().get(2).name()));
+
+        final List<GenericRecord> records = new ArrayList<>();
+        try(final Reader reader = OrcUtil.createReader(bytes);
+            final RecordReader rows = reader.rows(new Reader.Options()
+                    .include(OrcUtil.createInclude(reader.getSchema(), Arrays.asList("id", "name", "tags"))))) {
+            final VectorizedRowBatch batch = reader.getSchema().createRowBatch();
+            while(rows.nextBatch(batch)) {
+                records.addAll(OrcUtil.convert(batch, reader.getSchema(), schema));
+            }
+        }
+
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals(0L, records.get(0).get("id"));
+        Assert.assertEquals("name0", records.get(0).get("name"));
+        Assert.assertEquals(new ArrayList<>(), records.get(0).get("tags"));
+        Assert.assertNull(records.get(1).get("name"));
+        Assert.assertEquals(Arrays.asList("tag0"), records.get(1).get("tags"));
+        Assert.assertEquals(Arrays.asList("tag0", "tag1"), records.get(2).get("tags"));
+    }
+
+}
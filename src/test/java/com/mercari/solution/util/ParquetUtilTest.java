@@ -0,0 +1,85 @@
+package com.mercari.solution.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.io.api.Binary;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParquetUtilTest {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("record").fields()
+            .requiredLong("longField")
+            .optionalString("stringField")
+            .requiredDouble("doubleField")
+            .name("arrayField").type().array().items().stringType().noDefault()
+            .endRecord();
+
+    @Test
+    public void testCreateFilterPredicate() {
+        final FilterPredicate predicate = ParquetUtil.createFilterPredicate(SCHEMA, parse("{\"and\": [" +
+                "{\"key\": \"longField\", \"op\": \">=\", \"value\": 10}," +
+                "{\"key\": \"stringField\", \"op\": \"in\", \"value\": [\"a\", \"b\"]}" +
+                "]}"));
+
+        final FilterPredicate expected = FilterApi.and(
+                FilterApi.gtEq(FilterApi.longColumn("longField"), 10L),
+                FilterApi.or(
+                        FilterApi.eq(FilterApi.binaryColumn("stringField"), Binary.fromString("a")),
+                        FilterApi.eq(FilterApi.binaryColumn("stringField"), Binary.fromString("b"))));
+        Assert.assertEquals(expected, predicate);
+    }
+
+    @Test
+    public void testCreateFilterPredicateWithUnsupportedCondition() {
+        // Unsupported condition is dropped from AND
+        final FilterPredicate andPredicate = ParquetUtil.createFilterPredicate(SCHEMA, parse("{\"and\": [" +
+                "{\"key\": \"doubleField\", \"op\": \"<\", \"value\": 1.5}," +
+                "{\"key\": \"arrayField\", \"op\": \"=\", \"value\": \"a\"}" +
+                "]}"));
+        Assert.assertEquals(FilterApi.lt(FilterApi.doubleColumn("doubleField"), 1.5D), andPredicate);
+
+        // OR can not be pushed down if any condition is unsupported
+        final FilterPredicate orPredicate = ParquetUtil.createFilterPredicate(SCHEMA, parse("{\"or\": [" +
+                "{\"key\": \"doubleField\", \"op\": \"<\", \"value\": 1.5}," +
+                "{\"key\": \"nested.field\", \"op\": \"=\", \"value\": \"a\"}" +
+                "]}"));
+        Assert.assertNull(orPredicate);
+    }
+
+    @Test
+    public void testCreateFilterPredicateWithLogicalTypes() {
+        final Schema schema = SchemaBuilder.record("record").fields()
+                .name("dateField").type(LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT))).noDefault()
+                .name("timestampField").type(LogicalTypes.timestampMicros().addToSchema(Schema.create(Schema.Type.LONG))).noDefault()
+                .endRecord();
+
+        // String values are converted into the column unit by the logical type
+        final FilterPredicate predicate = ParquetUtil.createFilterPredicate(schema, parse("{\"and\": [" +
+                "{\"key\": \"dateField\", \"op\": \">=\", \"value\": \"2021-01-01\"}," +
+                "{\"key\": \"timestampField\", \"op\": \"<\", \"value\": \"2021-01-01T00:00:01Z\"}" +
+                "]}"));
+        final FilterPredicate expected = FilterApi.and(
+                FilterApi.gtEq(FilterApi.intColumn("dateField"), 18628),
+                FilterApi.lt(FilterApi.longColumn("timestampField"), 1609459201000000L));
+        Assert.assertEquals(expected, predicate);
+
+        // Numbers are used as they are
+        Assert.assertEquals(FilterApi.eq(FilterApi.intColumn("dateField"), 18628),
+                ParquetUtil.createFilterPredicate(schema, parse("[{\"key\": \"dateField\", \"op\": \"=\", \"value\": 18628}]")));
+
+        // Values that can not be converted are not pushed down
+        Assert.assertNull(ParquetUtil.createFilterPredicate(schema,
+                parse("[{\"key\": \"dateField\", \"op\": \"=\", \"value\": \"yesterday\"}]")));
+    }
+
+    private static Filter.ConditionNode parse(final String json) {
+        return Filter.parse(new Gson().fromJson(json, JsonElement.class));
+    }
+
+}
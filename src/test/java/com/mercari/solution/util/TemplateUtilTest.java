@@ -0,0 +1,34 @@
+package com.mercari.solution.util;
+
+import freemarker.template.Template;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class TemplateUtilTest {
+
+    @Test
+    public void testExtractVariables() {
+        final Map<String, Object> data = new HashMap<>();
+        data.put("_mode", "decrypt");
+        data.put("_secret", "c2VjcmV0");
+
+        // Variable names contained only in text or comments are not read
+        final Template keyTemplate = TemplateUtil.createStrictTemplate("key",
+                "<#-- ${_value} -->_value:${_secret}");
+        Assert.assertEquals(Set.of("_secret"), TemplateUtil.extractVariables(keyTemplate, data));
+
+        // Missing variables are also returned
+        final Template valueTemplate = TemplateUtil.createStrictTemplate("value",
+                "<#if _mode == \"decrypt\">${_value}<#else>${_secret}</#if>");
+        Assert.assertEquals(Set.of("_mode", "_value"), TemplateUtil.extractVariables(valueTemplate, data));
+
+        // Variables in the branch not taken are not read
+        data.put("_mode", "encrypt");
+        Assert.assertEquals(Set.of("_mode", "_secret"), TemplateUtil.extractVariables(valueTemplate, data));
+    }
+
+}
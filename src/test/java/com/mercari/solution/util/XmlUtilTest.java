@@ -0,0 +1,65 @@
+package com.mercari.solution.util;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class XmlUtilTest {
+
+    private static final String XML = "<?xml version=\"1.0\"?><catalog>" +
+            "<book id=\"1\" note='a>b'><title>T1</title><tag>x</tag><tag>y</tag></book>" +
+            "<books/>" +
+            "<book id=\"2\"/>" +
+            "<book><title lang=\"en\"><![CDATA[C<D]]></title></book>" +
+            "</catalog>";
+
+    @Test
+    public void testReadElement() throws Exception {
+        final XMLStreamReader reader = XmlUtil.createInputFactory(true)
+                .createXMLStreamReader(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+        reader.nextTag(); // catalog
+        reader.nextTag(); // first book
+        final JsonObject book = XmlUtil.readElement(reader);
+        Assert.assertEquals("1", book.get("id").getAsString());
+        Assert.assertEquals("a>b", book.get("note").getAsString());
+        Assert.assertEquals("T1", book.get("title").getAsString());
+        Assert.assertEquals(2, book.getAsJsonArray("tag").size());
+        Assert.assertEquals("y", book.getAsJsonArray("tag").get(1).getAsString());
+    }
+
+    @Test
+    public void testElementScanner() throws Exception {
+        final byte[] bytes = XML.getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(3, scan(bytes, 0).size());
+
+        // Starting in the middle of the first book, only the following books are found.
+        final List<JsonObject> books = scan(bytes, XML.indexOf("<title>"));
+        Assert.assertEquals(2, books.size());
+        Assert.assertEquals("2", books.get(0).get("id").getAsString());
+        Assert.assertEquals("C<D", books.get(1).getAsJsonObject("title").get("_text").getAsString());
+        Assert.assertEquals("en", books.get(1).getAsJsonObject("title").get("lang").getAsString());
+    }
+
+    private static List<JsonObject> scan(final byte[] bytes, final int from) throws Exception {
+        final InputStream is = new ByteArrayInputStream(bytes, from, bytes.length - from);
+        final XmlUtil.ElementScanner scanner = new XmlUtil.ElementScanner(is, from, "book");
+        final List<JsonObject> elements = new ArrayList<>();
+        long offset;
+        while((offset = scanner.next()) >= 0) {
+            Assert.assertEquals("<book", new String(bytes, (int) offset, 5, StandardCharsets.UTF_8));
+            final XMLStreamReader reader = XmlUtil.createInputFactory(false)
+                    .createXMLStreamReader(new ByteArrayInputStream(scanner.readElement()));
+            reader.nextTag();
+            elements.add(XmlUtil.readElement(reader));
+        }
+        return elements;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.mercari.solution.util.converter;
+
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class ArrowToRecordConverterTest {
+
+    @Test
+    public void testConvert() {
+        final Schema schema = SchemaBuilder.record("root").fields()
+                .name("longField").type(AvroSchemaUtil.NULLABLE_LONG).noDefault()
+                .name("stringField").type(AvroSchemaUtil.NULLABLE_STRING).noDefault()
+                .name("booleanField").type(AvroSchemaUtil.NULLABLE_BOOLEAN).noDefault()
+                .name("numericField").type(AvroSchemaUtil.NULLABLE_LOGICAL_DECIMAL_TYPE).noDefault()
+                .name("datetimeField").type(AvroSchemaUtil.NULLABLE_SQL_DATETIME_TYPE).noDefault()
+                .endRecord();
+
+        try(final BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+            final BigIntVector longVector = new BigIntVector("longField", allocator);
+            final VarCharVector stringVector = new VarCharVector("stringField", allocator);
+            final BitVector booleanVector = new BitVector("booleanField", allocator);
+            final DecimalVector numericVector = new DecimalVector("numericField", allocator, 38, 9);
+            final TimeStampMicroVector datetimeVector = new TimeStampMicroVector("datetimeField", allocator)) {
+
+            longVector.allocateNew(2);
+            longVector.set(0, 10L);
+            longVector.setNull(1);
+            stringVector.allocateNew(2);
+            stringVector.set(0, "a".getBytes(StandardCharsets.UTF_8));
+            stringVector.set(1, "b".getBytes(StandardCharsets.UTF_8));
+            booleanVector.allocateNew(2);
+            booleanVector.set(0, 1);
+            booleanVector.set(1, 0);
+            numericVector.allocateNew(2);
+            numericVector.set(0, new BigDecimal("1.500000000"));
+            numericVector.setNull(1);
+            datetimeVector.allocateNew(2);
+            datetimeVector.set(0, 1609459200_000000L);
+            datetimeVector.set(1, 1609459200_123456L);
+
+            final List<FieldVector> vectors = Arrays.asList(
+                    longVector, stringVector, booleanVector, numericVector, datetimeVector);
+            try(final VectorSchemaRoot root = new VectorSchemaRoot(vectors)) {
+                root.setRowCount(2);
+
+                final List<GenericRecord> records = ArrowToRecordConverter.convert(schema, root);
+                Assert.assertEquals(2, records.size());
+
+                final GenericRecord first = records.get(0);
+                Assert.assertEquals(10L, first.get("longField"));
+                Assert.assertEquals("a", first.get("stringField"));
+                Assert.assertEquals(true, first.get("booleanField"));
+                Assert.assertEquals(
+                        ByteBuffer.wrap(new BigDecimal("1.500000000").unscaledValue().toByteArray()),
+                        first.get("numericField"));
+                Assert.assertEquals("2021-01-01T00:00:00", first.get("datetimeField"));
+
+                final GenericRecord second = records.get(1);
+                Assert.assertNull(second.get("longField"));
+                Assert.assertEquals("b", second.get("stringField"));
+                Assert.assertEquals(false, second.get("booleanField"));
+                Assert.assertNull(second.get("numericField"));
+                Assert.assertEquals("2021-01-01T00:00:00.123456", second.get("datetimeField"));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.mercari.solution.util.converter;
+
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Key;
+import com.google.datastore.v1.Value;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.google.protobuf.util.Timestamps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class EntityProtoToEntityConverterTest {
+
+    private static final double DELTA = 1e-15;
+
+    @Test
+    public void testConvert() throws IOException {
+        final byte[] child = encode(output -> output.writeByteArray(14, property("value", 0, false, int64Value(1))));
+        final byte[] bytes = encode(output -> {
+            output.writeByteArray(13, reference("s~test-project", "ns", "Shop", "shop1", "Item", 10L));
+            output.writeByteArray(16, encode(o -> {}));
+            output.writeByteArray(14, property("name", 0, false, stringValue("item10")));
+            output.writeByteArray(14, property("price", 0, false, int64Value(1000)));
+            output.writeByteArray(14, property("rate", 0, false, encode(o -> o.writeDouble(4, 1.5))));
+            output.writeByteArray(14, property("active", 0, false, encode(o -> o.writeBool(2, true))));
+            output.writeByteArray(14, property("createdAt", 7, false, int64Value(1_500_000L)));
+            output.writeByteArray(15, property("data", 14, false, stringValue("abc")));
+            output.writeByteArray(15, property("description", 15, false, stringValue("long text")));
+            output.writeByteArray(14, property("tags", 0, true, stringValue("x")));
+            output.writeByteArray(14, property("tags", 0, true, stringValue("y")));
+            output.writeByteArray(14, property("empty", 24, false, null));
+            output.writeByteArray(14, property("nothing", 0, false, encode(o -> {})));
+            output.writeByteArray(14, property("location", 9, false, encode(o -> {
+                o.writeTag(5, WireFormat.WIRETYPE_START_GROUP);
+                o.writeDouble(6, 35.5);
+                o.writeDouble(7, 139.5);
+                o.writeTag(5, WireFormat.WIRETYPE_END_GROUP);
+            })));
+            output.writeByteArray(14, property("shop", 0, false, encode(o -> {
+                o.writeTag(12, WireFormat.WIRETYPE_START_GROUP);
+                o.writeString(13, "s~test-project");
+                o.writeTag(14, WireFormat.WIRETYPE_START_GROUP);
+                o.writeString(15, "Shop");
+                o.writeString(17, "shop1");
+                o.writeTag(14, WireFormat.WIRETYPE_END_GROUP);
+                o.writeTag(12, WireFormat.WIRETYPE_END_GROUP);
+            })));
+            output.writeByteArray(15, property("child", 19, false, stringValue(child)));
+        });
+
+        final Entity entity = EntityProtoToEntityConverter.convert(bytes);
+
+        final Key key = entity.getKey();
+        Assert.assertEquals("test-project", key.getPartitionId().getProjectId());
+        Assert.assertEquals("ns", key.getPartitionId().getNamespaceId());
+        Assert.assertEquals(2, key.getPathCount());
+        Assert.assertEquals("shop1", key.getPath(0).getName());
+        Assert.assertEquals("Item", key.getPath(1).getKind());
+        Assert.assertEquals(10L, key.getPath(1).getId());
+
+        Assert.assertEquals("item10", entity.getPropertiesOrThrow("name").getStringValue());
+        Assert.assertEquals(1000L, entity.getPropertiesOrThrow("price").getIntegerValue());
+        Assert.assertEquals(1.5, entity.getPropertiesOrThrow("rate").getDoubleValue(), DELTA);
+        Assert.assertTrue(entity.getPropertiesOrThrow("active").getBooleanValue());
+        Assert.assertEquals(1_500_000L, Timestamps.toMicros(entity.getPropertiesOrThrow("createdAt").getTimestampValue()));
+        Assert.assertEquals("abc", entity.getPropertiesOrThrow("data").getBlobValue().toStringUtf8());
+        Assert.assertTrue(entity.getPropertiesOrThrow("data").getExcludeFromIndexes());
+        Assert.assertEquals("long text", entity.getPropertiesOrThrow("description").getStringValue());
+        Assert.assertTrue(entity.getPropertiesOrThrow("description").getExcludeFromIndexes());
+        Assert.assertFalse(entity.getPropertiesOrThrow("name").getExcludeFromIndexes());
+
+        final Value tags = entity.getPropertiesOrThrow("tags");
+        Assert.assertEquals(2, tags.getArrayValue().getValuesCount());
+        Assert.assertEquals("x", tags.getArrayValue().getValues(0).getStringValue());
+        Assert.assertEquals("y", tags.getArrayValue().getValues(1).getStringValue());
+        Assert.assertEquals(Value.ValueTypeCase.ARRAY_VALUE, entity.getPropertiesOrThrow("empty").getValueTypeCase());
+        Assert.assertEquals(0, entity.getPropertiesOrThrow("empty").getArrayValue().getValuesCount());
+        Assert.assertEquals(Value.ValueTypeCase.NULL_VALUE, entity.getPropertiesOrThrow("nothing").getValueTypeCase());
+
+        Assert.assertEquals(35.5, entity.getPropertiesOrThrow("location").getGeoPointValue().getLatitude(), DELTA);
+        Assert.assertEquals(139.5, entity.getPropertiesOrThrow("location").getGeoPointValue().getLongitude(), DELTA);
+        final Key shop = entity.getPropertiesOrThrow("shop").getKeyValue();
+        Assert.assertEquals("test-project", shop.getPartitionId().getProjectId());
+        Assert.assertEquals("Shop", shop.getPath(0).getKind());
+        Assert.assertEquals("shop1", shop.getPath(0).getName());
+
+        final Entity childEntity = entity.getPropertiesOrThrow("child").getEntityValue();
+        Assert.assertFalse(childEntity.hasKey());
+        Assert.assertEquals(1L, childEntity.getPropertiesOrThrow("value").getIntegerValue());
+    }
+
+    public interface ProtoWriter {
+        void write(CodedOutputStream output) throws IOException;
+    }
+
+    public static byte[] encode(final ProtoWriter writer) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        writer.write(output);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes Reference of EntityProto. Path is given as pairs of kind and id(Long) or name(String).
+     */
+    public static byte[] reference(final String app, final String namespace, final Object... path) throws IOException {
+        final byte[] pathBytes = encode(output -> {
+            for(int i=0; i<path.length; i+=2) {
+                output.writeTag(1, WireFormat.WIRETYPE_START_GROUP);
+                output.writeString(2, (String) path[i]);
+                if(path[i+1] instanceof Long) {
+                    output.writeInt64(3, (Long) path[i+1]);
+                } else {
+                    output.writeString(4, (String) path[i+1]);
+                }
+                output.writeTag(1, WireFormat.WIRETYPE_END_GROUP);
+            }
+        });
+        return encode(output -> {
+            output.writeString(13, app);
+            output.writeByteArray(14, pathBytes);
+            if(namespace != null) {
+                output.writeString(20, namespace);
+            }
+        });
+    }
+
+    public static byte[] property(final String name, final int meaning, final boolean multiple, final byte[] value) throws IOException {
+        return encode(output -> {
+            if(meaning > 0) {
+                output.writeInt32(1, meaning);
+            }
+            output.writeString(3, name);
+            output.writeBool(4, multiple);
+            if(value != null) {
+                output.writeByteArray(5, value);
+            }
+        });
+    }
+
+    public static byte[] int64Value(final long value) throws IOException {
+        return encode(output -> output.writeInt64(1, value));
+    }
+
+    public static byte[] stringValue(final String value) throws IOException {
+        return stringValue(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] stringValue(final byte[] value) throws IOException {
+        return encode(output -> output.writeByteArray(3, value));
+    }
+
+}
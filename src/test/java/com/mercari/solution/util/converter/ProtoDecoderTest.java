@@ -0,0 +1,293 @@
+package com.mercari.solution.util.converter;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+import com.mercari.solution.util.ResourceUtil;
+import com.mercari.solution.util.schema.AvroSchemaUtil;
+import com.mercari.solution.util.schema.ProtoSchemaUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.values.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class ProtoDecoderTest {
+
+    private static final String MESSAGE_NAME = "com.mercari.solution.entity.TestMessage";
+
+    @Test
+    public void testDecodeRecord() throws Exception {
+        testDecodeRecord("data/test.pb");
+    }
+
+    @Test
+    public void testDecodeRecordNull() throws Exception {
+        testDecodeRecord("data/test_null.pb");
+    }
+
+    @Test
+    public void testDecodeRow() throws Exception {
+        testDecodeRow("data/test.pb");
+    }
+
+    @Test
+    public void testDecodeRowNull() throws Exception {
+        testDecodeRow("data/test_null.pb");
+    }
+
+    @Test
+    public void testDecodeRecordMapAndBytes() {
+        final Map<String, Descriptors.Descriptor> descriptors = getDescriptors();
+        final Descriptors.Descriptor descriptor = descriptors.get(MESSAGE_NAME);
+        final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+        final byte[] protoBytes = ResourceUtil.getResourceFileAsBytes("data/test.pb");
+
+        final Schema schema = ProtoToRecordConverter.convertSchema(descriptor);
+        final GenericRecord actual = ProtoDecoder.of(schema, descriptor, printer).decode(protoBytes);
+
+        Assert.assertEquals(Map.of("a", 1, "b", 2), toMap((List<GenericRecord>) actual.get("strIntMapValue")));
+        Assert.assertEquals(Map.of(1L, 1.01, -10L, -20.5), toMap((List<GenericRecord>) actual.get("longDoubleMapValue")));
+        final Map<Object, Object> intChildMap = toMap((List<GenericRecord>) actual.get("intChildMapValue"));
+        Assert.assertEquals(1, intChildMap.size());
+        Assert.assertTrue(intChildMap.get(1) instanceof GenericRecord);
+
+        Assert.assertEquals("testBytes", toUtf8(actual.get("bytesValue")));
+        Assert.assertEquals("testWrappedBytes", toUtf8(actual.get("wrappedBytesValue")));
+        Assert.assertEquals(Arrays.asList("byteArray1"), toUtf8s((List<?>) actual.get("bytesValues")));
+        Assert.assertEquals(0, ((List<?>) actual.get("wrappedBytesValues")).size());
+    }
+
+    @Test
+    public void testDecodeRowMapAndBytes() {
+        final Map<String, Descriptors.Descriptor> descriptors = getDescriptors();
+        final Descriptors.Descriptor descriptor = descriptors.get(MESSAGE_NAME);
+        final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+        final byte[] protoBytes = ResourceUtil.getResourceFileAsBytes("data/test.pb");
+
+        final org.apache.beam.sdk.schemas.Schema schema = ProtoToRowConverter.convertSchema(descriptor);
+        final Row actual = ProtoDecoder.of(schema, descriptor, printer).decode(protoBytes);
+
+        Assert.assertEquals(Map.of("a", 1, "b", 2), actual.getMap("strIntMapValue"));
+        Assert.assertEquals(Map.of(1L, 1.01, -10L, -20.5), actual.getMap("longDoubleMapValue"));
+        final Map<?, ?> intChildMap = actual.getMap("intChildMapValue");
+        Assert.assertEquals(1, intChildMap.size());
+        Assert.assertTrue(intChildMap.get(1) instanceof Row);
+
+        Assert.assertEquals("testBytes", toUtf8(actual.getBytes("bytesValue")));
+        Assert.assertEquals("testWrappedBytes", toUtf8(actual.getValue("wrappedBytesValue")));
+        Assert.assertEquals(Arrays.asList("byteArray1"), toUtf8s((List<?>) actual.getArray("bytesValues")));
+        Assert.assertEquals(0, actual.getArray("wrappedBytesValues").size());
+    }
+
+    @Test
+    public void testDecodeSelectedFields() throws Exception {
+        final Map<String, Descriptors.Descriptor> descriptors = getDescriptors();
+        final Descriptors.Descriptor descriptor = descriptors.get(MESSAGE_NAME);
+        final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+        final byte[] protoBytes = ResourceUtil.getResourceFileAsBytes("data/test.pb");
+
+        final List<String> selectFields = Arrays.asList("stringValue", "timestampValue", "enumValues", "child");
+        final Schema fullSchema = ProtoToRecordConverter.convertSchema(descriptor);
+        final Schema schema = AvroSchemaUtil.toSchemaBuilder(fullSchema, selectFields, null).fields().endRecord();
+
+        final GenericRecord expected = ProtoToRecordConverter.convert(fullSchema, descriptor, protoBytes, printer);
+        final GenericRecord actual = ProtoDecoder.of(schema, descriptor, printer).decode(protoBytes);
+
+        Assert.assertEquals(selectFields.size(), actual.getSchema().getFields().size());
+        Assert.assertEquals(expected.get("stringValue"), actual.get("stringValue"));
+        Assert.assertEquals(expected.get("timestampValue"), actual.get("timestampValue"));
+        Assert.assertEquals(expected.get("enumValues"), actual.get("enumValues"));
+        final Descriptors.FieldDescriptor childField = descriptor.findFieldByName("child");
+        assertRecordEquals((GenericRecord) expected.get("child"), (GenericRecord) actual.get("child"),
+                childField.getMessageType(), (Message) DynamicMessage.parseFrom(descriptor, protoBytes).getField(childField), printer);
+    }
+
+    private void testDecodeRecord(final String protoPath) throws Exception {
+        final Map<String, Descriptors.Descriptor> descriptors = getDescriptors();
+        final Descriptors.Descriptor descriptor = descriptors.get(MESSAGE_NAME);
+        final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+        final byte[] protoBytes = ResourceUtil.getResourceFileAsBytes(protoPath);
+
+        final Schema schema = ProtoToRecordConverter.convertSchema(descriptor);
+        final GenericRecord expected = ProtoToRecordConverter.convert(schema, descriptor, protoBytes, printer);
+        final GenericRecord actual = ProtoDecoder.of(schema, descriptor, printer).decode(protoBytes);
+
+        assertRecordEquals(expected, actual, descriptor, DynamicMessage.parseFrom(descriptor, protoBytes), printer);
+    }
+
+    private void testDecodeRow(final String protoPath) throws Exception {
+        final Map<String, Descriptors.Descriptor> descriptors = getDescriptors();
+        final Descriptors.Descriptor descriptor = descriptors.get(MESSAGE_NAME);
+        final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+        final byte[] protoBytes = ResourceUtil.getResourceFileAsBytes(protoPath);
+
+        final org.apache.beam.sdk.schemas.Schema schema = ProtoToRowConverter.convertSchema(descriptor);
+        final Row expected = ProtoToRowConverter.convert(schema, descriptor, protoBytes, printer);
+        final Row actual = ProtoDecoder.of(schema, descriptor, printer).decode(protoBytes);
+
+        assertRowEquals(expected, actual, descriptor, DynamicMessage.parseFrom(descriptor, protoBytes), printer);
+    }
+
+    // Map entries are compared with the message parsed by protobuf, because converters keep message values of maps as DynamicMessage.
+    private void assertRecordEquals(final GenericRecord expected, final GenericRecord actual,
+                                    final Descriptors.Descriptor descriptor, final Message message,
+                                    final JsonFormat.Printer printer) {
+        for(final Schema.Field field : actual.getSchema().getFields()) {
+            final Descriptors.FieldDescriptor fieldDescriptor = descriptor.findFieldByName(field.name());
+            if(fieldDescriptor.isMapField()) {
+                final Map<Object, Object> expectedMap = getMapEntries(message, fieldDescriptor);
+                final Map<Object, Object> actualMap = toMap((List<GenericRecord>) actual.get(field.name()));
+                Assert.assertEquals(field.name(), expectedMap.keySet(), actualMap.keySet());
+                final Descriptors.FieldDescriptor valueField = fieldDescriptor.getMessageType().findFieldByName("value");
+                for(final Map.Entry<Object, Object> entry : expectedMap.entrySet()) {
+                    if(isCustomMessage(valueField)) {
+                        final Descriptors.Descriptor valueDescriptor = valueField.getMessageType();
+                        final Message value = (Message) entry.getValue();
+                        final GenericRecord expectedValue = ProtoToRecordConverter.convert(
+                                ProtoToRecordConverter.convertSchema(valueDescriptor), valueDescriptor, value.toByteArray(), printer);
+                        assertRecordEquals(expectedValue, (GenericRecord) actualMap.get(entry.getKey()), valueDescriptor, value, printer);
+                    } else {
+                        Assert.assertEquals(field.name(), entry.getValue(), actualMap.get(entry.getKey()));
+                    }
+                }
+            } else if(isCustomMessage(fieldDescriptor) && fieldDescriptor.isRepeated()) {
+                final List<GenericRecord> expectedList = (List<GenericRecord>) expected.get(field.name());
+                final List<GenericRecord> actualList = (List<GenericRecord>) actual.get(field.name());
+                Assert.assertEquals(expectedList.size(), actualList.size());
+                for(int i=0; i<expectedList.size(); i++) {
+                    assertRecordEquals(expectedList.get(i), actualList.get(i), fieldDescriptor.getMessageType(),
+                            (Message) message.getRepeatedField(fieldDescriptor, i), printer);
+                }
+            } else if(isCustomMessage(fieldDescriptor)) {
+                assertRecordEquals(
+                        (GenericRecord) expected.get(field.name()),
+                        (GenericRecord) actual.get(field.name()),
+                        fieldDescriptor.getMessageType(),
+                        (Message) message.getField(fieldDescriptor), printer);
+            } else if(isBytes(fieldDescriptor)) {
+                Assert.assertEquals(field.name(), toByteStrings(expected.get(field.name())), toByteStrings(actual.get(field.name())));
+            } else {
+                Assert.assertEquals(field.name(), expected.get(field.name()), actual.get(field.name()));
+            }
+        }
+    }
+
+    // Bytes are compared by contents because ProtoToRowConverter returns wrapped bytes as ByteBuffer.
+    private void assertRowEquals(final Row expected, final Row actual,
+                                 final Descriptors.Descriptor descriptor, final Message message,
+                                 final JsonFormat.Printer printer) {
+        for(final org.apache.beam.sdk.schemas.Schema.Field field : actual.getSchema().getFields()) {
+            final Descriptors.FieldDescriptor fieldDescriptor = descriptor.findFieldByName(field.getName());
+            if(fieldDescriptor.isMapField()) {
+                final Map<Object, Object> expectedMap = getMapEntries(message, fieldDescriptor);
+                final Map<?, ?> actualMap = actual.getMap(field.getName());
+                Assert.assertEquals(field.getName(), expectedMap.keySet(), actualMap.keySet());
+                final Descriptors.FieldDescriptor valueField = fieldDescriptor.getMessageType().findFieldByName("value");
+                for(final Map.Entry<Object, Object> entry : expectedMap.entrySet()) {
+                    if(isCustomMessage(valueField)) {
+                        final Descriptors.Descriptor valueDescriptor = valueField.getMessageType();
+                        final Message value = (Message) entry.getValue();
+                        final Row expectedValue = ProtoToRowConverter.convert(
+                                ProtoToRowConverter.convertSchema(valueDescriptor), valueDescriptor, value.toByteArray(), printer);
+                        assertRowEquals(expectedValue, (Row) actualMap.get(entry.getKey()), valueDescriptor, value, printer);
+                    } else {
+                        Assert.assertEquals(field.getName(), entry.getValue(), actualMap.get(entry.getKey()));
+                    }
+                }
+            } else if(isCustomMessage(fieldDescriptor) && fieldDescriptor.isRepeated()) {
+                final List<Row> expectedList = (List<Row>) expected.getValue(field.getName());
+                final List<Row> actualList = (List<Row>) actual.getValue(field.getName());
+                Assert.assertEquals(expectedList.size(), actualList.size());
+                for(int i=0; i<expectedList.size(); i++) {
+                    assertRowEquals(expectedList.get(i), actualList.get(i), fieldDescriptor.getMessageType(),
+                            (Message) message.getRepeatedField(fieldDescriptor, i), printer);
+                }
+            } else if(isCustomMessage(fieldDescriptor)) {
+                assertRowEquals(expected.getRow(field.getName()), actual.getRow(field.getName()),
+                        fieldDescriptor.getMessageType(), (Message) message.getField(fieldDescriptor), printer);
+            } else if(isBytes(fieldDescriptor)) {
+                if(!fieldDescriptor.isRepeated()) {
+                    Assert.assertTrue(field.getName(), actual.getValue(field.getName()) instanceof byte[]);
+                }
+                Assert.assertEquals(field.getName(),
+                        toByteStrings(expected.getValue(field.getName())),
+                        toByteStrings(actual.getValue(field.getName())));
+            } else {
+                Assert.assertEquals(field.getName(), expected.getValue(field.getName()), actual.getValue(field.getName()));
+            }
+        }
+    }
+
+    private static Map<Object, Object> getMapEntries(final Message message, final Descriptors.FieldDescriptor field) {
+        final Descriptors.FieldDescriptor keyField = field.getMessageType().findFieldByName("key");
+        final Descriptors.FieldDescriptor valueField = field.getMessageType().findFieldByName("value");
+        final Map<Object, Object> entries = new HashMap<>();
+        for(int i=0; i<message.getRepeatedFieldCount(field); i++) {
+            final Message entry = (Message) message.getRepeatedField(field, i);
+            entries.put(entry.getField(keyField), entry.getField(valueField));
+        }
+        return entries;
+    }
+
+    private static Map<Object, Object> toMap(final List<GenericRecord> entries) {
+        final Map<Object, Object> map = new HashMap<>();
+        for(final GenericRecord entry : entries) {
+            final Object key = entry.get("key");
+            map.put(key instanceof CharSequence ? key.toString() : key, entry.get("value"));
+        }
+        return map;
+    }
+
+    private static boolean isBytes(final Descriptors.FieldDescriptor field) {
+        return field.getJavaType().equals(Descriptors.FieldDescriptor.JavaType.BYTE_STRING)
+                || (field.getJavaType().equals(Descriptors.FieldDescriptor.JavaType.MESSAGE)
+                    && "google.protobuf.BytesValue".equals(field.getMessageType().getFullName()));
+    }
+
+    private static Object toByteStrings(final Object value) {
+        if(value == null) {
+            return null;
+        } else if(value instanceof List) {
+            return ((List<?>) value).stream()
+                    .map(ProtoDecoderTest::toByteStrings)
+                    .collect(Collectors.toList());
+        } else if(value instanceof byte[]) {
+            return ByteString.copyFrom((byte[]) value);
+        } else if(value instanceof ByteBuffer) {
+            return ByteString.copyFrom(((ByteBuffer) value).duplicate());
+        } else if(value instanceof ByteString) {
+            return value;
+        }
+        throw new IllegalArgumentException("Not bytes: " + value.getClass());
+    }
+
+    private static String toUtf8(final Object bytes) {
+        return ((ByteString) toByteStrings(bytes)).toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> toUtf8s(final List<?> bytes) {
+        return bytes.stream().map(ProtoDecoderTest::toUtf8).collect(Collectors.toList());
+    }
+
+    private static boolean isCustomMessage(final Descriptors.FieldDescriptor field) {
+        return field.getJavaType().equals(Descriptors.FieldDescriptor.JavaType.MESSAGE)
+                && ProtoSchemaUtil.ProtoType.CUSTOM.equals(ProtoSchemaUtil.ProtoType.of(field.getMessageType().getFullName()));
+    }
+
+    private static Map<String, Descriptors.Descriptor> getDescriptors() {
+        final byte[] descBytes = ResourceUtil.getResourceFileAsBytes("schema/test.desc");
+        return ProtoSchemaUtil.getDescriptors(descBytes);
+    }
+
+}
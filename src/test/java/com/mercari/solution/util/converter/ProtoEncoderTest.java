@@ -0,0 +1,73 @@
+package com.mercari.solution.util.converter;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.util.JsonFormat;
+import com.mercari.solution.util.ResourceUtil;
+import com.mercari.solution.util.schema.ProtoSchemaUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.values.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class ProtoEncoderTest {
+
+    private static final String MESSAGE_NAME = "com.mercari.solution.entity.TestMessage";
+
+    @Test
+    public void testEncodeRecord() {
+        testEncodeRecord("data/test.pb");
+        testEncodeRecord("data/test_null.pb");
+    }
+
+    @Test
+    public void testEncodeRow() {
+        testEncodeRow("data/test.pb");
+        testEncodeRow("data/test_null.pb");
+    }
+
+    private void testEncodeRecord(final String protoPath) {
+        final Map<String, Descriptors.Descriptor> descriptors = getDescriptors();
+        final Descriptors.Descriptor descriptor = descriptors.get(MESSAGE_NAME);
+        final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+        final JsonFormat.Parser parser = ProtoSchemaUtil.createJsonParser(descriptors);
+        final byte[] protoBytes = ResourceUtil.getResourceFileAsBytes(protoPath);
+
+        final Schema schema = ProtoToRecordConverter.convertSchema(descriptor);
+        final ProtoDecoder<GenericRecord> decoder = ProtoDecoder.of(schema, descriptor, printer);
+        final GenericRecord record = decoder.decode(protoBytes);
+
+        final byte[] encoded = ProtoEncoder.of(schema, descriptor, parser).encode(record);
+        // Encoded bytes must be readable by the standard protobuf parser.
+        final DynamicMessage message = ProtoSchemaUtil.convert(descriptor, encoded);
+        Assert.assertEquals(
+                ProtoSchemaUtil.convert(descriptor, protoBytes).getField(descriptor.findFieldByName("stringValue")),
+                message.getField(descriptor.findFieldByName("stringValue")));
+
+        Assert.assertEquals(record, decoder.decode(encoded));
+    }
+
+    private void testEncodeRow(final String protoPath) {
+        final Map<String, Descriptors.Descriptor> descriptors = getDescriptors();
+        final Descriptors.Descriptor descriptor = descriptors.get(MESSAGE_NAME);
+        final JsonFormat.Printer printer = ProtoSchemaUtil.createJsonPrinter(descriptors);
+        final JsonFormat.Parser parser = ProtoSchemaUtil.createJsonParser(descriptors);
+        final byte[] protoBytes = ResourceUtil.getResourceFileAsBytes(protoPath);
+
+        final org.apache.beam.sdk.schemas.Schema schema = ProtoToRowConverter.convertSchema(descriptor);
+        final ProtoDecoder<Row> decoder = ProtoDecoder.of(schema, descriptor, printer);
+        final Row row = decoder.decode(protoBytes);
+
+        final byte[] encoded = ProtoEncoder.of(schema, descriptor, parser).encode(row);
+        Assert.assertEquals(row, decoder.decode(encoded));
+    }
+
+    private static Map<String, Descriptors.Descriptor> getDescriptors() {
+        final byte[] descBytes = ResourceUtil.getResourceFileAsBytes("schema/test.desc");
+        return ProtoSchemaUtil.getDescriptors(descBytes);
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.mercari.solution.util.converter;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares converting all rows of a query with the schema rebuilt per row and with the converter bound once per query.
+ * Run by main method with test classpath, e.g.
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.mercari.solution.util.converter.ResultSetToRecordConverterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResultSetToRecordConverterBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:resultsetbenchmark;DB_CLOSE_DELAY=-1";
+    private static final String QUERY = "SELECT * FROM ITEMS";
+
+    @Param({"10000"})
+    private int rows;
+
+    private Connection connection;
+    private Schema schema;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        connection = DriverManager.getConnection(URL, "sa", "");
+        try(final Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS ITEMS");
+            statement.execute("CREATE TABLE ITEMS (ID BIGINT, NAME VARCHAR(64), CATEGORY VARCHAR(32), PRICE INT, " +
+                    "RATE DOUBLE, AMOUNT DECIMAL(18, 4), ACTIVE BOOLEAN, RELEASED DATE, CREATED_AT TIMESTAMP, UPDATED_AT TIMESTAMP)");
+        }
+        try(final PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO ITEMS VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for(int i=0; i<rows; i++) {
+                insert.setLong(1, i);
+                insert.setString(2, "item" + i);
+                insert.setString(3, "category" + (i % 10));
+                insert.setInt(4, i * 100);
+                insert.setDouble(5, i / 7D);
+                insert.setBigDecimal(6, new java.math.BigDecimal(i).movePointLeft(2));
+                insert.setBoolean(7, i % 2 == 0);
+                insert.setDate(8, new Date(86400000L * i));
+                insert.setTimestamp(9, new Timestamp(1000L * i));
+                insert.setTimestamp(10, new Timestamp(2000L * i));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try(final Statement statement = connection.createStatement();
+            final ResultSet resultSet = statement.executeQuery(QUERY)) {
+            schema = ResultSetToRecordConverter.convertSchema(resultSet);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Benchmark
+    public void convertWithSchemaPerRow(final Blackhole blackhole) throws Exception {
+        try(final Statement statement = connection.createStatement();
+            final ResultSet resultSet = statement.executeQuery(QUERY)) {
+            while(resultSet.next()) {
+                blackhole.consume(ResultSetToRecordConverter.convert(resultSet));
+            }
+        }
+    }
+
+    @Benchmark
+    public void convertWithBoundConverter(final Blackhole blackhole) throws Exception {
+        try(final Statement statement = connection.createStatement();
+            final ResultSet resultSet = statement.executeQuery(QUERY)) {
+            final ResultSetToRecordConverter.RecordConverter converter = ResultSetToRecordConverter
+                    .bind(schema, resultSet.getMetaData());
+            while(resultSet.next()) {
+                final GenericRecord record = converter.convert(resultSet);
+                blackhole.consume(record);
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Options options = new OptionsBuilder()
+                .include(ResultSetToRecordConverterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.mercari.solution.util.converter;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResultSetToRecordConverterTest {
+
+    @Test
+    public void testBind() throws Exception {
+        try(final Connection connection = DriverManager.getConnection("jdbc:h2:mem:resultsetconvertertest", "sa", "");
+            final Statement statement = connection.createStatement()) {
+
+            statement.execute("CREATE TABLE ITEMS (ID BIGINT, NAME VARCHAR(32), PRICE INT, AMOUNT DECIMAL(10, 2), " +
+                    "ACTIVE BOOLEAN, RELEASED DATE, OPENED TIME, CREATED_AT TIMESTAMP)");
+            statement.execute("INSERT INTO ITEMS VALUES (1, 'a', 100, 1.25, TRUE, DATE '1970-01-11', TIME '01:00:00', TIMESTAMP '1970-01-01 00:00:01')");
+            statement.execute("INSERT INTO ITEMS VALUES (2, NULL, NULL, NULL, NULL, NULL, NULL, NULL)");
+
+            // Columns are bound by name, regardless of order in schema
+            final Schema schema;
+            try(final ResultSet resultSet = statement.executeQuery("SELECT * FROM ITEMS")) {
+                schema = ResultSetToRecordConverter.convertSchema(resultSet);
+            }
+
+            final List<GenericRecord> records = new ArrayList<>();
+            try(final ResultSet resultSet = statement.executeQuery("SELECT CREATED_AT, OPENED, RELEASED, ACTIVE, AMOUNT, PRICE, NAME, ID FROM ITEMS ORDER BY ID")) {
+                final ResultSetToRecordConverter.RecordConverter converter = ResultSetToRecordConverter
+                        .bind(schema, resultSet.getMetaData());
+                while(resultSet.next()) {
+                    records.add(converter.convert(resultSet));
+                }
+            }
+
+            Assert.assertEquals(2, records.size());
+            final GenericRecord record = records.get(0);
+            Assert.assertEquals(1L, record.get("ID"));
+            Assert.assertEquals("a", record.get("NAME"));
+            Assert.assertEquals(100, record.get("PRICE"));
+            Assert.assertEquals(ByteBuffer.wrap(new java.math.BigDecimal("1.25").unscaledValue().toByteArray()), record.get("AMOUNT"));
+            Assert.assertEquals(true, record.get("ACTIVE"));
+            Assert.assertEquals(10, record.get("RELEASED"));
+            Assert.assertEquals(3600_000_000L, record.get("OPENED"));
+
+            // Nulls are kept as null, not as default values of primitive getters
+            final GenericRecord nullRecord = records.get(1);
+            Assert.assertEquals(2L, nullRecord.get("ID"));
+            for(final String field : new String[]{"NAME", "PRICE", "AMOUNT", "ACTIVE", "RELEASED", "OPENED", "CREATED_AT"}) {
+                Assert.assertNull(nullRecord.get(field));
+            }
+        }
+    }
+
+}
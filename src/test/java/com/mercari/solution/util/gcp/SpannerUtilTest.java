@@ -0,0 +1,46 @@
+package com.mercari.solution.util.gcp;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeyRange;
+import com.google.cloud.spanner.Statement;
+import com.google.cloud.spanner.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SpannerUtilTest {
+
+    @Test
+    public void testCreateKeyRanges() {
+        final List<KeyRange> keyRanges = SpannerUtil.createKeyRanges(Arrays.asList(Value.int64(10), Value.int64(20)));
+        Assert.assertEquals(3, keyRanges.size());
+        Assert.assertEquals(KeyRange.closedOpen(Key.of(), Key.of(10L)), keyRanges.get(0));
+        Assert.assertEquals(KeyRange.closedOpen(Key.of(10L), Key.of(20L)), keyRanges.get(1));
+        Assert.assertEquals(KeyRange.closedClosed(Key.of(20L), Key.of()), keyRanges.get(2));
+
+        final List<KeyRange> all = SpannerUtil.createKeyRanges(Collections.emptyList());
+        Assert.assertEquals(1, all.size());
+        Assert.assertEquals(KeyRange.closedClosed(Key.of(), Key.of()), all.get(0));
+    }
+
+    @Test
+    public void testCreateKeyRangeStatements() {
+        final String query = "SELECT UserID, COUNT(*) AS Count FROM Orders GROUP BY UserID";
+        final List<Statement> statements = SpannerUtil.createKeyRangeStatements(
+                query, "UserID", Arrays.asList(Value.string("b"), Value.string("m")));
+        Assert.assertEquals(3, statements.size());
+        Assert.assertEquals("SELECT * FROM (" + query + ") WHERE UserID < @end OR UserID IS NULL", statements.get(0).getSql());
+        Assert.assertEquals(Value.string("b"), statements.get(0).getParameters().get("end"));
+        Assert.assertEquals("SELECT * FROM (" + query + ") WHERE UserID >= @start AND UserID < @end", statements.get(1).getSql());
+        Assert.assertEquals(Value.string("b"), statements.get(1).getParameters().get("start"));
+        Assert.assertEquals(Value.string("m"), statements.get(1).getParameters().get("end"));
+        Assert.assertEquals("SELECT * FROM (" + query + ") WHERE UserID >= @start", statements.get(2).getSql());
+
+        final List<Statement> single = SpannerUtil.createKeyRangeStatements(query, "UserID", Collections.emptyList());
+        Assert.assertEquals(Collections.singletonList(Statement.of(query)), single);
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.mercari.solution.util.hashicorp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VaultClientTest {
+
+    private static final String TOKEN = "test-token";
+
+    private HttpServer server;
+    private String host;
+    private final AtomicInteger kvRequests = new AtomicInteger();
+    private final AtomicInteger revokeRequests = new AtomicInteger();
+    private final List<String> tokens = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/kv/secret/data/MyCryptoKey", exchange -> {
+            kvRequests.incrementAndGet();
+            tokens.add(exchange.getRequestHeaders().getFirst("X-Vault-Token"));
+            respond(exchange, 200, "{\"data\":{\"data\":{\"MetaData\":{\"CryptoKey\":\"vault:v1:encrypted\"}}}}");
+        });
+        server.createContext("/v1/transit/decrypt/MyData", exchange -> {
+            final String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if(!body.contains("vault:v1:encrypted")) {
+                respond(exchange, 400, "{\"errors\":[\"invalid ciphertext\"]}");
+                return;
+            }
+            respond(exchange, 200, "{\"data\":{\"batch_results\":[{\"plaintext\":\"ZGVjcnlwdGVk\"}]}}");
+        });
+        server.createContext("/v1/auth/token/revoke-self", exchange -> {
+            revokeRequests.incrementAndGet();
+            respond(exchange, 204, null);
+        });
+        server.start();
+        host = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testReadKVSecret() throws Exception {
+        final VaultClient client = new VaultClient(host, null, TOKEN);
+        final JsonObject secret = client.readKVSecret("/v1/kv/secret/data/MyCryptoKey");
+        Assert.assertEquals("vault:v1:encrypted", secret.getAsJsonObject("MetaData").get("CryptoKey").getAsString());
+        Assert.assertEquals(Arrays.asList(TOKEN), tokens);
+    }
+
+    @Test
+    public void testDecryptSecret() {
+        final VaultClient client = new VaultClient(host, null, TOKEN);
+        Assert.assertEquals("ZGVjcnlwdGVk", client.decryptSecret("/v1/transit/decrypt/MyData", "vault:v1:encrypted"));
+    }
+
+    @Test
+    public void testCallError() {
+        final VaultClient client = new VaultClient(host, null, TOKEN);
+        try {
+            client.decryptSecret("/v1/transit/decrypt/MyData", "invalid");
+            Assert.fail("Error response must throw exception");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("400"));
+        }
+    }
+
+    @Test
+    public void testRevokeToken() throws Exception {
+        final VaultClient client = new VaultClient(host, null, TOKEN);
+        client.revokeToken();
+        Assert.assertEquals(1, revokeRequests.get());
+    }
+
+    @Test
+    public void testSecretPathFetch() {
+        final VaultSecretCache.SecretPath path = new VaultSecretCache.SecretPath(
+                host, null, null, null, null,
+                "/v1/kv/secret/data/MyCryptoKey", null,
+                "/v1/transit/decrypt/MyData", "$.MetaData.CryptoKey");
+        final JsonElement secret = path.fetch(new VaultClient(host, null, TOKEN));
+        Assert.assertEquals("ZGVjcnlwdGVk", secret.getAsJsonObject()
+                .getAsJsonObject("MetaData").get("CryptoKey").getAsString());
+    }
+
+    @Test
+    public void testSecretCacheCoalescesConcurrentFetch() throws Exception {
+        final VaultSecretCache cache = new VaultSecretCache(
+                p -> p.fetch(new VaultClient(host, null, TOKEN)),
+                Duration.ofMinutes(10), Duration.ofHours(1));
+        final VaultSecretCache.SecretPath path = new VaultSecretCache.SecretPath(
+                host, null, null, null, null,
+                "/v1/kv/secret/data/MyCryptoKey", null, null, null);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<JsonElement>> futures = new ArrayList<>();
+            for(int i=0; i<32; i++) {
+                futures.add(executor.submit(() -> cache.get(path)));
+            }
+            final JsonElement first = futures.get(0).get();
+            for(final Future<JsonElement> future : futures) {
+                Assert.assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, kvRequests.get());
+
+        cache.invalidate(path);
+        cache.get(path);
+        Assert.assertEquals(2, kvRequests.get());
+    }
+
+    @Test
+    public void testSecretCacheRefresh() throws Exception {
+        final VaultSecretCache cache = new VaultSecretCache(
+                p -> p.fetch(new VaultClient(host, null, TOKEN)),
+                Duration.ofMillis(1), Duration.ofHours(1));
+        final VaultSecretCache.SecretPath path = new VaultSecretCache.SecretPath(
+                host, null, null, null, null,
+                "/v1/kv/secret/data/MyCryptoKey", null, null, null);
+
+        final JsonElement first = cache.get(path);
+        Thread.sleep(10);
+        // Returns the cached value while reloading it in background.
+        Assert.assertEquals(first, cache.get(path));
+        for(int i=0; i<100 && kvRequests.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(kvRequests.get() >= 2);
+    }
+
+    private static void respond(final HttpExchange exchange,
+                                final int status,
+                                final String body) throws IOException {
+        if(body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(final OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+}